@@ -0,0 +1,68 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.bench;
+
+import org.compass.annotations.Searchable;
+import org.compass.annotations.SearchableId;
+import org.compass.annotations.SearchableProperty;
+
+/**
+ * The searchable class used by all the benchmarks.
+ *
+ * @author kimchy
+ */
+@Searchable(alias = "data")
+public class BenchData {
+
+    @SearchableId
+    private Long id;
+
+    @SearchableProperty(name = "title")
+    private String title;
+
+    @SearchableProperty(name = "body")
+    private String body;
+
+    @SearchableProperty(name = "value")
+    private int value;
+
+    public BenchData() {
+    }
+
+    public BenchData(long id) {
+        this.id = id;
+        this.title = "compass title " + id;
+        this.body = "the quick brown fox jumps over the lazy dog, search engine benchmark body number " + id;
+        this.value = (int) (id % 100);
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public int getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.compass.core.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * A minimal, dependency free, benchmark runner. Runs the operations ({@link Benchmark} methods) of each
+ * benchmark class for each combination of its {@link Param} fields, and reports the average time per operation.
+ *
+ * <p>Each combination is run in its own forked JVM (unless forking is disabled), since some settings (such as
+ * the file system directory type) are JVM wide, and so the JIT profile of one combination does not affect the
+ * next. A new instance of the benchmark class is created, its parameters are set and its {@link Setup} methods
+ * are called. Each operation is then run for a number of warmup iterations followed by a
+ * number of measured iterations, each calling the operation repeatedly (in growing batches, so the clock is not
+ * read per call) for the iteration time. The score is the mean time per operation over the measured iterations,
+ * and the error is their standard deviation. Finally, the {@link TearDown} methods are called.
+ *
+ * <p>Usage: <code>BenchmarkRunner [-f 0|1] [-wi warmupIterations] [-i iterations]
+ * [-t iterationTimeMillis] [-o reportFile] [includesRegexp]</code>. The regular expression is matched against
+ * <code>ClassName.operation</code> (the simple class name). Use the <code>bench</code> ant target to run it
+ * in a forked JVM.
+ *
+ * @author kimchy
+ */
+public class BenchmarkRunner {
+
+    private static final String RESULT_PREFIX = "RESULT ";
+
+    private static final Class[] BENCHMARKS = new Class[]{
+            MarshallingBenchmark.class,
+            CompiledMarshallingBenchmark.class,
+            CodecBenchmark.class,
+            QueryParserBenchmark.class,
+            FindBenchmark.class,
+            GetBenchmark.class,
+            CommitBenchmark.class,
+            DirectoryStoreBenchmark.class
+    };
+
+    private int warmupIterations = 5;
+
+    private int iterations = 5;
+
+    private long iterationTime = 1000;
+
+    private boolean fork = true;
+
+    private String includesPattern = ".*";
+
+    private Pattern includes = Pattern.compile(includesPattern);
+
+    private PrintWriter report;
+
+    // when running as a forked JVM, the combination to run
+    private String childClass;
+
+    private int childCombination = -1;
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        String reportFile = null;
+        for (int i = 0; i < args.length; i++) {
+            if ("-f".equals(args[i])) {
+                runner.fork = Integer.parseInt(args[++i]) > 0;
+            } else if ("-child".equals(args[i])) {
+                runner.childClass = args[++i];
+                runner.childCombination = Integer.parseInt(args[++i]);
+            } else if ("-wi".equals(args[i])) {
+                runner.warmupIterations = Integer.parseInt(args[++i]);
+            } else if ("-i".equals(args[i])) {
+                runner.iterations = Integer.parseInt(args[++i]);
+            } else if ("-t".equals(args[i])) {
+                runner.iterationTime = Long.parseLong(args[++i]);
+            } else if ("-o".equals(args[i])) {
+                reportFile = args[++i];
+            } else {
+                runner.includesPattern = args[i];
+                runner.includes = Pattern.compile(args[i]);
+            }
+        }
+        if (runner.childClass != null) {
+            runner.run(Class.forName(runner.childClass));
+            return;
+        }
+        if (reportFile != null) {
+            runner.report = new PrintWriter(new FileWriter(reportFile));
+        }
+        try {
+            for (Class benchmarkClass : BENCHMARKS) {
+                runner.run(benchmarkClass);
+            }
+        } finally {
+            if (runner.report != null) {
+                runner.report.close();
+            }
+        }
+    }
+
+    private void run(Class benchmarkClass) throws Exception {
+        List<Method> operations = new ArrayList<Method>();
+        for (Method method : benchmarkClass.getMethods()) {
+            if (method.isAnnotationPresent(Benchmark.class)
+                    && includes.matcher(benchmarkClass.getSimpleName() + "." + method.getName()).find()) {
+                operations.add(method);
+            }
+        }
+        if (operations.isEmpty()) {
+            return;
+        }
+        List<Field> params = new ArrayList<Field>();
+        for (Field field : benchmarkClass.getDeclaredFields()) {
+            if (field.isAnnotationPresent(Param.class) && !Modifier.isStatic(field.getModifiers())) {
+                field.setAccessible(true);
+                params.add(field);
+            }
+        }
+        TimeUnit unit = TimeUnit.MICROSECONDS;
+        OutputTimeUnit outputTimeUnit = (OutputTimeUnit) benchmarkClass.getAnnotation(OutputTimeUnit.class);
+        if (outputTimeUnit != null) {
+            unit = outputTimeUnit.value();
+        }
+        List<Map<Field, String>> combinations = combinations(params);
+        for (int i = 0; i < combinations.size(); i++) {
+            if (childCombination != -1 && childCombination != i) {
+                continue;
+            }
+            if (fork && childClass == null) {
+                runForked(benchmarkClass, i);
+                continue;
+            }
+            Map<Field, String> combination = combinations.get(i);
+            Object benchmark = benchmarkClass.newInstance();
+            StringBuilder paramsDescription = new StringBuilder();
+            for (Map.Entry<Field, String> entry : combination.entrySet()) {
+                setParam(benchmark, entry.getKey(), entry.getValue());
+                if (paramsDescription.length() > 0) {
+                    paramsDescription.append(", ");
+                }
+                paramsDescription.append(entry.getKey().getName()).append("=").append(entry.getValue());
+            }
+            invokeAnnotated(benchmark, Setup.class);
+            try {
+                for (Method operation : operations) {
+                    measure(benchmark, operation, paramsDescription.toString(), unit);
+                }
+            } finally {
+                invokeAnnotated(benchmark, TearDown.class);
+            }
+        }
+    }
+
+    private void measure(Object benchmark, Method operation, String params, TimeUnit unit) throws Exception {
+        Blackhole blackhole = new Blackhole();
+        boolean acceptsBlackhole = operation.getParameterTypes().length == 1;
+        Object[] args = acceptsBlackhole ? new Object[]{blackhole} : new Object[0];
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(benchmark, operation, args, blackhole);
+        }
+        double[] scores = new double[iterations];
+        double sum = 0;
+        for (int i = 0; i < iterations; i++) {
+            scores[i] = iteration(benchmark, operation, args, blackhole) / unit.toNanos(1);
+            sum += scores[i];
+        }
+        double mean = iterations == 0 ? 0 : sum / iterations;
+        double variance = 0;
+        for (double score : scores) {
+            variance += (score - mean) * (score - mean);
+        }
+        double error = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0;
+        String name = benchmark.getClass().getSimpleName() + "." + operation.getName();
+        String line = String.format("%-45s %-50s %12.3f +- %10.3f %s/op", name, "[" + params + "]", mean, error, unitName(unit));
+        if (childClass != null) {
+            // the parent reports it
+            System.out.println(RESULT_PREFIX + line);
+        } else {
+            report(line);
+        }
+    }
+
+    private void report(String line) {
+        System.out.println(line);
+        if (report != null) {
+            report.println(line);
+            report.flush();
+        }
+    }
+
+    private void runForked(Class benchmarkClass, int combination) throws Exception {
+        List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(BenchmarkRunner.class.getName());
+        command.add("-child");
+        command.add(benchmarkClass.getName());
+        command.add(Integer.toString(combination));
+        command.add("-wi");
+        command.add(Integer.toString(warmupIterations));
+        command.add("-i");
+        command.add(Integer.toString(iterations));
+        command.add("-t");
+        command.add(Long.toString(iterationTime));
+        command.add(includesPattern);
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith(RESULT_PREFIX)) {
+                report(line.substring(RESULT_PREFIX.length()));
+            } else {
+                System.out.println(line);
+            }
+        }
+        int exitCode = process.waitFor();
+        if (exitCode != 0) {
+            throw new IllegalStateException("Forked benchmark [" + benchmarkClass.getSimpleName() + "] failed with exit code [" + exitCode + "]");
+        }
+    }
+
+    /**
+     * Runs the operation for the iteration time, and returns the mean time per operation in nanoseconds.
+     */
+    private double iteration(Object benchmark, Method operation, Object[] args, Blackhole blackhole) throws Exception {
+        long iterationNanos = TimeUnit.MILLISECONDS.toNanos(iterationTime);
+        long operations = 0;
+        int batch = 1;
+        long start = System.nanoTime();
+        long elapsed;
+        while (true) {
+            for (int i = 0; i < batch; i++) {
+                blackhole.consume(invoke(benchmark, operation, args));
+            }
+            operations += batch;
+            elapsed = System.nanoTime() - start;
+            if (elapsed >= iterationNanos) {
+                break;
+            }
+            if (elapsed < iterationNanos / 100) {
+                batch <<= 1;
+            }
+        }
+        return (double) elapsed / operations;
+    }
+
+    private static Object invoke(Object benchmark, Method method, Object[] args) throws Exception {
+        try {
+            return method.invoke(benchmark, args);
+        } catch (InvocationTargetException e) {
+            if (e.getTargetException() instanceof Exception) {
+                throw (Exception) e.getTargetException();
+            }
+            throw e;
+        }
+    }
+
+    private static void invokeAnnotated(Object benchmark, Class annotation) throws Exception {
+        for (Method method : benchmark.getClass().getMethods()) {
+            if (method.isAnnotationPresent(annotation)) {
+                invoke(benchmark, method, new Object[0]);
+            }
+        }
+    }
+
+    private static void setParam(Object benchmark, Field field, String value) throws IllegalAccessException {
+        Class type = field.getType();
+        if (type == int.class) {
+            field.setInt(benchmark, Integer.parseInt(value));
+        } else if (type == long.class) {
+            field.setLong(benchmark, Long.parseLong(value));
+        } else if (type == boolean.class) {
+            field.setBoolean(benchmark, Boolean.valueOf(value));
+        } else if (type == String.class) {
+            field.set(benchmark, value);
+        } else {
+            throw new IllegalArgumentException("Unsupported param type [" + type.getName() + "] of field [" + field.getName() + "]");
+        }
+    }
+
+    private static List<Map<Field, String>> combinations(List<Field> params) {
+        List<Map<Field, String>> combinations = new ArrayList<Map<Field, String>>();
+        combinations.add(new LinkedHashMap<Field, String>());
+        for (Field param : params) {
+            List<Map<Field, String>> expanded = new ArrayList<Map<Field, String>>();
+            for (Map<Field, String> combination : combinations) {
+                for (String value : param.getAnnotation(Param.class).value()) {
+                    Map<Field, String> copy = new LinkedHashMap<Field, String>(combination);
+                    copy.put(param, value);
+                    expanded.add(copy);
+                }
+            }
+            combinations = expanded;
+        }
+        return combinations;
+    }
+
+    private static String unitName(TimeUnit unit) {
+        if (unit == TimeUnit.NANOSECONDS) {
+            return "ns";
+        } else if (unit == TimeUnit.MICROSECONDS) {
+            return "us";
+        } else if (unit == TimeUnit.MILLISECONDS) {
+            return "ms";
+        }
+        return "s";
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.compass.core.bench;
+
+/**
+ * Consumes values produced by benchmarked operations, so the JIT can not eliminate the code producing them.
+ *
+ * @author kimchy
+ */
+public class Blackhole {
+
+    private int hash;
+
+    public void consume(Object value) {
+        if (value != null) {
+            hash ^= System.identityHashCode(value);
+        }
+    }
+
+    /**
+     * Returns a value derived from all the consumed values.
+     */
+    public int getHash() {
+        return hash;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.compass.core.Compass;
+import org.compass.core.CompassTransaction;
+import org.compass.core.lucene.engine.LuceneSearchEngineFactory;
+import org.compass.core.lucene.engine.codec.Codec;
+import org.compass.core.lucene.engine.codec.CodecHelper;
+import org.compass.core.lucene.engine.codec.SerializableCodec;
+import org.compass.core.lucene.engine.codec.TransactionJobsCodec;
+import org.compass.core.lucene.engine.transaction.support.job.CreateTransactionJob;
+import org.compass.core.lucene.engine.transaction.support.job.TransactionJobs;
+import org.compass.core.spi.InternalCompass;
+import org.compass.core.spi.InternalCompassSession;
+import org.compass.core.spi.InternalResource;
+import org.compass.core.spi.MultiResource;
+
+/**
+ * Benchmarks encoding and decoding a batch of create transaction jobs (as written to the async write ahead
+ * log and spill files) using the binary {@link TransactionJobsCodec} compared to Java serialization.
+ *
+ * @author kimchy
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CodecBenchmark {
+
+    @Param({"binary", "serializable"})
+    private String codecType;
+
+    @Param({"10", "100"})
+    private int jobsCount;
+
+    private Compass compass;
+
+    private Codec<TransactionJobs> codec;
+
+    private TransactionJobs jobs;
+
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        compass = CompassBenchmarkSupport.buildCompass(CompassBenchmarkSupport.configuration("ram", "codec"));
+        if ("binary".equals(codecType)) {
+            codec = new TransactionJobsCodec((LuceneSearchEngineFactory) ((InternalCompass) compass).getSearchEngineFactory());
+        } else {
+            codec = new SerializableCodec<TransactionJobs>();
+        }
+        InternalCompassSession session = (InternalCompassSession) compass.openSession();
+        CompassTransaction tr = session.beginTransaction();
+        jobs = new TransactionJobs();
+        for (int i = 0; i < jobsCount; i++) {
+            MultiResource resource = (MultiResource) session.getMarshallingStrategy().marshall(new BenchData(i));
+            jobs.add(new CreateTransactionJob((InternalResource) resource.currentResource()));
+        }
+        tr.commit();
+        session.close();
+        encoded = CodecHelper.toBytes(codec, jobs);
+    }
+
+    @TearDown
+    public void tearDown() {
+        CompassBenchmarkSupport.close(compass);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return CodecHelper.toBytes(codec, jobs);
+    }
+
+    @Benchmark
+    public TransactionJobs decode() throws IOException {
+        return CodecHelper.fromBytes(codec, encoded);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.compass.core.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.compass.core.Compass;
+import org.compass.core.CompassSession;
+import org.compass.core.CompassTransaction;
+import org.compass.core.config.CompassConfiguration;
+import org.compass.core.lucene.LuceneEnvironment;
+
+/**
+ * Benchmarks a transaction saving a batch of objects and committing it, for each of the built in
+ * transaction processors.
+ *
+ * @author kimchy
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CommitBenchmark {
+
+    @Param({"lucene", "read_committed", "async", "mt"})
+    public String processor;
+
+    @Param({"1", "100"})
+    public int batchSize;
+
+    private Compass compass;
+
+    private long counter;
+
+    @Setup
+    public void setUp() {
+        CompassConfiguration conf = CompassBenchmarkSupport.configuration("ram", "commit");
+        conf.getSettings().setSetting(LuceneEnvironment.Transaction.Processor.TYPE, processor);
+        compass = CompassBenchmarkSupport.buildCompass(conf);
+    }
+
+    @TearDown
+    public void tearDown() {
+        CompassBenchmarkSupport.close(compass);
+    }
+
+    @Benchmark
+    public void saveAndCommit() {
+        CompassSession session = compass.openSession();
+        CompassTransaction tr = session.beginTransaction();
+        for (int i = 0; i < batchSize; i++) {
+            session.save(new BenchData(counter++));
+        }
+        tr.commit();
+        session.close();
+    }
+}
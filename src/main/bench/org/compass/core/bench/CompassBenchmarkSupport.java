@@ -0,0 +1,114 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.bench;
+
+import org.compass.core.Compass;
+import org.compass.core.CompassSession;
+import org.compass.core.CompassTransaction;
+import org.compass.core.config.CompassConfiguration;
+import org.compass.core.config.CompassEnvironment;
+import org.compass.core.lucene.LuceneEnvironment;
+
+/**
+ * Helper methods used to build, populate and close the Compass instances used by the benchmarks.
+ *
+ * @author kimchy
+ */
+public abstract class CompassBenchmarkSupport {
+
+    /**
+     * The base directory file system based benchmarks store their index under.
+     */
+    public static final String INDEX_DIR = "target/bench-index";
+
+    /**
+     * Returns the connection string for the given store type. Can be one of <code>ram</code>,
+     * <code>fs</code>, <code>mmap</code>, <code>niofs</code> or <code>jdbc</code> (in memory HSQLDB).
+     */
+    public static String connection(String store, String name) {
+        if ("ram".equals(store)) {
+            return "ram://" + name;
+        } else if ("fs".equals(store)) {
+            return INDEX_DIR + "/" + name;
+        } else if ("mmap".equals(store)) {
+            return "mmap://" + INDEX_DIR + "/" + name;
+        } else if ("niofs".equals(store)) {
+            return "niofs://" + INDEX_DIR + "/" + name;
+        } else if ("jdbc".equals(store)) {
+            return "jdbc://jdbc:hsqldb:mem:" + name;
+        }
+        throw new IllegalArgumentException("Unknown store [" + store + "]");
+    }
+
+    /**
+     * Creates a new configuration for the given store with the benchmark mappings.
+     */
+    public static CompassConfiguration configuration(String store, String name) {
+        CompassConfiguration conf = new CompassConfiguration();
+        conf.getSettings().setSetting(CompassEnvironment.CONNECTION, connection(store, name));
+        conf.getSettings().setBooleanSetting(CompassEnvironment.REGISTER_SHUTDOWN_HOOK, false);
+        if ("jdbc".equals(store)) {
+            conf.getSettings().setSetting(LuceneEnvironment.JdbcStore.DIALECT, "org.apache.lucene.store.jdbc.dialect.HSQLDialect");
+            conf.getSettings().setSetting(LuceneEnvironment.JdbcStore.Connection.DRIVER_CLASS, "org.hsqldb.jdbcDriver");
+            conf.getSettings().setSetting(LuceneEnvironment.JdbcStore.Connection.USERNAME, "sa");
+            conf.getSettings().setSetting(LuceneEnvironment.JdbcStore.Connection.PASSWORD, "");
+        }
+        conf.addClass(BenchData.class);
+        return conf;
+    }
+
+    /**
+     * Builds a clean Compass instance (deleting any existing index).
+     */
+    public static Compass buildCompass(CompassConfiguration conf) {
+        Compass compass = conf.buildCompass();
+        compass.getSearchEngineIndexManager().deleteIndex();
+        compass.getSearchEngineIndexManager().verifyIndex();
+        return compass;
+    }
+
+    /**
+     * Indexes <code>count</code> {@link BenchData} instances, committing every 1000.
+     */
+    public static void populate(Compass compass, int count) {
+        CompassSession session = compass.openSession();
+        CompassTransaction tr = session.beginTransaction();
+        for (int i = 0; i < count; i++) {
+            session.save(new BenchData(i));
+            if (i % 1000 == 999) {
+                tr.commit();
+                tr = session.beginTransaction();
+            }
+        }
+        tr.commit();
+        session.close();
+    }
+
+    /**
+     * Deletes the index and closes the Compass instance.
+     */
+    public static void close(Compass compass) {
+        if (compass == null) {
+            return;
+        }
+        try {
+            compass.getSearchEngineIndexManager().deleteIndex();
+        } finally {
+            compass.close();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.compass.core.Compass;
+import org.compass.core.CompassTransaction;
+import org.compass.core.Resource;
+import org.compass.core.config.CompassConfiguration;
+import org.compass.core.config.CompassEnvironment;
+import org.compass.core.spi.InternalCompassSession;
+
+/**
+ * Benchmarks marshalling and unmarshalling a 40 properties {@link WideBenchData} with and without compiled
+ * class mapping marshallers ({@link CompassEnvironment.Osem#COMPILE_MARSHALLERS}).
+ *
+ * @author kimchy
+ */
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CompiledMarshallingBenchmark {
+
+    @Param({"false", "true"})
+    private boolean compileMarshallers;
+
+    private Compass compass;
+
+    private InternalCompassSession session;
+
+    private CompassTransaction tr;
+
+    private WideBenchData data;
+
+    private Resource resource;
+
+    @Setup
+    public void setUp() {
+        CompassConfiguration conf = CompassBenchmarkSupport.configuration("ram", "compiled");
+        conf.addClass(WideBenchData.class);
+        conf.getSettings().setBooleanSetting(CompassEnvironment.Osem.COMPILE_MARSHALLERS, compileMarshallers);
+        compass = CompassBenchmarkSupport.buildCompass(conf);
+        session = (InternalCompassSession) compass.openSession();
+        tr = session.beginTransaction();
+        data = new WideBenchData(1);
+        resource = session.getMarshallingStrategy().marshall(data);
+    }
+
+    @TearDown
+    public void tearDown() {
+        tr.commit();
+        session.close();
+        CompassBenchmarkSupport.close(compass);
+    }
+
+    @Benchmark
+    public Resource marshall() {
+        return session.getMarshallingStrategy().marshall(data);
+    }
+
+    @Benchmark
+    public Object unmarshall() {
+        return session.getMarshallingStrategy().unmarshall(resource);
+    }
+}
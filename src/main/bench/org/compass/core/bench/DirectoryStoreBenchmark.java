@@ -0,0 +1,79 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.compass.core.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.compass.core.Compass;
+import org.compass.core.CompassHits;
+import org.compass.core.CompassSession;
+import org.compass.core.CompassTransaction;
+
+/**
+ * Benchmarks indexing and searching against the different directory stores: file system (default),
+ * mmap, nio file system, ram and jdbc (using an in memory HSQLDB database).
+ *
+ * <p>Note, the file system directory type is a JVM level setting, so this benchmark must be run
+ * forked (the default).
+ *
+ * @author kimchy
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DirectoryStoreBenchmark {
+
+    @Param({"fs", "mmap", "niofs", "ram", "jdbc"})
+    public String store;
+
+    private Compass compass;
+
+    private long counter;
+
+    @Setup
+    public void setUp() {
+        compass = CompassBenchmarkSupport.buildCompass(CompassBenchmarkSupport.configuration(store, "store"));
+        CompassBenchmarkSupport.populate(compass, 1000);
+        counter = 1000;
+    }
+
+    @TearDown
+    public void tearDown() {
+        CompassBenchmarkSupport.close(compass);
+    }
+
+    @Benchmark
+    public void index() {
+        CompassSession session = compass.openSession();
+        CompassTransaction tr = session.beginTransaction();
+        for (int i = 0; i < 10; i++) {
+            session.save(new BenchData(counter++));
+        }
+        tr.commit();
+        session.close();
+    }
+
+    @Benchmark
+    public void search(Blackhole blackhole) {
+        CompassSession session = compass.openSession();
+        CompassTransaction tr = session.beginTransaction();
+        CompassHits hits = session.find("body:fox");
+        int length = Math.min(10, hits.length());
+        for (int i = 0; i < length; i++) {
+            blackhole.consume(hits.resource(i));
+        }
+        tr.commit();
+        session.close();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.compass.core.Compass;
+import org.compass.core.config.CompassConfiguration;
+import org.compass.core.CompassHits;
+import org.compass.core.CompassSession;
+import org.compass.core.CompassTransaction;
+import org.compass.core.lucene.LuceneEnvironment;
+
+/**
+ * Benchmarks executing a search and iterating over the top hits, using either Lucene <code>Hits</code>
+ * or top docs based hits.
+ *
+ * @author kimchy
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FindBenchmark {
+
+    @Param({"false", "true"})
+    public boolean topDocsHits;
+
+    @Param({"10", "500"})
+    public int iterate;
+
+    private Compass compass;
+
+    @Setup
+    public void setUp() {
+        CompassConfiguration conf = CompassBenchmarkSupport.configuration("ram", "find");
+        conf.getSettings().setBooleanSetting(LuceneEnvironment.Query.TOP_DOCS_HITS, topDocsHits);
+        compass = CompassBenchmarkSupport.buildCompass(conf);
+        CompassBenchmarkSupport.populate(compass, 10000);
+    }
+
+    @TearDown
+    public void tearDown() {
+        CompassBenchmarkSupport.close(compass);
+    }
+
+    @Benchmark
+    public void findAndIterate(Blackhole blackhole) {
+        CompassSession session = compass.openSession();
+        CompassTransaction tr = session.beginTransaction();
+        CompassHits hits = session.find("body:fox");
+        int length = Math.min(iterate, hits.length());
+        for (int i = 0; i < length; i++) {
+            blackhole.consume(hits.data(i));
+        }
+        tr.commit();
+        session.close();
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.compass.core.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.compass.core.Compass;
+import org.compass.core.CompassSession;
+import org.compass.core.CompassTransaction;
+import org.compass.core.config.CompassConfiguration;
+import org.compass.core.config.CompassEnvironment;
+
+/**
+ * Benchmarks loading an object by its id in a new session, with and without the second level cache.
+ *
+ * @author kimchy
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GetBenchmark {
+
+    private static final int COUNT = 10000;
+
+    @Param({"false", "true"})
+    public boolean secondLevelCache;
+
+    private Compass compass;
+
+    private long counter;
+
+    @Setup
+    public void setUp() {
+        CompassConfiguration conf = CompassBenchmarkSupport.configuration("ram", "get");
+        conf.getSettings().setBooleanSetting(CompassEnvironment.Cache.SecondLevel.ENABLE, secondLevelCache);
+        compass = CompassBenchmarkSupport.buildCompass(conf);
+        CompassBenchmarkSupport.populate(compass, COUNT);
+    }
+
+    @TearDown
+    public void tearDown() {
+        CompassBenchmarkSupport.close(compass);
+    }
+
+    @Benchmark
+    public BenchData get() {
+        // cycle through a small working set so the second level cache can actually be hit
+        long id = (counter++) % 100;
+        CompassSession session = compass.openSession();
+        CompassTransaction tr = session.beginTransaction();
+        BenchData data = session.get(BenchData.class, id);
+        tr.commit();
+        session.close();
+        return data;
+    }
+}
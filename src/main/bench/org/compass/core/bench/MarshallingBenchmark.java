@@ -0,0 +1,70 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.compass.core.Compass;
+import org.compass.core.CompassTransaction;
+import org.compass.core.Resource;
+import org.compass.core.spi.InternalCompassSession;
+
+/**
+ * Benchmarks marshalling an object into a resource and unmarshalling it back using the session
+ * marshalling strategy (<code>DefaultMarshallingStrategy</code> and <code>ClassMappingConverter</code>).
+ *
+ * @author kimchy
+ */
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MarshallingBenchmark {
+
+    private Compass compass;
+
+    private InternalCompassSession session;
+
+    private CompassTransaction tr;
+
+    private BenchData data;
+
+    private Resource resource;
+
+    @Setup
+    public void setUp() {
+        compass = CompassBenchmarkSupport.buildCompass(CompassBenchmarkSupport.configuration("ram", "marshalling"));
+        session = (InternalCompassSession) compass.openSession();
+        tr = session.beginTransaction();
+        data = new BenchData(1);
+        resource = session.getMarshallingStrategy().marshall(data);
+    }
+
+    @TearDown
+    public void tearDown() {
+        tr.commit();
+        session.close();
+        CompassBenchmarkSupport.close(compass);
+    }
+
+    @Benchmark
+    public Resource marshall() {
+        return session.getMarshallingStrategy().marshall(data);
+    }
+
+    @Benchmark
+    public Object unmarshall() {
+        return session.getMarshallingStrategy().unmarshall(resource);
+    }
+}
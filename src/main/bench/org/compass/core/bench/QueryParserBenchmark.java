@@ -0,0 +1,61 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.compass.core.Compass;
+import org.compass.core.CompassQuery;
+import org.compass.core.CompassSession;
+import org.compass.core.CompassTransaction;
+
+/**
+ * Benchmarks parsing query strings using the default query parser (<code>DefaultLuceneQueryParser</code>).
+ *
+ * @author kimchy
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QueryParserBenchmark {
+
+    @Param({"compass", "title:compass AND body:search", "title:comp* OR body:\"brown fox\"~2 -value:[10 TO 20]"})
+    public String queryString;
+
+    private Compass compass;
+
+    private CompassSession session;
+
+    private CompassTransaction tr;
+
+    @Setup
+    public void setUp() {
+        compass = CompassBenchmarkSupport.buildCompass(CompassBenchmarkSupport.configuration("ram", "queryparser"));
+        session = compass.openSession();
+        tr = session.beginTransaction();
+    }
+
+    @TearDown
+    public void tearDown() {
+        tr.commit();
+        session.close();
+        CompassBenchmarkSupport.close(compass);
+    }
+
+    @Benchmark
+    public CompassQuery parse() {
+        return session.queryBuilder().queryString(queryString).toQuery();
+    }
+}
@@ -0,0 +1,517 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.bench;
+
+import org.compass.annotations.Searchable;
+import org.compass.annotations.SearchableId;
+import org.compass.annotations.SearchableProperty;
+
+/**
+ * A searchable class with 40 mapped properties (accessed using getters / setters), used to benchmark
+ * marshalling of wide entities.
+ *
+ * @author kimchy
+ */
+@Searchable(alias = "wide")
+public class WideBenchData {
+
+    private Long id;
+
+    private String string1;
+
+    private String string2;
+
+    private String string3;
+
+    private String string4;
+
+    private String string5;
+
+    private String string6;
+
+    private String string7;
+
+    private String string8;
+
+    private String string9;
+
+    private String string10;
+
+    private String string11;
+
+    private String string12;
+
+    private String string13;
+
+    private String string14;
+
+    private int int1;
+
+    private int int2;
+
+    private int int3;
+
+    private int int4;
+
+    private int int5;
+
+    private int int6;
+
+    private int int7;
+
+    private int int8;
+
+    private int int9;
+
+    private long long1;
+
+    private long long2;
+
+    private long long3;
+
+    private long long4;
+
+    private long long5;
+
+    private long long6;
+
+    private long long7;
+
+    private long long8;
+
+    private double double1;
+
+    private double double2;
+
+    private double double3;
+
+    private double double4;
+
+    private double double5;
+
+    private double double6;
+
+    private double double7;
+
+    private double double8;
+
+    public WideBenchData() {
+    }
+
+    public WideBenchData(long id) {
+        this.id = id;
+        this.string1 = "string1 value " + id;
+        this.string2 = "string2 value " + id;
+        this.string3 = "string3 value " + id;
+        this.string4 = "string4 value " + id;
+        this.string5 = "string5 value " + id;
+        this.string6 = "string6 value " + id;
+        this.string7 = "string7 value " + id;
+        this.string8 = "string8 value " + id;
+        this.string9 = "string9 value " + id;
+        this.string10 = "string10 value " + id;
+        this.string11 = "string11 value " + id;
+        this.string12 = "string12 value " + id;
+        this.string13 = "string13 value " + id;
+        this.string14 = "string14 value " + id;
+        this.int1 = (int) id + 1;
+        this.int2 = (int) id + 2;
+        this.int3 = (int) id + 3;
+        this.int4 = (int) id + 4;
+        this.int5 = (int) id + 5;
+        this.int6 = (int) id + 6;
+        this.int7 = (int) id + 7;
+        this.int8 = (int) id + 8;
+        this.int9 = (int) id + 9;
+        this.long1 = id * 1;
+        this.long2 = id * 2;
+        this.long3 = id * 3;
+        this.long4 = id * 4;
+        this.long5 = id * 5;
+        this.long6 = id * 6;
+        this.long7 = id * 7;
+        this.long8 = id * 8;
+        this.double1 = id / 1.0;
+        this.double2 = id / 2.0;
+        this.double3 = id / 3.0;
+        this.double4 = id / 4.0;
+        this.double5 = id / 5.0;
+        this.double6 = id / 6.0;
+        this.double7 = id / 7.0;
+        this.double8 = id / 8.0;
+    }
+
+    @SearchableId
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    @SearchableProperty(name = "string1")
+    public String getString1() {
+        return string1;
+    }
+
+    public void setString1(String string1) {
+        this.string1 = string1;
+    }
+
+    @SearchableProperty(name = "string2")
+    public String getString2() {
+        return string2;
+    }
+
+    public void setString2(String string2) {
+        this.string2 = string2;
+    }
+
+    @SearchableProperty(name = "string3")
+    public String getString3() {
+        return string3;
+    }
+
+    public void setString3(String string3) {
+        this.string3 = string3;
+    }
+
+    @SearchableProperty(name = "string4")
+    public String getString4() {
+        return string4;
+    }
+
+    public void setString4(String string4) {
+        this.string4 = string4;
+    }
+
+    @SearchableProperty(name = "string5")
+    public String getString5() {
+        return string5;
+    }
+
+    public void setString5(String string5) {
+        this.string5 = string5;
+    }
+
+    @SearchableProperty(name = "string6")
+    public String getString6() {
+        return string6;
+    }
+
+    public void setString6(String string6) {
+        this.string6 = string6;
+    }
+
+    @SearchableProperty(name = "string7")
+    public String getString7() {
+        return string7;
+    }
+
+    public void setString7(String string7) {
+        this.string7 = string7;
+    }
+
+    @SearchableProperty(name = "string8")
+    public String getString8() {
+        return string8;
+    }
+
+    public void setString8(String string8) {
+        this.string8 = string8;
+    }
+
+    @SearchableProperty(name = "string9")
+    public String getString9() {
+        return string9;
+    }
+
+    public void setString9(String string9) {
+        this.string9 = string9;
+    }
+
+    @SearchableProperty(name = "string10")
+    public String getString10() {
+        return string10;
+    }
+
+    public void setString10(String string10) {
+        this.string10 = string10;
+    }
+
+    @SearchableProperty(name = "string11")
+    public String getString11() {
+        return string11;
+    }
+
+    public void setString11(String string11) {
+        this.string11 = string11;
+    }
+
+    @SearchableProperty(name = "string12")
+    public String getString12() {
+        return string12;
+    }
+
+    public void setString12(String string12) {
+        this.string12 = string12;
+    }
+
+    @SearchableProperty(name = "string13")
+    public String getString13() {
+        return string13;
+    }
+
+    public void setString13(String string13) {
+        this.string13 = string13;
+    }
+
+    @SearchableProperty(name = "string14")
+    public String getString14() {
+        return string14;
+    }
+
+    public void setString14(String string14) {
+        this.string14 = string14;
+    }
+
+    @SearchableProperty(name = "int1")
+    public int getInt1() {
+        return int1;
+    }
+
+    public void setInt1(int int1) {
+        this.int1 = int1;
+    }
+
+    @SearchableProperty(name = "int2")
+    public int getInt2() {
+        return int2;
+    }
+
+    public void setInt2(int int2) {
+        this.int2 = int2;
+    }
+
+    @SearchableProperty(name = "int3")
+    public int getInt3() {
+        return int3;
+    }
+
+    public void setInt3(int int3) {
+        this.int3 = int3;
+    }
+
+    @SearchableProperty(name = "int4")
+    public int getInt4() {
+        return int4;
+    }
+
+    public void setInt4(int int4) {
+        this.int4 = int4;
+    }
+
+    @SearchableProperty(name = "int5")
+    public int getInt5() {
+        return int5;
+    }
+
+    public void setInt5(int int5) {
+        this.int5 = int5;
+    }
+
+    @SearchableProperty(name = "int6")
+    public int getInt6() {
+        return int6;
+    }
+
+    public void setInt6(int int6) {
+        this.int6 = int6;
+    }
+
+    @SearchableProperty(name = "int7")
+    public int getInt7() {
+        return int7;
+    }
+
+    public void setInt7(int int7) {
+        this.int7 = int7;
+    }
+
+    @SearchableProperty(name = "int8")
+    public int getInt8() {
+        return int8;
+    }
+
+    public void setInt8(int int8) {
+        this.int8 = int8;
+    }
+
+    @SearchableProperty(name = "int9")
+    public int getInt9() {
+        return int9;
+    }
+
+    public void setInt9(int int9) {
+        this.int9 = int9;
+    }
+
+    @SearchableProperty(name = "long1")
+    public long getLong1() {
+        return long1;
+    }
+
+    public void setLong1(long long1) {
+        this.long1 = long1;
+    }
+
+    @SearchableProperty(name = "long2")
+    public long getLong2() {
+        return long2;
+    }
+
+    public void setLong2(long long2) {
+        this.long2 = long2;
+    }
+
+    @SearchableProperty(name = "long3")
+    public long getLong3() {
+        return long3;
+    }
+
+    public void setLong3(long long3) {
+        this.long3 = long3;
+    }
+
+    @SearchableProperty(name = "long4")
+    public long getLong4() {
+        return long4;
+    }
+
+    public void setLong4(long long4) {
+        this.long4 = long4;
+    }
+
+    @SearchableProperty(name = "long5")
+    public long getLong5() {
+        return long5;
+    }
+
+    public void setLong5(long long5) {
+        this.long5 = long5;
+    }
+
+    @SearchableProperty(name = "long6")
+    public long getLong6() {
+        return long6;
+    }
+
+    public void setLong6(long long6) {
+        this.long6 = long6;
+    }
+
+    @SearchableProperty(name = "long7")
+    public long getLong7() {
+        return long7;
+    }
+
+    public void setLong7(long long7) {
+        this.long7 = long7;
+    }
+
+    @SearchableProperty(name = "long8")
+    public long getLong8() {
+        return long8;
+    }
+
+    public void setLong8(long long8) {
+        this.long8 = long8;
+    }
+
+    @SearchableProperty(name = "double1")
+    public double getDouble1() {
+        return double1;
+    }
+
+    public void setDouble1(double double1) {
+        this.double1 = double1;
+    }
+
+    @SearchableProperty(name = "double2")
+    public double getDouble2() {
+        return double2;
+    }
+
+    public void setDouble2(double double2) {
+        this.double2 = double2;
+    }
+
+    @SearchableProperty(name = "double3")
+    public double getDouble3() {
+        return double3;
+    }
+
+    public void setDouble3(double double3) {
+        this.double3 = double3;
+    }
+
+    @SearchableProperty(name = "double4")
+    public double getDouble4() {
+        return double4;
+    }
+
+    public void setDouble4(double double4) {
+        this.double4 = double4;
+    }
+
+    @SearchableProperty(name = "double5")
+    public double getDouble5() {
+        return double5;
+    }
+
+    public void setDouble5(double double5) {
+        this.double5 = double5;
+    }
+
+    @SearchableProperty(name = "double6")
+    public double getDouble6() {
+        return double6;
+    }
+
+    public void setDouble6(double double6) {
+        this.double6 = double6;
+    }
+
+    @SearchableProperty(name = "double7")
+    public double getDouble7() {
+        return double7;
+    }
+
+    public void setDouble7(double double7) {
+        this.double7 = double7;
+    }
+
+    @SearchableProperty(name = "double8")
+    public double getDouble8() {
+        return double8;
+    }
+
+    public void setDouble8(double double8) {
+        this.double8 = double8;
+    }
+}
@@ -32,9 +32,11 @@
 
 package org.apache.lucene.index;
 
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.apache.lucene.store.Directory;
 import org.compass.core.lucene.engine.manager.IndexHoldersCache;
 import org.compass.core.lucene.engine.spellcheck.DefaultLuceneSpellCheckManager;
 
@@ -45,11 +47,13 @@ import org.compass.core.lucene.engine.spellcheck.DefaultLuceneSpellCheckManager;
  */
 public class LuceneFileNames {
 
+    public static final String SEGMENTS_GEN = IndexFileNames.SEGMENTS_GEN;
+
     private static final Set<String> staticFiles;
 
     static {
         staticFiles = new HashSet<String>();
-        staticFiles.add("segments.gen");
+        staticFiles.add(SEGMENTS_GEN);
         staticFiles.add(IndexHoldersCache.CLEAR_CACHE_NAME);
         staticFiles.add(DefaultLuceneSpellCheckManager.SPELL_CHECK_VERSION_FILENAME);
     }
@@ -69,4 +73,26 @@ public class LuceneFileNames {
         return name.startsWith(IndexFileNames.SEGMENTS) || name.equals(IndexFileNames.SEGMENTS_GEN);
     }
 
+    /**
+     * Returns the names of the files referenced by the current commit point (<code>segments_N</code>)
+     * of the given directory, including the segments file itself.
+     */
+    public static Set<String> listReferencedFiles(Directory directory) throws IOException {
+        SegmentInfos segmentInfos = new SegmentInfos();
+        segmentInfos.read(directory);
+        Set<String> files = new HashSet<String>();
+        files.add(segmentInfos.getCurrentSegmentFileName());
+        for (int i = 0; i < segmentInfos.size(); i++) {
+            files.addAll(segmentInfos.info(i).files());
+        }
+        return files;
+    }
+
+    /**
+     * Returns the generation of the given segments file name (<code>segments_N</code>).
+     */
+    public static long generationFromSegmentsFileName(String name) {
+        return SegmentInfos.generationFromSegmentsFileName(name);
+    }
+
 }
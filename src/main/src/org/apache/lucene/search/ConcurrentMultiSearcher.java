@@ -0,0 +1,180 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.lucene.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.compass.core.executor.ExecutorManager;
+
+/**
+ * A {@link MultiSearcher} that searches its sub searchers concurrently using Compass
+ * {@link org.compass.core.executor.ExecutorManager}, and merges the top docs of each into the overall top docs.
+ * Supports filters and sorting (the same merging done by {@link MultiSearcher}).
+ *
+ * <p>At most <code>maxConcurrency</code> tasks are executed for a single search. When there are more sub
+ * searchers than that, each task searches several sub searchers one after the other. A
+ * <code>maxConcurrency</code> of <code>1</code> searches all sub searchers on the calling thread.
+ *
+ * <p>Searches using a {@link HitCollector} are performed sequentially, since collectors are not thread safe.
+ *
+ * @author kimchy
+ */
+public class ConcurrentMultiSearcher extends MultiSearcher {
+
+    private final ExecutorManager executorManager;
+
+    private final int maxConcurrency;
+
+    public ConcurrentMultiSearcher(Searchable[] searchables, ExecutorManager executorManager, int maxConcurrency) throws IOException {
+        super(searchables);
+        this.executorManager = executorManager;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public TopDocs search(final Weight weight, final Filter filter, final int nDocs) throws IOException {
+        Object[] results = searchAll(new SubSearch() {
+            public Object search(Searchable searchable) throws IOException {
+                return searchable.search(weight, filter, nDocs);
+            }
+        });
+        int[] starts = getStarts();
+        HitQueue hq = new HitQueue(nDocs);
+        int totalHits = 0;
+        for (int i = 0; i < results.length; i++) {
+            TopDocs docs = (TopDocs) results[i];
+            totalHits += docs.totalHits;
+            ScoreDoc[] scoreDocs = docs.scoreDocs;
+            for (ScoreDoc scoreDoc : scoreDocs) {
+                scoreDoc.doc += starts[i];
+                if (!hq.insert(scoreDoc)) {
+                    break;
+                }
+            }
+        }
+        ScoreDoc[] scoreDocs = new ScoreDoc[hq.size()];
+        for (int i = hq.size() - 1; i >= 0; i--) {
+            scoreDocs[i] = (ScoreDoc) hq.pop();
+        }
+        float maxScore = (totalHits == 0) ? Float.NEGATIVE_INFINITY : scoreDocs[0].score;
+        return new TopDocs(totalHits, scoreDocs, maxScore);
+    }
+
+    public TopFieldDocs search(final Weight weight, final Filter filter, final int n, final Sort sort) throws IOException {
+        Object[] results = searchAll(new SubSearch() {
+            public Object search(Searchable searchable) throws IOException {
+                return searchable.search(weight, filter, n, sort);
+            }
+        });
+        int[] starts = getStarts();
+        FieldDocSortedHitQueue hq = null;
+        int totalHits = 0;
+        float maxScore = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < results.length; i++) {
+            TopFieldDocs docs = (TopFieldDocs) results[i];
+            // if one of the sort fields is the doc id, it needs to be adjusted to the doc id of this searcher
+            for (int j = 0; j < docs.fields.length; j++) {
+                if (docs.fields[j].getType() == SortField.DOC) {
+                    for (ScoreDoc scoreDoc : docs.scoreDocs) {
+                        FieldDoc fieldDoc = (FieldDoc) scoreDoc;
+                        fieldDoc.fields[j] = new Integer(((Integer) fieldDoc.fields[j]).intValue() + starts[i]);
+                    }
+                    break;
+                }
+            }
+            if (hq == null) {
+                hq = new FieldDocSortedHitQueue(docs.fields, n);
+            }
+            totalHits += docs.totalHits;
+            maxScore = Math.max(maxScore, docs.getMaxScore());
+            for (ScoreDoc scoreDoc : docs.scoreDocs) {
+                scoreDoc.doc += starts[i];
+                if (!hq.insert(scoreDoc)) {
+                    break;
+                }
+            }
+        }
+        if (hq == null) {
+            return new TopFieldDocs(totalHits, new ScoreDoc[0], sort.getSort(), maxScore);
+        }
+        ScoreDoc[] scoreDocs = new ScoreDoc[hq.size()];
+        for (int i = hq.size() - 1; i >= 0; i--) {
+            scoreDocs[i] = (ScoreDoc) hq.pop();
+        }
+        return new TopFieldDocs(totalHits, scoreDocs, hq.getFields(), maxScore);
+    }
+
+    /**
+     * Executes the sub search against all the sub searchers, returning the results in the order of the
+     * sub searchers.
+     */
+    private Object[] searchAll(final SubSearch subSearch) throws IOException {
+        final Searchable[] searchables = getSearchables();
+        final Object[] results = new Object[searchables.length];
+        int concurrency = Math.min(maxConcurrency, searchables.length);
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            final int first = i;
+            final int step = concurrency;
+            tasks.add(new Callable<Object>() {
+                public Object call() throws Exception {
+                    for (int j = first; j < searchables.length; j += step) {
+                        results[j] = subSearch.search(searchables[j]);
+                    }
+                    return null;
+                }
+            });
+        }
+        List<Future<Object>> futures = executorManager.invokeAllWithLimit(tasks, 1);
+        for (Future<Object> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while searching");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                IOException ioe = new IOException("Failed to search");
+                ioe.initCause(cause);
+                throw ioe;
+            }
+        }
+        return results;
+    }
+
+    private static interface SubSearch {
+
+        Object search(Searchable searchable) throws IOException;
+    }
+}
@@ -16,6 +16,7 @@
 
 package org.apache.lucene.store.jdbc;
 
+import java.io.File;
 import java.io.IOException;
 import java.sql.CallableStatement;
 import java.sql.PreparedStatement;
@@ -51,6 +52,21 @@ import org.apache.lucene.store.jdbc.support.JdbcTemplate;
  * has an entry in the database, and different {@link FileEntryHandler} can be defines for different files (or
  * files groups).
  * <p/>
+ * When {@link JdbcDirectorySettings#setChunkSize(int)} is set, the directory uses a chunked storage layout. The file
+ * entry table only holds the file entries meta data, and the binary data is stored in a separate chunks table
+ * (see {@link JdbcDirectorySettings#getChunkTableSuffix()}), each row holding a fixed size chunk of the file. Chunks
+ * are inserted using jdbc batches and read using {@link org.apache.lucene.store.jdbc.index.ChunkedJdbcIndexInput},
+ * which reads ahead when a file is read sequentially. Chunks of deleted file entries are removed when the file entry
+ * itself is removed from the database. The chunks of a file are inserted before its file entry, so a failed write
+ * never leaves a file entry without its data, and the chunks it did insert are removed. Chunks left behind by a
+ * write that failed without removing them (for example, a lost connection) can be removed using
+ * {@link #purgeOrphanChunks()}.
+ * <p/>
+ * When {@link JdbcDirectorySettings#setReadCachePath(String)} is set, the directory uses a {@link JdbcReadCache}
+ * which copies each (write once) index file into a local directory the first time it is opened, and serves all
+ * subsequent reads locally. Cached files no longer referenced by the index are purged as part of
+ * {@link #deleteMarkDeleted()}, or explicitly using {@link #purgeReadCache()}.
+ * <p/>
  * Most of the files will not be deleted from the database when the directory delete method is called, but will
  * only be marked to be deleted (see {@link org.apache.lucene.store.jdbc.handler.MarkDeleteFileEntryHandler}. It is
  * done since other readers or searchers might be working with the database, and still use the files. The ability to
@@ -97,6 +113,8 @@ public class JdbcDirectory extends Directory implements MultiDeleteDirectory {
 
     private JdbcTemplate jdbcTemplate;
 
+    private JdbcReadCache readCache;
+
 
     /**
      * Creates a new jdbc directory.  Creates new {@link JdbcDirectorySettings} using it's default values.
@@ -179,6 +197,14 @@ public class JdbcDirectory extends Directory implements MultiDeleteDirectory {
                         feSettings.getSetting(JdbcFileEntrySettings.FILE_ENTRY_HANDLER_TYPE) + "]");
             }
         }
+        if (settings.getReadCachePath() != null) {
+            try {
+                readCache = new JdbcReadCache(this, new File(settings.getReadCachePath(), table.getName()),
+                        settings.isReadCacheMemoryMapped(), settings.getReadCacheBufferSize());
+            } catch (JdbcStoreException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+        }
     }
 
     /**
@@ -189,11 +215,15 @@ public class JdbcDirectory extends Directory implements MultiDeleteDirectory {
      * @throws UnsupportedOperationException If the database dialect does not support it
      */
     public boolean tableExists() throws IOException, UnsupportedOperationException {
+        return tableExists(table.getName());
+    }
+
+    private boolean tableExists(final String tableName) throws IOException, UnsupportedOperationException {
         Boolean tableExists = (Boolean) jdbcTemplate.executeSelect(dialect.sqlTableExists(table.getCatalog(), table.getSchema()),
                 new JdbcTemplate.ExecuteSelectCallback() {
                     public void fillPrepareStatement(PreparedStatement ps) throws Exception {
                         ps.setFetchSize(1);
-                        ps.setString(1, table.getName().toLowerCase());
+                        ps.setString(1, tableName.toLowerCase());
                     }
 
                     public Object execute(ResultSet rs) throws Exception {
@@ -207,20 +237,31 @@ public class JdbcDirectory extends Directory implements MultiDeleteDirectory {
     }
 
     /**
-     * Deletes the database table (drops it) from the database.
+     * Deletes the database table (drops it) from the database. If working in chunked mode, the
+     * chunks table is dropped as well.
      *
      * @throws IOException
      */
     public void delete() throws IOException {
+        if (table.isChunked()) {
+            dropTable(table.getChunksName(), table.sqlDropChunks());
+        }
+        dropTable(table.getName(), table.sqlDrop());
+        if (readCache != null) {
+            readCache.clear();
+        }
+    }
+
+    private void dropTable(String tableName, String sqlDrop) throws IOException {
         if (!dialect.supportsIfExistsAfterTableName() && !dialect.supportsIfExistsBeforeTableName()) {
             // there are databases where the fact that an exception was thrown, invalidates the connection
             // so if they do not support "if exists" in the drop clause, we will try to check first if the
             // table exists.
-            if (dialect.supportsTableExists() && !tableExists()) {
+            if (dialect.supportsTableExists() && !tableExists(tableName)) {
                 return;
             }
         }
-        jdbcTemplate.executeUpdate(table.sqlDrop());
+        jdbcTemplate.executeUpdate(sqlDrop);
     }
 
     /**
@@ -235,6 +276,9 @@ public class JdbcDirectory extends Directory implements MultiDeleteDirectory {
             //e.printStackTrace();
         }
         jdbcTemplate.executeUpdate(table.sqlCreate());
+        if (table.isChunked()) {
+            jdbcTemplate.executeUpdate(table.sqlCreateChunks());
+        }
         ((JdbcLock) createLock()).initializeDatabase(this);
     }
 
@@ -245,6 +289,12 @@ public class JdbcDirectory extends Directory implements MultiDeleteDirectory {
      */
     public void deleteContent() throws IOException {
         jdbcTemplate.executeUpdate(table.sqlDeletaAll());
+        if (table.isChunked()) {
+            jdbcTemplate.executeUpdate(table.sqlDeleteAllChunks());
+        }
+        if (readCache != null) {
+            readCache.clear();
+        }
     }
 
     /**
@@ -292,12 +342,46 @@ public class JdbcDirectory extends Directory implements MultiDeleteDirectory {
             }
         }
         final long deleteBefore = currentTime - delta;
-        jdbcTemplate.executeUpdate(table.sqlDeletaMarkDeleteByDelta(), new JdbcTemplate.PrepateStatementAwareCallback() {
+        JdbcTemplate.PrepateStatementAwareCallback markDeletedByDelta = new JdbcTemplate.PrepateStatementAwareCallback() {
             public void fillPrepareStatement(PreparedStatement ps) throws Exception {
                 ps.setBoolean(1, true);
                 ps.setTimestamp(2, new Timestamp(deleteBefore));
             }
-        });
+        };
+        if (table.isChunked()) {
+            // the chunks first, a failure in between leaves the (mark deleted) file entries to the next run
+            jdbcTemplate.executeUpdate(table.sqlDeleteMarkDeletedChunksByDelta(), markDeletedByDelta);
+        }
+        jdbcTemplate.executeUpdate(table.sqlDeletaMarkDeleteByDelta(), markDeletedByDelta);
+        purgeReadCache();
+    }
+
+    /**
+     * Deletes all the chunks that do not belong to any file entry, left behind by a chunked write that
+     * failed without removing them. Requires scanning the whole chunks table, so it should only be called
+     * explicitly (for example, after a failure). Does nothing if the directory is not chunked.
+     */
+    public void purgeOrphanChunks() throws IOException {
+        if (table.isChunked()) {
+            jdbcTemplate.executeUpdate(table.sqlDeleteOrphanChunks());
+        }
+    }
+
+    /**
+     * Deletes any file cached in the read cache that is no longer referenced by the current
+     * commit point of the index. Does nothing if no read cache is used.
+     */
+    public void purgeReadCache() throws IOException {
+        if (readCache != null) {
+            readCache.purge();
+        }
+    }
+
+    /**
+     * Returns the read cache used by this directory, <code>null</code> if none is used.
+     */
+    public JdbcReadCache getReadCache() {
+        return readCache;
     }
 
     public String[] list() throws IOException {
@@ -334,6 +418,9 @@ public class JdbcDirectory extends Directory implements MultiDeleteDirectory {
         } else {
             getFileEntryHandler(name).deleteFile(name);
         }
+        if (readCache != null) {
+            readCache.evict(name);
+        }
     }
 
     public void forceDeleteFile(final String name) throws IOException {
@@ -343,6 +430,17 @@ public class JdbcDirectory extends Directory implements MultiDeleteDirectory {
                 ps.setString(1, name);
             }
         });
+        if (table.isChunked()) {
+            jdbcTemplate.executeUpdate(table.sqlDeleteChunksByName(), new JdbcTemplate.PrepateStatementAwareCallback() {
+                public void fillPrepareStatement(PreparedStatement ps) throws Exception {
+                    ps.setFetchSize(1);
+                    ps.setString(1, name);
+                }
+            });
+        }
+        if (readCache != null) {
+            readCache.evict(name);
+        }
     }
 
     public List deleteFiles(List names) throws IOException {
@@ -366,11 +464,20 @@ public class JdbcDirectory extends Directory implements MultiDeleteDirectory {
                 notDeleted.addAll(tempNames);
             }
         }
+        if (readCache != null) {
+            for (Iterator it = names.iterator(); it.hasNext();) {
+                readCache.evict((String) it.next());
+            }
+        }
         return notDeleted;
     }
 
     public void renameFile(final String from, final String to) throws IOException {
         getFileEntryHandler(from).renameFile(from, to);
+        if (readCache != null) {
+            readCache.evict(from);
+            readCache.evict(to);
+        }
     }
 
     public long fileLength(final String name) throws IOException {
@@ -378,6 +485,9 @@ public class JdbcDirectory extends Directory implements MultiDeleteDirectory {
     }
 
     public IndexInput openInput(String name) throws IOException {
+        if (readCache != null && readCache.isCacheable(name)) {
+            return readCache.openInput(name);
+        }
         return getFileEntryHandler(name).openInput(name);
     }
 
@@ -82,6 +82,22 @@ public class JdbcDirectorySettings {
 
     private String tableType = "";
 
+    private int chunkSize = 0;
+
+    private String chunkTableSuffix = "_chunks";
+
+    private String chunkColumnName = "chunk_";
+
+    private int chunkBatchSize = 16;
+
+    private int chunkReadAhead = 8;
+
+    private String readCachePath = null;
+
+    private boolean readCacheMemoryMapped = false;
+
+    private int readCacheBufferSize = 16384;
+
     /**
      * Creates a new instance of the Jdbc directory settings with it's default values initialized.
      */
@@ -332,4 +348,138 @@ public class JdbcDirectorySettings {
     public void setTableType(String tableType) {
         this.tableType = tableType;
     }
+
+    /**
+     * Returns the chunk size (in bytes) used when storing file entries in fixed size chunks.
+     * Defaults to <code>0</code>, which means each file entry is stored as a single blob.
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Sets the chunk size (in bytes). When set to a value greater than <code>0</code>, each file entry
+     * is stored as a set of rows in a separate chunks table, each row holding up to the chunk size bytes.
+     * The chunks are inserted using jdbc batches and read back using read ahead, which results in much
+     * faster writes and reads of large segments (for example, when optimizing the index).
+     * <p/>
+     * Note, the chunk size should not be changed once the index has been created.
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Returns <code>true</code> if file entries are stored in chunks (the chunk size is greater than
+     * <code>0</code>).
+     */
+    public boolean isChunked() {
+        return chunkSize > 0;
+    }
+
+    /**
+     * Returns the suffix appended to the table name in order to create the chunks table name
+     * (defaults to _chunks).
+     */
+    public String getChunkTableSuffix() {
+        return chunkTableSuffix;
+    }
+
+    /**
+     * Sets the suffix appended to the table name in order to create the chunks table name.
+     */
+    public void setChunkTableSuffix(String chunkTableSuffix) {
+        this.chunkTableSuffix = chunkTableSuffix;
+    }
+
+    /**
+     * Returns the chunk number column name of the chunks table (defaults to chunk_).
+     */
+    public String getChunkColumnName() {
+        return chunkColumnName;
+    }
+
+    /**
+     * Sets the chunk number column name of the chunks table.
+     */
+    public void setChunkColumnName(String chunkColumnName) {
+        this.chunkColumnName = chunkColumnName;
+    }
+
+    /**
+     * Returns the number of chunks inserted in a single jdbc batch (defaults to 16).
+     */
+    public int getChunkBatchSize() {
+        return chunkBatchSize;
+    }
+
+    /**
+     * Sets the number of chunks inserted in a single jdbc batch.
+     */
+    public void setChunkBatchSize(int chunkBatchSize) {
+        this.chunkBatchSize = chunkBatchSize;
+    }
+
+    /**
+     * Returns the number of chunks fetched in a single query when a file entry is read sequentially
+     * (defaults to 8).
+     */
+    public int getChunkReadAhead() {
+        return chunkReadAhead;
+    }
+
+    /**
+     * Sets the number of chunks fetched in a single query when a file entry is read sequentially.
+     * Random reads only fetch the chunk required.
+     */
+    public void setChunkReadAhead(int chunkReadAhead) {
+        this.chunkReadAhead = chunkReadAhead;
+    }
+
+    /**
+     * Returns the local path of the read cache. Defaults to <code>null</code>, which means no read
+     * cache is used.
+     */
+    public String getReadCachePath() {
+        return readCachePath;
+    }
+
+    /**
+     * Sets the local path of the read cache (see {@link JdbcReadCache}). Each directory caches its
+     * files under a sub directory named after its table.
+     */
+    public void setReadCachePath(String readCachePath) {
+        this.readCachePath = readCachePath;
+    }
+
+    /**
+     * Returns if files cached in the read cache are read using memory mapped buffers (defaults
+     * to <code>false</code>).
+     */
+    public boolean isReadCacheMemoryMapped() {
+        return readCacheMemoryMapped;
+    }
+
+    /**
+     * Sets if files cached in the read cache are read using memory mapped buffers.
+     */
+    public void setReadCacheMemoryMapped(boolean readCacheMemoryMapped) {
+        this.readCacheMemoryMapped = readCacheMemoryMapped;
+    }
+
+    /**
+     * Returns the buffer size used when fetching files into the read cache, and when reading cached
+     * files that are not memory mapped (defaults to 16384).
+     */
+    public int getReadCacheBufferSize() {
+        return readCacheBufferSize;
+    }
+
+    /**
+     * Sets the buffer size used when fetching files into the read cache, and when reading cached
+     * files that are not memory mapped.
+     */
+    public void setReadCacheBufferSize(int readCacheBufferSize) {
+        this.readCacheBufferSize = readCacheBufferSize;
+    }
 }
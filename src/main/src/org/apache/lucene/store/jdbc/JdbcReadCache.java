@@ -0,0 +1,284 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.lucene.store.jdbc;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.lucene.index.LuceneFileNames;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.jdbc.index.LocalFileIndexInput;
+import org.apache.lucene.store.jdbc.index.MMapLocalFileIndexInput;
+
+/**
+ * A local read cache for a {@link JdbcDirectory}, enabled using {@link JdbcDirectorySettings#setReadCachePath(String)}.
+ * <p/>
+ * Lucene index files (except for the segments files and other static files) are written once and never
+ * changed. The read cache copies each such file from the database into a local directory the first time
+ * it is opened, and serves all subsequent reads from the local copy (either using buffered reads or
+ * memory mapped, see {@link JdbcDirectorySettings#setReadCacheMemoryMapped(boolean)}). The local copy is
+ * named after the file name and the last modified value of its database file entry, and is valid as long
+ * as both the last modified value and the size match the file entry in the database. File names are reused
+ * once an index is recreated (and files such as the deletions files might have the same size), which is why
+ * the size alone is not enough. This means the cache can be reused across restarts and shared between several
+ * directories working against the same table.
+ * <p/>
+ * Files are evicted when they are deleted or renamed through the directory, and {@link #purge()} deletes
+ * any cached file that is no longer referenced by the current <code>segments_N</code> file.
+ *
+ * @author kimchy
+ */
+public class JdbcReadCache {
+
+    private static final Log log = LogFactory.getLog(JdbcReadCache.class);
+
+    private static final String TEMP_SUFFIX = ".rctmp";
+
+    private static final char LAST_MODIFIED_SEPARATOR = '@';
+
+    private static final long STALE_TEMP_FILE_DELTA = 10 * 60 * 1000;
+
+    /**
+     * Monitors used to control concurrent fetches of the same file (shared across directories
+     * since they might share the same local cache path).
+     */
+    private static final Object[] monitors = new Object[100];
+
+    static {
+        for (int i = 0; i < monitors.length; i++) {
+            monitors[i] = new Object();
+        }
+    }
+
+    private final JdbcDirectory jdbcDirectory;
+
+    private final File path;
+
+    private final boolean memoryMapped;
+
+    private final int bufferSize;
+
+    public JdbcReadCache(JdbcDirectory jdbcDirectory, File path, boolean memoryMapped, int bufferSize) throws JdbcStoreException {
+        this.jdbcDirectory = jdbcDirectory;
+        this.path = path;
+        this.memoryMapped = memoryMapped;
+        this.bufferSize = bufferSize;
+        if (!path.exists() && !path.mkdirs() && !path.exists()) {
+            throw new JdbcStoreException("Failed to create read cache directory [" + path + "]");
+        }
+        // clean up leftovers of fetches that did not complete (other directories sharing the path
+        // might be fetching right now, so only stale ones)
+        File[] files = path.listFiles();
+        if (files != null) {
+            long staleTime = System.currentTimeMillis() - STALE_TEMP_FILE_DELTA;
+            for (File file : files) {
+                if (file.getName().endsWith(TEMP_SUFFIX) && file.lastModified() < staleTime) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the local directory the files are cached in.
+     */
+    public File getPath() {
+        return path;
+    }
+
+    /**
+     * Returns <code>true</code> if the file should be cached. Static files and segments files are
+     * changed (or small and read once), and are always read from the database.
+     */
+    public boolean isCacheable(String name) {
+        return !LuceneFileNames.isStaticFile(name) && !LuceneFileNames.isSegmentsFile(name);
+    }
+
+    /**
+     * Opens the given file, fetching it from the database into the local cache if it is not cached yet
+     * (or the cached file last modified value or size do not match the database file entry).
+     */
+    public IndexInput openInput(String name) throws IOException {
+        long size = jdbcDirectory.fileLength(name);
+        if (size <= 0) {
+            // empty or missing files are read from the database (reports a missing file properly)
+            return jdbcDirectory.getFileEntryHandler(name).openInput(name);
+        }
+        long lastModified = jdbcDirectory.fileModified(name);
+        File file = new File(path, name + LAST_MODIFIED_SEPARATOR + lastModified);
+        synchronized (monitor(name)) {
+            if (file.length() != size) {
+                // remove other (stale) copies of the file
+                deleteCachedFiles(name);
+                fetch(name, size, file);
+            }
+        }
+        if (memoryMapped) {
+            return new MMapLocalFileIndexInput(file);
+        }
+        return new LocalFileIndexInput(file, bufferSize);
+    }
+
+    /**
+     * Removes the given file from the local cache.
+     */
+    public void evict(String name) {
+        synchronized (monitor(name)) {
+            deleteCachedFiles(name);
+        }
+    }
+
+    /**
+     * Deletes any cached file that is not referenced by the current <code>segments_N</code> file.
+     */
+    public void purge() throws IOException {
+        Set<String> referenced;
+        try {
+            referenced = LuceneFileNames.listReferencedFiles(jdbcDirectory);
+        } catch (IOException e) {
+            // no index yet, nothing to purge against
+            if (log.isTraceEnabled()) {
+                log.trace("Failed to read segments for read cache [" + path + "], skipping purge", e);
+            }
+            return;
+        }
+        String[] names = path.list();
+        if (names == null) {
+            return;
+        }
+        for (String cachedName : names) {
+            if (cachedName.endsWith(TEMP_SUFFIX)) {
+                continue;
+            }
+            String name = fileName(cachedName);
+            if (name != null && referenced.contains(name)) {
+                continue;
+            }
+            if (log.isTraceEnabled()) {
+                log.trace("Purging [" + cachedName + "] from read cache [" + path + "]");
+            }
+            deleteCachedFile(new File(path, cachedName));
+        }
+    }
+
+    /**
+     * Deletes all the cached files.
+     */
+    public void clear() {
+        String[] names = path.list();
+        if (names == null) {
+            return;
+        }
+        for (String cachedName : names) {
+            if (!cachedName.endsWith(TEMP_SUFFIX)) {
+                deleteCachedFile(new File(path, cachedName));
+            }
+        }
+    }
+
+    private void fetch(String name, long size, File file) throws IOException {
+        if (log.isTraceEnabled()) {
+            log.trace("Fetching [" + name + "] with size [" + size + "] into read cache [" + path + "]");
+        }
+        File tempFile = File.createTempFile(name + "_", TEMP_SUFFIX, path);
+        IndexInput indexInput = null;
+        FileOutputStream os = null;
+        try {
+            indexInput = jdbcDirectory.getFileEntryHandler(name).openInput(name);
+            os = new FileOutputStream(tempFile);
+            byte[] buffer = new byte[bufferSize];
+            long remaining = size;
+            while (remaining > 0) {
+                int count = (int) Math.min(buffer.length, remaining);
+                indexInput.readBytes(buffer, 0, count);
+                os.write(buffer, 0, count);
+                remaining -= count;
+            }
+            os.getFD().sync();
+            os.close();
+            os = null;
+            // the rename makes the fully fetched file visible to other directories sharing the cache
+            if (file.exists() && !file.delete()) {
+                throw new JdbcStoreException("Failed to replace [" + file + "] in read cache");
+            }
+            if (!tempFile.renameTo(file)) {
+                throw new JdbcStoreException("Failed to move fetched [" + name + "] into read cache [" + path + "]");
+            }
+        } finally {
+            if (os != null) {
+                try {
+                    os.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+            if (indexInput != null) {
+                indexInput.close();
+            }
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Deletes all the local copies of the given file.
+     */
+    private void deleteCachedFiles(final String name) {
+        File[] files = path.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String cachedName) {
+                return name.equals(fileName(cachedName));
+            }
+        });
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            deleteCachedFile(file);
+        }
+    }
+
+    private void deleteCachedFile(File file) {
+        if (file.exists() && !file.delete()) {
+            if (log.isDebugEnabled()) {
+                log.debug("Failed to delete [" + file.getName() + "] from read cache [" + path + "], will retry on purge");
+            }
+        }
+    }
+
+    /**
+     * Returns the file name of the given local copy name, <code>null</code> if it is not a local copy name.
+     */
+    private static String fileName(String cachedName) {
+        int index = cachedName.lastIndexOf(LAST_MODIFIED_SEPARATOR);
+        if (index == -1) {
+            return null;
+        }
+        return cachedName.substring(0, index);
+    }
+
+    private static Object monitor(String name) {
+        return monitors[Math.abs(name.hashCode() % monitors.length)];
+    }
+
+    public String toString() {
+        return "read cache [" + path + "] memory mapped [" + memoryMapped + "]";
+    }
+}
@@ -189,6 +189,30 @@ public abstract class Dialect {
      */
     public abstract String getBlobType(long length);
 
+    /**
+     * The database type of the value column of the chunks table, used when the directory stores file
+     * entries in chunks. The length is the chunk size in bytes. Defaults to {@link #getBlobType(long)}.
+     */
+    public String getChunkValueType(int length) {
+        return getBlobType((length + 1023) / 1024);
+    }
+
+    /**
+     * Should chunk values be set and read as plain bytes (<code>setBytes</code> and <code>getBytes</code>),
+     * or using streams and blobs. Defaults to <code>true</code>.
+     */
+    public boolean useBytesForChunkValues() {
+        return true;
+    }
+
+    /**
+     * Does the database (or the jdbc driver) supports jdbc batch updates. Used when inserting
+     * chunks. Defaults to <code>true</code>.
+     */
+    public boolean supportsBatchUpdates() {
+        return true;
+    }
+
     /**
      * The database number type.
      */
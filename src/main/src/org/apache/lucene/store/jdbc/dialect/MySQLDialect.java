@@ -82,6 +82,13 @@ public class MySQLDialect extends Dialect {
         return "longblob";
     }
 
+    /**
+     * Chunks are bounded by the chunk size, no need for a <code>longblob</code>.
+     */
+    public String getChunkValueType(int length) {
+        return "mediumblob";
+    }
+
     public String getNumberType() {
         return "integer";
     }
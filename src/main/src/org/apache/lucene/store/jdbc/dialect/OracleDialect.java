@@ -80,6 +80,13 @@ public class OracleDialect extends Dialect {
         return "blob";
     }
 
+    /**
+     * Oracle drivers limit the size of bytes bound to a blob, chunks are streamed instead.
+     */
+    public boolean useBytesForChunkValues() {
+        return false;
+    }
+
     public String getNumberType() {
         return "number(10,0)";
     }
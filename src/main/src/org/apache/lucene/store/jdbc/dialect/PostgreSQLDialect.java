@@ -75,6 +75,14 @@ public class PostgreSQLDialect extends Dialect {
         return "oid";
     }
 
+    /**
+     * Chunks are small enough to be stored inline using <code>bytea</code>, instead of
+     * large objects.
+     */
+    public String getChunkValueType(int length) {
+        return "bytea";
+    }
+
     public String getNumberType() {
         return "int4";
     }
@@ -26,6 +26,7 @@ import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.store.jdbc.JdbcDirectory;
 import org.apache.lucene.store.jdbc.JdbcFileEntrySettings;
 import org.apache.lucene.store.jdbc.JdbcStoreException;
+import org.apache.lucene.store.jdbc.index.ChunkedJdbcIndexInput;
 import org.apache.lucene.store.jdbc.index.JdbcIndexConfigurable;
 import org.apache.lucene.store.jdbc.support.JdbcTable;
 import org.apache.lucene.store.jdbc.support.JdbcTemplate;
@@ -107,6 +108,15 @@ public abstract class AbstractFileEntryHandler implements FileEntryHandler {
                 ps.setString(2, from);
             }
         });
+        if (table.isChunked()) {
+            jdbcTemplate.executeUpdate(table.sqlUpdateChunksNameByName(), new JdbcTemplate.PrepateStatementAwareCallback() {
+                public void fillPrepareStatement(PreparedStatement ps) throws Exception {
+                    ps.setFetchSize(1);
+                    ps.setString(1, to);
+                    ps.setString(2, from);
+                }
+            });
+        }
     }
 
     public long fileLength(final String name) throws IOException {
@@ -130,6 +140,10 @@ public abstract class AbstractFileEntryHandler implements FileEntryHandler {
         JdbcFileEntrySettings settings = jdbcDirectory.getSettings().getFileEntrySettings(name);
         try {
             Class inputClass = settings.getSettingAsClass(JdbcFileEntrySettings.INDEX_INPUT_TYPE_SETTING, null);
+            if (table.isChunked() && !ChunkedJdbcIndexInput.class.isAssignableFrom(inputClass)) {
+                // the chunked layout can only be read by a chunk aware index input
+                inputClass = ChunkedJdbcIndexInput.class;
+            }
             indexInput = (IndexInput) inputClass.newInstance();
         } catch (Exception e) {
             throw new JdbcStoreException("Failed to create indexInput instance [" + settings.getSetting(JdbcFileEntrySettings.INDEX_INPUT_TYPE_SETTING) + "]", e);
@@ -31,23 +31,26 @@ import org.apache.lucene.store.jdbc.support.JdbcTemplate;
 public class ActualDeleteFileEntryHandler extends AbstractFileEntryHandler {
 
     public void deleteFile(final String name) throws IOException {
-        jdbcTemplate.executeUpdate(table.sqlDeleteByName(), new JdbcTemplate.PrepateStatementAwareCallback() {
-            public void fillPrepareStatement(PreparedStatement ps) throws Exception {
-                ps.setFetchSize(1);
-                ps.setString(1, name);
-            }
-        });
+        jdbcDirectory.forceDeleteFile(name);
     }
 
     public List deleteFiles(final List names) throws IOException {
-        jdbcTemplate.executeBatch(table.sqlDeleteByName(), new JdbcTemplate.PrepateStatementAwareCallback() {
+        deleteByNames(table.sqlDeleteByName(), names);
+        if (table.isChunked()) {
+            deleteByNames(table.sqlDeleteChunksByName(), names);
+        }
+        return null;
+    }
+
+    private void deleteByNames(String sql, final List names) throws IOException {
+        jdbcTemplate.executeBatch(sql, new JdbcTemplate.PrepateStatementAwareCallback() {
             public void fillPrepareStatement(PreparedStatement ps) throws Exception {
                 ps.setFetchSize(1);
                 for (Iterator it = names.iterator(); it.hasNext();) {
                     ps.setString(1, (String) it.next());
+                    ps.addBatch();
                 }
             }
         });
-        return null;
     }
 }
@@ -16,16 +16,23 @@
 
 package org.apache.lucene.store.jdbc.index;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.sql.PreparedStatement;
 
+import org.apache.lucene.store.jdbc.JdbcDirectorySettings;
+
 import org.apache.lucene.store.jdbc.JdbcDirectory;
 import org.apache.lucene.store.jdbc.JdbcFileEntrySettings;
 import org.apache.lucene.store.jdbc.support.InputStreamBlob;
 import org.apache.lucene.store.jdbc.support.JdbcTemplate;
 
 /**
+ * A base class for jdbc index outputs that write the file entry into the database once the output is
+ * closed. When the directory works in chunked mode (see {@link JdbcDirectorySettings#isChunked()}), the
+ * data is split into fixed size chunks inserted using jdbc batches.
+ *
  * @author kimchy
  */
 public abstract class AbstractJdbcIndexOutput extends JdbcBufferedIndexOutput {
@@ -44,6 +51,11 @@ public abstract class AbstractJdbcIndexOutput extends JdbcBufferedIndexOutput {
         super.close();
         final long length = length();
         doBeforeClose();
+        if (jdbcDirectory.getTable().isChunked()) {
+            insertChunked(length);
+            doAfterClose();
+            return;
+        }
         jdbcDirectory.getJdbcTemplate().executeUpdate(jdbcDirectory.getTable().sqlInsert(), new JdbcTemplate.PrepateStatementAwareCallback() {
             public void fillPrepareStatement(PreparedStatement ps) throws Exception {
                 ps.setFetchSize(1);
@@ -61,6 +73,102 @@ public abstract class AbstractJdbcIndexOutput extends JdbcBufferedIndexOutput {
         doAfterClose();
     }
 
+    /**
+     * Inserts the file data in fixed size chunks, and then the file entry meta data, so the file entry is
+     * never visible without its data. Chunks are added to a jdbc batch which is executed every
+     * {@link JdbcDirectorySettings#getChunkBatchSize()} chunks. If either fails, the chunks inserted are
+     * deleted.
+     */
+    protected void insertChunked(final long length) throws IOException {
+        try {
+            if (length > 0) {
+                insertChunks();
+            }
+            jdbcDirectory.getJdbcTemplate().executeUpdate(jdbcDirectory.getTable().sqlInsertWithoutValue(), new JdbcTemplate.PrepateStatementAwareCallback() {
+                public void fillPrepareStatement(PreparedStatement ps) throws Exception {
+                    ps.setFetchSize(1);
+                    ps.setString(1, name);
+                    ps.setLong(2, length);
+                    ps.setBoolean(3, false);
+                }
+            });
+        } catch (IOException e) {
+            deleteChunks();
+            throw e;
+        } catch (RuntimeException e) {
+            deleteChunks();
+            throw e;
+        }
+    }
+
+    private void deleteChunks() {
+        try {
+            jdbcDirectory.getJdbcTemplate().executeUpdate(jdbcDirectory.getTable().sqlDeleteChunksByName(), new JdbcTemplate.PrepateStatementAwareCallback() {
+                public void fillPrepareStatement(PreparedStatement ps) throws Exception {
+                    ps.setFetchSize(1);
+                    ps.setString(1, name);
+                }
+            });
+        } catch (Exception e) {
+            // the original failure is rethrown, orphaned chunks can be deleted using JdbcDirectory#purgeOrphanChunks
+        }
+    }
+
+    private void insertChunks() throws IOException {
+        final JdbcDirectorySettings settings = jdbcDirectory.getSettings();
+        final boolean useBatch = jdbcDirectory.getDialect().supportsBatchUpdates();
+        final boolean useBytes = jdbcDirectory.getDialect().useBytesForChunkValues();
+        jdbcDirectory.getJdbcTemplate().executeBatch(jdbcDirectory.getTable().sqlInsertChunk(), new JdbcTemplate.PrepateStatementAwareCallback() {
+            public void fillPrepareStatement(PreparedStatement ps) throws Exception {
+                InputStream is = openInputStream();
+                int batchSize = Math.max(1, settings.getChunkBatchSize());
+                int batched = 0;
+                int chunkNumber = 0;
+                while (true) {
+                    // a new buffer for each chunk, since bound values are kept by the driver until the batch is executed
+                    byte[] chunk = new byte[settings.getChunkSize()];
+                    int chunkLength = readChunk(is, chunk);
+                    if (chunkLength == 0) {
+                        break;
+                    }
+                    ps.setString(1, name);
+                    ps.setInt(2, chunkNumber++);
+                    if (useBytes) {
+                        if (chunkLength < chunk.length) {
+                            byte[] value = new byte[chunkLength];
+                            System.arraycopy(chunk, 0, value, 0, chunkLength);
+                            chunk = value;
+                        }
+                        ps.setBytes(3, chunk);
+                    } else {
+                        ps.setBinaryStream(3, new ByteArrayInputStream(chunk, 0, chunkLength), chunkLength);
+                    }
+                    if (!useBatch) {
+                        ps.executeUpdate();
+                    } else if (++batched == batchSize) {
+                        ps.addBatch();
+                        ps.executeBatch();
+                        batched = 0;
+                    } else {
+                        ps.addBatch();
+                    }
+                }
+            }
+        });
+    }
+
+    private static int readChunk(InputStream is, byte[] chunk) throws IOException {
+        int read = 0;
+        while (read < chunk.length) {
+            int count = is.read(chunk, read, chunk.length - read);
+            if (count == -1) {
+                break;
+            }
+            read += count;
+        }
+        return read;
+    }
+
     protected abstract InputStream openInputStream() throws IOException;
 
     protected void doAfterClose() throws IOException {
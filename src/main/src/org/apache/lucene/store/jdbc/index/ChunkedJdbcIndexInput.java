@@ -0,0 +1,164 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.lucene.store.jdbc.index;
+
+import java.io.IOException;
+import java.sql.Blob;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import org.apache.lucene.store.jdbc.JdbcDirectory;
+import org.apache.lucene.store.jdbc.JdbcFileEntrySettings;
+import org.apache.lucene.store.jdbc.JdbcStoreException;
+import org.apache.lucene.store.jdbc.support.JdbcTemplate;
+
+/**
+ * An <code>IndexInput</code> implementation that reads file entries stored using the chunked storage layout
+ * (see {@link org.apache.lucene.store.jdbc.JdbcDirectorySettings#setChunkSize(int)}).
+ * <p/>
+ * Keeps a window of chunks in memory. When the chunk following the current window is required (the file is read
+ * sequentially), {@link org.apache.lucene.store.jdbc.JdbcDirectorySettings#getChunkReadAhead()} chunks are streamed
+ * using a single query. Random reads only fetch the chunk required.
+ *
+ * @author kimchy
+ */
+public class ChunkedJdbcIndexInput extends JdbcBufferedIndexInput {
+
+    private String name;
+
+    private JdbcDirectory jdbcDirectory;
+
+    private int chunkSize;
+
+    private int readAhead;
+
+    private long length;
+
+    private long position;
+
+    // the chunk number of the first chunk in the window
+    private long windowStart = -1;
+
+    private byte[][] window;
+
+    public void configure(final String name, final JdbcDirectory jdbcDirectory, JdbcFileEntrySettings settings) throws IOException {
+        super.configure(name, jdbcDirectory, settings);
+        this.name = name;
+        this.jdbcDirectory = jdbcDirectory;
+        this.chunkSize = jdbcDirectory.getSettings().getChunkSize();
+        this.readAhead = Math.max(1, jdbcDirectory.getSettings().getChunkReadAhead());
+        this.length = ((Long) jdbcDirectory.getJdbcTemplate().executeSelect(jdbcDirectory.getTable().sqlSelectSizeByName(),
+                new JdbcTemplate.ExecuteSelectCallback() {
+                    public void fillPrepareStatement(PreparedStatement ps) throws Exception {
+                        ps.setFetchSize(1);
+                        ps.setString(1, name);
+                    }
+
+                    public Object execute(ResultSet rs) throws Exception {
+                        if (!rs.next()) {
+                            throw new JdbcStoreException("No entry for [" + name + "] table " + jdbcDirectory.getTable());
+                        }
+                        return new Long(rs.getLong(1));
+                    }
+                })).longValue();
+    }
+
+    protected void readInternal(byte[] b, int offset, int len) throws IOException {
+        if (position + len > length) {
+            throw new IOException("read past EOF");
+        }
+        while (len > 0) {
+            long chunkNumber = position / chunkSize;
+            int chunkOffset = (int) (position % chunkSize);
+            byte[] chunk = chunk(chunkNumber);
+            int count = Math.min(len, chunk.length - chunkOffset);
+            if (count <= 0) {
+                throw new IOException("read past EOF");
+            }
+            System.arraycopy(chunk, chunkOffset, b, offset, count);
+            position += count;
+            offset += count;
+            len -= count;
+        }
+    }
+
+    protected void seekInternal(long pos) throws IOException {
+        this.position = pos;
+    }
+
+    public void close() throws IOException {
+        window = null;
+    }
+
+    public long length() {
+        return length;
+    }
+
+    private byte[] chunk(long chunkNumber) throws IOException {
+        if (window != null && chunkNumber >= windowStart && chunkNumber < windowStart + window.length) {
+            return window[(int) (chunkNumber - windowStart)];
+        }
+        // sequential read (the chunk after the window), read ahead
+        int count = 1;
+        if (window != null && chunkNumber == windowStart + window.length) {
+            count = readAhead;
+        }
+        long totalChunks = (length + chunkSize - 1) / chunkSize;
+        count = (int) Math.min(count, totalChunks - chunkNumber);
+        window = fetchChunks(chunkNumber, count);
+        windowStart = chunkNumber;
+        return window[0];
+    }
+
+    private byte[][] fetchChunks(final long fromChunk, final int count) throws IOException {
+        final boolean useBytes = jdbcDirectory.getDialect().useBytesForChunkValues();
+        return (byte[][]) jdbcDirectory.getJdbcTemplate().executeSelect(jdbcDirectory.getTable().sqlSelectChunks(),
+                new JdbcTemplate.ExecuteSelectCallback() {
+                    public void fillPrepareStatement(PreparedStatement ps) throws Exception {
+                        ps.setFetchSize(count);
+                        ps.setString(1, name);
+                        ps.setLong(2, fromChunk);
+                        ps.setLong(3, fromChunk + count);
+                    }
+
+                    public Object execute(ResultSet rs) throws Exception {
+                        byte[][] chunks = new byte[count][];
+                        for (int i = 0; i < count; i++) {
+                            if (!rs.next() || rs.getLong(1) != fromChunk + i) {
+                                throw new JdbcStoreException("Missing chunk [" + (fromChunk + i) + "] for [" + name
+                                        + "] table " + jdbcDirectory.getTable());
+                            }
+                            byte[] chunk;
+                            if (useBytes) {
+                                chunk = rs.getBytes(2);
+                            } else {
+                                Blob blob = rs.getBlob(2);
+                                chunk = blob.getBytes(1, (int) blob.length());
+                            }
+                            long expected = Math.min(chunkSize, length - (fromChunk + i) * chunkSize);
+                            if (chunk == null || chunk.length != expected) {
+                                throw new JdbcStoreException("Chunk [" + (fromChunk + i) + "] for [" + name + "] table "
+                                        + jdbcDirectory.getTable() + " has length [" + (chunk == null ? 0 : chunk.length)
+                                        + "] but expected [" + expected + "], was the chunk size changed?");
+                            }
+                            chunks[i] = chunk;
+                        }
+                        return chunks;
+                    }
+                });
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.lucene.store.jdbc.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.apache.lucene.store.ConfigurableBufferedIndexInput;
+
+/**
+ * An <code>IndexInput</code> reading a file from the local file system. Used to read files cached
+ * locally by {@link org.apache.lucene.store.jdbc.JdbcReadCache}. Clones share the same underlying
+ * file descriptor (reads are synchronized on it), and only the original input closes it.
+ *
+ * @author kimchy
+ */
+public class LocalFileIndexInput extends ConfigurableBufferedIndexInput {
+
+    private final Descriptor file;
+
+    private boolean isClone;
+
+    public LocalFileIndexInput(File path, int bufferSize) throws IOException {
+        super(bufferSize);
+        this.file = new Descriptor(path);
+    }
+
+    protected void readInternal(byte[] b, int offset, int len) throws IOException {
+        synchronized (file) {
+            long position = getFilePointer();
+            if (position != file.position) {
+                file.seek(position);
+                file.position = position;
+            }
+            int total = 0;
+            do {
+                int i = file.read(b, offset + total, len - total);
+                if (i == -1) {
+                    throw new IOException("read past EOF");
+                }
+                file.position += i;
+                total += i;
+            } while (total < len);
+        }
+    }
+
+    protected void seekInternal(long pos) throws IOException {
+    }
+
+    public void close() throws IOException {
+        if (!isClone) {
+            file.close();
+        }
+    }
+
+    public long length() {
+        return file.length;
+    }
+
+    public Object clone() {
+        LocalFileIndexInput clone = (LocalFileIndexInput) super.clone();
+        clone.isClone = true;
+        return clone;
+    }
+
+    private static class Descriptor extends RandomAccessFile {
+
+        long position;
+
+        final long length;
+
+        public Descriptor(File file) throws IOException {
+            super(file, "r");
+            length = length();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.lucene.store.jdbc.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.lucene.store.IndexInput;
+
+/**
+ * A memory mapped <code>IndexInput</code> reading a file from the local file system. Used to read files
+ * cached locally by {@link org.apache.lucene.store.jdbc.JdbcReadCache}. Files larger than
+ * {@link #MAX_BUFFER_SIZE} are mapped using several buffers.
+ *
+ * @author kimchy
+ */
+public class MMapLocalFileIndexInput extends IndexInput {
+
+    /**
+     * The maximum size of a single mapped buffer.
+     */
+    public static final int MAX_BUFFER_SIZE = 1 << 30;
+
+    private final long length;
+
+    private ByteBuffer[] buffers;
+
+    private int currentBufferIndex;
+
+    private ByteBuffer currentBuffer;
+
+    public MMapLocalFileIndexInput(File path) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(path, "r");
+        try {
+            this.length = raf.length();
+            FileChannel channel = raf.getChannel();
+            int count = (int) (length / MAX_BUFFER_SIZE) + 1;
+            buffers = new ByteBuffer[count];
+            long position = 0;
+            for (int i = 0; i < count; i++) {
+                long size = Math.min(MAX_BUFFER_SIZE, length - position);
+                buffers[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+                position += size;
+            }
+        } finally {
+            // the mapping is valid after the file is closed
+            raf.close();
+        }
+        currentBuffer = buffers[0];
+    }
+
+    public byte readByte() throws IOException {
+        if (!currentBuffer.hasRemaining()) {
+            nextBuffer();
+        }
+        return currentBuffer.get();
+    }
+
+    public void readBytes(byte[] b, int offset, int len) throws IOException {
+        while (len > 0) {
+            if (!currentBuffer.hasRemaining()) {
+                nextBuffer();
+            }
+            int count = Math.min(len, currentBuffer.remaining());
+            currentBuffer.get(b, offset, count);
+            offset += count;
+            len -= count;
+        }
+    }
+
+    private void nextBuffer() throws IOException {
+        if (currentBufferIndex + 1 >= buffers.length) {
+            throw new IOException("read past EOF");
+        }
+        currentBuffer = buffers[++currentBufferIndex];
+        currentBuffer.position(0);
+    }
+
+    public long getFilePointer() {
+        return ((long) currentBufferIndex * MAX_BUFFER_SIZE) + currentBuffer.position();
+    }
+
+    public void seek(long pos) throws IOException {
+        currentBufferIndex = (int) (pos / MAX_BUFFER_SIZE);
+        currentBuffer = buffers[currentBufferIndex];
+        currentBuffer.position((int) (pos % MAX_BUFFER_SIZE));
+    }
+
+    public long length() {
+        return length;
+    }
+
+    public void close() throws IOException {
+        // mapped buffers are released when garbage collected
+    }
+
+    public Object clone() {
+        MMapLocalFileIndexInput clone = (MMapLocalFileIndexInput) super.clone();
+        clone.buffers = new ByteBuffer[buffers.length];
+        for (int i = 0; i < buffers.length; i++) {
+            clone.buffers[i] = buffers[i].duplicate();
+        }
+        clone.currentBuffer = clone.buffers[currentBufferIndex];
+        clone.currentBuffer.position(currentBuffer.position());
+        return clone;
+    }
+}
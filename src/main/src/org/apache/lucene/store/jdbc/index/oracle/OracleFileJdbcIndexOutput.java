@@ -34,6 +34,11 @@ import org.apache.lucene.store.jdbc.support.JdbcTemplate;
 public class OracleFileJdbcIndexOutput extends FileJdbcIndexOutput {
 
     public void close() throws IOException {
+        if (jdbcDirectory.getTable().isChunked()) {
+            // chunks are small enough to be inserted without the empty blob and update dance
+            super.close();
+            return;
+        }
         flush();
         final long length = length();
         doBeforeClose();
@@ -58,6 +58,17 @@ public class JdbcTable {
     private String sqlDeletaAll;
     private String sqlDeletaMarkDeleteByDelta;
     private String sqlSelectNameForUpdateNoWait;
+    private String sqlInsertWithoutValue;
+
+    private String sqlCreateChunks;
+    private String sqlDropChunks;
+    private String sqlInsertChunk;
+    private String sqlSelectChunks;
+    private String sqlDeleteChunksByName;
+    private String sqlUpdateChunksNameByName;
+    private String sqlDeleteAllChunks;
+    private String sqlDeleteOrphanChunks;
+    private String sqlDeleteMarkDeletedChunksByDelta;
 
     private JdbcColumn nameColumn;
     private JdbcColumn valueColumn;
@@ -65,6 +76,10 @@ public class JdbcTable {
     private JdbcColumn lastModifiedColumn;
     private JdbcColumn deletedColumn;
 
+    private JdbcColumn chunkNameColumn;
+    private JdbcColumn chunkColumn;
+    private JdbcColumn chunkValueColumn;
+
     public JdbcTable(JdbcDirectorySettings settings, Dialect dialect, String name) {
         this(settings, dialect, name, settings.getTableCatalog(), settings.getTableSchema());
     }
@@ -177,6 +192,79 @@ public class JdbcTable {
         sqlDeletaAll = sb.append("delete from ").append(getQualifiedName())
                 .append(" where ").append(nameColumn.getQuotedName()).append(" <> '").append(IndexWriter.WRITE_LOCK_NAME).append("'")
                 .toString();
+
+        sb.setLength(0);
+        sqlInsertWithoutValue = sb.append("insert into ").append(getQualifiedName())
+                .append(" (").append(nameColumn.getQuotedName()).append(", ")
+                .append(sizeColumn.getQuotedName()).append(", ")
+                .append(lastModifiedColumn.getQuotedName()).append(", ")
+                .append(deletedColumn.getQuotedName())
+                .append(") values ( ?, ?, ").append(dialect.getCurrentTimestampFunction()).append(", ?").append(" )").toString();
+
+        if (settings.isChunked()) {
+            initializeChunks();
+        }
+    }
+
+    private void initializeChunks() {
+        chunkNameColumn = new JdbcColumn(dialect, settings.getNameColumnName(), 1, dialect.getVarcharType(settings.getNameColumnLength()));
+        chunkColumn = new JdbcColumn(dialect, settings.getChunkColumnName(), 2, dialect.getNumberType());
+        chunkValueColumn = new JdbcColumn(dialect, settings.getValueColumnName(), 3, dialect.getChunkValueType(settings.getChunkSize()));
+
+        StringBuffer sb = new StringBuffer();
+        sqlCreateChunks = sb.append("create table ").append(getChunksQualifiedName()).append(" (")
+                .append(chunkNameColumn.getName()).append(' ').append(chunkNameColumn.getType()).append(" not null, ")
+                .append(chunkColumn.getName()).append(' ').append(chunkColumn.getType()).append(" not null, ")
+                .append(chunkValueColumn.getName()).append(' ').append(chunkValueColumn.getType())
+                .append(", " + "primary key (").append(chunkNameColumn.getName()).append(", ").append(chunkColumn.getName()).append(") ) ")
+                .append(getTableTypeString(dialect)).toString();
+
+        sb.setLength(0);
+        sb.append("drop table ");
+        if (dialect.supportsIfExistsBeforeTableName()) sb.append("if exists ");
+        sb.append(getChunksQualifiedName()).append(dialect.getCascadeConstraintsString());
+        if (dialect.supportsIfExistsAfterTableName()) sb.append(" if exists");
+        sqlDropChunks = sb.toString();
+
+        sb.setLength(0);
+        sqlInsertChunk = sb.append("insert into ").append(getChunksQualifiedName())
+                .append(" (").append(chunkNameColumn.getQuotedName()).append(", ")
+                .append(chunkColumn.getQuotedName()).append(", ")
+                .append(chunkValueColumn.getQuotedName())
+                .append(") values ( ?, ?, ? )").toString();
+
+        sb.setLength(0);
+        sqlSelectChunks = sb.append("select ").append(chunkColumn.getQuotedName()).append(", ")
+                .append(dialect.openBlobSelectQuote()).append(chunkValueColumn.getQuotedName()).append(dialect.closeBlobSelectQuote()).append(" as x")
+                .append(" from ").append(getChunksQualifiedName())
+                .append(" where ").append(chunkNameColumn.getQuotedName()).append(" = ?")
+                .append(" and ").append(chunkColumn.getQuotedName()).append(" >= ?")
+                .append(" and ").append(chunkColumn.getQuotedName()).append(" < ?")
+                .append(" order by ").append(chunkColumn.getQuotedName()).toString();
+
+        sb.setLength(0);
+        sqlDeleteChunksByName = sb.append("delete from ").append(getChunksQualifiedName())
+                .append(" where ").append(chunkNameColumn.getQuotedName()).append(" = ?").toString();
+
+        sb.setLength(0);
+        sqlUpdateChunksNameByName = sb.append("update ").append(getChunksQualifiedName())
+                .append(" set ").append(chunkNameColumn.getQuotedName())
+                .append(" = ?" + " where ").append(chunkNameColumn.getQuotedName()).append(" = ?").toString();
+
+        sb.setLength(0);
+        sqlDeleteAllChunks = sb.append("delete from ").append(getChunksQualifiedName()).toString();
+
+        sb.setLength(0);
+        sqlDeleteOrphanChunks = sb.append("delete from ").append(getChunksQualifiedName())
+                .append(" where ").append(chunkNameColumn.getQuotedName()).append(" not in (select ")
+                .append(nameColumn.getQuotedName()).append(" from ").append(getQualifiedName()).append(")").toString();
+
+        sb.setLength(0);
+        sqlDeleteMarkDeletedChunksByDelta = sb.append("delete from ").append(getChunksQualifiedName())
+                .append(" where ").append(chunkNameColumn.getQuotedName()).append(" in (select ")
+                .append(nameColumn.getQuotedName()).append(" from ").append(getQualifiedName())
+                .append(" where ").append(deletedColumn.getQuotedName()).append(" = ?")
+                .append(" and ").append(lastModifiedColumn.getQuotedName()).append(" < ?)").toString();
     }
 
     private String getTableTypeString(Dialect dialect) {
@@ -306,6 +394,75 @@ public class JdbcTable {
         return sqlDrop;
     }
 
+    /**
+     * Returns <code>true</code> if file entries are stored in chunks within a separate chunks table.
+     */
+    public boolean isChunked() {
+        return settings.isChunked();
+    }
+
+    public JdbcColumn getChunkColumn() {
+        return this.chunkColumn;
+    }
+
+    public JdbcColumn getChunkValueColumn() {
+        return this.chunkValueColumn;
+    }
+
+    public String sqlInsertWithoutValue() {
+        return sqlInsertWithoutValue;
+    }
+
+    public String sqlCreateChunks() {
+        return sqlCreateChunks;
+    }
+
+    public String sqlDropChunks() {
+        return sqlDropChunks;
+    }
+
+    public String sqlInsertChunk() {
+        return sqlInsertChunk;
+    }
+
+    public String sqlSelectChunks() {
+        return sqlSelectChunks;
+    }
+
+    public String sqlDeleteChunksByName() {
+        return sqlDeleteChunksByName;
+    }
+
+    public String sqlUpdateChunksNameByName() {
+        return sqlUpdateChunksNameByName;
+    }
+
+    public String sqlDeleteAllChunks() {
+        return sqlDeleteAllChunks;
+    }
+
+    public String sqlDeleteOrphanChunks() {
+        return sqlDeleteOrphanChunks;
+    }
+
+    public String sqlDeleteMarkDeletedChunksByDelta() {
+        return sqlDeleteMarkDeletedChunksByDelta;
+    }
+
+    /**
+     * Returns the name of the chunks table (the table name with the chunk table suffix).
+     */
+    public String getChunksName() {
+        return name + settings.getChunkTableSuffix();
+    }
+
+    public String getChunksQualifiedName() {
+        String quotedName = quoted ?
+                dialect.openQuote() + getChunksName() + dialect.closeQuote() :
+                getChunksName();
+        return qualify(catalog, getQuotedSchema(), quotedName);
+    }
+
     public String getQualifiedName() {
         String quotedName = getQuotedName();
         return qualify(catalog, getQuotedSchema(), quotedName);
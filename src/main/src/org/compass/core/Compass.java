@@ -18,6 +18,7 @@ package org.compass.core;
 
 import java.io.Serializable;
 
+import org.compass.core.cache.second.SecondLevelCache;
 import org.compass.core.config.CompassConfiguration;
 import org.compass.core.config.CompassSettings;
 import org.compass.core.engine.SearchEngineIndexManager;
@@ -172,6 +173,12 @@ public interface Compass extends Serializable {
      */
     SearchEngineSpellCheckManager getSpellCheckManager();
 
+    /**
+     * Returns the second level cache, allowing to inspect its statistics and evict cached resources.
+     * Returns <code>null</code> if the second level cache is not enabled.
+     */
+    SecondLevelCache getSecondLevelCache();
+
     /**
      * Returns the settings Compass was started with.
      */
@@ -315,6 +315,13 @@ public interface CompassQuery {
      */
     CompassQuery rewrite();
 
+    /**
+     * Sets if the results of this query can be cached by the query result cache (if it is enabled).
+     * Defaults to <code>true</code>. Set to <code>false</code> for queries that are unlikely to be
+     * repeated, so they won't evict other cached results.
+     */
+    CompassQuery setCacheable(boolean cacheable);
+
     /**
      * Returns the suggested query (based on spell check). If spell check is disabled
      * the same query is returned.
@@ -98,6 +98,10 @@ public class BasicPropertyAccessor implements PropertyAccessor, CompassConfigura
             return method.getName();
         }
 
+        public Method getMethod() {
+            return method.getMethod();
+        }
+
         public String toString() {
             return "BasicSetter(" + clazz.getName() + '.' + propertyName + ')';
         }
@@ -146,6 +150,10 @@ public class BasicPropertyAccessor implements PropertyAccessor, CompassConfigura
             return method.getGenericReturnType();
         }
 
+        public Method getMethod() {
+            return method.getMethod();
+        }
+
         public String toString() {
             return "BasicGetter(" + clazz.getName() + '.' + propertyName + ')';
         }
@@ -116,6 +116,10 @@ public class DirectPropertyAccessor implements PropertyAccessor, CompassConfigur
             return null;
         }
 
+        public Field getField() {
+            return this.field.getField();
+        }
+
         public void set(Object target, Object value) throws CompassException {
             try {
                 field.set(target, value);
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.cache.second;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.compass.core.CompassException;
+import org.compass.core.Resource;
+import org.compass.core.config.CompassConfigurable;
+import org.compass.core.config.CompassEnvironment;
+import org.compass.core.config.CompassSettings;
+import org.compass.core.spi.ResourceKey;
+import org.compass.core.util.concurrent.ConcurrentLinkedHashMap;
+
+/**
+ * The default second level cache, holding the resources in a {@link ConcurrentLinkedHashMap} bounded by
+ * {@link CompassEnvironment.Cache.SecondLevel#MAX_SIZE} (with LRU eviction), and optionally expiring resources
+ * after {@link CompassEnvironment.Cache.SecondLevel#TTL}.
+ *
+ * <p>Evicting a sub index simply increments its version. Resources cached with an older version are removed
+ * lazily once they are looked up (or evicted because of size).
+ *
+ * @author kimchy
+ */
+public class DefaultSecondLevelCache implements SecondLevelCache, CompassConfigurable,
+        ConcurrentLinkedHashMap.EvictionListener<ResourceKey, DefaultSecondLevelCache.CacheEntry> {
+
+    private ConcurrentLinkedHashMap<ResourceKey, CacheEntry> cache;
+
+    private final ConcurrentMap<String, AtomicLong> subIndexVersions = new ConcurrentHashMap<String, AtomicLong>();
+
+    private long ttl;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public void configure(CompassSettings settings) throws CompassException {
+        int maxSize = settings.getSettingAsInt(CompassEnvironment.Cache.SecondLevel.MAX_SIZE, 10000);
+        ttl = settings.getSettingAsTimeInMillis(CompassEnvironment.Cache.SecondLevel.TTL, -1);
+        cache = new ConcurrentLinkedHashMap<ResourceKey, CacheEntry>(ConcurrentLinkedHashMap.EvictionPolicy.LRU, maxSize, this);
+    }
+
+    public long getVersion(String subIndex) {
+        return subIndexVersion(subIndex).get();
+    }
+
+    public Resource getResource(ResourceKey key) {
+        CacheEntry entry = cache.get(key);
+        if (entry == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        if (entry.version != getVersion(key.getSubIndex())) {
+            cache.remove(key, entry);
+            missCount.incrementAndGet();
+            return null;
+        }
+        if (ttl > 0 && System.currentTimeMillis() - entry.timestamp > ttl) {
+            if (cache.remove(key, entry)) {
+                evictionCount.incrementAndGet();
+            }
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return entry.resource;
+    }
+
+    public void setResource(ResourceKey key, Resource resource, long version) {
+        if (version != getVersion(key.getSubIndex())) {
+            return;
+        }
+        cache.put(key, new CacheEntry(resource, version, System.currentTimeMillis()));
+    }
+
+    public void evict(ResourceKey key) {
+        cache.remove(key);
+    }
+
+    public void evictSubIndex(String subIndex) {
+        subIndexVersion(subIndex).incrementAndGet();
+    }
+
+    public void evictAll() {
+        for (AtomicLong version : subIndexVersions.values()) {
+            version.incrementAndGet();
+        }
+        cache.clear();
+    }
+
+    public int getSize() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public double getHitRatio() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        if (total == 0) {
+            return 0;
+        }
+        return ((double) hits) / total;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public void close() {
+        cache.clear();
+    }
+
+    public void onEviction(ResourceKey key, CacheEntry value) {
+        evictionCount.incrementAndGet();
+    }
+
+    private AtomicLong subIndexVersion(String subIndex) {
+        AtomicLong version = subIndexVersions.get(subIndex);
+        if (version == null) {
+            version = new AtomicLong();
+            AtomicLong existing = subIndexVersions.putIfAbsent(subIndex, version);
+            if (existing != null) {
+                version = existing;
+            }
+        }
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return "size [" + getSize() + "] hits [" + getHitCount() + "] misses [" + getMissCount() + "] evictions ["
+                + getEvictionCount() + "]";
+    }
+
+    static final class CacheEntry {
+
+        final Resource resource;
+
+        final long version;
+
+        final long timestamp;
+
+        CacheEntry(Resource resource, long version, long timestamp) {
+            this.resource = resource;
+            this.version = version;
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.cache.second;
+
+import org.compass.core.Resource;
+import org.compass.core.spi.ResourceKey;
+
+/**
+ * Second level cache used to store resources across sessions. Unlike the first level cache,
+ * it is shared by all the sessions of a Compass instance and must be thread safe.
+ *
+ * <p>Cached resources are associated with the version of the sub index they were loaded from.
+ * Once a sub index changes (for example, a transaction was committed against it), its version
+ * is incremented using {@link #evictSubIndex(String)}, and all the resources cached for it are
+ * no longer valid. In order to make sure a resource loaded before a sub index changed is not
+ * cached, the version of the sub index should be captured before the reader the resource is
+ * loaded with is opened (see {@link org.compass.core.lucene.engine.manager.LuceneIndexHolder#getSecondLevelCacheVersion()}),
+ * and passed to {@link #setResource(ResourceKey, Resource, long)}.
+ *
+ * @author kimchy
+ */
+public interface SecondLevelCache {
+
+    /**
+     * Returns the current version of the given sub index.
+     */
+    long getVersion(String subIndex);
+
+    /**
+     * Returns the cached resource for the given key, <code>null</code> if it is not cached (or no
+     * longer valid).
+     */
+    Resource getResource(ResourceKey key);
+
+    /**
+     * Caches the given resource if the sub index version is still the provided version.
+     */
+    void setResource(ResourceKey key, Resource resource, long version);
+
+    /**
+     * Evicts the resource cached for the given key.
+     */
+    void evict(ResourceKey key);
+
+    /**
+     * Evicts all the resources cached for the given sub index.
+     */
+    void evictSubIndex(String subIndex);
+
+    /**
+     * Evicts all the cached resources.
+     */
+    void evictAll();
+
+    /**
+     * Returns the number of cached resources.
+     */
+    int getSize();
+
+    /**
+     * Returns the number of times a resource was found in the cache.
+     */
+    long getHitCount();
+
+    /**
+     * Returns the number of times a resource was not found in the cache.
+     */
+    long getMissCount();
+
+    /**
+     * Returns the ratio of hits out of all the cache lookups. Returns <code>0</code> if no lookups
+     * were made.
+     */
+    double getHitRatio();
+
+    /**
+     * Returns the number of resources evicted because of size or time to live.
+     */
+    long getEvictionCount();
+
+    /**
+     * Closes the cache.
+     */
+    void close();
+}
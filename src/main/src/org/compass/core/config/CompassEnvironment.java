@@ -686,6 +686,33 @@ public class CompassEnvironment {
              */
             public static final String TYPE = "compass.cache.first";
         }
+
+        /**
+         * Settings for the second level cache, a Compass wide cache of resources shared between
+         * sessions.
+         *
+         * @see org.compass.core.cache.second.SecondLevelCache
+         */
+        public abstract class SecondLevel {
+
+            /**
+             * Should the second level cache be enabled or not. Defaults to <code>false</code>.
+             */
+            public static final String ENABLE = "compass.cache.second.enable";
+
+            /**
+             * The maximum number of resources the second level cache will hold. Once reached, resources
+             * will be evicted. Defaults to <code>10000</code>.
+             */
+            public static final String MAX_SIZE = "compass.cache.second.maxSize";
+
+            /**
+             * The time to live of a cached resource (in milliseconds or using time units, for example
+             * <code>10m</code>). Defaults to <code>-1</code>, which means resources are only evicted
+             * because of size or index changes.
+             */
+            public static final String TTL = "compass.cache.second.ttl";
+        }
     }
 
     public abstract class Osem {
@@ -726,6 +753,15 @@ public class CompassEnvironment {
          * <code>false</code>.
          */
         public static final String FILTER_DUPLICATES = "compass.osem.filterDuplicates";
+
+        /**
+         * Should a marshaller be generated (using ASM) for each class mapping when Compass is built. The
+         * generated marshaller calls the getters / setters of the class mapping directly instead of iterating
+         * over the mappings and going through reflection. Defaults to <code>false</code>.
+         *
+         * <p>Note, requires {@link Reflection#TYPE} to be set to {@link Reflection#ASM} (the default).
+         */
+        public static final String COMPILE_MARSHALLERS = "compass.osem.compileMarshallers";
     }
 
     public abstract class Jsem {
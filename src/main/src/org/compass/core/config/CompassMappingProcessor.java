@@ -53,6 +53,7 @@ public class CompassMappingProcessor implements MappingProcessor {
         mappingProcessors.add(new ResolveLateAttributesPostLateBindingMappingProcessor());
         mappingProcessors.add(new UIDMappingProcessor());
         mappingProcessors.add(new ValidatorMappingProcessor());
+        mappingProcessors.add(new CompileMarshallersMappingProcessor());
     }
 
     public CompassMapping process(CompassMapping compassMapping, PropertyNamingStrategy namingStrategy,
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.compass.core.config.process;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.compass.core.config.CompassEnvironment;
+import org.compass.core.config.CompassSettings;
+import org.compass.core.converter.ConverterLookup;
+import org.compass.core.converter.mapping.osem.AsmClassMappingMarshallerGenerator;
+import org.compass.core.engine.naming.PropertyNamingStrategy;
+import org.compass.core.mapping.AliasMapping;
+import org.compass.core.mapping.CompassMapping;
+import org.compass.core.mapping.Mapping;
+import org.compass.core.mapping.MappingException;
+import org.compass.core.mapping.osem.AbstractCollectionMapping;
+import org.compass.core.mapping.osem.AbstractRefAliasMapping;
+import org.compass.core.mapping.osem.ClassMapping;
+import org.compass.core.mapping.osem.ReferenceMapping;
+
+/**
+ * Generates a {@link org.compass.core.converter.mapping.osem.ClassMappingMarshaller} for each class mapping
+ * (including the class mappings of components, references and collection elements) when
+ * {@link org.compass.core.config.CompassEnvironment.Osem#COMPILE_MARSHALLERS} is enabled.
+ *
+ * <p>Class mappings a marshaller could not be generated for are marshalled using the mapping iteration.
+ *
+ * @author kimchy
+ * @see org.compass.core.converter.mapping.osem.AsmClassMappingMarshallerGenerator
+ */
+public class CompileMarshallersMappingProcessor implements MappingProcessor {
+
+    private static final Log log = LogFactory.getLog(CompileMarshallersMappingProcessor.class);
+
+    public CompassMapping process(CompassMapping compassMapping, PropertyNamingStrategy namingStrategy,
+                                  ConverterLookup converterLookup, CompassSettings settings) throws MappingException {
+        if (!settings.getSettingAsBoolean(CompassEnvironment.Osem.COMPILE_MARSHALLERS, false)) {
+            return compassMapping;
+        }
+        if (!CompassEnvironment.Reflection.ASM.equals(settings.getSetting(CompassEnvironment.Reflection.TYPE, CompassEnvironment.Reflection.ASM))) {
+            log.warn("Compiled marshallers require [" + CompassEnvironment.Reflection.TYPE + "] to be ["
+                    + CompassEnvironment.Reflection.ASM + "], not compiling marshallers");
+            return compassMapping;
+        }
+        Map<ClassMapping, Boolean> processed = new IdentityHashMap<ClassMapping, Boolean>();
+        for (AliasMapping aliasMapping : compassMapping.getMappings()) {
+            if (aliasMapping instanceof ClassMapping) {
+                compile((ClassMapping) aliasMapping, processed);
+            }
+        }
+        return compassMapping;
+    }
+
+    private void compile(ClassMapping classMapping, Map<ClassMapping, Boolean> processed) {
+        if (processed.put(classMapping, Boolean.TRUE) != null) {
+            return;
+        }
+        try {
+            classMapping.setMarshaller(AsmClassMappingMarshallerGenerator.generateMarshaller(classMapping));
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Failed to compile marshaller for alias [" + classMapping.getAlias() + "], using mappings iteration", e);
+            }
+        }
+        for (Iterator it = classMapping.mappingsIt(); it.hasNext();) {
+            compileNested((Mapping) it.next(), processed);
+        }
+    }
+
+    private void compileNested(Mapping mapping, Map<ClassMapping, Boolean> processed) {
+        if (mapping instanceof AbstractRefAliasMapping) {
+            ClassMapping[] refClassMappings = ((AbstractRefAliasMapping) mapping).getRefClassMappings();
+            if (refClassMappings != null) {
+                for (ClassMapping refClassMapping : refClassMappings) {
+                    compile(refClassMapping, processed);
+                }
+            }
+            if (mapping instanceof ReferenceMapping && ((ReferenceMapping) mapping).getRefCompMapping() != null) {
+                compile(((ReferenceMapping) mapping).getRefCompMapping(), processed);
+            }
+        } else if (mapping instanceof AbstractCollectionMapping) {
+            compileNested(((AbstractCollectionMapping) mapping).getElementMapping(), processed);
+        }
+    }
+}
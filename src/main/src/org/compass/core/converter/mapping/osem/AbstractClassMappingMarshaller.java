@@ -0,0 +1,65 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.compass.core.converter.mapping.osem;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.compass.core.accessor.Getter;
+import org.compass.core.accessor.Setter;
+import org.compass.core.converter.Converter;
+import org.compass.core.mapping.Mapping;
+import org.compass.core.mapping.osem.ClassMapping;
+import org.compass.core.mapping.osem.ObjectMapping;
+import org.compass.core.mapping.osem.OsemMapping;
+
+/**
+ * A base class for generated {@link ClassMappingMarshaller}s. Holds the child mappings of the class mapping
+ * (in iteration order) along with their converters, getters and setters so generated code can access them
+ * by index.
+ *
+ * @author kimchy
+ */
+public abstract class AbstractClassMappingMarshaller implements ClassMappingMarshaller {
+
+    protected final Mapping[] mappings;
+
+    protected final Converter[] converters;
+
+    protected final Getter[] getters;
+
+    protected final Setter[] setters;
+
+    protected AbstractClassMappingMarshaller(ClassMapping classMapping) {
+        ArrayList<Mapping> list = new ArrayList<Mapping>();
+        for (Iterator it = classMapping.mappingsIt(); it.hasNext();) {
+            list.add((Mapping) it.next());
+        }
+        mappings = list.toArray(new Mapping[list.size()]);
+        converters = new Converter[mappings.length];
+        getters = new Getter[mappings.length];
+        setters = new Setter[mappings.length];
+        for (int i = 0; i < mappings.length; i++) {
+            converters[i] = mappings[i].getConverter();
+            if (((OsemMapping) mappings[i]).hasAccessors()) {
+                getters[i] = ((ObjectMapping) mappings[i]).getGetter();
+                setters[i] = ((ObjectMapping) mappings[i]).getSetter();
+            }
+        }
+    }
+}
@@ -0,0 +1,469 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.compass.core.converter.mapping.osem;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.compass.core.Resource;
+import org.compass.core.accessor.BasicPropertyAccessor;
+import org.compass.core.accessor.DirectPropertyAccessor;
+import org.compass.core.accessor.Getter;
+import org.compass.core.accessor.Setter;
+import org.compass.core.converter.Converter;
+import org.compass.core.mapping.Mapping;
+import org.compass.core.mapping.osem.ClassMapping;
+import org.compass.core.mapping.osem.ObjectMapping;
+import org.compass.core.mapping.osem.OsemMapping;
+import org.compass.core.marshall.MarshallingContext;
+import org.compass.core.marshall.MarshallingEnvironment;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Generates a {@link ClassMappingMarshaller} for a {@link ClassMapping} using ASM. The generated class unrolls
+ * the iteration over the class mapping child mappings, and calls the getter / setter of each mapping directly
+ * (without going through reflection or boxing the method arguments array) when it is accessible from the
+ * generated class. Otherwise, the mapping {@link Getter} / {@link Setter} is used.
+ *
+ * <p>Nested class mappings (components, references and collection elements) are marshalled by their own
+ * converters, which in turn use the marshaller generated for the nested class mapping.
+ *
+ * <p>The generated class is defined within the class loader (and package) of the mapped class. Generated
+ * classes are reused if an identical marshaller (same class and same accessors) was already generated.
+ *
+ * @author kimchy
+ */
+public class AsmClassMappingMarshallerGenerator {
+
+    private static final String BASE_INTERNAL_NAME = Type.getInternalName(AbstractClassMappingMarshaller.class);
+
+    private static final String CONVERTER_INTERNAL_NAME = Type.getInternalName(Converter.class);
+
+    private static final String CONTEXT_INTERNAL_NAME = Type.getInternalName(MarshallingContext.class);
+
+    private static final String CLASS_MAPPING_DESC = Type.getDescriptor(ClassMapping.class);
+
+    private static final String MARSHALL_DESC = "(" + Type.getDescriptor(Resource.class) + "Ljava/lang/Object;"
+            + Type.getDescriptor(MarshallingContext.class) + ")Z";
+
+    private static final String CONVERTER_MARSHALL_DESC = "(" + Type.getDescriptor(Resource.class) + "Ljava/lang/Object;"
+            + Type.getDescriptor(Mapping.class) + Type.getDescriptor(MarshallingContext.class) + ")Z";
+
+    private static final String CONVERTER_UNMARSHALL_DESC = "(" + Type.getDescriptor(Resource.class)
+            + Type.getDescriptor(Mapping.class) + Type.getDescriptor(MarshallingContext.class) + ")Ljava/lang/Object;";
+
+    private static final String SIGNATURE_FIELD = "SIGNATURE";
+
+    /**
+     * Generates a new {@link ClassMappingMarshaller} for the given class mapping.
+     */
+    public static synchronized ClassMappingMarshaller generateMarshaller(ClassMapping classMapping) throws Exception {
+        Class clazz = classMapping.getClazz();
+        ClassLoader classLoader = clazz.getClassLoader();
+        if (classLoader == null) {
+            throw new IllegalArgumentException("Can't generate marshaller for class [" + clazz.getName() + "] loaded by the bootstrap class loader");
+        }
+        if (classLoader.loadClass(BASE_INTERNAL_NAME.replace('/', '.')) != AbstractClassMappingMarshaller.class) {
+            throw new IllegalArgumentException("Class loader of class [" + clazz.getName() + "] can't see Compass classes");
+        }
+
+        MarshallerPlan plan = new MarshallerPlan(classMapping, clazz.getName());
+        Class definedClass = null;
+        for (int suffix = 0; definedClass == null; suffix++) {
+            String className = clazz.getName() + "CompassMarshaller" + Integer.toHexString(plan.signature.hashCode())
+                    + (suffix == 0 ? "" : "_" + suffix);
+            try { // checks if was already loaded
+                Class loadedClass = classLoader.loadClass(className);
+                if (plan.signature.equals(loadedClass.getField(SIGNATURE_FIELD).get(null))) {
+                    definedClass = loadedClass;
+                }
+            } catch (ClassNotFoundException e) {
+                definedClass = defineClass(classLoader, className, generateClass(className.replace('.', '/'), plan));
+            }
+        }
+        Constructor ctor = definedClass.getConstructor(ClassMapping.class);
+        return (ClassMappingMarshaller) ctor.newInstance(classMapping);
+    }
+
+    private static byte[] generateClass(String classInternalName, MarshallerPlan plan) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC + Opcodes.ACC_SUPER, classInternalName, null, BASE_INTERNAL_NAME, null);
+
+        FieldVisitor fv = cw.visitField(Opcodes.ACC_PUBLIC + Opcodes.ACC_STATIC + Opcodes.ACC_FINAL, SIGNATURE_FIELD,
+                "Ljava/lang/String;", null, plan.signature);
+        fv.visitEnd();
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "(" + CLASS_MAPPING_DESC + ")V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, BASE_INTERNAL_NAME, "<init>", "(" + CLASS_MAPPING_DESC + ")V");
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        createMarshallMethod(cw, plan);
+        createUnmarshallMethod(cw, plan);
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    // locals: 0 this, 1 resource, 2 root, 3 context, 4 store
+    private static void createMarshallMethod(ClassWriter cw, MarshallerPlan plan) {
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "marshall", MARSHALL_DESC, null, null);
+        mv.visitCode();
+        mv.visitInsn(Opcodes.ICONST_0);
+        mv.visitVarInsn(Opcodes.ISTORE, 4);
+        for (int i = 0; i < plan.getters.length; i++) {
+            setCurrent(mv);
+            mv.visitVarInsn(Opcodes.ILOAD, 4);
+            loadArrayElement(mv, "converters", Converter.class, i);
+            mv.visitVarInsn(Opcodes.ALOAD, 1);
+            // the value passed to the converter
+            if (!plan.hasAccessors[i]) {
+                mv.visitVarInsn(Opcodes.ALOAD, 2);
+            } else if (plan.getters[i] instanceof Method) {
+                Method method = (Method) plan.getters[i];
+                mv.visitVarInsn(Opcodes.ALOAD, 2);
+                mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(method.getDeclaringClass()));
+                mv.visitMethodInsn(method.getDeclaringClass().isInterface() ? Opcodes.INVOKEINTERFACE : Opcodes.INVOKEVIRTUAL,
+                        Type.getInternalName(method.getDeclaringClass()), method.getName(), Type.getMethodDescriptor(method));
+                box(mv, method.getReturnType());
+            } else if (plan.getters[i] instanceof Field) {
+                Field field = (Field) plan.getters[i];
+                mv.visitVarInsn(Opcodes.ALOAD, 2);
+                mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(field.getDeclaringClass()));
+                mv.visitFieldInsn(Opcodes.GETFIELD, Type.getInternalName(field.getDeclaringClass()), field.getName(),
+                        Type.getDescriptor(field.getType()));
+                box(mv, field.getType());
+            } else {
+                loadArrayElement(mv, "getters", Getter.class, i);
+                mv.visitVarInsn(Opcodes.ALOAD, 2);
+                mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, Type.getInternalName(Getter.class), "get",
+                        "(Ljava/lang/Object;)Ljava/lang/Object;");
+            }
+            loadArrayElement(mv, "mappings", Mapping.class, i);
+            mv.visitVarInsn(Opcodes.ALOAD, 3);
+            mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, CONVERTER_INTERNAL_NAME, "marshall", CONVERTER_MARSHALL_DESC);
+            mv.visitInsn(Opcodes.IOR);
+            mv.visitVarInsn(Opcodes.ISTORE, 4);
+        }
+        mv.visitVarInsn(Opcodes.ILOAD, 4);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    // locals: 0 this, 1 resource, 2 obj, 3 context, 4 not null class, 5 value
+    private static void createUnmarshallMethod(ClassWriter cw, MarshallerPlan plan) {
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "unmarshall", MARSHALL_DESC, null, null);
+        mv.visitCode();
+        mv.visitInsn(Opcodes.ICONST_0);
+        mv.visitVarInsn(Opcodes.ISTORE, 4);
+        for (int i = 0; i < plan.setters.length; i++) {
+            if (plan.hasAccessors[i] && !plan.hasSetter[i]) {
+                continue;
+            }
+            setCurrent(mv);
+            loadArrayElement(mv, "converters", Converter.class, i);
+            mv.visitVarInsn(Opcodes.ALOAD, 1);
+            loadArrayElement(mv, "mappings", Mapping.class, i);
+            mv.visitVarInsn(Opcodes.ALOAD, 3);
+            mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, CONVERTER_INTERNAL_NAME, "unmarshall", CONVERTER_UNMARSHALL_DESC);
+            if (!plan.hasAccessors[i]) {
+                mv.visitInsn(Opcodes.POP);
+                continue;
+            }
+            mv.visitVarInsn(Opcodes.ASTORE, 5);
+            Label skip = new Label();
+            mv.visitVarInsn(Opcodes.ALOAD, 5);
+            mv.visitJumpInsn(Opcodes.IFNULL, skip);
+            if (plan.setters[i] instanceof Method) {
+                Method method = (Method) plan.setters[i];
+                mv.visitVarInsn(Opcodes.ALOAD, 2);
+                mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(method.getDeclaringClass()));
+                mv.visitVarInsn(Opcodes.ALOAD, 5);
+                castOrUnbox(mv, method.getParameterTypes()[0]);
+                mv.visitMethodInsn(method.getDeclaringClass().isInterface() ? Opcodes.INVOKEINTERFACE : Opcodes.INVOKEVIRTUAL,
+                        Type.getInternalName(method.getDeclaringClass()), method.getName(), Type.getMethodDescriptor(method));
+                if (method.getReturnType() == Long.TYPE || method.getReturnType() == Double.TYPE) {
+                    mv.visitInsn(Opcodes.POP2);
+                } else if (method.getReturnType() != Void.TYPE) {
+                    mv.visitInsn(Opcodes.POP);
+                }
+            } else if (plan.setters[i] instanceof Field) {
+                Field field = (Field) plan.setters[i];
+                mv.visitVarInsn(Opcodes.ALOAD, 2);
+                mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(field.getDeclaringClass()));
+                mv.visitVarInsn(Opcodes.ALOAD, 5);
+                castOrUnbox(mv, field.getType());
+                mv.visitFieldInsn(Opcodes.PUTFIELD, Type.getInternalName(field.getDeclaringClass()), field.getName(),
+                        Type.getDescriptor(field.getType()));
+            } else {
+                loadArrayElement(mv, "setters", Setter.class, i);
+                mv.visitVarInsn(Opcodes.ALOAD, 2);
+                mv.visitVarInsn(Opcodes.ALOAD, 5);
+                mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, Type.getInternalName(Setter.class), "set",
+                        "(Ljava/lang/Object;Ljava/lang/Object;)V");
+            }
+            if (plan.controlsObjectNullability[i]) {
+                mv.visitInsn(Opcodes.ICONST_1);
+                mv.visitVarInsn(Opcodes.ISTORE, 4);
+            }
+            mv.visitLabel(skip);
+        }
+        mv.visitVarInsn(Opcodes.ILOAD, 4);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void setCurrent(MethodVisitor mv) {
+        mv.visitVarInsn(Opcodes.ALOAD, 3);
+        mv.visitLdcInsn(MarshallingEnvironment.ATTRIBUTE_CURRENT);
+        mv.visitVarInsn(Opcodes.ALOAD, 2);
+        mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, CONTEXT_INTERNAL_NAME, "setAttribute",
+                "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;");
+        mv.visitInsn(Opcodes.POP);
+    }
+
+    private static void loadArrayElement(MethodVisitor mv, String fieldName, Class elementType, int index) {
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitFieldInsn(Opcodes.GETFIELD, BASE_INTERNAL_NAME, fieldName, "[" + Type.getDescriptor(elementType));
+        if (index <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(Opcodes.BIPUSH, index);
+        } else if (index <= Short.MAX_VALUE) {
+            mv.visitIntInsn(Opcodes.SIPUSH, index);
+        } else {
+            mv.visitLdcInsn(index);
+        }
+        mv.visitInsn(Opcodes.AALOAD);
+    }
+
+    private static void box(MethodVisitor mv, Class type) {
+        if (!type.isPrimitive()) {
+            return;
+        }
+        Type asmType = Type.getType(type);
+        Class boxed = boxedType(type);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(boxed), "valueOf",
+                "(" + asmType.getDescriptor() + ")" + Type.getDescriptor(boxed));
+    }
+
+    private static void castOrUnbox(MethodVisitor mv, Class type) {
+        if (!type.isPrimitive()) {
+            mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(type));
+            return;
+        }
+        Type asmType = Type.getType(type);
+        if (type == Boolean.TYPE || type == Character.TYPE) {
+            Class boxed = boxedType(type);
+            mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(boxed));
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(boxed), asmType.getClassName() + "Value",
+                    "()" + asmType.getDescriptor());
+        } else {
+            // numbers are unboxed through Number, so a converter returning a different number type still works
+            mv.visitTypeInsn(Opcodes.CHECKCAST, "java/lang/Number");
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/Number", asmType.getClassName() + "Value",
+                    "()" + asmType.getDescriptor());
+        }
+    }
+
+    private static Class boxedType(Class type) {
+        if (type == Boolean.TYPE) {
+            return Boolean.class;
+        } else if (type == Character.TYPE) {
+            return Character.class;
+        } else if (type == Byte.TYPE) {
+            return Byte.class;
+        } else if (type == Short.TYPE) {
+            return Short.class;
+        } else if (type == Integer.TYPE) {
+            return Integer.class;
+        } else if (type == Long.TYPE) {
+            return Long.class;
+        } else if (type == Float.TYPE) {
+            return Float.class;
+        } else {
+            return Double.class;
+        }
+    }
+
+    private static Class defineClass(ClassLoader loader, String name, byte[] b) throws Exception {
+        Method defineMethod = ClassLoader.class.getDeclaredMethod("defineClass",
+                String.class, byte[].class, int.class, int.class);
+        defineMethod.setAccessible(true);
+        return (Class) defineMethod.invoke(loader, name, b, 0, b.length);
+    }
+
+    /**
+     * Resolves, for each child mapping of the class mapping, the members that can be accessed directly from the
+     * generated class, and builds a signature of the generated code used to reuse already generated classes.
+     */
+    private static class MarshallerPlan {
+
+        final boolean[] hasAccessors;
+
+        final boolean[] hasSetter;
+
+        final boolean[] controlsObjectNullability;
+
+        // a Method or a Field when they can be accessed directly, null otherwise
+        final Member[] getters;
+
+        final Member[] setters;
+
+        final String signature;
+
+        private final ClassLoader classLoader;
+
+        private final String packageName;
+
+        MarshallerPlan(ClassMapping classMapping, String className) {
+            this.classLoader = classMapping.getClazz().getClassLoader();
+            this.packageName = packageName(className);
+            ArrayList<Mapping> mappings = new ArrayList<Mapping>();
+            for (Iterator it = classMapping.mappingsIt(); it.hasNext();) {
+                mappings.add((Mapping) it.next());
+            }
+            int size = mappings.size();
+            hasAccessors = new boolean[size];
+            hasSetter = new boolean[size];
+            controlsObjectNullability = new boolean[size];
+            getters = new Member[size];
+            setters = new Member[size];
+            StringBuilder sb = new StringBuilder(className);
+            for (int i = 0; i < size; i++) {
+                Mapping mapping = mappings.get(i);
+                sb.append(';');
+                hasAccessors[i] = ((OsemMapping) mapping).hasAccessors();
+                if (!hasAccessors[i]) {
+                    sb.append('n');
+                    continue;
+                }
+                ObjectMapping objectMapping = (ObjectMapping) mapping;
+                hasSetter[i] = objectMapping.getSetter() != null;
+                controlsObjectNullability[i] = mapping.controlsObjectNullability();
+                getters[i] = resolveGetter(objectMapping.getGetter());
+                setters[i] = resolveSetter(objectMapping.getSetter());
+                sb.append(describe(getters[i])).append('|');
+                sb.append(hasSetter[i] ? describe(setters[i]) : "-").append('|');
+                sb.append(controlsObjectNullability[i]);
+            }
+            signature = sb.toString();
+        }
+
+        private Member resolveGetter(Getter getter) {
+            Member member = null;
+            if (getter instanceof BasicPropertyAccessor.BasicGetter) {
+                Method method = ((BasicPropertyAccessor.BasicGetter) getter).getMethod();
+                if (method != null && method.getParameterTypes().length == 0 && method.getExceptionTypes().length == 0) {
+                    member = method;
+                }
+            } else if (getter instanceof DirectPropertyAccessor.DirectGetter) {
+                member = ((DirectPropertyAccessor.DirectGetter) getter).getField();
+            }
+            if (member == null || !isAccessible(member)) {
+                return null;
+            }
+            return member;
+        }
+
+        private Member resolveSetter(Setter setter) {
+            Member member = null;
+            Class type = null;
+            if (setter instanceof BasicPropertyAccessor.BasicSetter) {
+                Method method = ((BasicPropertyAccessor.BasicSetter) setter).getMethod();
+                if (method != null && method.getParameterTypes().length == 1 && method.getExceptionTypes().length == 0) {
+                    member = method;
+                    type = method.getParameterTypes()[0];
+                }
+            } else if (setter instanceof DirectPropertyAccessor.DirectSetter) {
+                Field field = ((DirectPropertyAccessor.DirectSetter) setter).getField();
+                if (field != null && !Modifier.isFinal(field.getModifiers())) {
+                    member = field;
+                    type = field.getType();
+                }
+            }
+            if (member == null || !isAccessible(member) || !isAccessible(type)) {
+                return null;
+            }
+            return member;
+        }
+
+        private boolean isAccessible(Member member) {
+            int modifiers = member.getModifiers();
+            if (Modifier.isPrivate(modifiers) || Modifier.isStatic(modifiers) || !isAccessible(member.getDeclaringClass())) {
+                return false;
+            }
+            return Modifier.isPublic(modifiers) || isSamePackage(member.getDeclaringClass());
+        }
+
+        private boolean isAccessible(Class type) {
+            while (type.isArray()) {
+                type = type.getComponentType();
+            }
+            if (type.isPrimitive()) {
+                return true;
+            }
+            for (Class c = type; c != null; c = c.getDeclaringClass()) {
+                if (Modifier.isPrivate(c.getModifiers())) {
+                    return false;
+                }
+                if (!Modifier.isPublic(c.getModifiers()) && !isSamePackage(c)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isSamePackage(Class type) {
+            return type.getClassLoader() == classLoader && packageName(type.getName()).equals(packageName);
+        }
+
+        private static String packageName(String className) {
+            int index = className.lastIndexOf('.');
+            return index == -1 ? "" : className.substring(0, index);
+        }
+
+        private static String describe(Member member) {
+            if (member == null) {
+                return "r";
+            }
+            StringBuilder sb = new StringBuilder();
+            sb.append(member.getDeclaringClass().getName()).append('.').append(member.getName());
+            if (member instanceof Method) {
+                sb.append(Type.getMethodDescriptor((Method) member));
+            } else {
+                sb.append(':').append(Type.getDescriptor(((Field) member).getType()));
+            }
+            return sb.toString();
+        }
+    }
+}
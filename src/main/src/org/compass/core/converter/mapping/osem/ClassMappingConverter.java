@@ -39,6 +39,7 @@ import org.compass.core.mapping.ResourcePropertyMapping;
 import org.compass.core.mapping.osem.ClassMapping;
 import org.compass.core.mapping.osem.ObjectMapping;
 import org.compass.core.mapping.osem.OsemMapping;
+import org.compass.core.marshall.DefaultMarshallingContext;
 import org.compass.core.marshall.MarshallingContext;
 import org.compass.core.marshall.MarshallingEnvironment;
 import org.compass.core.spi.InternalResource;
@@ -185,32 +186,34 @@ public class ClassMappingConverter implements ResourceMappingConverter, CompassC
                     // we did not marshall this object, cache it for later checks
                     context.setMarshalled(idObjKey, root);
                     if (!classMapping.isSupportUnmarshall()) {
-                        context.setMarshalled(new IdentityAliasedObjectKey(classMapping.getAlias(), root), root);
+                        markMarshalled(classMapping.getAlias(), root, context);
                     }
                 }
             }
         } else if (!classMapping.isSupportUnmarshall()) {
-            IdentityAliasedObjectKey key = new IdentityAliasedObjectKey(classMapping.getAlias(), root);
-            Object marshalled = context.getMarshalled(key);
-            if (marshalled != null) {
+            if (!markMarshalled(classMapping.getAlias(), root, context)) {
                 return true;
             }
-            context.setMarshalled(key, root);
         }
 
         // perform full marshalling of the object into the resource
         boolean store = false;
-        for (Iterator mappingsIt = classMapping.mappingsIt(); mappingsIt.hasNext();) {
-            context.setAttribute(MarshallingEnvironment.ATTRIBUTE_CURRENT, root);
-            OsemMapping m = (OsemMapping) mappingsIt.next();
-            Object value;
-            if (m.hasAccessors()) {
-                Getter getter = ((ObjectMapping) m).getGetter();
-                value = getter.get(root);
-            } else {
-                value = root;
+        ClassMappingMarshaller marshaller = classMapping.getMarshaller();
+        if (marshaller != null) {
+            store = marshaller.marshall(resource, root, context);
+        } else {
+            for (Iterator mappingsIt = classMapping.mappingsIt(); mappingsIt.hasNext();) {
+                context.setAttribute(MarshallingEnvironment.ATTRIBUTE_CURRENT, root);
+                OsemMapping m = (OsemMapping) mappingsIt.next();
+                Object value;
+                if (m.hasAccessors()) {
+                    Getter getter = ((ObjectMapping) m).getGetter();
+                    value = getter.get(root);
+                } else {
+                    value = root;
+                }
+                store |= m.getConverter().marshall(resource, value, m, context);
             }
-            store |= m.getConverter().marshall(resource, value, m, context);
         }
 
         // marshall the uid last
@@ -303,24 +306,29 @@ public class ClassMappingConverter implements ResourceMappingConverter, CompassC
         }
 
         boolean isNullClass = true;
-        for (Iterator mappingsIt = classMapping.mappingsIt(); mappingsIt.hasNext();) {
-            context.setAttribute(MarshallingEnvironment.ATTRIBUTE_CURRENT, obj);
-            OsemMapping m = (OsemMapping) mappingsIt.next();
-            if (m.hasAccessors()) {
-                Setter setter = ((ObjectMapping) m).getSetter();
-                if (setter == null) {
-                    continue;
-                }
-                Object value = m.getConverter().unmarshall(resource, m, context);
-                if (value == null) {
-                    continue;
-                }
-                setter.set(obj, value);
-                if (m.controlsObjectNullability()) {
-                    isNullClass = false;
+        ClassMappingMarshaller marshaller = classMapping.getMarshaller();
+        if (marshaller != null) {
+            isNullClass = !marshaller.unmarshall(resource, obj, context);
+        } else {
+            for (Iterator mappingsIt = classMapping.mappingsIt(); mappingsIt.hasNext();) {
+                context.setAttribute(MarshallingEnvironment.ATTRIBUTE_CURRENT, obj);
+                OsemMapping m = (OsemMapping) mappingsIt.next();
+                if (m.hasAccessors()) {
+                    Setter setter = ((ObjectMapping) m).getSetter();
+                    if (setter == null) {
+                        continue;
+                    }
+                    Object value = m.getConverter().unmarshall(resource, m, context);
+                    if (value == null) {
+                        continue;
+                    }
+                    setter.set(obj, value);
+                    if (m.controlsObjectNullability()) {
+                        isNullClass = false;
+                    }
+                } else {
+                    m.getConverter().unmarshall(resource, m, context);
                 }
-            } else {
-                m.getConverter().unmarshall(resource, m, context);
             }
         }
         if (isNullClass) {
@@ -526,6 +534,23 @@ public class ClassMappingConverter implements ResourceMappingConverter, CompassC
         return proxyExtractorHelper.getTargetClass(root).getName();
     }
 
+    /**
+     * Marks the given object as marshalled under the given alias based on its identity, returning
+     * <code>false</code> if it was already marked. Uses the identity maps of {@link DefaultMarshallingContext},
+     * and falls back to {@link IdentityAliasedObjectKey} for other marshalling context implementations.
+     */
+    private boolean markMarshalled(String alias, Object root, MarshallingContext context) {
+        if (context instanceof DefaultMarshallingContext) {
+            return ((DefaultMarshallingContext) context).markMarshalled(alias, root);
+        }
+        IdentityAliasedObjectKey key = new IdentityAliasedObjectKey(alias, root);
+        if (context.getMarshalled(key) != null) {
+            return false;
+        }
+        context.setMarshalled(key, root);
+        return true;
+    }
+
     /**
      * An object key based on the alias and the object identity hash code
      */
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.compass.core.converter.mapping.osem;
+
+import org.compass.core.Resource;
+import org.compass.core.converter.ConversionException;
+import org.compass.core.marshall.MarshallingContext;
+
+/**
+ * Marshalls and unmarshalls the child mappings of a single {@link org.compass.core.mapping.osem.ClassMapping}.
+ * When set on a class mapping, {@link ClassMappingConverter} uses it instead of iterating over the class
+ * mapping child mappings and calling their getters / setters and converters one by one.
+ *
+ * <p>Implementations are generated per class mapping using ASM when
+ * {@link org.compass.core.config.CompassEnvironment.Osem#COMPILE_MARSHALLERS} is enabled.
+ *
+ * @author kimchy
+ * @see AsmClassMappingMarshallerGenerator
+ */
+public interface ClassMappingMarshaller {
+
+    /**
+     * Marshalls all the child mappings of the class mapping from the given root object into the resource.
+     * Returns <code>true</code> if anything was stored in the resource.
+     */
+    boolean marshall(Resource resource, Object root, MarshallingContext context) throws ConversionException;
+
+    /**
+     * Unmarshalls all the child mappings of the class mapping from the resource into the given (already
+     * constructed) object. Returns <code>true</code> if a value was set for at least one mapping that controls
+     * the object nullability (<code>false</code> means the object should be treated as <code>null</code>).
+     */
+    boolean unmarshall(Resource resource, Object obj, MarshallingContext context) throws ConversionException;
+}
@@ -17,6 +17,7 @@
 package org.compass.core.engine;
 
 import org.compass.core.ResourceFactory;
+import org.compass.core.cache.second.SecondLevelCache;
 import org.compass.core.config.RuntimeCompassSettings;
 import org.compass.core.engine.event.SearchEngineEventManager;
 import org.compass.core.engine.naming.PropertyNamingStrategy;
@@ -82,6 +83,11 @@ public interface SearchEngineFactory {
      */
     SearchEngineSpellCheckManager getSpellCheckManager();
 
+    /**
+     * Returns the second level cache (if enabled).
+     */
+    SecondLevelCache getSecondLevelCache();
+
     /**
      */
     SearchEngineEventManager getEventManager();
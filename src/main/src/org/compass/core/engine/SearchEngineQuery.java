@@ -57,6 +57,8 @@ public interface SearchEngineQuery {
 
     SearchEngineQuery rewrite();
 
+    SearchEngineQuery setCacheable(boolean cacheable);
+
     boolean isSuggested();
 
     SearchEngineHits hits(SearchEngine searchEngine) throws SearchEngineException;
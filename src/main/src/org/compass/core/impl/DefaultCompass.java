@@ -36,6 +36,7 @@ import org.compass.core.CompassTransaction;
 import org.compass.core.ResourceFactory;
 import org.compass.core.cache.first.FirstLevelCache;
 import org.compass.core.cache.first.FirstLevelCacheFactory;
+import org.compass.core.cache.second.SecondLevelCache;
 import org.compass.core.config.CompassConfiguration;
 import org.compass.core.config.CompassEnvironment;
 import org.compass.core.config.CompassSettings;
@@ -339,6 +340,10 @@ public class DefaultCompass implements InternalCompass, Referenceable {
         return searchEngineFactory.getSpellCheckManager();
     }
 
+    public SecondLevelCache getSecondLevelCache() {
+        return searchEngineFactory.getSecondLevelCache();
+    }
+
     public SearchEngineFactory getSearchEngineFactory() {
         return searchEngineFactory;
     }
@@ -175,6 +175,11 @@ public class DefaultCompassQuery implements InternalCompassQuery, Cloneable {
         return this;
     }
 
+    public CompassQuery setCacheable(boolean cacheable) {
+        searchEngineQuery.setCacheable(cacheable);
+        return this;
+    }
+
     public CompassQuery getSuggestedQuery() {
         if (compass.getSpellCheckManager() == null) {
             return this;
@@ -159,7 +159,7 @@ public class DefaultCompassSession implements InternalCompassSession {
 
     public CompassTransaction beginTransaction() throws CompassException {
         checkClosed();
-        if (LuceneEnvironment.Transaction.Processor.Lucene.NAME.equalsIgnoreCase(getSettings().getSetting(LuceneEnvironment.Transaction.Processor.TYPE))) {
+        if (isFirstLevelCacheDisabled()) {
             firstLevelCache = NullFirstLevelCache.INSTANCE;
         }
         transaction = transactionFactory.beginTransaction(this);
@@ -168,13 +168,23 @@ public class DefaultCompassSession implements InternalCompassSession {
 
     public CompassTransaction beginLocalTransaction() throws CompassException {
         checkClosed();
-        if (LuceneEnvironment.Transaction.Processor.Lucene.NAME.equalsIgnoreCase(getSettings().getSetting(LuceneEnvironment.Transaction.Processor.TYPE))) {
+        if (isFirstLevelCacheDisabled()) {
             firstLevelCache = new NullFirstLevelCache();
         }
         transaction = localTransactionFactory.beginTransaction(this);
         return transaction;
     }
 
+    /**
+     * The first level cache is not used with the lucene transaction processor, and with the mt transaction
+     * processor since the session can then be used by several threads (and the cache is not thread safe).
+     */
+    private boolean isFirstLevelCacheDisabled() {
+        String processor = getSettings().getSetting(LuceneEnvironment.Transaction.Processor.TYPE);
+        return LuceneEnvironment.Transaction.Processor.Lucene.NAME.equalsIgnoreCase(processor)
+                || LuceneEnvironment.Transaction.Processor.MT.NAME.equalsIgnoreCase(processor);
+    }
+
     public void flush() throws CompassException {
         checkClosed();
         searchEngine.flush();
@@ -370,25 +380,7 @@ public class DefaultCompassSession implements InternalCompassSession {
         if (compass.getEventManager().onPreCreate(alias, object) == FilterOperation.YES) {
             return;
         }
-        Resource resource = marshallingStrategy.marshall(alias, object);
-        if (resource != null) {
-            if (compass.getEventManager().onPreCreate(resource) == FilterOperation.YES) {
-                return;
-            }
-            searchEngine.create(resource);
-            ResourceKey key = ((InternalResource) resource).getResourceKey();
-            firstLevelCache.set(key, object);
-            firstLevelCache.setResource(key, resource);
-        }
-        context.addOperatedObjects(object);
-        boolean performedCascading = cascadingManager.cascade(alias, object, Cascade.CREATE, context);
-        if (resource == null && !performedCascading) {
-            throw new MarshallingException("Alias [" + alias + "] has no root mappings and no cascading defined, no operation was perfomed");
-        }
-        if (resource != null) {
-            compass.getEventManager().onPostCreate(resource);
-        }
-        compass.getEventManager().onPostCreate(alias, object);
+        create(alias, object, marshallingStrategy.marshall(alias, object), context);
     }
 
     public void create(Object object) throws CompassException {
@@ -404,8 +396,14 @@ public class DefaultCompassSession implements InternalCompassSession {
         if (compass.getEventManager().onPreCreate(null, object) == FilterOperation.YES) {
             return;
         }
+        create(null, object, marshallingStrategy.marshall(object), context);
+    }
+
+    public void create(String alias, Object object, Resource resource, DirtyOperationContext context) throws CompassException {
+        if (context.alreadyPerformedOperation(object)) {
+            return;
+        }
         boolean performedCascading;
-        Resource resource = marshallingStrategy.marshall(object);
         if (resource != null) {
             if (compass.getEventManager().onPreCreate(resource) == FilterOperation.YES) {
                 return;
@@ -416,17 +414,28 @@ public class DefaultCompassSession implements InternalCompassSession {
             firstLevelCache.setResource(key, resource);
             context.addOperatedObjects(object);
             // if we found a resource, we perform the cascading based on its alias
-            performedCascading = cascadingManager.cascade(key.getAlias(), object, Cascade.CREATE, context);
+            performedCascading = cascadingManager.cascade(alias == null ? key.getAlias() : alias, object, Cascade.CREATE, context);
         } else {
             context.addOperatedObjects(object);
-            // actuall, no root mapping to create a resource, try and create one based on the object
-            performedCascading = cascadingManager.cascade(object, Cascade.CREATE, context);
+            if (alias == null) {
+                // actuall, no root mapping to create a resource, try and create one based on the object
+                performedCascading = cascadingManager.cascade(object, Cascade.CREATE, context);
+            } else {
+                performedCascading = cascadingManager.cascade(alias, object, Cascade.CREATE, context);
+            }
         }
         if (resource == null && !performedCascading) {
-            throw new MarshallingException("Object [" + object.getClass().getName() + "] has no root mappings and no cascading defined, no operation was perfomed");
+            if (alias == null) {
+                throw new MarshallingException("Object [" + object.getClass().getName() + "] has no root mappings and no cascading defined, no operation was perfomed");
+            }
+            throw new MarshallingException("Alias [" + alias + "] has no root mappings and no cascading defined, no operation was perfomed");
         }
         if (resource != null) {
             compass.getEventManager().onPostCreate(resource);
+        }
+        if (alias != null) {
+            compass.getEventManager().onPostCreate(alias, object);
+        } else if (resource != null) {
             compass.getEventManager().onPostCreate(resource.getAlias(), object);
         } else {
             compass.getEventManager().onPostCreate(null, object);
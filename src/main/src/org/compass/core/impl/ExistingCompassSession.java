@@ -129,6 +129,10 @@ public class ExistingCompassSession implements InternalCompassSession {
         session.create(object, context);
     }
 
+    public void create(String alias, Object object, Resource resource, DirtyOperationContext context) throws CompassException {
+        session.create(alias, object, resource, context);
+    }
+
     public void save(String alias, Object object, DirtyOperationContext context) throws CompassException {
         session.save(alias, object, context);
     }
@@ -13,6 +13,7 @@ import org.compass.core.CompassQueryFilterBuilder;
 import org.compass.core.CompassSearchSession;
 import org.compass.core.CompassSession;
 import org.compass.core.ResourceFactory;
+import org.compass.core.cache.second.SecondLevelCache;
 import org.compass.core.config.CompassConfiguration;
 import org.compass.core.config.CompassEnvironment;
 import org.compass.core.config.CompassSettings;
@@ -196,6 +197,10 @@ public class RefreshableCompass implements InternalCompass {
         return compass.getSpellCheckManager();
     }
 
+    public SecondLevelCache getSecondLevelCache() {
+        return compass.getSecondLevelCache();
+    }
+
     public boolean isClosed() {
         return compass.isClosed();
     }
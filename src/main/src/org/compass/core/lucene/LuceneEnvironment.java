@@ -628,6 +628,33 @@ public class LuceneEnvironment {
                      */
                     public static final String OPTIMIZE_TRANS_LOG = "compass.transaction.processor.read_committed.translog.optimize";
                 }
+
+                /**
+                 * Group commit settings. When enabled, sessions committing concurrently against the same sub index
+                 * are coalesced into a single index writer commit.
+                 *
+                 * @see org.compass.core.lucene.engine.transaction.readcommitted.GroupCommitManager
+                 */
+                public static final class GroupCommit {
+
+                    /**
+                     * Should group commit be enabled. Defaults to <code>false</code>. Can be set in runtime.
+                     */
+                    public static final String ENABLE = "compass.transaction.processor.read_committed.groupCommit.enable";
+
+                    /**
+                     * The maximum time the commit will wait for other sessions with dirty operations against the same
+                     * sub index to join the batch. Defaults to <code>10</code> milliseconds. Supports time based
+                     * configuration and default value is in millis.
+                     */
+                    public static final String MAX_WAIT = "compass.transaction.processor.read_committed.groupCommit.maxWait";
+
+                    /**
+                     * The maximum number of session commits coalesced into a single index writer commit. Defaults
+                     * to <code>50</code>.
+                     */
+                    public static final String MAX_BATCH = "compass.transaction.processor.read_committed.groupCommit.maxBatch";
+                }
             }
 
             /**
@@ -785,6 +812,63 @@ public class LuceneEnvironment {
                  * Defuats to <code>uid</code>.
                  */
                 public static final String HASHING = "compass.transaction.processor.async.hashing";
+
+                /**
+                 * Should each sub index have its own queue (bounded by {@link #BACKLOG}) and its own polling processor.
+                 * When <code>false</code>, a single queue and a single polling processor are used for all the
+                 * transactions. Defaults to <code>false</code>.
+                 */
+                public static final String QUEUE_PER_SUB_INDEX = "compass.transaction.processor.async.queuePerSubIndex";
+
+                /**
+                 * What to do when a queue is full. Either <code>block</code> (wait up to {@link #ADD_TIMEOUT} and
+                 * then fail), <code>fail</code> (fail immediately), or <code>spill</code> (serialize the transaction
+                 * to disk, under {@link #SPILL_LOCATION}, to be processed once the queue drains). Defaults to
+                 * <code>block</code>.
+                 */
+                public static final String BACK_PRESSURE = "compass.transaction.processor.async.backPressure";
+
+                /**
+                 * The directory spilled transactions are stored at when using the <code>spill</code> back pressure.
+                 * Defaults to <code>compass/async-spill</code> under <code>java.io.tmpdir</code>.
+                 */
+                public static final String SPILL_LOCATION = "compass.transaction.processor.async.spillLocation";
+
+                /**
+                 * How transactions are encoded when spilled to disk or appended to the write ahead log. Either
+                 * <code>binary</code> (using {@link org.compass.core.lucene.engine.codec.TransactionJobsCodec}) or
+                 * <code>serializable</code> (using Java serialization). Defaults to <code>binary</code>.
+                 */
+                public static final String CODEC = "compass.transaction.processor.async.codec";
+
+                /**
+                 * Settings for the async transaction processor write ahead log. When enabled, transactions are
+                 * appended to a local log before they are queued, and the log is replayed when Compass starts.
+                 */
+                public static abstract class WriteAheadLog {
+
+                    /**
+                     * Should the write ahead log be used. Defaults to <code>false</code>.
+                     */
+                    public static final String ENABLE = "compass.transaction.processor.async.wal.enable";
+
+                    /**
+                     * The directory the write ahead log is stored at. Must be set when the write ahead log is enabled,
+                     * and must not be shared with other Compass instances.
+                     */
+                    public static final String LOCATION = "compass.transaction.processor.async.wal.location";
+
+                    /**
+                     * Should a commit wait for its transaction to be forced to disk. Concurrent commits share a single
+                     * <code>fsync</code>. Defaults to <code>true</code>.
+                     */
+                    public static final String SYNC = "compass.transaction.processor.async.wal.sync";
+
+                    /**
+                     * The size after which a new log segment is started. Defaults to <code>64mb</code>.
+                     */
+                    public static final String MAX_SEGMENT_SIZE = "compass.transaction.processor.async.wal.maxSegmentSize";
+                }
             }
         }
     }
@@ -1043,6 +1127,16 @@ public class LuceneEnvironment {
          */
         public static final String CACHE_ASYNC_INVALIDATION = "compass.engine.cacheAsyncInvalidation";
 
+        /**
+         * Sets if the index cache will be refreshed by the transaction processors once a commit is done instead
+         * of being checked periodically. When set to <code>true</code>, the committed index version is pushed to the
+         * cache and the index holder is replaced once per commit, and no scheduled or on search checks are performed
+         * against the index. Note, this should only be used when this Compass instance is the only one writing to
+         * the index, since changes made by other instances will not be detected, unless an
+         * {@link InvalidationBus} is configured (which implies this setting). Defaults to <code>false</code>.
+         */
+        public static final String CACHE_REFRESH_ON_COMMIT = "compass.engine.cacheRefreshOnCommit";
+
         /**
          * The default cache interval invalidation.
          *
@@ -1109,6 +1203,65 @@ public class LuceneEnvironment {
          */
         public static final String DISABLE_SCHEMA_OPERATIONS = "compass.engine.store.jdbc.disableSchemaOperations";
 
+        /**
+         * Settings for the chunked storage layout, storing each file entry as fixed size chunks within a
+         * separate chunks table. Chunks are inserted using jdbc batches and read using read ahead, which
+         * makes writing and reading large segments (for example, when optimizing) much faster.
+         */
+        public abstract class Chunk {
+
+            /**
+             * The chunk size (for example, <code>64k</code>). Setting it enables the chunked storage layout.
+             * Defaults to <code>0</code>, which means each file entry is stored as a single blob. Should not
+             * be changed once the index has been created.
+             */
+            public static final String SIZE = "compass.engine.store.jdbc.chunk.size";
+
+            /**
+             * The number of chunks inserted in a single jdbc batch. Defaults to <code>16</code>.
+             */
+            public static final String BATCH_SIZE = "compass.engine.store.jdbc.chunk.batchSize";
+
+            /**
+             * The number of chunks fetched in a single query when a file entry is read sequentially.
+             * Defaults to <code>8</code>.
+             */
+            public static final String READ_AHEAD = "compass.engine.store.jdbc.chunk.readAhead";
+
+            /**
+             * The suffix appended to the table name to create the chunks table name. Defaults to <code>_chunks</code>.
+             */
+            public static final String TABLE_SUFFIX = "compass.engine.store.jdbc.chunk.tableSuffix";
+
+            /**
+             * The name of the chunk number column. Defaults to <code>chunk_</code>.
+             */
+            public static final String CHUNK_NAME = "compass.engine.store.jdbc.chunk.chunk.name";
+        }
+
+        /**
+         * Settings for the jdbc directory read cache. The read cache copies each (write once) index file from
+         * the database into a local directory the first time it is opened, and serves subsequent reads locally.
+         */
+        public abstract class ReadCache {
+
+            /**
+             * The local path of the read cache. Setting it enables the read cache.
+             */
+            public static final String PATH = "compass.engine.store.jdbc.readCache.path";
+
+            /**
+             * Should cached files be read using memory mapped buffers. Defaults to <code>false</code>.
+             */
+            public static final String MEMORY_MAPPED = "compass.engine.store.jdbc.readCache.memoryMapped";
+
+            /**
+             * The buffer size used when fetching and reading (none memory mapped) cached files. Defaults
+             * to <code>16k</code>.
+             */
+            public static final String BUFFER_SIZE = "compass.engine.store.jdbc.readCache.bufferSize";
+        }
+
         public abstract class Connection {
             /**
              * The jdbc driver class
@@ -1592,6 +1745,129 @@ public class LuceneEnvironment {
         public static final String DEFAULT_NAME = "__default__";
     }
 
+    /**
+     * Settings for the {@link org.compass.core.lucene.engine.invalidation.InvalidationBus} used to notify other
+     * Compass instances working against the same index of commits, instead of checking the index for changes.
+     */
+    public static abstract class InvalidationBus {
+
+        public static final String PREFIX = "compass.engine.cacheInvalidationBus";
+
+        /**
+         * The type of the invalidation bus. Can be {@link Local#NAME}, {@link Tcp#NAME}, or the fully qualified
+         * class name of an {@link org.compass.core.lucene.engine.invalidation.InvalidationBus} implementation.
+         * When set, the index cache is refreshed on commit (see
+         * {@link SearchEngineIndex#CACHE_REFRESH_ON_COMMIT}), commits are published on the bus, and the cache is
+         * refreshed when other instances publish commits. No bus is used by default.
+         */
+        public static final String TYPE = PREFIX + ".type";
+
+        /**
+         * Settings for the {@link org.compass.core.lucene.engine.invalidation.LocalInvalidationBus}.
+         */
+        public static abstract class Local {
+
+            public static final String NAME = "local";
+
+            /**
+             * The channel name. Instances within the same JVM using the same channel notify each other.
+             * Defaults to <code>default</code>.
+             */
+            public static final String CHANNEL = PREFIX + ".local.channel";
+        }
+
+        /**
+         * Settings for the {@link org.compass.core.lucene.engine.invalidation.TcpInvalidationBus}.
+         */
+        public static abstract class Tcp {
+
+            public static final String NAME = "tcp";
+
+            /**
+             * The host to bind to. Defaults to all interfaces.
+             */
+            public static final String BIND_HOST = PREFIX + ".tcp.bindHost";
+
+            /**
+             * The port to listen on for messages from other instances. Required.
+             */
+            public static final String PORT = PREFIX + ".tcp.port";
+
+            /**
+             * A comma separated list of the other instances, each in the form of <code>host:port</code>.
+             */
+            public static final String PEERS = PREFIX + ".tcp.peers";
+
+            /**
+             * The timeout used when connecting to a peer. Defaults to <code>5s</code>.
+             */
+            public static final String CONNECT_TIMEOUT = PREFIX + ".tcp.connectTimeout";
+
+            /**
+             * The interval at which the latest version of each sub index is resent to all the peers (reconnecting
+             * to peers that could not be reached), so a peer eventually catches up with messages that were lost.
+             * Set to <code>0</code> to disable. Defaults to <code>10s</code>.
+             */
+            public static final String RESEND_INTERVAL = PREFIX + ".tcp.resendInterval";
+        }
+    }
+
+    /**
+     * Settings for segment level replication of the index from a master Compass instance to (search only)
+     * replicas. See {@link org.compass.core.lucene.engine.replication.ReplicationManager}.
+     */
+    public static abstract class Replication {
+
+        public static final String PREFIX = "compass.engine.replication";
+
+        /**
+         * The replication mode of this Compass instance, can be either {@link Mode#NONE}, {@link Mode#MASTER}
+         * or {@link Mode#REPLICA}. Defaults to {@link Mode#NONE}.
+         */
+        public static final String MODE = PREFIX + ".mode";
+
+        /**
+         * How often the master publishes new commit points, and replicas check for new commit points.
+         * Set to <code>-1</code> to only replicate explicitly. Defaults to <code>5s</code>.
+         */
+        public static final String INTERVAL = PREFIX + ".interval";
+
+        /**
+         * The type of the replication transport. Can be {@link FileSystem#NAME}, or the fully qualified class
+         * name of a {@link org.compass.core.lucene.engine.replication.ReplicationTransport} implementation. Defaults
+         * to {@link FileSystem#NAME}.
+         */
+        public static final String TRANSPORT = PREFIX + ".transport.type";
+
+        public static abstract class Mode {
+
+            public static final String NONE = "none";
+
+            public static final String MASTER = "master";
+
+            public static final String REPLICA = "replica";
+        }
+
+        /**
+         * Settings for the {@link org.compass.core.lucene.engine.replication.FileSystemReplicationTransport}.
+         */
+        public static abstract class FileSystem {
+
+            public static final String NAME = "fs";
+
+            /**
+             * The (shared) path commit points are published to. Required.
+             */
+            public static final String PATH = PREFIX + ".transport.fs.path";
+
+            /**
+             * The number of published commit points to keep, allowing slow replicas to complete copying
+             * an older commit point. Defaults to <code>3</code>.
+             */
+            public static final String KEEP_COMMITS = PREFIX + ".transport.fs.keepCommits";
+        }
+    }
+
     public static abstract class Query {
 
         /**
@@ -1601,5 +1877,107 @@ public class LuceneEnvironment {
          * @see org.apache.lucene.search.BooleanQuery#setMaxClauseCount(int)
          */
         public static final String MAX_CLAUSE_COUNT = "compass.query.maxClauseCount";
+
+        /**
+         * Should search operations use hits based on Lucene <code>TopDocs</code> instead of the
+         * deprecated Lucene <code>Hits</code>. <code>TopDocs</code> based hits fetch explicit windows of
+         * results, and allow to stream very large result sets without retaining the documents loaded.
+         * Can be set on the session level. Defaults to <code>false</code>.
+         *
+         * @see org.compass.core.lucene.engine.TopDocsLuceneSearchEngineHits
+         */
+        public static final String TOP_DOCS_HITS = "compass.query.topDocsHits.enabled";
+
+        /**
+         * The initial number of top documents fetched when using top docs hits. Once a hit beyond the
+         * window is accessed, the window is expanded. Defaults to <code>100</code>.
+         */
+        public static final String TOP_DOCS_HITS_INITIAL_SIZE = "compass.query.topDocsHits.initialSize";
+
+        /**
+         * Should stored fields of documents loaded using top docs hits be loaded lazily (only when they are
+         * accessed). Usefull when documents have large stored fields that are not always used. Note, lazy
+         * fields can only be loaded within the transaction the search was executed in.
+         * Defaults to <code>false</code>.
+         */
+        public static final String TOP_DOCS_HITS_LAZY_FIELDS = "compass.query.topDocsHits.lazyFields";
+
+        /**
+         * Should searches spanning several sub indexes search each sub index concurrently (using the executor
+         * manager) instead of one after the other. Only applies when the store supports concurrent operations.
+         * Can be set on the session level. Defaults to <code>false</code>.
+         *
+         * @see org.apache.lucene.search.ConcurrentMultiSearcher
+         */
+        public static final String PARALLEL_SEARCH = "compass.query.parallel.enabled";
+
+        /**
+         * The maximum number of concurrent tasks used by a single parallel search. When a search spans more
+         * sub indexes, each task searches several of them. Can be set on the session level in order to control
+         * it for specific queries. Defaults to the number of available processors.
+         */
+        public static final String PARALLEL_SEARCH_MAX_CONCURRENCY = "compass.query.parallel.maxConcurrency";
+    }
+
+    /**
+     * Settings for term frequencies computed using {@link org.compass.core.CompassTermFreqsBuilder}.
+     */
+    public static abstract class TermFreqs {
+
+        /**
+         * The maximum number of term frequencies results cached. Results are cached per the set of index readers
+         * they were computed with (and the requested properties and size), and evicted once one of the readers
+         * is replaced. Results computed with uncommitted transactional changes are never cached. Set to
+         * <code>0</code> to disable the cache. Defaults to <code>100</code>.
+         */
+        public static final String CACHE_SIZE = "compass.engine.termFreqs.cacheSize";
+    }
+
+    /**
+     * Settings for the query result cache, caching the top docs (doc ids and scores) of repeated searches.
+     * Results are cached per the query, filter, sort and the index readers they were computed with, and evicted
+     * once one of the readers is replaced. Searches that include uncommitted transactional changes are never
+     * cached. Specific queries can opt out using {@link org.compass.core.CompassQuery#setCacheable(boolean)}.
+     *
+     * <p>Note, cached searches always use top docs based hits (see {@link Query#TOP_DOCS_HITS}).
+     */
+    public static abstract class QueryResultCache {
+
+        /**
+         * Should the query result cache be enabled or not. Defaults to <code>false</code>.
+         */
+        public static final String ENABLE = "compass.engine.queryResultCache.enable";
+
+        /**
+         * The maximum (estimated) memory used by the cached results, in bytes or using size units (for example,
+         * <code>20m</code>). Once exceeded, the least recently used results are evicted. Defaults to
+         * <code>10m</code>.
+         */
+        public static final String MAX_MEMORY = "compass.engine.queryResultCache.maxMemory";
+    }
+
+    /**
+     * Settings for the filter cache, caching the doc id sets of alias restrictions (see
+     * {@link org.compass.core.CompassQuery#setAliases(String[])}) and of filters built using
+     * {@link org.compass.core.CompassQueryFilterBuilder} per index reader. Doc id sets are stored either as a
+     * bit set or, for sparse results, as a compressed sorted list, and are evicted once the index reader
+     * they were computed with is closed.
+     *
+     * <p>Note, when enabled, the alias restriction of a query is applied as a constant score clause, and
+     * does not affect the relative scoring of the matching documents.
+     */
+    public static abstract class FilterCache {
+
+        /**
+         * Should the filter cache be enabled or not. Defaults to <code>false</code>.
+         */
+        public static final String ENABLE = "compass.engine.filterCache.enable";
+
+        /**
+         * The maximum (estimated) memory used by the cached doc id sets, in bytes or using size units (for
+         * example, <code>100m</code>). Once exceeded, the least recently used doc id sets are evicted. Defaults
+         * to <code>20m</code>.
+         */
+        public static final String MAX_MEMORY = "compass.engine.filterCache.maxMemory";
     }
 }
@@ -82,7 +82,7 @@ public class LuceneResource implements AliasedObject, InternalResource, Map<Stri
             aliasField.setOmitNorms(true);
             properties.add(new LuceneProperty(aliasField));
         } else {
-            Fieldable aliasField = document.getField(aliasProperty);
+            Fieldable aliasField = document.getFieldable(aliasProperty);
             if (aliasField != null) {
                 properties.add(new LuceneProperty(aliasField));
                 this.alias = aliasField.stringValue();
@@ -20,7 +20,10 @@ import java.util.ArrayList;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Fieldable;
 import org.compass.core.Resource;
+import org.compass.core.cache.second.SecondLevelCache;
 import org.compass.core.config.CompassSettings;
 import org.compass.core.config.RuntimeCompassSettings;
 import org.compass.core.engine.SearchEngine;
@@ -34,8 +37,11 @@ import org.compass.core.engine.SearchEngineQueryFilterBuilder;
 import org.compass.core.engine.SearchEngineTermFrequencies;
 import org.compass.core.engine.event.SearchEngineEventManager;
 import org.compass.core.lucene.LuceneEnvironment;
+import org.compass.core.lucene.LuceneResource;
+import org.compass.core.lucene.engine.manager.LuceneIndexHolder;
 import org.compass.core.lucene.engine.transaction.TransactionProcessor;
 import org.compass.core.lucene.engine.transaction.TransactionProcessorFactory;
+import org.compass.core.lucene.support.FieldHelper;
 import org.compass.core.mapping.ResourceMapping;
 import org.compass.core.spi.InternalResource;
 import org.compass.core.spi.MultiResource;
@@ -315,6 +321,49 @@ public class LuceneSearchEngine implements SearchEngine {
         if (resourceKey.getIds().length == 0) {
             throw new SearchEngineException("Cannot load a resource with no ids and alias [" + resourceKey.getAlias() + "]");
         }
+        SecondLevelCache secondLevelCache = searchEngineFactory.getSecondLevelCache();
+        // only use the second level cache if no changes were made within the transaction, so we see only committed data
+        if (secondLevelCache == null || !onlyReadOnlyOperations) {
+            return doGet(resourceKey);
+        }
+        Resource cachedResource = secondLevelCache.getResource(resourceKey);
+        if (cachedResource != null) {
+            return copyResource((LuceneResource) cachedResource);
+        }
+        // cache the resource with the version captured when the index holder it is loaded with was opened, and not
+        // with the current sub index version, since a commit might have landed after the holder was opened. The
+        // transaction processor acquires the same holder (or a newer one, in which case the version was already
+        // incremented and the resource won't be cached)
+        Resource resource;
+        long version;
+        LuceneIndexHolder indexHolder = searchEngineFactory.getLuceneIndexManager().getIndexHoldersCache().getHolder(resourceKey.getSubIndex());
+        try {
+            version = indexHolder.getSecondLevelCacheVersion();
+            resource = doGet(resourceKey);
+        } finally {
+            indexHolder.release();
+        }
+        // polymorphic resources might reside in a different sub index, don't cache them
+        if (resource instanceof LuceneResource && resourceKey.getSubIndex().equals(((LuceneResource) resource).getSubIndex())) {
+            secondLevelCache.setResource(resourceKey, copyResource((LuceneResource) resource), version);
+        }
+        return resource;
+    }
+
+    /**
+     * Copies the resource document and its fields, so changes done to a resource returned from (or stored in)
+     * the second level cache will not affect the cached resource.
+     */
+    private LuceneResource copyResource(LuceneResource resource) {
+        Document document = new Document();
+        for (Object field : resource.getDocument().getFields()) {
+            document.add(FieldHelper.copyField((Fieldable) field));
+        }
+        document.setBoost(resource.getDocument().getBoost());
+        return new LuceneResource(document, resource.getDocNum(), searchEngineFactory);
+    }
+
+    private Resource doGet(ResourceKey resourceKey) throws SearchEngineException {
         Resource[] result = transactionProcessor.get(resourceKey);
         if (result.length == 0) {
             // none directly, try and load polymorphic ones
@@ -358,7 +407,7 @@ public class LuceneSearchEngine implements SearchEngine {
     }
 
     public SearchEngineTermFrequencies termFreq(String[] propertyNames, int size, SearchEngineInternalSearch internalSearch) {
-        return new LuceneSearchEngineTermFrequencies(propertyNames, size, (LuceneSearchEngineInternalSearch) internalSearch);
+        return new LuceneSearchEngineTermFrequencies(this, propertyNames, size, (LuceneSearchEngineInternalSearch) internalSearch);
     }
 
     public SearchEngineInternalSearch internalSearch(String[] subIndexes, String[] aliases) throws SearchEngineException {
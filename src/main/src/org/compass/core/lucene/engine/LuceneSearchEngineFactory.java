@@ -19,6 +19,8 @@ package org.compass.core.lucene.engine;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.compass.core.ResourceFactory;
+import org.compass.core.cache.second.DefaultSecondLevelCache;
+import org.compass.core.cache.second.SecondLevelCache;
 import org.compass.core.config.CompassConfigurable;
 import org.compass.core.config.CompassEnvironment;
 import org.compass.core.config.CompassSettings;
@@ -52,6 +54,7 @@ import org.compass.core.lucene.engine.spellcheck.InternalLuceneSearchEngineSpell
 import org.compass.core.lucene.engine.store.DefaultLuceneSearchEngineStore;
 import org.compass.core.lucene.engine.store.LuceneSearchEngineStore;
 import org.compass.core.lucene.engine.transaction.TransactionProcessorManager;
+import org.compass.core.lucene.search.FilterCache;
 import org.compass.core.mapping.CompassMapping;
 import org.compass.core.transaction.context.TransactionContext;
 import org.compass.core.util.ClassUtils;
@@ -75,6 +78,10 @@ public class LuceneSearchEngineFactory implements InternalSearchEngineFactory {
 
     private InternalLuceneSearchEngineSpellCheckManager spellCheckManager;
 
+    private DefaultSecondLevelCache secondLevelCache;
+
+    private final FilterCache filterCache;
+
     private final LuceneSearchEngineIndexManager indexManager;
 
     private final ExecutorManager executorManager;
@@ -115,6 +122,13 @@ public class LuceneSearchEngineFactory implements InternalSearchEngineFactory {
 
         resourceFactory = new LuceneResourceFactory(this);
 
+        if (settings.getSettingAsBoolean(CompassEnvironment.Cache.SecondLevel.ENABLE, false)) {
+            secondLevelCache = new DefaultSecondLevelCache();
+            secondLevelCache.configure(settings);
+        }
+
+        filterCache = new FilterCache(settings);
+
         // build the analyzers
         analyzerManager = new LuceneAnalyzerManager(settings, mapping);
 
@@ -163,6 +177,10 @@ public class LuceneSearchEngineFactory implements InternalSearchEngineFactory {
             spellCheckManager.close();
         }
         indexManager.close();
+        if (secondLevelCache != null) {
+            secondLevelCache.close();
+        }
+        filterCache.clear();
     }
 
     public boolean isDebug() {
@@ -178,7 +196,7 @@ public class LuceneSearchEngineFactory implements InternalSearchEngineFactory {
     }
 
     public SearchEngineQueryFilterBuilder queryFilterBuilder() throws SearchEngineException {
-        return new LuceneSearchEngineQueryFilterBuilder();
+        return new LuceneSearchEngineQueryFilterBuilder(filterCache);
     }
 
     public TransactionContext getTransactionContext() {
@@ -199,6 +217,7 @@ public class LuceneSearchEngineFactory implements InternalSearchEngineFactory {
         if (spellCheckManager != null) {
             spellCheckManager.start();
         }
+        transactionProcessorManager.start();
     }
 
     public void stop() {
@@ -241,6 +260,14 @@ public class LuceneSearchEngineFactory implements InternalSearchEngineFactory {
         return this.spellCheckManager;
     }
 
+    public SecondLevelCache getSecondLevelCache() {
+        return this.secondLevelCache;
+    }
+
+    public FilterCache getFilterCache() {
+        return this.filterCache;
+    }
+
     public SearchEngineIndexManager getIndexManager() {
         return indexManager;
     }
@@ -29,6 +29,9 @@ public class LuceneSearchEngineInternalSearch implements SearchEngineInternalSea
 
     private List<LuceneIndexHolder> indexHoldersToClose;
 
+    // the readers the search is composed of, null if not known
+    private IndexReader[] subReaders;
+
     private boolean closeReader;
 
     private boolean closeSearcher;
@@ -38,6 +41,7 @@ public class LuceneSearchEngineInternalSearch implements SearchEngineInternalSea
     public LuceneSearchEngineInternalSearch(LuceneSearchEngine searchEngine, List<LuceneIndexHolder> indexHolders) {
         this.searchEngine = searchEngine;
         this.indexHoldersToClose = indexHolders;
+        this.subReaders = new IndexReader[0];
     }
 
     public LuceneSearchEngineInternalSearch(LuceneSearchEngine searchEngine, MultiSearcher searcher, List<LuceneIndexHolder> indexHolders) {
@@ -50,6 +54,7 @@ public class LuceneSearchEngineInternalSearch implements SearchEngineInternalSea
             readers[i] = ((IndexSearcher) searchables[i]).getIndexReader();
         }
         indexReader = new CacheableMultiReader(readers, false);
+        this.subReaders = readers;
         this.closeReader = true;
         this.closeSearcher = true;
     }
@@ -59,6 +64,7 @@ public class LuceneSearchEngineInternalSearch implements SearchEngineInternalSea
         this.searcher = indexHolder.getIndexSearcher();
         this.indexReader = indexHolder.getIndexReader();
         this.indexHoldersToClose = indexHolders;
+        this.subReaders = new IndexReader[]{indexReader};
         this.closeReader = false;
         this.closeSearcher = false;
     }
@@ -97,6 +103,30 @@ public class LuceneSearchEngineInternalSearch implements SearchEngineInternalSea
         return this.indexReader;
     }
 
+    /**
+     * Returns the (cached) index holders this internal search is composed of, or <code>null</code> if it
+     * also searches other readers (for example, ones holding uncommitted transactional changes). Results
+     * computed using the index holders can be cached for as long as the index holders are.
+     */
+    public List<LuceneIndexHolder> getIndexHolders() {
+        if (subReaders == null || indexHoldersToClose == null) {
+            return null;
+        }
+        for (IndexReader subReader : subReaders) {
+            boolean found = false;
+            for (LuceneIndexHolder indexHolder : indexHoldersToClose) {
+                if (indexHolder.getIndexReader() == subReader) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return null;
+            }
+        }
+        return indexHoldersToClose;
+    }
+
     /**
      * [Intenral]: Closes without removing the delegate.
      */
@@ -23,9 +23,11 @@ import java.util.Locale;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
 import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.HitCollector;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
@@ -39,7 +41,9 @@ import org.compass.core.engine.SearchEngineHits;
 import org.compass.core.engine.SearchEngineQuery;
 import org.compass.core.engine.SearchEngineQueryFilter;
 import org.compass.core.lucene.engine.queryparser.QueryHolder;
+import org.compass.core.lucene.search.CachingFilter;
 import org.compass.core.lucene.search.CountHitCollector;
+import org.compass.core.lucene.search.FilterCache;
 
 /**
  * @author kimchy
@@ -78,6 +82,8 @@ public class LuceneSearchEngineQuery implements SearchEngineQuery, Cloneable {
 
     private boolean rewrite;
 
+    private boolean cacheable = true;
+
     private boolean suggested;
 
     public LuceneSearchEngineQuery(LuceneSearchEngineFactory searchEngineFactory, Query query) {
@@ -245,7 +251,13 @@ public class LuceneSearchEngineQuery implements SearchEngineQuery, Cloneable {
 
         BooleanQuery boolQuery = new BooleanQuery();
         boolQuery.add(origQuery, BooleanClause.Occur.MUST);
-        boolQuery.add(boolQuery2, BooleanClause.Occur.MUST);
+        FilterCache filterCache = searchEngineFactory.getFilterCache();
+        if (filterCache.isEnabled()) {
+            // reuse the cached aliases doc id set, note that the aliases clause scores as a constant
+            boolQuery.add(new ConstantScoreQuery(new CachingFilter(new QueryWrapperFilter(boolQuery2), filterCache)), BooleanClause.Occur.MUST);
+        } else {
+            boolQuery.add(boolQuery2, BooleanClause.Occur.MUST);
+        }
         this.query = boolQuery;
 
         this.aliases = aliases;
@@ -282,6 +294,15 @@ public class LuceneSearchEngineQuery implements SearchEngineQuery, Cloneable {
         return this.rewrite;
     }
 
+    public SearchEngineQuery setCacheable(boolean cacheable) {
+        this.cacheable = cacheable;
+        return this;
+    }
+
+    public boolean isCacheable() {
+        return this.cacheable;
+    }
+
     public boolean isSuggested() {
         return this.suggested;
     }
@@ -17,70 +17,192 @@
 package org.compass.core.lucene.engine;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermEnum;
 import org.compass.core.CompassTermFreq;
 import org.compass.core.engine.SearchEngineException;
 import org.compass.core.engine.SearchEngineTermFrequencies;
 import org.compass.core.impl.DefaultCompassTermFreq;
+import org.compass.core.lucene.engine.manager.LuceneIndexHolder;
+import org.compass.core.lucene.engine.manager.LuceneSearchEngineIndexManager;
+import org.compass.core.lucene.engine.manager.TermFreqsCache;
 
 /**
+ * Computes the top <code>size</code> term frequencies of the given properties. Each property terms are
+ * enumerated using a bounded min heap, so only terms that are (currently) within the top <code>size</code>
+ * ones are created. When several properties are requested and the index supports concurrent operations,
+ * the properties are enumerated concurrently and their top terms merged.
+ *
+ * <p>Results are cached using the {@link TermFreqsCache} when the internal search is composed only
+ * of cached index holders.
+ *
  * @author kimchy
  */
 public class LuceneSearchEngineTermFrequencies implements SearchEngineTermFrequencies {
 
     private CompassTermFreq[] termFreqs;
 
-    public LuceneSearchEngineTermFrequencies(String[] propertyNames, int size, LuceneSearchEngineInternalSearch internalSearch) throws SearchEngineException {
+    public LuceneSearchEngineTermFrequencies(LuceneSearchEngine searchEngine, String[] propertyNames, int size,
+                                             LuceneSearchEngineInternalSearch internalSearch) throws SearchEngineException {
 
-        if (internalSearch.isEmpty()) {
+        if (internalSearch.isEmpty() || size <= 0) {
             termFreqs = new CompassTermFreq[0];
             return;
         }
 
-        PriorityQueue<CompassTermFreq> queue = new PriorityQueue<CompassTermFreq>(10, new Comparator<CompassTermFreq>() {
-            public int compare(CompassTermFreq a, CompassTermFreq b) {
-                return (int) (b.getFreq() - a.getFreq());
-            }
-        });
-
-        for (String propertyName : propertyNames) {
-            TermEnum termEnum = null;
-            try {
-                termEnum = internalSearch.getReader().terms(new Term(propertyName, ""));
-                while (termEnum.term() != null && propertyName.equals(termEnum.term().field())) {
-                    queue.add(new DefaultCompassTermFreq(termEnum.term().text(), termEnum.docFreq(), propertyName));
-                    if (!termEnum.next()) {
-                        break;
-                    }
-                }
-            } catch (IOException e) {
-                throw new SearchEngineException("Failed to get term freq for proeprty [" + propertyName + "]", e);
-            } finally {
-                if (termEnum != null) {
-                    try {
-                        termEnum.close();
-                    } catch (IOException e) {
-                        // do nothing here, maybe warn?
-                    }
+        LuceneSearchEngineIndexManager indexManager = searchEngine.getSearchEngineFactory().getLuceneIndexManager();
+        TermFreqsCache termFreqsCache = indexManager.getIndexHoldersCache().getTermFreqsCache();
+        List<LuceneIndexHolder> indexHolders = null;
+        if (termFreqsCache.isEnabled()) {
+            indexHolders = internalSearch.getIndexHolders();
+            if (indexHolders != null) {
+                termFreqs = termFreqsCache.get(propertyNames, size, indexHolders);
+                if (termFreqs != null) {
+                    return;
                 }
             }
         }
-        int retSize = size;
-        if (queue.size() < size) {
-            retSize = queue.size();
+
+        TermFreqComparator comparator = new TermFreqComparator(propertyNames);
+        PriorityQueue<CompassTermFreq> queue;
+        if (propertyNames.length > 1 && indexManager.supportsConcurrentOperations()) {
+            queue = concurrentTopTerms(searchEngine, propertyNames, size, comparator, internalSearch.getReader());
+        } else {
+            queue = new PriorityQueue<CompassTermFreq>(size, comparator);
+            for (String propertyName : propertyNames) {
+                topTerms(internalSearch.getReader(), propertyName, size, comparator, queue);
+            }
         }
-        termFreqs = new CompassTermFreq[retSize];
-        for (int i = 0; i < termFreqs.length; i++) {
+
+        termFreqs = new CompassTermFreq[queue.size()];
+        for (int i = termFreqs.length - 1; i >= 0; i--) {
             termFreqs[i] = queue.poll();
         }
+
+        if (indexHolders != null) {
+            termFreqsCache.put(propertyNames, size, indexHolders, termFreqs);
+        }
     }
 
     public CompassTermFreq[] getTerms() {
         return termFreqs;
     }
 
+    private static PriorityQueue<CompassTermFreq> concurrentTopTerms(LuceneSearchEngine searchEngine, String[] propertyNames,
+                                                                     final int size, final TermFreqComparator comparator,
+                                                                     final IndexReader reader) {
+        List<Callable<PriorityQueue<CompassTermFreq>>> tasks = new ArrayList<Callable<PriorityQueue<CompassTermFreq>>>(propertyNames.length);
+        for (final String propertyName : propertyNames) {
+            tasks.add(new Callable<PriorityQueue<CompassTermFreq>>() {
+                public PriorityQueue<CompassTermFreq> call() throws Exception {
+                    PriorityQueue<CompassTermFreq> queue = new PriorityQueue<CompassTermFreq>(size, comparator);
+                    topTerms(reader, propertyName, size, comparator, queue);
+                    return queue;
+                }
+            });
+        }
+        List<Future<PriorityQueue<CompassTermFreq>>> futures = searchEngine.getSearchEngineFactory().getExecutorManager().invokeAllWithLimit(tasks, 1);
+        PriorityQueue<CompassTermFreq> queue = new PriorityQueue<CompassTermFreq>(size, comparator);
+        for (int i = 0; i < futures.size(); i++) {
+            PriorityQueue<CompassTermFreq> propertyQueue;
+            try {
+                propertyQueue = futures.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SearchEngineException("Interrupted while getting term freq for property [" + propertyNames[i] + "]");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof SearchEngineException) {
+                    throw (SearchEngineException) e.getCause();
+                }
+                throw new SearchEngineException("Failed to get term freq for property [" + propertyNames[i] + "]", e.getCause());
+            }
+            for (CompassTermFreq termFreq : propertyQueue) {
+                offer(queue, size, comparator, termFreq);
+            }
+        }
+        return queue;
+    }
+
+    /**
+     * Adds the top <code>size</code> terms of the given property to the queue, keeping it bounded
+     * to <code>size</code> term frequencies.
+     */
+    private static void topTerms(IndexReader reader, String propertyName, int size, TermFreqComparator comparator,
+                                 PriorityQueue<CompassTermFreq> queue) throws SearchEngineException {
+        TermEnum termEnum = null;
+        try {
+            termEnum = reader.terms(new Term(propertyName, ""));
+            while (termEnum.term() != null && propertyName.equals(termEnum.term().field())) {
+                int docFreq = termEnum.docFreq();
+                // only create the term freq if it is going to make it into the queue
+                if (queue.size() < size || comparator.compare(docFreq, propertyName, termEnum.term().text(), queue.peek()) > 0) {
+                    offer(queue, size, comparator, new DefaultCompassTermFreq(termEnum.term().text(), docFreq, propertyName));
+                }
+                if (!termEnum.next()) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new SearchEngineException("Failed to get term freq for proeprty [" + propertyName + "]", e);
+        } finally {
+            if (termEnum != null) {
+                try {
+                    termEnum.close();
+                } catch (IOException e) {
+                    // do nothing here, maybe warn?
+                }
+            }
+        }
+    }
+
+    private static void offer(PriorityQueue<CompassTermFreq> queue, int size, TermFreqComparator comparator,
+                              CompassTermFreq termFreq) {
+        if (queue.size() < size) {
+            queue.add(termFreq);
+        } else if (comparator.compare(termFreq, queue.peek()) > 0) {
+            queue.poll();
+            queue.add(termFreq);
+        }
+    }
+
+    /**
+     * Orders term frequencies from the least frequent to the most frequent one. Ties are broken by the order
+     * of the requested property names and then by the term, with earlier ones considered more frequent.
+     */
+    private static final class TermFreqComparator implements Comparator<CompassTermFreq> {
+
+        private final Map<String, Integer> propertyOrder = new HashMap<String, Integer>();
+
+        TermFreqComparator(String[] propertyNames) {
+            for (int i = propertyNames.length - 1; i >= 0; i--) {
+                propertyOrder.put(propertyNames[i], i);
+            }
+        }
+
+        public int compare(CompassTermFreq a, CompassTermFreq b) {
+            return compare(a.getFreq(), a.getPropertyName(), a.getTerm(), b);
+        }
+
+        int compare(float freq, String propertyName, String term, CompassTermFreq other) {
+            if (freq != other.getFreq()) {
+                return freq < other.getFreq() ? -1 : 1;
+            }
+            int c = propertyOrder.get(other.getPropertyName()) - propertyOrder.get(propertyName);
+            if (c != 0) {
+                return c;
+            }
+            return other.getTerm().compareTo(term);
+        }
+    }
 }
@@ -0,0 +1,493 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.lucene.engine;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.FieldSelectorResult;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.FieldSortedHitQueue;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.HitCollector;
+import org.apache.lucene.search.Hits;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.util.OpenBitSet;
+import org.compass.core.Resource;
+import org.compass.core.engine.SearchEngineException;
+import org.compass.core.engine.SearchEngineHighlighter;
+import org.compass.core.lucene.LuceneResource;
+import org.compass.core.lucene.engine.manager.QueryResultCache;
+
+/**
+ * Search engine hits based on Lucene <code>TopDocs</code> instead of the deprecated Lucene {@link Hits}.
+ *
+ * <p>Only the top documents window is kept in memory (doc ids and scores). Documents are never cached,
+ * and are loaded (optionally with lazy fields) each time a hit is accessed. When a hit beyond the current
+ * window is requested, the window is expanded (at least doubled) and the search is executed again.
+ * {@link #fetch(int, int)} can be used in order to make sure an explicit window of hits is available.
+ *
+ * <p>When a {@link QueryResultCache} key is provided, top docs windows are looked up in (and stored to)
+ * the query result cache, so repeated searches do not execute against Lucene.
+ *
+ * <p>{@link #iterator()} allows to stream very large result sets (for example, exports). The search is executed
+ * once, collecting only the matching doc ids (a bit set when the query has no sort, or a sorted int array when it
+ * has), and each document is only loaded when it is iterated. Note, when the query has no sort, resources are
+ * streamed in index order and not by relevance.
+ *
+ * @author kimchy
+ */
+public class TopDocsLuceneSearchEngineHits implements LuceneSearchEngineHits, Iterable<Resource> {
+
+    private static final FieldSelector LAZY_FIELD_SELECTOR = new FieldSelector() {
+        public FieldSelectorResult accept(String fieldName) {
+            return FieldSelectorResult.LAZY_LOAD;
+        }
+    };
+
+    private final LuceneSearchEngine searchEngine;
+
+    private final LuceneSearchEngineQuery query;
+
+    private final Query luceneQuery;
+
+    private final Filter filter;
+
+    private final Sort sort;
+
+    private final FieldSelector fieldSelector;
+
+    private final int initialSize;
+
+    private final QueryResultCache queryResultCache;
+
+    private final QueryResultCache.Key queryResultCacheKey;
+
+    private LuceneSearchEngineInternalSearch internalSearch;
+
+    private SearchEngineHighlighter highlighter;
+
+    private ScoreDoc[] scoreDocs;
+
+    private Hits hits;
+
+    private int totalHits;
+
+    private float scoreNorm = 1.0f;
+
+    public TopDocsLuceneSearchEngineHits(Query luceneQuery, Filter filter, LuceneSearchEngine searchEngine,
+                                         LuceneSearchEngineQuery query, LuceneSearchEngineInternalSearch internalSearch,
+                                         int initialSize, boolean lazyFields) throws SearchEngineException {
+        this(luceneQuery, filter, searchEngine, query, internalSearch, initialSize, lazyFields, null, null);
+    }
+
+    public TopDocsLuceneSearchEngineHits(Query luceneQuery, Filter filter, LuceneSearchEngine searchEngine,
+                                         LuceneSearchEngineQuery query, LuceneSearchEngineInternalSearch internalSearch,
+                                         int initialSize, boolean lazyFields, QueryResultCache queryResultCache,
+                                         QueryResultCache.Key queryResultCacheKey) throws SearchEngineException {
+        this.queryResultCache = queryResultCache;
+        this.queryResultCacheKey = queryResultCacheKey;
+        this.luceneQuery = luceneQuery;
+        this.filter = filter;
+        this.sort = query.getSort();
+        this.searchEngine = searchEngine;
+        this.query = query;
+        this.internalSearch = internalSearch;
+        this.initialSize = initialSize < 1 ? 1 : initialSize;
+        this.fieldSelector = lazyFields ? LAZY_FIELD_SELECTOR : null;
+        search(this.initialSize);
+    }
+
+    public Resource getResource(int i) throws SearchEngineException {
+        verifyWithinTransaction();
+        int doc = scoreDoc(i).doc;
+        return new LuceneResource(loadDocument(doc), doc, searchEngine.getSearchEngineFactory());
+    }
+
+    public int getLength() {
+        return totalHits;
+    }
+
+    public float score(int i) throws SearchEngineException {
+        verifyWithinTransaction();
+        return scoreDoc(i).score * scoreNorm;
+    }
+
+    /**
+     * Makes sure that the hits window from <code>from</code> (inclusive) up to <code>from + size</code>
+     * (exclusive) is fetched, executing the search again only if it is not.
+     */
+    public void fetch(int from, int size) throws SearchEngineException {
+        verifyWithinTransaction();
+        int upTo = Math.min(from + size, totalHits);
+        if (upTo > scoreDocs.length) {
+            search(upTo);
+        }
+    }
+
+    /**
+     * Returns the number of top hits currently fetched.
+     */
+    public int getFetchedLength() {
+        return scoreDocs.length;
+    }
+
+    /**
+     * Returns Lucene {@link Hits} for the same query, filter and sort. Since top docs hits do not use Lucene
+     * hits, they are lazily created (executing the search again) on the first call.
+     */
+    public Hits getHits() {
+        verifyWithinTransaction();
+        if (hits == null) {
+            try {
+                if (sort == null) {
+                    hits = internalSearch.getSearcher().search(luceneQuery, filter);
+                } else {
+                    hits = internalSearch.getSearcher().search(luceneQuery, filter, sort);
+                }
+            } catch (IOException e) {
+                throw new SearchEngineException("Failed to search with query [" + luceneQuery + "]", e);
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Returns an iterator streaming all the resources matching the query. The search is executed once, only
+     * collecting the matching doc ids: if the query has no sort, they are marked in a bit set and streamed in
+     * index order, otherwise they are collected (with their scores) and sorted using the query sort. Each
+     * document is loaded on {@link Iterator#next()} without being retained. Must be used within a running
+     * transaction.
+     */
+    public Iterator<Resource> iterator() throws SearchEngineException {
+        verifyWithinTransaction();
+        IndexReader reader = internalSearch.getReader();
+        try {
+            if (sort == null) {
+                BitSetCollector collector = new BitSetCollector(reader.maxDoc());
+                internalSearch.getSearcher().search(luceneQuery, filter, collector);
+                return new BitSetIterator(collector.docs);
+            }
+            SortedCollector collector = new SortedCollector();
+            internalSearch.getSearcher().search(luceneQuery, filter, collector);
+            return new SortedIterator(collector.sortedDocs(reader, sort.getSort()));
+        } catch (IOException e) {
+            throw new SearchEngineException("Failed to search with query [" + luceneQuery + "]", e);
+        }
+    }
+
+    public SearchEngineHighlighter getHighlighter() throws SearchEngineException {
+        verifyWithinTransaction();
+        if (highlighter == null) {
+            highlighter = new LuceneSearchEngineHighlighter(query.getOriginalQuery(), internalSearch.getReader(), searchEngine);
+        }
+        return highlighter.clear();
+    }
+
+    public Explanation explain(int i) throws SearchEngineException {
+        verifyWithinTransaction();
+        try {
+            return internalSearch.getSearcher().explain(query.getQuery(), scoreDoc(i).doc);
+        } catch (IOException e) {
+            throw new SearchEngineException("Failed to explain hit [" + i + "]", e);
+        }
+    }
+
+    public void closeDelegate() throws SearchEngineException {
+        close(false);
+    }
+
+    public void close() throws SearchEngineException {
+        close(true);
+    }
+
+    private void close(boolean removeDelegate) throws SearchEngineException {
+        if (internalSearch != null) {
+            try {
+                internalSearch.close();
+            } finally {
+                internalSearch = null;
+                if (removeDelegate) {
+                    searchEngine.removeDelegatedClose(this);
+                }
+            }
+        }
+    }
+
+    private ScoreDoc scoreDoc(int i) throws SearchEngineException {
+        if (i < 0 || i >= totalHits) {
+            throw new IndexOutOfBoundsException("Not a valid hit number: " + i);
+        }
+        if (i >= scoreDocs.length) {
+            search(Math.max(scoreDocs.length * 2, i + initialSize));
+        }
+        return scoreDocs[i];
+    }
+
+    private void search(int n) throws SearchEngineException {
+        TopDocs topDocs = null;
+        if (queryResultCache != null) {
+            topDocs = queryResultCache.get(queryResultCacheKey, n);
+        }
+        if (topDocs == null) {
+            try {
+                if (sort == null) {
+                    topDocs = internalSearch.getSearcher().search(luceneQuery, filter, n);
+                } else {
+                    topDocs = internalSearch.getSearcher().search(luceneQuery, filter, n, sort);
+                }
+            } catch (IOException e) {
+                throw new SearchEngineException("Failed to search with query [" + luceneQuery + "]", e);
+            }
+            if (queryResultCache != null) {
+                queryResultCache.put(queryResultCacheKey, topDocs);
+            }
+        }
+        scoreDocs = topDocs.scoreDocs;
+        totalHits = topDocs.totalHits;
+        // normalize scores the same way Lucene Hits does
+        float maxScore = topDocs.getMaxScore();
+        scoreNorm = maxScore > 1.0f ? 1.0f / maxScore : 1.0f;
+    }
+
+    private Document loadDocument(int doc) throws SearchEngineException {
+        try {
+            if (fieldSelector == null) {
+                return internalSearch.getSearcher().doc(doc);
+            }
+            return internalSearch.getSearcher().doc(doc, fieldSelector);
+        } catch (IOException e) {
+            throw new SearchEngineException("Failed to load document [" + doc + "]", e);
+        }
+    }
+
+    private void verifyWithinTransaction() throws SearchEngineException {
+        if (!searchEngine.isWithinTransaction()) {
+            throw new SearchEngineException("Accessing hits outside of a running transaction, either expand the " +
+                    "transaction scope or detach the hits");
+        }
+    }
+
+    /**
+     * Streams the resources of the docs marked in a bit set, in index order.
+     */
+    private class BitSetIterator implements Iterator<Resource> {
+
+        private final OpenBitSet docs;
+
+        private int doc;
+
+        private BitSetIterator(OpenBitSet docs) {
+            this.docs = docs;
+            this.doc = docs.nextSetBit(0);
+        }
+
+        public boolean hasNext() {
+            return doc != -1;
+        }
+
+        public Resource next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            verifyWithinTransaction();
+            int current = doc;
+            doc = docs.nextSetBit(current + 1);
+            return new LuceneResource(loadDocument(current), current, searchEngine.getSearchEngineFactory());
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("Remove is not supported");
+        }
+    }
+
+    /**
+     * Streams the resources of an already sorted array of docs.
+     */
+    private class SortedIterator implements Iterator<Resource> {
+
+        private final int[] docs;
+
+        private int index;
+
+        private SortedIterator(int[] docs) {
+            this.docs = docs;
+        }
+
+        public boolean hasNext() {
+            return index < docs.length;
+        }
+
+        public Resource next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            verifyWithinTransaction();
+            int doc = docs[index++];
+            return new LuceneResource(loadDocument(doc), doc, searchEngine.getSearchEngineFactory());
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("Remove is not supported");
+        }
+    }
+
+    /**
+     * Marks the matching docs in a bit set (one bit per doc in the index).
+     */
+    private static class BitSetCollector extends HitCollector {
+
+        private final OpenBitSet docs;
+
+        private BitSetCollector(int maxDoc) {
+            this.docs = new OpenBitSet(maxDoc);
+        }
+
+        public void collect(int doc, float score) {
+            // same as top docs collectors, ignore non positive scores
+            if (score > 0.0f) {
+                docs.fastSet(doc);
+            }
+        }
+    }
+
+    /**
+     * Collects the matching docs and their scores into growing arrays, and sorts them once collected using the
+     * sort comparators of Lucene {@link FieldSortedHitQueue} (which break ties using the doc id, so the order is
+     * the same as the one of top docs).
+     */
+    private static class SortedCollector extends HitCollector {
+
+        private int[] docs = new int[64];
+
+        private float[] scores = new float[64];
+
+        private int size;
+
+        public void collect(int doc, float score) {
+            // same as top docs collectors, ignore non positive scores
+            if (score <= 0.0f) {
+                return;
+            }
+            if (size == docs.length) {
+                int[] newDocs = new int[size * 2];
+                System.arraycopy(docs, 0, newDocs, 0, size);
+                docs = newDocs;
+                float[] newScores = new float[size * 2];
+                System.arraycopy(scores, 0, newScores, 0, size);
+                scores = newScores;
+            }
+            docs[size] = doc;
+            scores[size] = score;
+            size++;
+        }
+
+        private int[] sortedDocs(IndexReader reader, SortField[] sortFields) throws IOException {
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            new OrderSorter(new SortQueue(reader, sortFields), docs, scores).sort(order);
+            int[] sorted = new int[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = docs[order[i]];
+            }
+            return sorted;
+        }
+    }
+
+    /**
+     * Merge sorts positions into the collected docs and scores arrays, reusing two score docs for the
+     * comparisons so no object is created per collected doc.
+     */
+    private static class OrderSorter {
+
+        private final SortQueue queue;
+
+        private final int[] docs;
+
+        private final float[] scores;
+
+        private final FieldDoc first = new FieldDoc(0, 0);
+
+        private final FieldDoc second = new FieldDoc(0, 0);
+
+        private OrderSorter(SortQueue queue, int[] docs, float[] scores) {
+            this.queue = queue;
+            this.docs = docs;
+            this.scores = scores;
+        }
+
+        void sort(int[] order) {
+            int[] aux = new int[order.length];
+            for (int width = 1; width < order.length; width *= 2) {
+                for (int from = 0; from < order.length - width; from += width * 2) {
+                    merge(order, aux, from, from + width, Math.min(from + width * 2, order.length));
+                }
+            }
+        }
+
+        private void merge(int[] order, int[] aux, int from, int mid, int to) {
+            System.arraycopy(order, from, aux, from, to - from);
+            int i = from;
+            int j = mid;
+            for (int k = from; k < to; k++) {
+                if (i == mid) {
+                    order[k] = aux[j++];
+                } else if (j == to) {
+                    order[k] = aux[i++];
+                } else if (sortsBefore(aux[j], aux[i])) {
+                    order[k] = aux[j++];
+                } else {
+                    order[k] = aux[i++];
+                }
+            }
+        }
+
+        private boolean sortsBefore(int position, int otherPosition) {
+            first.doc = docs[position];
+            first.score = scores[position];
+            second.doc = docs[otherPosition];
+            second.score = scores[otherPosition];
+            return queue.sortsAfter(second, first);
+        }
+    }
+
+    /**
+     * Only used for its sort comparators.
+     */
+    private static class SortQueue extends FieldSortedHitQueue {
+
+        private SortQueue(IndexReader reader, SortField[] fields) throws IOException {
+            super(reader, fields, 1);
+        }
+
+        boolean sortsAfter(ScoreDoc doc, ScoreDoc other) {
+            // the queue keeps the doc that sorts last at its top, so lessThan means sorts after
+            return lessThan(doc, other);
+        }
+    }
+}
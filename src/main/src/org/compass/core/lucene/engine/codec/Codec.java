@@ -0,0 +1,44 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.lucene.engine.codec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Encodes and decodes values of a given type to and from a compact binary representation. Codecs are used
+ * when resources and transaction jobs need to be moved around (queued, logged to disk, or sent over the wire)
+ * instead of Java serialization.
+ *
+ * <p>Codecs should be thread safe.
+ *
+ * @author kimchy
+ * @see CodecHelper
+ */
+public interface Codec<T> {
+
+    /**
+     * Encodes the given value into the output.
+     */
+    void encode(T value, DataOutput out) throws IOException;
+
+    /**
+     * Decodes a value from the input, previously encoded using {@link #encode(Object, java.io.DataOutput)}.
+     */
+    T decode(DataInput in) throws IOException;
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.lucene.engine.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Helper methods used by {@link Codec} implementations.
+ *
+ * @author kimchy
+ */
+public abstract class CodecHelper {
+
+    private static final String UTF8 = "UTF-8";
+
+    /**
+     * Writes an int in a variable length format (one to five bytes, smaller values take fewer bytes).
+     * Negative values always take five bytes.
+     */
+    public static void writeVInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Reads an int written using {@link #writeVInt(java.io.DataOutput, int)}.
+     */
+    public static int readVInt(DataInput in) throws IOException {
+        byte b = in.readByte();
+        int value = b & 0x7F;
+        for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+            b = in.readByte();
+            value |= (b & 0x7F) << shift;
+        }
+        return value;
+    }
+
+    /**
+     * Writes a (possibly <code>null</code>) string as its length followed by its UTF-8 bytes. Unlike
+     * {@link java.io.DataOutput#writeUTF(String)}, the string length is not limited.
+     */
+    public static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            writeVInt(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF8);
+        writeVInt(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written using {@link #writeString(java.io.DataOutput, String)}.
+     */
+    public static String readString(DataInput in) throws IOException {
+        int length = readVInt(in);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Writes the given bytes as their length followed by the bytes.
+     */
+    public static void writeBytes(DataOutput out, byte[] bytes, int offset, int length) throws IOException {
+        writeVInt(out, length);
+        out.write(bytes, offset, length);
+    }
+
+    /**
+     * Reads bytes written using {@link #writeBytes(java.io.DataOutput, byte[], int, int)}.
+     */
+    public static byte[] readBytes(DataInput in) throws IOException {
+        byte[] bytes = new byte[readVInt(in)];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Encodes the value using the codec into a byte array.
+     */
+    public static <T> byte[] toBytes(Codec<T> codec, T value) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        codec.encode(value, out);
+        out.flush();
+        return bos.toByteArray();
+    }
+
+    /**
+     * Decodes a value using the codec from a byte array created using {@link #toBytes(Codec, Object)}.
+     */
+    public static <T> T fromBytes(Codec<T> codec, byte[] bytes) throws IOException {
+        return codec.decode(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    /**
+     * Reads the version byte of a codec format, failing if it is newer than the version the codec supports.
+     */
+    public static byte readVersion(DataInput in, byte supportedVersion, String format) throws IOException {
+        byte version = in.readByte();
+        if (version < 1 || version > supportedVersion) {
+            throw new IOException("Unsupported " + format + " format version [" + version + "], supports up to [" + supportedVersion + "]");
+        }
+        return version;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.lucene.engine.codec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Fieldable;
+
+/**
+ * A {@link Codec} for Lucene {@link org.apache.lucene.document.Fieldable} with a string or a binary value. The
+ * field is encoded as its name, a variable length flags int (store, index, term vector, norms and boost settings),
+ * the boost (only if it is not the default one) and its value.
+ *
+ * <p>Fields with a <code>Reader</code> or a <code>TokenStream</code> value can not be encoded.
+ *
+ * @author kimchy
+ */
+public class FieldCodec implements Codec<Fieldable> {
+
+    private static final int STORED = 1;
+
+    private static final int INDEXED = 1 << 1;
+
+    private static final int TOKENIZED = 1 << 2;
+
+    private static final int COMPRESSED = 1 << 3;
+
+    private static final int BINARY = 1 << 4;
+
+    private static final int OMIT_NORMS = 1 << 5;
+
+    private static final int OMIT_TF = 1 << 6;
+
+    private static final int TERM_VECTOR = 1 << 7;
+
+    private static final int TERM_VECTOR_POSITIONS = 1 << 8;
+
+    private static final int TERM_VECTOR_OFFSETS = 1 << 9;
+
+    private static final int BOOST = 1 << 10;
+
+    public void encode(Fieldable field, DataOutput out) throws IOException {
+        if (!field.isBinary() && field.stringValue() == null) {
+            throw new IOException("Field [" + field.name() + "] does not have a string or a binary value, and can not be encoded");
+        }
+        int flags = 0;
+        if (field.isStored()) flags |= STORED;
+        if (field.isIndexed()) flags |= INDEXED;
+        if (field.isTokenized()) flags |= TOKENIZED;
+        if (field.isCompressed()) flags |= COMPRESSED;
+        if (field.isBinary()) flags |= BINARY;
+        if (field.getOmitNorms()) flags |= OMIT_NORMS;
+        if (field.getOmitTf()) flags |= OMIT_TF;
+        if (field.isTermVectorStored()) flags |= TERM_VECTOR;
+        if (field.isStorePositionWithTermVector()) flags |= TERM_VECTOR_POSITIONS;
+        if (field.isStoreOffsetWithTermVector()) flags |= TERM_VECTOR_OFFSETS;
+        if (field.getBoost() != 1.0f) flags |= BOOST;
+
+        CodecHelper.writeString(out, field.name());
+        CodecHelper.writeVInt(out, flags);
+        if ((flags & BOOST) != 0) {
+            out.writeFloat(field.getBoost());
+        }
+        if (field.isBinary()) {
+            CodecHelper.writeBytes(out, field.getBinaryValue(), field.getBinaryOffset(), field.getBinaryLength());
+        } else {
+            CodecHelper.writeString(out, field.stringValue());
+        }
+    }
+
+    public Fieldable decode(DataInput in) throws IOException {
+        String name = CodecHelper.readString(in);
+        int flags = CodecHelper.readVInt(in);
+        float boost = 1.0f;
+        if ((flags & BOOST) != 0) {
+            boost = in.readFloat();
+        }
+
+        Field.Store store;
+        if ((flags & COMPRESSED) != 0) {
+            store = Field.Store.COMPRESS;
+        } else if ((flags & STORED) != 0) {
+            store = Field.Store.YES;
+        } else {
+            store = Field.Store.NO;
+        }
+
+        Field field;
+        if ((flags & BINARY) != 0) {
+            field = new Field(name, CodecHelper.readBytes(in), store);
+        } else {
+            String value = CodecHelper.readString(in);
+            Field.Index index;
+            if ((flags & INDEXED) == 0) {
+                index = Field.Index.NO;
+            } else if ((flags & TOKENIZED) != 0) {
+                index = Field.Index.ANALYZED;
+            } else {
+                index = Field.Index.NOT_ANALYZED;
+            }
+            Field.TermVector termVector = Field.TermVector.NO;
+            if ((flags & TERM_VECTOR) != 0) {
+                boolean positions = (flags & TERM_VECTOR_POSITIONS) != 0;
+                boolean offsets = (flags & TERM_VECTOR_OFFSETS) != 0;
+                if (positions && offsets) {
+                    termVector = Field.TermVector.WITH_POSITIONS_OFFSETS;
+                } else if (positions) {
+                    termVector = Field.TermVector.WITH_POSITIONS;
+                } else if (offsets) {
+                    termVector = Field.TermVector.WITH_OFFSETS;
+                } else {
+                    termVector = Field.TermVector.YES;
+                }
+            }
+            field = new Field(name, value, store, index, termVector);
+        }
+        field.setOmitNorms((flags & OMIT_NORMS) != 0);
+        field.setOmitTf((flags & OMIT_TF) != 0);
+        field.setBoost(boost);
+        return field;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.lucene.engine.codec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.lucene.document.Document;
+import org.compass.core.Property;
+import org.compass.core.lucene.LuceneProperty;
+import org.compass.core.lucene.LuceneResource;
+import org.compass.core.lucene.engine.LuceneSearchEngineFactory;
+import org.compass.core.spi.InternalResource;
+
+/**
+ * A {@link Codec} for {@link org.compass.core.lucene.LuceneResource}. The resource is encoded as a format version,
+ * its boost, and its properties (including the alias property) encoded using {@link FieldCodec}. Decoded resources
+ * are attached to the search engine factory the codec was created with.
+ *
+ * @author kimchy
+ */
+public class ResourceCodec implements Codec<InternalResource> {
+
+    public static final byte VERSION = 1;
+
+    private final LuceneSearchEngineFactory searchEngineFactory;
+
+    private final FieldCodec fieldCodec = new FieldCodec();
+
+    public ResourceCodec(LuceneSearchEngineFactory searchEngineFactory) {
+        this.searchEngineFactory = searchEngineFactory;
+    }
+
+    public void encode(InternalResource resource, DataOutput out) throws IOException {
+        if (!(resource instanceof LuceneResource)) {
+            throw new IOException("Resource [" + resource + "] is not a lucene resource, and can not be encoded");
+        }
+        out.writeByte(VERSION);
+        out.writeFloat(resource.getBoost());
+        Property[] properties = resource.getProperties();
+        CodecHelper.writeVInt(out, properties.length);
+        for (Property property : properties) {
+            fieldCodec.encode(((LuceneProperty) property).getField(), out);
+        }
+    }
+
+    public InternalResource decode(DataInput in) throws IOException {
+        CodecHelper.readVersion(in, VERSION, "resource");
+        float boost = in.readFloat();
+        int size = CodecHelper.readVInt(in);
+        Document document = new Document();
+        for (int i = 0; i < size; i++) {
+            document.add(fieldCodec.decode(in));
+        }
+        LuceneResource resource = new LuceneResource(document, -1, searchEngineFactory);
+        resource.setBoost(boost);
+        return resource;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.lucene.engine.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * A {@link Codec} that uses Java serialization, writing the serialized form prefixed with its length.
+ * Used for values that have no compact binary representation.
+ *
+ * @author kimchy
+ */
+public class SerializableCodec<T extends Serializable> implements Codec<T> {
+
+    public void encode(T value, DataOutput out) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(bos);
+        oos.writeObject(value);
+        oos.close();
+        byte[] bytes = bos.toByteArray();
+        CodecHelper.writeBytes(out, bytes, 0, bytes.length);
+    }
+
+    public T decode(DataInput in) throws IOException {
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(CodecHelper.readBytes(in)));
+        try {
+            return (T) ois.readObject();
+        } catch (ClassNotFoundException e) {
+            IOException ioe = new IOException("Failed to find class [" + e.getMessage() + "]");
+            ioe.initCause(e);
+            throw ioe;
+        } finally {
+            ois.close();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.lucene.engine.codec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.lucene.search.Query;
+import org.compass.core.Property;
+import org.compass.core.engine.SearchEngineException;
+import org.compass.core.lucene.LuceneProperty;
+import org.compass.core.lucene.engine.LuceneSearchEngineFactory;
+import org.compass.core.lucene.engine.transaction.support.job.CreateTransactionJob;
+import org.compass.core.lucene.engine.transaction.support.job.DeleteByQueryTransactionJob;
+import org.compass.core.lucene.engine.transaction.support.job.DeleteTransactionJob;
+import org.compass.core.lucene.engine.transaction.support.job.FlushCommitTransactionJob;
+import org.compass.core.lucene.engine.transaction.support.job.TransactionJob;
+import org.compass.core.lucene.engine.transaction.support.job.UpdateTransactionJob;
+import org.compass.core.mapping.ResourceMapping;
+import org.compass.core.spi.ResourceKey;
+
+/**
+ * A {@link Codec} for {@link org.compass.core.lucene.engine.transaction.support.job.TransactionJob}. Each job is
+ * encoded as a type byte followed by its content:
+ *
+ * <ul>
+ * <li>Create and update jobs: the resource, encoded using {@link ResourceCodec}.</li>
+ * <li>Delete jobs: the alias and the id properties of the resource key, encoded using {@link FieldCodec}.</li>
+ * <li>Delete by query jobs: the sub index and the query (using Java serialization, since Lucene queries have no
+ * other portable representation).</li>
+ * <li>Flush commit jobs: the sub index.</li>
+ * <li>Other jobs: using Java serialization.</li>
+ * </ul>
+ *
+ * @author kimchy
+ */
+public class TransactionJobCodec implements Codec<TransactionJob> {
+
+    private static final byte SERIALIZED = 0;
+
+    private static final byte CREATE = 1;
+
+    private static final byte UPDATE = 2;
+
+    private static final byte DELETE = 3;
+
+    private static final byte DELETE_BY_QUERY = 4;
+
+    private static final byte FLUSH_COMMIT = 5;
+
+    private final LuceneSearchEngineFactory searchEngineFactory;
+
+    private final ResourceCodec resourceCodec;
+
+    private final FieldCodec fieldCodec = new FieldCodec();
+
+    private final SerializableCodec<Query> queryCodec = new SerializableCodec<Query>();
+
+    private final SerializableCodec<TransactionJob> serializableCodec = new SerializableCodec<TransactionJob>();
+
+    public TransactionJobCodec(LuceneSearchEngineFactory searchEngineFactory) {
+        this.searchEngineFactory = searchEngineFactory;
+        this.resourceCodec = new ResourceCodec(searchEngineFactory);
+    }
+
+    public void encode(TransactionJob job, DataOutput out) throws IOException {
+        if (job instanceof CreateTransactionJob) {
+            out.writeByte(CREATE);
+            resourceCodec.encode(((CreateTransactionJob) job).getResource(), out);
+        } else if (job instanceof UpdateTransactionJob) {
+            out.writeByte(UPDATE);
+            resourceCodec.encode(((UpdateTransactionJob) job).getResource(), out);
+        } else if (job instanceof DeleteTransactionJob) {
+            out.writeByte(DELETE);
+            ResourceKey resourceKey = ((DeleteTransactionJob) job).getResourceKey();
+            CodecHelper.writeString(out, resourceKey.getAlias());
+            Property[] ids = resourceKey.getIds();
+            CodecHelper.writeVInt(out, ids.length);
+            for (Property id : ids) {
+                fieldCodec.encode(((LuceneProperty) id).getField(), out);
+            }
+        } else if (job instanceof DeleteByQueryTransactionJob) {
+            out.writeByte(DELETE_BY_QUERY);
+            DeleteByQueryTransactionJob deleteByQueryJob = (DeleteByQueryTransactionJob) job;
+            CodecHelper.writeString(out, deleteByQueryJob.getSubIndex());
+            queryCodec.encode(deleteByQueryJob.getQuery(), out);
+        } else if (job instanceof FlushCommitTransactionJob) {
+            out.writeByte(FLUSH_COMMIT);
+            CodecHelper.writeString(out, job.getSubIndex());
+        } else {
+            out.writeByte(SERIALIZED);
+            serializableCodec.encode(job, out);
+        }
+    }
+
+    public TransactionJob decode(DataInput in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case CREATE:
+                return new CreateTransactionJob(resourceCodec.decode(in));
+            case UPDATE:
+                return new UpdateTransactionJob(resourceCodec.decode(in));
+            case DELETE:
+                String alias = CodecHelper.readString(in);
+                ResourceMapping resourceMapping = searchEngineFactory.getMapping().getRootMappingByAlias(alias);
+                if (resourceMapping == null) {
+                    throw new SearchEngineException("Failed to find mapping for alias [" + alias + "]");
+                }
+                Property[] ids = new Property[CodecHelper.readVInt(in)];
+                for (int i = 0; i < ids.length; i++) {
+                    LuceneProperty id = new LuceneProperty(fieldCodec.decode(in));
+                    id.setPropertyMapping(resourceMapping.getResourcePropertyMapping(id.getName()));
+                    ids[i] = id;
+                }
+                return new DeleteTransactionJob(new ResourceKey(resourceMapping, ids));
+            case DELETE_BY_QUERY:
+                String subIndex = CodecHelper.readString(in);
+                return new DeleteByQueryTransactionJob(queryCodec.decode(in), subIndex);
+            case FLUSH_COMMIT:
+                return new FlushCommitTransactionJob(CodecHelper.readString(in));
+            case SERIALIZED:
+                return serializableCodec.decode(in);
+            default:
+                throw new IOException("Unknown transaction job type [" + type + "]");
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.lucene.engine.codec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+
+import org.compass.core.lucene.engine.LuceneSearchEngineFactory;
+import org.compass.core.lucene.engine.transaction.support.job.TransactionJob;
+import org.compass.core.lucene.engine.transaction.support.job.TransactionJobs;
+
+/**
+ * A {@link Codec} for {@link org.compass.core.lucene.engine.transaction.support.job.TransactionJobs}, encoded as a
+ * format version, the number of jobs, and the jobs encoded using {@link TransactionJobCodec}.
+ *
+ * @author kimchy
+ */
+public class TransactionJobsCodec implements Codec<TransactionJobs> {
+
+    public static final byte VERSION = 1;
+
+    private final TransactionJobCodec jobCodec;
+
+    public TransactionJobsCodec(LuceneSearchEngineFactory searchEngineFactory) {
+        this.jobCodec = new TransactionJobCodec(searchEngineFactory);
+    }
+
+    public void encode(TransactionJobs jobs, DataOutput out) throws IOException {
+        out.writeByte(VERSION);
+        List<TransactionJob> jobList = jobs.getJobs();
+        CodecHelper.writeVInt(out, jobList.size());
+        for (TransactionJob job : jobList) {
+            jobCodec.encode(job, out);
+        }
+    }
+
+    public TransactionJobs decode(DataInput in) throws IOException {
+        CodecHelper.readVersion(in, VERSION, "transaction jobs");
+        int size = CodecHelper.readVInt(in);
+        TransactionJobs jobs = new TransactionJobs();
+        for (int i = 0; i < size; i++) {
+            jobs.add(jobCodec.decode(in));
+        }
+        return jobs;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.lucene.engine.invalidation;
+
+import org.compass.core.engine.SearchEngineException;
+
+/**
+ * A bus used to notify other Compass instances working against the same index of changes made to it, so they
+ * can refresh their cached index holders without checking the index periodically.
+ *
+ * <p>Each commit publishes the sub index and its committed index version. Instances receiving it refresh the
+ * sub index only if their cached index holder has an older version. Clearing the cache of a sub index (for
+ * example, when the index is replaced) is published using {@link #CLEAR_CACHE} as the version.
+ *
+ * <p>Messages are never delivered back to the instance that published them. Implementations can implement
+ * {@link org.compass.core.config.CompassConfigurable} in order to be configured.
+ *
+ * @author kimchy
+ * @see org.compass.core.lucene.engine.invalidation.LocalInvalidationBus
+ * @see org.compass.core.lucene.engine.invalidation.TcpInvalidationBus
+ */
+public interface InvalidationBus {
+
+    /**
+     * The version published to notify others to clear their cache of a sub index.
+     */
+    long CLEAR_CACHE = -1;
+
+    /**
+     * Starts the bus, delivering messages published by other instances to the given listener.
+     */
+    void start(InvalidationListener listener) throws SearchEngineException;
+
+    /**
+     * Publishes the version of the given sub index to all other instances.
+     */
+    void publish(String subIndex, long version) throws SearchEngineException;
+
+    void close();
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.lucene.engine.invalidation;
+
+/**
+ * Receives messages published by other Compass instances on the {@link InvalidationBus}.
+ *
+ * @author kimchy
+ */
+public interface InvalidationListener {
+
+    /**
+     * Called when the given sub index changed to the given version, or when its cache should be cleared
+     * ({@link InvalidationBus#CLEAR_CACHE}).
+     */
+    void onInvalidation(String subIndex, long version);
+}
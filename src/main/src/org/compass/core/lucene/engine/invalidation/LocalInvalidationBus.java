@@ -0,0 +1,98 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.lucene.engine.invalidation;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.compass.core.CompassException;
+import org.compass.core.config.CompassConfigurable;
+import org.compass.core.config.CompassSettings;
+import org.compass.core.engine.SearchEngineException;
+import org.compass.core.lucene.LuceneEnvironment;
+
+/**
+ * An {@link InvalidationBus} that delivers messages to all the Compass instances within the same JVM that use
+ * the same channel ({@link org.compass.core.lucene.LuceneEnvironment.InvalidationBus.Local#CHANNEL}). Messages
+ * are delivered synchronously by the publishing thread. Mainly used for tests.
+ *
+ * @author kimchy
+ */
+public class LocalInvalidationBus implements InvalidationBus, CompassConfigurable {
+
+    private static final Log log = LogFactory.getLog(LocalInvalidationBus.class);
+
+    private static final ConcurrentMap<String, List<LocalInvalidationBus>> channels = new ConcurrentHashMap<String, List<LocalInvalidationBus>>();
+
+    private String channel = "default";
+
+    private volatile InvalidationListener listener;
+
+    public void configure(CompassSettings settings) throws CompassException {
+        channel = settings.getSetting(LuceneEnvironment.InvalidationBus.Local.CHANNEL, channel);
+    }
+
+    public void start(InvalidationListener listener) throws SearchEngineException {
+        this.listener = listener;
+        List<LocalInvalidationBus> buses = channels.get(channel);
+        if (buses == null) {
+            buses = new CopyOnWriteArrayList<LocalInvalidationBus>();
+            List<LocalInvalidationBus> existing = channels.putIfAbsent(channel, buses);
+            if (existing != null) {
+                buses = existing;
+            }
+        }
+        buses.add(this);
+    }
+
+    public void publish(String subIndex, long version) throws SearchEngineException {
+        List<LocalInvalidationBus> buses = channels.get(channel);
+        if (buses == null) {
+            return;
+        }
+        for (LocalInvalidationBus bus : buses) {
+            if (bus == this) {
+                continue;
+            }
+            InvalidationListener busListener = bus.listener;
+            if (busListener == null) {
+                continue;
+            }
+            try {
+                busListener.onInvalidation(subIndex, version);
+            } catch (Exception e) {
+                log.warn("Failed to deliver invalidation of sub index [" + subIndex + "] on channel [" + channel + "]", e);
+            }
+        }
+    }
+
+    public void close() {
+        listener = null;
+        List<LocalInvalidationBus> buses = channels.get(channel);
+        if (buses != null) {
+            buses.remove(this);
+        }
+    }
+
+    public String toString() {
+        return "local [" + channel + "]";
+    }
+}
@@ -0,0 +1,509 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.lucene.engine.invalidation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.compass.core.CompassException;
+import org.compass.core.config.CompassConfigurable;
+import org.compass.core.config.CompassSettings;
+import org.compass.core.config.ConfigurationException;
+import org.compass.core.engine.SearchEngineException;
+import org.compass.core.lucene.LuceneEnvironment;
+import org.compass.core.util.StringUtils;
+import org.compass.core.util.concurrent.NamedThreadFactory;
+
+/**
+ * An {@link InvalidationBus} that sends messages over TCP to a configured list of peers
+ * ({@link org.compass.core.lucene.LuceneEnvironment.InvalidationBus.Tcp#PEERS}), and listens for messages from
+ * them on {@link org.compass.core.lucene.LuceneEnvironment.InvalidationBus.Tcp#PORT}. No multicast is used.
+ *
+ * <p>Messages are queued per peer and sent by a background thread per peer over a connection kept open to it, so
+ * publishing never blocks a commit, and an unreachable peer does not delay messages sent to the other peers. If
+ * sending to a peer fails, the connection is reestablished and the message is sent again. Once a connection to a
+ * peer is (re)established, the latest version published for each sub index is sent first, so a peer that was
+ * unreachable catches up with the changes it missed. Reconnecting to an unreachable peer is backed off, messages
+ * published in the meantime are covered by the latest versions sent once it is reconnected. Since a message might
+ * still be lost (for example, written to a connection the peer already closed), the latest versions are also
+ * resent to all the peers periodically
+ * ({@link org.compass.core.lucene.LuceneEnvironment.InvalidationBus.Tcp#RESEND_INTERVAL}), which also reconnects
+ * to peers that could not be reached.
+ *
+ * @author kimchy
+ */
+public class TcpInvalidationBus implements InvalidationBus, CompassConfigurable {
+
+    private static final Log log = LogFactory.getLog(TcpInvalidationBus.class);
+
+    private static final int MAGIC = 0x43494231;
+
+    private static final long MAX_BACKOFF = 5000;
+
+    private static final Message STOP = new Message(null, -1);
+
+    private String bindHost;
+
+    private int port = -1;
+
+    private int connectTimeout = 5000;
+
+    private long resendInterval = 10000;
+
+    private volatile List<Peer> peers = new ArrayList<Peer>();
+
+    private final ConcurrentMap<String, Long> lastVersions = new ConcurrentHashMap<String, Long>();
+
+    private final Set<Socket> acceptedSockets = new CopyOnWriteArraySet<Socket>();
+
+    private ServerSocket serverSocket;
+
+    private ExecutorService executorService;
+
+    private volatile InvalidationListener listener;
+
+    private volatile boolean closed;
+
+    public void configure(CompassSettings settings) throws CompassException {
+        bindHost = settings.getSetting(LuceneEnvironment.InvalidationBus.Tcp.BIND_HOST);
+        port = settings.getSettingAsInt(LuceneEnvironment.InvalidationBus.Tcp.PORT, -1);
+        if (port < 0) {
+            throw new ConfigurationException("Tcp invalidation bus requires the [" + LuceneEnvironment.InvalidationBus.Tcp.PORT + "] setting");
+        }
+        connectTimeout = (int) settings.getSettingAsTimeInMillis(LuceneEnvironment.InvalidationBus.Tcp.CONNECT_TIMEOUT, connectTimeout);
+        resendInterval = settings.getSettingAsTimeInMillis(LuceneEnvironment.InvalidationBus.Tcp.RESEND_INTERVAL, resendInterval);
+        String peersSetting = settings.getSetting(LuceneEnvironment.InvalidationBus.Tcp.PEERS);
+        if (peersSetting != null) {
+            setPeers(StringUtils.tokenizeToStringArray(peersSetting, ","));
+        }
+    }
+
+    public void setBindHost(String bindHost) {
+        this.bindHost = bindHost;
+    }
+
+    /**
+     * Sets the port to listen on, <code>0</code> to listen on any free port (see {@link #getPort()}).
+     */
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Returns the port the bus listens on.
+     */
+    public int getPort() {
+        if (serverSocket != null) {
+            return serverSocket.getLocalPort();
+        }
+        return port;
+    }
+
+    /**
+     * Sets the interval at which the latest versions are resent to all the peers, <code>0</code> or less to
+     * disable it.
+     */
+    public void setResendInterval(long resendInterval) {
+        this.resendInterval = resendInterval;
+    }
+
+    /**
+     * Sets the peers to send messages to, each in the form of <code>host:port</code>.
+     */
+    public synchronized void setPeers(String[] addresses) {
+        List<Peer> newPeers = new ArrayList<Peer>();
+        for (String address : addresses) {
+            int index = address.lastIndexOf(':');
+            if (index == -1) {
+                throw new ConfigurationException("Invalid invalidation bus peer [" + address + "], should be host:port");
+            }
+            newPeers.add(new Peer(new InetSocketAddress(address.substring(0, index).trim(),
+                    Integer.parseInt(address.substring(index + 1).trim()))));
+        }
+        List<Peer> oldPeers = peers;
+        peers = newPeers;
+        for (Peer peer : oldPeers) {
+            peer.stop();
+        }
+        if (executorService != null) {
+            for (Peer peer : newPeers) {
+                executorService.execute(peer);
+            }
+        }
+    }
+
+    public synchronized void start(InvalidationListener listener) throws SearchEngineException {
+        this.listener = listener;
+        try {
+            serverSocket = new ServerSocket();
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(bindHost == null ? new InetSocketAddress(port) : new InetSocketAddress(bindHost, port));
+        } catch (IOException e) {
+            throw new SearchEngineException("Failed to bind invalidation bus to [" + bindHost + ":" + port + "]", e);
+        }
+        executorService = Executors.newCachedThreadPool(new NamedThreadFactory("Compass Invalidation Bus", true));
+        executorService.execute(new AcceptRunnable());
+        for (Peer peer : peers) {
+            executorService.execute(peer);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Started invalidation bus on [" + serverSocket.getLocalSocketAddress() + "] with peers " + peers);
+        }
+    }
+
+    public void publish(String subIndex, long version) throws SearchEngineException {
+        lastVersions.put(subIndex, version);
+        Message message = new Message(subIndex, version);
+        for (Peer peer : peers) {
+            peer.queue.add(message);
+        }
+    }
+
+    public void close() {
+        closed = true;
+        listener = null;
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        for (Socket socket : acceptedSockets) {
+            closeSocket(socket);
+        }
+        for (Peer peer : peers) {
+            peer.stop();
+        }
+        if (executorService != null) {
+            executorService.shutdownNow();
+            // the listening socket is only released once the thread accepting on it exits, wait for it so the
+            // port can be bound again once closed
+            try {
+                executorService.awaitTermination(connectTimeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void closeSocket(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    public String toString() {
+        return "tcp [" + bindHost + ":" + getPort() + "] peers " + peers;
+    }
+
+    private static class Message {
+
+        final String subIndex;
+
+        final long version;
+
+        Message(String subIndex, long version) {
+            this.subIndex = subIndex;
+            this.version = version;
+        }
+    }
+
+    /**
+     * A peer messages are sent to. Runs on its own thread, so a blocking connect to an unreachable peer only
+     * delays the messages sent to it.
+     */
+    private class Peer implements Runnable {
+
+        private final InetSocketAddress address;
+
+        private final BlockingQueue<Message> queue = new LinkedBlockingQueue<Message>();
+
+        private volatile Socket socket;
+
+        private DataOutputStream out;
+
+        private volatile boolean stopped;
+
+        private long backoff;
+
+        private long nextConnect;
+
+        // messages were dropped since the peer could not be connected to, connect once the backoff expires
+        private boolean pending;
+
+        Peer(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        public void run() {
+            long nextResend = System.currentTimeMillis() + resendInterval;
+            try {
+                while (!closed && !stopped) {
+                    long timeout = Long.MAX_VALUE;
+                    if (resendInterval > 0) {
+                        timeout = nextResend;
+                    }
+                    if (pending) {
+                        timeout = Math.min(timeout, nextConnect);
+                    }
+                    Message message;
+                    try {
+                        if (timeout == Long.MAX_VALUE) {
+                            message = queue.take();
+                        } else {
+                            message = queue.poll(Math.max(0, timeout - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (message == STOP || closed || stopped) {
+                        return;
+                    }
+                    if (message != null) {
+                        send(message);
+                    } else if (pending && System.currentTimeMillis() >= nextConnect) {
+                        connectIfPossible();
+                    }
+                    if (resendInterval > 0 && System.currentTimeMillis() >= nextResend) {
+                        resend();
+                        nextResend = System.currentTimeMillis() + resendInterval;
+                    }
+                }
+            } finally {
+                disconnect();
+            }
+        }
+
+        private void send(Message message) {
+            if (out == null) {
+                // connecting sends the latest versions, which include the message
+                connectIfPossible();
+                return;
+            }
+            try {
+                write(message.subIndex, message.version);
+                // batch the messages queued in the meantime
+                for (Message next = queue.poll(); next != null; next = queue.poll()) {
+                    if (next == STOP) {
+                        stopped = true;
+                        break;
+                    }
+                    write(next.subIndex, next.version);
+                }
+                out.flush();
+            } catch (IOException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Failed to send invalidation of sub index [" + message.subIndex + "] to [" + address + "], reconnecting", e);
+                }
+                // the connection broke, reconnect (which sends the latest versions)
+                disconnect();
+                connectIfPossible();
+            }
+        }
+
+        /**
+         * Sends the latest versions to the peer, connecting to it if not connected.
+         */
+        private void resend() {
+            if (out == null) {
+                connectIfPossible();
+                return;
+            }
+            try {
+                for (Map.Entry<String, Long> entry : lastVersions.entrySet()) {
+                    write(entry.getKey(), entry.getValue());
+                }
+                out.flush();
+            } catch (IOException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Failed to resend invalidations to [" + address + "]", e);
+                }
+                disconnect();
+            }
+        }
+
+        /**
+         * Connects to the peer and sends it the latest versions, unless the backoff after a failed connect has not
+         * expired yet, in which case a connect is attempted once it does.
+         */
+        private void connectIfPossible() {
+            if (System.currentTimeMillis() < nextConnect) {
+                pending = true;
+                return;
+            }
+            pending = false;
+            // the latest versions sent once connected cover all the queued messages
+            queue.clear();
+            try {
+                Socket newSocket = new Socket();
+                socket = newSocket;
+                if (stopped) {
+                    return;
+                }
+                newSocket.setTcpNoDelay(true);
+                newSocket.connect(address, connectTimeout);
+                out = new DataOutputStream(new BufferedOutputStream(newSocket.getOutputStream()));
+                out.writeInt(MAGIC);
+                // the peer might have missed messages while we were not connected
+                for (Map.Entry<String, Long> entry : lastVersions.entrySet()) {
+                    write(entry.getKey(), entry.getValue());
+                }
+                out.flush();
+                backoff = 0;
+                nextConnect = 0;
+            } catch (IOException e) {
+                backoff = backoff == 0 ? 100 : Math.min(MAX_BACKOFF, backoff * 2);
+                nextConnect = System.currentTimeMillis() + backoff;
+                pending = true;
+                if (log.isDebugEnabled()) {
+                    log.debug("Failed to connect to invalidation bus peer [" + address + "], retrying in [" + backoff + "ms]", e);
+                }
+                disconnect();
+            }
+        }
+
+        private void write(String subIndex, long version) throws IOException {
+            out.writeUTF(subIndex);
+            out.writeLong(version);
+        }
+
+        private void disconnect() {
+            Socket currentSocket = socket;
+            if (currentSocket != null) {
+                closeSocket(currentSocket);
+            }
+            socket = null;
+            out = null;
+        }
+
+        /**
+         * Stops the peer thread, closing its connection (which also fails an ongoing write or connect).
+         */
+        void stop() {
+            stopped = true;
+            queue.add(STOP);
+            Socket currentSocket = socket;
+            if (currentSocket != null) {
+                closeSocket(currentSocket);
+            }
+        }
+
+        public String toString() {
+            return address.toString();
+        }
+    }
+
+    private class AcceptRunnable implements Runnable {
+
+        public void run() {
+            long backoff = 0;
+            while (!closed) {
+                Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (IOException e) {
+                    if (closed) {
+                        return;
+                    }
+                    // back off so a persistent failure (for example, running out of file descriptors) does not spin
+                    backoff = backoff == 0 ? 100 : Math.min(MAX_BACKOFF, backoff * 2);
+                    log.warn("Failed to accept invalidation bus connection, retrying in [" + backoff + "ms]", e);
+                    try {
+                        Thread.sleep(backoff);
+                    } catch (InterruptedException e1) {
+                        return;
+                    }
+                    continue;
+                }
+                backoff = 0;
+                acceptedSockets.add(socket);
+                try {
+                    executorService.execute(new ReceiveRunnable(socket));
+                } catch (Exception e) {
+                    // closed
+                    acceptedSockets.remove(socket);
+                    closeSocket(socket);
+                }
+            }
+        }
+    }
+
+    private class ReceiveRunnable implements Runnable {
+
+        private final Socket socket;
+
+        ReceiveRunnable(Socket socket) {
+            this.socket = socket;
+        }
+
+        public void run() {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                if (in.readInt() != MAGIC) {
+                    log.warn("Invalid invalidation bus connection from [" + socket.getRemoteSocketAddress() + "], closing it");
+                    return;
+                }
+                while (!closed) {
+                    String subIndex = in.readUTF();
+                    long version = in.readLong();
+                    InvalidationListener currentListener = listener;
+                    if (currentListener == null) {
+                        return;
+                    }
+                    try {
+                        currentListener.onInvalidation(subIndex, version);
+                    } catch (Exception e) {
+                        log.warn("Failed to process invalidation of sub index [" + subIndex + "]", e);
+                    }
+                }
+            } catch (EOFException e) {
+                // peer closed the connection
+            } catch (IOException e) {
+                if (!closed && log.isDebugEnabled()) {
+                    log.debug("Invalidation bus connection from [" + socket.getRemoteSocketAddress() + "] failed", e);
+                }
+            } finally {
+                acceptedSockets.remove(socket);
+                closeSocket(socket);
+            }
+        }
+    }
+}
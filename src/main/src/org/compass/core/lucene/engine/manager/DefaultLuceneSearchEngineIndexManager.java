@@ -25,6 +25,7 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.LuceneUtils;
+import org.apache.lucene.search.ConcurrentMultiSearcher;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MultiSearcher;
 import org.apache.lucene.search.Searchable;
@@ -37,6 +38,7 @@ import org.compass.core.executor.ExecutorManager;
 import org.compass.core.lucene.LuceneEnvironment;
 import org.compass.core.lucene.engine.LuceneSearchEngineFactory;
 import org.compass.core.lucene.engine.LuceneSettings;
+import org.compass.core.lucene.engine.replication.ReplicationManager;
 import org.compass.core.lucene.engine.store.LuceneSearchEngineStore;
 import org.compass.core.transaction.context.TransactionContext;
 import org.compass.core.transaction.context.TransactionContextCallback;
@@ -58,6 +60,8 @@ public class DefaultLuceneSearchEngineIndexManager implements LuceneSearchEngine
 
     private final IndexWritersManager indexWritersManager;
 
+    private final ReplicationManager replicationManager;
+
     private long waitForCacheInvalidationBeforeSecondStep = 0;
 
     private volatile boolean isRunning = false;
@@ -71,6 +75,7 @@ public class DefaultLuceneSearchEngineIndexManager implements LuceneSearchEngine
         this.luceneSettings = searchEngineFactory.getLuceneSettings();
         this.indexHoldersCache = new IndexHoldersCache(this);
         this.indexWritersManager = new IndexWritersManager(this);
+        this.replicationManager = new ReplicationManager(this);
     }
 
     public void start() {
@@ -96,6 +101,7 @@ public class DefaultLuceneSearchEngineIndexManager implements LuceneSearchEngine
         }
 
         indexHoldersCache.start();
+        replicationManager.start();
 
         isRunning = true;
     }
@@ -110,6 +116,7 @@ public class DefaultLuceneSearchEngineIndexManager implements LuceneSearchEngine
             scheduledIndexManagerFuture = null;
         }
         indexHoldersCache.stop();
+        replicationManager.stop();
     }
 
     public boolean isRunning() {
@@ -337,6 +344,7 @@ public class DefaultLuceneSearchEngineIndexManager implements LuceneSearchEngine
     public synchronized void close() {
         stop();
         clearCache();
+        replicationManager.close();
         indexHoldersCache.close();
         indexWritersManager.close();
         searchEngineStore.close();
@@ -409,6 +417,12 @@ public class DefaultLuceneSearchEngineIndexManager implements LuceneSearchEngine
         return searcher;
     }
 
+    public MultiSearcher openConcurrentMultiSearcher(Searchable[] searchers, int maxConcurrency) throws IOException {
+        MultiSearcher searcher = new ConcurrentMultiSearcher(searchers, getExecutorManager(), maxConcurrency);
+        searcher.setSimilarity(searchEngineFactory.getSimilarityManager().getSearchSimilarity());
+        return searcher;
+    }
+
     public LuceneSearchEngineStore getStore() {
         return searchEngineStore;
     }
@@ -421,6 +435,10 @@ public class DefaultLuceneSearchEngineIndexManager implements LuceneSearchEngine
         return indexWritersManager;
     }
 
+    public ReplicationManager getReplicationManager() {
+        return replicationManager;
+    }
+
     public Directory getDirectory(String subIndex) {
         return searchEngineStore.openDirectory(subIndex);
     }
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.lucene.engine.manager;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Refresh statistics of a single sub index {@link org.compass.core.lucene.engine.manager.LuceneIndexHolder}
+ * maintained by the {@link org.compass.core.lucene.engine.manager.IndexHoldersCache} when refreshing the
+ * cache on commit.
+ *
+ * <p>The refresh lag is the time (in milliseconds) from the point a commit was done against the sub index until
+ * a new index holder reflecting it was made available for search operations.
+ *
+ * @author kimchy
+ */
+public class IndexHolderRefreshStats {
+
+    private final String subIndex;
+
+    private final AtomicLong commitCount = new AtomicLong();
+
+    private final AtomicLong refreshCount = new AtomicLong();
+
+    private final AtomicLong totalRefreshLag = new AtomicLong();
+
+    private volatile long lastRefreshLag;
+
+    private volatile long maxRefreshLag;
+
+    private volatile long lastCommittedVersion = -1;
+
+    public IndexHolderRefreshStats(String subIndex) {
+        this.subIndex = subIndex;
+    }
+
+    /**
+     * Returns the sub index the stats are for.
+     */
+    public String getSubIndex() {
+        return subIndex;
+    }
+
+    /**
+     * Returns the number of commits pushed to the cache.
+     */
+    public long getCommitCount() {
+        return commitCount.get();
+    }
+
+    /**
+     * Returns the number of times the index holder was actually replaced because of a commit.
+     */
+    public long getRefreshCount() {
+        return refreshCount.get();
+    }
+
+    /**
+     * Returns the last index version pushed to the cache, <code>-1</code> if no commit was pushed yet.
+     */
+    public long getLastCommittedVersion() {
+        return lastCommittedVersion;
+    }
+
+    /**
+     * Returns the lag (in milliseconds) of the last refresh.
+     */
+    public long getLastRefreshLag() {
+        return lastRefreshLag;
+    }
+
+    /**
+     * Returns the maximum lag (in milliseconds) of all the refreshes.
+     */
+    public long getMaxRefreshLag() {
+        return maxRefreshLag;
+    }
+
+    /**
+     * Returns the average lag (in milliseconds) of all the refreshes.
+     */
+    public long getAverageRefreshLag() {
+        long count = refreshCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        return totalRefreshLag.get() / count;
+    }
+
+    void commit(long version) {
+        commitCount.incrementAndGet();
+        lastCommittedVersion = version;
+    }
+
+    synchronized void refreshed(long lag) {
+        refreshCount.incrementAndGet();
+        totalRefreshLag.addAndGet(lag);
+        lastRefreshLag = lag;
+        if (lag > maxRefreshLag) {
+            maxRefreshLag = lag;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "subIndex [" + subIndex + "] commits [" + getCommitCount() + "] refreshes [" + getRefreshCount() +
+                "] lastLag [" + lastRefreshLag + "ms] maxLag [" + maxRefreshLag + "ms] avgLag [" + getAverageRefreshLag() + "ms]";
+    }
+}
@@ -32,14 +32,30 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.compass.core.CompassException;
+import org.compass.core.cache.second.SecondLevelCache;
+import org.compass.core.config.CompassConfigurable;
+import org.compass.core.config.CompassSettings;
 import org.compass.core.engine.SearchEngineException;
 import org.compass.core.lucene.LuceneEnvironment;
+import org.compass.core.lucene.engine.invalidation.InvalidationBus;
+import org.compass.core.lucene.engine.invalidation.InvalidationListener;
+import org.compass.core.lucene.engine.invalidation.LocalInvalidationBus;
+import org.compass.core.lucene.engine.invalidation.TcpInvalidationBus;
 import org.compass.core.transaction.context.TransactionContextCallback;
+import org.compass.core.util.ClassUtils;
 
 /**
  * A cache of {@link org.compass.core.lucene.engine.manager.LuceneIndexHolder}. Provides APIs to get an
  * index holder, manage its cache invalidation (either async or sync).
  *
+ * <p>When configured to refresh on commit, the cache is not checked for changes. Instead, the transaction
+ * processors push commits using {@link #refreshCacheOnCommit(String)}.
+ *
+ * <p>When an {@link org.compass.core.lucene.engine.invalidation.InvalidationBus} is configured, the cache is
+ * refreshed on commit, and each commit is also published on the bus. Other instances refresh only the sub indexes
+ * published with a newer version than the one they have cached, and global notifications to clear the cache are
+ * sent over the bus instead of using the clear cache file.
+ *
  * <p>NOTE: All operations are not perfomed within a transactional context. The {@link org.compass.core.lucene.engine.manager.LuceneSearchEngineIndexManager}
  * provides transactionaly context for some of the operations.
  *
@@ -59,19 +75,36 @@ public class IndexHoldersCache {
 
     private boolean cacheAsyncInvalidation;
 
+    private final boolean refreshOnCommit;
+
+    private final Map<String, IndexHolderRefreshStats> refreshStats = new HashMap<String, IndexHolderRefreshStats>();
+
     private long[] lastModifiled;
 
-    private Map<String, IndexHolderCacheLock> subIndexCacheLocks = new HashMap<String, IndexHolderCacheLock>();
+    private final Map<String, IndexHolderCacheLock> subIndexCacheLocks = new HashMap<String, IndexHolderCacheLock>();
 
     private final ConcurrentMap<String, AtomicInteger> debugOpenHoldersCount;
 
     private final boolean debug;
 
+    private final InvalidationBus invalidationBus;
+
+    private boolean invalidationBusStarted;
+
+    private final TermFreqsCache termFreqsCache;
+
+    private final QueryResultCache queryResultCache;
+
     public IndexHoldersCache(LuceneSearchEngineIndexManager indexManager) {
         this.indexManager = indexManager;
         for (String subIndex : indexManager.getSubIndexes()) {
             subIndexCacheLocks.put(subIndex, new IndexHolderCacheLock());
+            refreshStats.put(subIndex, new IndexHolderRefreshStats(subIndex));
         }
+        invalidationBus = createInvalidationBus(indexManager.getSettings().getSettings());
+        termFreqsCache = new TermFreqsCache(indexManager.getSettings().getSettings());
+        queryResultCache = new QueryResultCache(indexManager.getSettings().getSettings());
+        refreshOnCommit = invalidationBus != null || indexManager.getSettings().getSettings().getSettingAsBoolean(LuceneEnvironment.SearchEngineIndex.CACHE_REFRESH_ON_COMMIT, false);
 
         // init debug
         debug = indexManager.getSearchEngineFactory().isDebug();
@@ -82,7 +115,41 @@ public class IndexHoldersCache {
         }
     }
 
+    private InvalidationBus createInvalidationBus(CompassSettings settings) {
+        String type = settings.getSetting(LuceneEnvironment.InvalidationBus.TYPE);
+        if (type == null) {
+            return null;
+        }
+        InvalidationBus bus;
+        if (LuceneEnvironment.InvalidationBus.Local.NAME.equalsIgnoreCase(type)) {
+            bus = new LocalInvalidationBus();
+        } else if (LuceneEnvironment.InvalidationBus.Tcp.NAME.equalsIgnoreCase(type)) {
+            bus = new TcpInvalidationBus();
+        } else {
+            try {
+                bus = (InvalidationBus) ClassUtils.forName(type, settings.getClassLoader()).newInstance();
+            } catch (Exception e) {
+                throw new SearchEngineException("Failed to create invalidation bus [" + type + "]", e);
+            }
+        }
+        if (bus instanceof CompassConfigurable) {
+            ((CompassConfigurable) bus).configure(settings);
+        }
+        return bus;
+    }
+
     public void start() {
+        if (invalidationBus != null && !invalidationBusStarted) {
+            invalidationBus.start(new InvalidationBusListener());
+            invalidationBusStarted = true;
+            if (logger.isInfoEnabled()) {
+                logger.info("Started cache invalidation bus [" + invalidationBus + "]");
+            }
+        }
+        if (refreshOnCommit) {
+            logger.info("Scheduled refresh cache is disabled since cache is refreshed on commit");
+            return;
+        }
         if (!indexManager.getExecutorManager().isDisabled()) {
             cacheAsyncInvalidation = indexManager.getSettings().getSettings().getSettingAsBoolean(LuceneEnvironment.SearchEngineIndex.CACHE_ASYNC_INVALIDATION, true);
             long cacheInvalidationInterval = indexManager.getSettings().getCacheInvalidationInterval();
@@ -108,6 +175,11 @@ public class IndexHoldersCache {
     }
 
     public void close() {
+        if (invalidationBus != null) {
+            invalidationBus.close();
+        }
+        termFreqsCache.clear();
+        queryResultCache.clear();
         if (indexManager.getSearchEngineFactory().isDebug()) {
             for (Map.Entry<String, AtomicInteger> entry : debugOpenHoldersCount.entrySet()) {
                 if (entry.getValue().get() > 0) {
@@ -125,6 +197,46 @@ public class IndexHoldersCache {
         return debugOpenHoldersCount;
     }
 
+    /**
+     * Returns the term frequencies cache, holding results that are valid for as long as the index holders
+     * they were computed with are cached.
+     */
+    public TermFreqsCache getTermFreqsCache() {
+        return termFreqsCache;
+    }
+
+    /**
+     * Returns the query result cache, holding search results that are valid for as long as the index holders
+     * they were computed with are cached.
+     */
+    public QueryResultCache getQueryResultCache() {
+        return queryResultCache;
+    }
+
+    /**
+     * Returns the invalidation bus used, or <code>null</code> if none is configured.
+     */
+    public InvalidationBus getInvalidationBus() {
+        return invalidationBus;
+    }
+
+    /**
+     * Returns <code>true</code> if the cache is refreshed by the transaction processors on commit (using
+     * {@link #refreshCacheOnCommit(String)}) instead of checking periodically if the index changed.
+     *
+     * @see org.compass.core.lucene.LuceneEnvironment.SearchEngineIndex#CACHE_REFRESH_ON_COMMIT
+     */
+    public boolean isRefreshOnCommit() {
+        return refreshOnCommit;
+    }
+
+    /**
+     * Returns the refresh statistics for the given sub index.
+     */
+    public IndexHolderRefreshStats getRefreshStats(String subIndex) {
+        return refreshStats.get(subIndex);
+    }
+
     public void doUnderCacheLock(String subIndex, Runnable task) {
         synchronized (subIndexCacheLocks.get(subIndex)) {
             task.run();
@@ -157,6 +269,7 @@ public class IndexHoldersCache {
             if (indexHolder != null) {
                 indexHolder.markForClose();
             }
+            evictCaches(subIndex);
         }
     }
 
@@ -185,7 +298,75 @@ public class IndexHoldersCache {
         }
     }
 
+    /**
+     * Called by the transaction processors once a commit has been done against the given sub index. Refreshes
+     * the cached index holder if {@link #isRefreshOnCommit()}, otherwise, invalidates it if
+     * <code>invalidateCache</code> is set. Resources cached in the second level cache for the sub index are
+     * always evicted, before the index holder is refreshed, so the refreshed holder captures the new version
+     * and resources loaded using the current (stale) holder are no longer cached.
+     */
+    public void afterCommit(String subIndex, boolean invalidateCache) throws SearchEngineException {
+        SecondLevelCache secondLevelCache = indexManager.getSearchEngineFactory().getSecondLevelCache();
+        if (secondLevelCache != null) {
+            secondLevelCache.evictSubIndex(subIndex);
+        }
+        if (refreshOnCommit) {
+            refreshCacheOnCommit(subIndex);
+        } else if (invalidateCache) {
+            if (logger.isTraceEnabled()) {
+                logger.trace("Invalidating cache after commit for sub index [" + subIndex + "]");
+            }
+            invalidateCache(subIndex);
+        }
+    }
+
+    /**
+     * Refreshes the index holder of the given sub index once a commit has been done against it. Reads the
+     * committed index version and replaces the cached index holder if it does not reflect it yet. Since the
+     * holder is replaced only when its version is older than the committed one, it will be replaced once per
+     * commit even if several commits are pushed concurrently.
+     *
+     * <p>If no index holder is cached for the sub index, nothing is done and it will be lazily opened on the next
+     * search operation.
+     */
+    public void refreshCacheOnCommit(String subIndex) throws SearchEngineException {
+        long commitTime = System.currentTimeMillis();
+        IndexHolderRefreshStats stats = refreshStats.get(subIndex);
+        long committedVersion;
+        try {
+            committedVersion = IndexReader.getCurrentVersion(indexManager.getDirectory(subIndex));
+        } catch (IOException e) {
+            throw new SearchEngineException("Failed to read committed version of sub index [" + subIndex + "]", e);
+        }
+        stats.commit(committedVersion);
+        if (invalidationBus != null) {
+            invalidationBus.publish(subIndex, committedVersion);
+        }
+        if (!isStale(indexHolders.get(subIndex), committedVersion)) {
+            return;
+        }
+        synchronized (subIndexCacheLocks.get(subIndex)) {
+            LuceneIndexHolder indexHolder = indexHolders.get(subIndex);
+            if (!isStale(indexHolder, committedVersion)) {
+                return;
+            }
+            if (logger.isTraceEnabled()) {
+                logger.trace("Refreshing cache on commit for sub index [" + subIndex + "] to version [" + committedVersion + "]");
+            }
+            internalRefreshCache(subIndex);
+            stats.refreshed(System.currentTimeMillis() - commitTime);
+        }
+    }
+
+    private boolean isStale(LuceneIndexHolder indexHolder, long committedVersion) {
+        return indexHolder != null && indexHolder.getIndexReader().getVersion() < committedVersion;
+    }
+
     public synchronized void checkAndClearIfNotifiedAllToClearCache() throws SearchEngineException {
+        if (invalidationBus != null) {
+            // notifications are pushed over the bus
+            return;
+        }
         if (lastModifiled == null) {
             String[] subIndexes = indexManager.getSubIndexes();
             // just update the last modified time, others will see the change and update
@@ -237,6 +418,12 @@ public class IndexHoldersCache {
         if (logger.isTraceEnabled()) {
             logger.trace("Global notification to clear cache");
         }
+        if (invalidationBus != null) {
+            for (String subIndex : indexManager.getSubIndexes()) {
+                invalidationBus.publish(subIndex, InvalidationBus.CLEAR_CACHE);
+            }
+            return;
+        }
         for (String subIndex : indexManager.getSubIndexes()) {
             Directory dir = indexManager.getDirectory(subIndex);
             try {
@@ -254,17 +441,21 @@ public class IndexHoldersCache {
     /**
      * Returns an <b>acquired</b> index holder for the specified sub index. Make sure to call
      * {@link LuceneIndexHolder#release()} once it is no longer needed.
+     *
+     * <p>If a valid index holder is cached, it is acquired without obtaining the sub index cache lock. The lock
+     * is only used when the index holder needs to be opened or refreshed.
      */
     public LuceneIndexHolder getHolder(String subIndex) throws SearchEngineException {
         try {
             LuceneIndexHolder indexHolder = indexHolders.get(subIndex);
-            if (cacheAsyncInvalidation) {
-                if (indexHolder == null || indexHolder.isInvalidated()) {
-                    synchronized (subIndexCacheLocks.get(subIndex)) {
-                        indexHolder = indexHolders.get(subIndex);
-                        if (indexHolder == null || indexHolder.isInvalidated()) {
-                            indexHolder = internalRefreshCache(subIndex);
-                        }
+            if (cacheAsyncInvalidation || refreshOnCommit) {
+                if (indexHolder != null && !indexHolder.isInvalidated() && indexHolder.acquire()) {
+                    return indexHolder;
+                }
+                synchronized (subIndexCacheLocks.get(subIndex)) {
+                    indexHolder = indexHolders.get(subIndex);
+                    if (indexHolder == null || indexHolder.isInvalidated()) {
+                        indexHolder = internalRefreshCache(subIndex);
                     }
                 }
             } else {
@@ -306,7 +497,9 @@ public class IndexHoldersCache {
             }
             if (reader != indexHolder.getIndexReader()) {
                 LuceneIndexHolder origHolder = indexHolder;
-                indexHolder = new LuceneIndexHolder(this, subIndex, indexManager.openIndexSearcher(reader));
+                // evict before the new holder is visible, so resources loaded with the replaced one won't be cached
+                long secondLevelCacheVersion = evictCaches(subIndex);
+                indexHolder = new LuceneIndexHolder(this, subIndex, indexManager.openIndexSearcher(reader), secondLevelCacheVersion);
                 // since not synchronized, we need to mark the one we replaced as closed
                 LuceneIndexHolder oldHolder = indexHolders.put(subIndex, indexHolder);
                 if (oldHolder != null) {
@@ -320,9 +513,10 @@ public class IndexHoldersCache {
                 indexHolder.markLastCacheInvalidation();
             }
         } else {
+            long secondLevelCacheVersion = evictCaches(subIndex);
             try {
                 IndexReader reader = IndexReader.open(indexManager.getDirectory(subIndex), true);
-                indexHolder = new LuceneIndexHolder(this, subIndex, indexManager.openIndexSearcher(reader));
+                indexHolder = new LuceneIndexHolder(this, subIndex, indexManager.openIndexSearcher(reader), secondLevelCacheVersion);
             } catch (IOException e) {
                 throw new SearchEngineException("Failed to open sub index cache [" + subIndex + "]", e);
             }
@@ -335,6 +529,31 @@ public class IndexHoldersCache {
         return indexHolder;
     }
 
+    /**
+     * Resources cached in the second level cache (as well as cached term frequencies and query results) are
+     * only valid as long as the index holder they were loaded with is, so once it is replaced (for example,
+     * because of changes done by another Compass instance), evict them. Returns the second level cache version
+     * of the sub index after the eviction, which the new index holder should be associated with.
+     */
+    private long evictCaches(String subIndex) {
+        termFreqsCache.evictSubIndex(subIndex);
+        queryResultCache.evictSubIndex(subIndex);
+        SecondLevelCache secondLevelCache = indexManager.getSearchEngineFactory().getSecondLevelCache();
+        if (secondLevelCache == null) {
+            return -1;
+        }
+        secondLevelCache.evictSubIndex(subIndex);
+        return secondLevelCache.getVersion(subIndex);
+    }
+
+    /**
+     * Doc id sets cached in the filter cache are computed per reader, so once an index holder is closed, evict
+     * the ones computed with its reader.
+     */
+    void evictReader(IndexReader indexReader) {
+        indexManager.getSearchEngineFactory().getFilterCache().evictReader(indexReader);
+    }
+
     /**
      * Checks if a an index holder should be invalidated.
      */
@@ -398,6 +617,46 @@ public class IndexHoldersCache {
         }
     }
 
+    /**
+     * Refreshes the cache of sub indexes changed by other instances, as published on the invalidation bus.
+     */
+    private class InvalidationBusListener implements InvalidationListener {
+
+        public void onInvalidation(final String subIndex, final long version) {
+            if (!subIndexCacheLocks.containsKey(subIndex)) {
+                return;
+            }
+            if (version == InvalidationBus.CLEAR_CACHE) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Invalidation bus notification to clear cache of sub index [" + subIndex + "]");
+                }
+                clearCache(subIndex);
+                return;
+            }
+            if (!isStale(indexHolders.get(subIndex), version)) {
+                return;
+            }
+            indexManager.getTransactionContext().execute(new TransactionContextCallback<Object>() {
+                public Object doInTransaction() throws CompassException {
+                    synchronized (subIndexCacheLocks.get(subIndex)) {
+                        if (!isStale(indexHolders.get(subIndex), version)) {
+                            return null;
+                        }
+                        if (logger.isTraceEnabled()) {
+                            logger.trace("Refreshing cache of sub index [" + subIndex + "] to version [" + version + "] published on the invalidation bus");
+                        }
+                        LuceneIndexHolder indexHolder = internalRefreshCache(subIndex);
+                        if (isStale(indexHolder, version)) {
+                            // the published commit is not visible yet, refresh on the next search
+                            indexHolder.setInvalidated(true);
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+    }
+
     private static class IndexHolderCacheLock {
 
     }
@@ -126,6 +126,7 @@ public class IndexWritersManager {
     public IndexWriter openIndexWriter(CompassSettings settings, Directory dir, boolean create, IndexDeletionPolicy deletionPolicy, Analyzer analyzer) throws IOException {
         if (deletionPolicy == null) {
             deletionPolicy = searchEngineFactory.getIndexDeletionPolicyManager().createIndexDeletionPolicy(dir);
+            deletionPolicy = indexManager.getReplicationManager().wrapIndexDeletionPolicy(dir, deletionPolicy);
         }
         if (analyzer == null) {
             analyzer = searchEngineFactory.getAnalyzerManager().getDefaultAnalyzer();
@@ -16,12 +16,25 @@
 
 package org.compass.core.lucene.engine.manager;
 
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.IndexSearcher;
 
 /**
+ * Holds an {@link org.apache.lucene.search.IndexSearcher} and its {@link org.apache.lucene.index.IndexReader}
+ * for a specific sub index.
+ *
+ * <p>The holder is reference counted using a lock free counter. The cache owns a single reference which is
+ * released when the holder is marked for close, and each {@link #acquire()} adds a reference which is released
+ * using {@link #release()}. Once the count drops to zero, the searcher and reader are closed and the holder can
+ * no longer be acquired.
+ *
+ * <p>The holder also records the second level cache version of its sub index at the time it was opened.
+ * Resources loaded using the holder should be cached with this version, so once the holder is replaced
+ * (which increments the sub index version), they are no longer valid.
+ *
  * @author kimchy
  */
 public class LuceneIndexHolder {
@@ -34,21 +47,28 @@ public class LuceneIndexHolder {
 
     private final IndexReader indexReader;
 
+    private final long secondLevelCacheVersion;
+
     private volatile long lastCacheInvalidation = System.currentTimeMillis();
 
     private volatile boolean invalidated;
 
-    private int count = 0;
-
-    private boolean markForClose = false;
+    // starts with the reference owned by the cache, released on markForClose
+    private final AtomicInteger count = new AtomicInteger(1);
 
-    private boolean closed;
+    private final AtomicBoolean markForClose = new AtomicBoolean();
 
     public LuceneIndexHolder(IndexHoldersCache indexHoldersCache, String subIndex, IndexSearcher indexSearcher) {
+        this(indexHoldersCache, subIndex, indexSearcher, -1);
+    }
+
+    public LuceneIndexHolder(IndexHoldersCache indexHoldersCache, String subIndex, IndexSearcher indexSearcher,
+                             long secondLevelCacheVersion) {
         this.indexHoldersCache = indexHoldersCache;
         this.subIndex = subIndex;
         this.indexSearcher = indexSearcher;
         this.indexReader = indexSearcher.getIndexReader();
+        this.secondLevelCacheVersion = secondLevelCacheVersion;
         if (indexHoldersCache.isDebug()) {
             AtomicInteger count = indexHoldersCache.getDebugHoldersCount().get(subIndex);
             if (count == null) {
@@ -74,22 +94,57 @@ public class LuceneIndexHolder {
         return this.subIndex;
     }
 
-    public synchronized boolean acquire() {
-        if (markForClose) {
-            return false;
+    /**
+     * Returns the second level cache version of the sub index captured when the holder was opened. Resources
+     * loaded using this holder should be cached with this version and not with the current sub index version,
+     * since the sub index might have changed after this holder was opened.
+     */
+    public long getSecondLevelCacheVersion() {
+        return this.secondLevelCacheVersion;
+    }
+
+    /**
+     * Tries to acquire the holder. Returns <code>false</code> if the holder has been marked for close
+     * (or closed), in which case it should not be used.
+     */
+    public boolean acquire() {
+        while (true) {
+            if (markForClose.get()) {
+                return false;
+            }
+            int current = count.get();
+            if (current <= 0) {
+                // already closed
+                return false;
+            }
+            if (count.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases a previously acquired holder, closing it if it was marked for close and this was
+     * the last reference.
+     */
+    public void release() {
+        if (count.decrementAndGet() == 0) {
+            close();
         }
-        count++;
-        return true;
     }
 
-    public synchronized void release() {
-        count--;
-        checkIfCanClose();
+    /**
+     * Marks the holder for close, releasing the reference owned by the cache. The holder will be closed
+     * once all the acquired references have been released. Calling it more than once has no effect.
+     */
+    public void markForClose() {
+        if (markForClose.compareAndSet(false, true)) {
+            release();
+        }
     }
 
-    public synchronized void markForClose() {
-        markForClose = true;
-        checkIfCanClose();
+    public boolean isMarkedForClose() {
+        return markForClose.get();
     }
 
     public boolean isInvalidated() {
@@ -100,22 +155,20 @@ public class LuceneIndexHolder {
         this.invalidated = invalidated;
     }
 
-    private void checkIfCanClose() {
-        if (markForClose && count <= 0 && !closed) {
-            if (indexHoldersCache.isDebug()) {
-                indexHoldersCache.getDebugHoldersCount().get(subIndex).decrementAndGet();
-            }
-            closed = true;
-            try {
-                indexSearcher.close();
-            } catch (Exception e) {
-                // do nothing
-            }
-            try {
-                indexReader.close();
-            } catch (Exception e) {
-                // do nothing
-            }
+    private void close() {
+        if (indexHoldersCache.isDebug()) {
+            indexHoldersCache.getDebugHoldersCount().get(subIndex).decrementAndGet();
+        }
+        indexHoldersCache.evictReader(indexReader);
+        try {
+            indexSearcher.close();
+        } catch (Exception e) {
+            // do nothing
+        }
+        try {
+            indexReader.close();
+        } catch (Exception e) {
+            // do nothing
         }
     }
 
@@ -28,6 +28,7 @@ import org.compass.core.engine.SearchEngineIndexManager;
 import org.compass.core.executor.ExecutorManager;
 import org.compass.core.lucene.engine.LuceneSearchEngineFactory;
 import org.compass.core.lucene.engine.LuceneSettings;
+import org.compass.core.lucene.engine.replication.ReplicationManager;
 import org.compass.core.lucene.engine.store.LuceneSearchEngineStore;
 import org.compass.core.transaction.context.TransactionContext;
 
@@ -46,10 +47,23 @@ public interface LuceneSearchEngineIndexManager extends SearchEngineIndexManager
 
     IndexWritersManager getIndexWritersManager();
 
+    /**
+     * Returns the replication manager, used to publish commit points (master) or pull them (replica).
+     */
+    ReplicationManager getReplicationManager();
+
     IndexSearcher openIndexSearcher(IndexReader reader);
 
     MultiSearcher openMultiSearcher(Searchable[] searchers) throws IOException;
 
+    /**
+     * Opens a multi searcher that searches the given searchers concurrently, using at most the given
+     * number of concurrent tasks per search.
+     *
+     * @see org.apache.lucene.search.ConcurrentMultiSearcher
+     */
+    MultiSearcher openConcurrentMultiSearcher(Searchable[] searchers, int maxConcurrency) throws IOException;
+
     Directory getDirectory(String subIndex) throws SearchEngineException;
 
     /**
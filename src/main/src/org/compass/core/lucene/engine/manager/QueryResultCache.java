@@ -0,0 +1,296 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.lucene.engine.manager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TopDocs;
+import org.compass.core.config.CompassSettings;
+import org.compass.core.lucene.LuceneEnvironment;
+
+/**
+ * Caches the top docs (doc ids and scores) of searches, keyed by the query, the filter, the sort and the
+ * index holders the search was executed with. Since an index holder reader never changes, a cached result
+ * is valid for as long as the index holders are. Once an index holder of a sub index is replaced, results
+ * computed with it are evicted using {@link #evictSubIndex(String)}.
+ *
+ * <p>The cache is bounded by the estimated memory used by the cached top docs
+ * ({@link LuceneEnvironment.QueryResultCache#MAX_MEMORY}), evicting the least recently used results once
+ * exceeded. Cached top docs are shared and must not be changed.
+ *
+ * @author kimchy
+ */
+public class QueryResultCache {
+
+    // rough estimate of the memory used by a cache entry and its key, excluding the top docs
+    private static final long ENTRY_OVERHEAD = 256;
+
+    // rough estimate of the memory used by a score doc (object header, doc and score, and array reference)
+    private static final long SCORE_DOC_SIZE = 32;
+
+    // rough estimate of the memory used by a single sort value of a field doc
+    private static final long FIELD_VALUE_SIZE = 32;
+
+    private final boolean enabled;
+
+    private final long maxMemory;
+
+    private final LinkedHashMap<Key, CacheEntry> cache = new LinkedHashMap<Key, CacheEntry>(16, 0.75f, true);
+
+    private long memoryUsed;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public QueryResultCache(CompassSettings settings) {
+        this.maxMemory = settings.getSettingAsBytes(LuceneEnvironment.QueryResultCache.MAX_MEMORY, 10 * 1024 * 1024);
+        this.enabled = settings.getSettingAsBoolean(LuceneEnvironment.QueryResultCache.ENABLE, false) && maxMemory > 0;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Creates the cache key of a search, or returns <code>null</code> if it can not be cached (the cache is
+     * disabled, or the search is not executed only against cached index holders).
+     */
+    public Key createKey(Query query, Filter filter, Sort sort, List<LuceneIndexHolder> indexHolders) {
+        if (!enabled || indexHolders == null) {
+            return null;
+        }
+        return new Key(query, filter, sort, indexHolders);
+    }
+
+    /**
+     * Returns the cached top docs for the given key if they hold at least the top <code>n</code> docs (or all
+     * the matching docs), <code>null</code> otherwise.
+     */
+    public TopDocs get(Key key, int n) {
+        CacheEntry entry;
+        synchronized (cache) {
+            entry = cache.get(key);
+        }
+        if (entry == null || (entry.topDocs.scoreDocs.length < n && entry.topDocs.scoreDocs.length < entry.topDocs.totalHits)) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return entry.topDocs;
+    }
+
+    public void put(Key key, TopDocs topDocs) {
+        for (LuceneIndexHolder indexHolder : key.indexHolders) {
+            // already replaced, and might have been evicted already, don't cache it
+            if (indexHolder.isMarkedForClose()) {
+                return;
+            }
+        }
+        CacheEntry entry = new CacheEntry(key, topDocs);
+        if (entry.memory > maxMemory) {
+            return;
+        }
+        synchronized (cache) {
+            CacheEntry existing = cache.put(key, entry);
+            if (existing != null) {
+                memoryUsed -= existing.memory;
+            }
+            memoryUsed += entry.memory;
+            for (Iterator<CacheEntry> it = cache.values().iterator(); memoryUsed > maxMemory && it.hasNext();) {
+                CacheEntry eldest = it.next();
+                it.remove();
+                memoryUsed -= eldest.memory;
+                evictionCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Evicts all the results computed using an index holder of the given sub index.
+     */
+    public void evictSubIndex(String subIndex) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (cache) {
+            for (Iterator<Map.Entry<Key, CacheEntry>> it = cache.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<Key, CacheEntry> entry = it.next();
+                if (entry.getKey().hasSubIndex(subIndex)) {
+                    it.remove();
+                    memoryUsed -= entry.getValue().memory;
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+            memoryUsed = 0;
+        }
+    }
+
+    public int getSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Returns the estimated memory (in bytes) used by the cached results.
+     */
+    public long getMemoryUsed() {
+        synchronized (cache) {
+            return memoryUsed;
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public double getHitRatio() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        if (total == 0) {
+            return 0;
+        }
+        return ((double) hits) / total;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "size [" + getSize() + "] memory [" + getMemoryUsed() + "] hits [" + getHitCount() + "] misses ["
+                + getMissCount() + "] evictions [" + getEvictionCount() + "]";
+    }
+
+    private static final class CacheEntry {
+
+        final TopDocs topDocs;
+
+        final long memory;
+
+        CacheEntry(Key key, TopDocs topDocs) {
+            this.topDocs = topDocs;
+            long memory = ENTRY_OVERHEAD + key.indexHolders.length * 8;
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                memory += SCORE_DOC_SIZE;
+                if (scoreDoc instanceof FieldDoc) {
+                    memory += 16 + ((FieldDoc) scoreDoc).fields.length * FIELD_VALUE_SIZE;
+                }
+            }
+            this.memory = memory;
+        }
+    }
+
+    /**
+     * The key of a cached search. Lucene {@link Sort} does not implement equals, so sort fields are compared
+     * by their field name, type, direction, locale and custom comparator. Filters are compared using their
+     * own equals (which is identity for filters that do not implement it), and index holders are compared
+     * by identity.
+     */
+    public static final class Key {
+
+        private final Query query;
+
+        private final Filter filter;
+
+        private final List<Object> sort;
+
+        private final LuceneIndexHolder[] indexHolders;
+
+        private final int hashCode;
+
+        Key(Query query, Filter filter, Sort sort, List<LuceneIndexHolder> indexHolders) {
+            // clone the query, since it might be changed after it is searched with (for example, its boost)
+            this.query = (Query) query.clone();
+            this.filter = filter;
+            this.sort = normalizeSort(sort);
+            this.indexHolders = indexHolders.toArray(new LuceneIndexHolder[indexHolders.size()]);
+            int hashCode = query.hashCode();
+            hashCode = 31 * hashCode + (filter == null ? 0 : filter.hashCode());
+            hashCode = 31 * hashCode + this.sort.hashCode();
+            this.hashCode = 31 * hashCode + Arrays.hashCode(this.indexHolders);
+        }
+
+        private static List<Object> normalizeSort(Sort sort) {
+            List<Object> normalized = new ArrayList<Object>();
+            if (sort == null) {
+                return normalized;
+            }
+            for (SortField sortField : sort.getSort()) {
+                normalized.add(sortField.getField());
+                normalized.add(sortField.getType());
+                normalized.add(sortField.getReverse());
+                normalized.add(sortField.getLocale());
+                normalized.add(sortField.getFactory());
+            }
+            return normalized;
+        }
+
+        boolean hasSubIndex(String subIndex) {
+            for (LuceneIndexHolder indexHolder : indexHolders) {
+                if (indexHolder.getSubIndex().equals(subIndex)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hashCode == key.hashCode && query.equals(key.query)
+                    && (filter == null ? key.filter == null : filter.equals(key.filter))
+                    && sort.equals(key.sort) && Arrays.equals(indexHolders, key.indexHolders);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.lucene.engine.manager;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.compass.core.CompassTermFreq;
+import org.compass.core.config.CompassSettings;
+import org.compass.core.impl.DefaultCompassTermFreq;
+import org.compass.core.lucene.LuceneEnvironment;
+import org.compass.core.util.concurrent.ConcurrentLinkedHashMap;
+
+/**
+ * Caches term frequencies results per the index holders they were computed with, the requested properties
+ * and the requested size. Since an index holder reader never changes, a cached result is valid for as long
+ * as the index holders are. Once an index holder of a sub index is replaced, results computed with it are
+ * evicted using {@link #evictSubIndex(String)}.
+ *
+ * <p>The cache is bounded by {@link LuceneEnvironment.TermFreqs#CACHE_SIZE} (with LRU eviction). Cached
+ * term frequencies are copied when stored and when returned, since callers are allowed to change them.
+ *
+ * @author kimchy
+ */
+public class TermFreqsCache {
+
+    private final ConcurrentLinkedHashMap<Key, CompassTermFreq[]> cache;
+
+    public TermFreqsCache(CompassSettings settings) {
+        int cacheSize = settings.getSettingAsInt(LuceneEnvironment.TermFreqs.CACHE_SIZE, 100);
+        if (cacheSize > 0) {
+            cache = new ConcurrentLinkedHashMap<Key, CompassTermFreq[]>(ConcurrentLinkedHashMap.EvictionPolicy.LRU, cacheSize);
+        } else {
+            cache = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * Returns a copy of the cached term frequencies, or <code>null</code> if there are none.
+     */
+    public CompassTermFreq[] get(String[] propertyNames, int size, List<LuceneIndexHolder> indexHolders) {
+        if (cache == null) {
+            return null;
+        }
+        CompassTermFreq[] termFreqs = cache.get(new Key(propertyNames, size, indexHolders));
+        if (termFreqs == null) {
+            return null;
+        }
+        return copy(termFreqs);
+    }
+
+    public void put(String[] propertyNames, int size, List<LuceneIndexHolder> indexHolders, CompassTermFreq[] termFreqs) {
+        if (cache == null) {
+            return;
+        }
+        for (LuceneIndexHolder indexHolder : indexHolders) {
+            // already replaced, and might have been evicted already, don't cache it
+            if (indexHolder.isMarkedForClose()) {
+                return;
+            }
+        }
+        cache.put(new Key(propertyNames, size, indexHolders), copy(termFreqs));
+    }
+
+    /**
+     * Evicts all the results computed using an index holder of the given sub index.
+     */
+    public void evictSubIndex(String subIndex) {
+        if (cache == null) {
+            return;
+        }
+        for (Key key : cache.keySet()) {
+            if (key.hasSubIndex(subIndex)) {
+                cache.remove(key);
+            }
+        }
+    }
+
+    public void clear() {
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    public int getSize() {
+        return cache == null ? 0 : cache.size();
+    }
+
+    private static CompassTermFreq[] copy(CompassTermFreq[] termFreqs) {
+        CompassTermFreq[] copy = new CompassTermFreq[termFreqs.length];
+        for (int i = 0; i < termFreqs.length; i++) {
+            copy[i] = new DefaultCompassTermFreq(termFreqs[i].getTerm(), termFreqs[i].getFreq(), termFreqs[i].getPropertyName());
+        }
+        return copy;
+    }
+
+    private static final class Key {
+
+        private final String[] propertyNames;
+
+        private final int size;
+
+        // index holders do not override equals, so they are compared by identity
+        private final LuceneIndexHolder[] indexHolders;
+
+        private final int hashCode;
+
+        Key(String[] propertyNames, int size, List<LuceneIndexHolder> indexHolders) {
+            this.propertyNames = propertyNames.clone();
+            this.size = size;
+            this.indexHolders = indexHolders.toArray(new LuceneIndexHolder[indexHolders.size()]);
+            this.hashCode = 31 * (31 * Arrays.hashCode(this.propertyNames) + size) + Arrays.hashCode(this.indexHolders);
+        }
+
+        boolean hasSubIndex(String subIndex) {
+            for (LuceneIndexHolder indexHolder : indexHolders) {
+                if (indexHolder.getSubIndex().equals(subIndex)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return size == key.size && Arrays.equals(propertyNames, key.propertyNames)
+                    && Arrays.equals(indexHolders, key.indexHolders);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
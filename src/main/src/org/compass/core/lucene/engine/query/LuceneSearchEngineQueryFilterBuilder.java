@@ -16,6 +16,7 @@
 
 package org.compass.core.lucene.engine.query;
 
+import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.QueryWrapperFilter;
 import org.apache.lucene.search.RangeFilter;
 import org.compass.core.engine.SearchEngineQuery;
@@ -23,18 +24,29 @@ import org.compass.core.engine.SearchEngineQueryFilter;
 import org.compass.core.engine.SearchEngineQueryFilterBuilder;
 import org.compass.core.lucene.engine.LuceneSearchEngineQuery;
 import org.compass.core.lucene.engine.LuceneSearchEngineQueryFilter;
+import org.compass.core.lucene.search.CachingFilter;
+import org.compass.core.lucene.search.FilterCache;
 
 /**
+ * Builds Lucene based filters. If the {@link FilterCache} is enabled, range and query filters are wrapped
+ * with a {@link CachingFilter} so their doc id sets will be reused across searches.
+ *
  * @author kimchy
  */
-// TODO add makeCacheable to filters. Will have to hook into index change events to invalidate the filter cache.
 public class LuceneSearchEngineQueryFilterBuilder implements SearchEngineQueryFilterBuilder {
 
+    private final FilterCache filterCache;
+
     public LuceneSearchEngineQueryFilterBuilder() {
+        this(null);
+    }
+
+    public LuceneSearchEngineQueryFilterBuilder(FilterCache filterCache) {
+        this.filterCache = filterCache;
     }
 
     public SearchEngineQueryFilter between(String resourcePropertyName, String low, String high, boolean includeLow, boolean includeHigh) {
-        return new LuceneSearchEngineQueryFilter(new RangeFilter(resourcePropertyName, low, high, includeLow, includeHigh));
+        return createFilter(new RangeFilter(resourcePropertyName, low, high, includeLow, includeHigh));
     }
 
     public SearchEngineQueryFilter lt(String resourcePropertyName, String value) {
@@ -54,10 +66,17 @@ public class LuceneSearchEngineQueryFilterBuilder implements SearchEngineQueryFi
     }
 
     public SearchEngineQueryFilter query(SearchEngineQuery query) {
-        return new LuceneSearchEngineQueryFilter(new QueryWrapperFilter(((LuceneSearchEngineQuery) query).getQuery()));
+        return createFilter(new QueryWrapperFilter(((LuceneSearchEngineQuery) query).getQuery()));
     }
 
     public SearchEngineBooleanQueryFilterBuilder bool() {
         return new LuceneSearchEngineBooleanQueryFilterBuilder();
     }
+
+    private SearchEngineQueryFilter createFilter(Filter filter) {
+        if (filterCache != null && filterCache.isEnabled()) {
+            filter = new CachingFilter(filter, filterCache);
+        }
+        return new LuceneSearchEngineQueryFilter(filter);
+    }
 }
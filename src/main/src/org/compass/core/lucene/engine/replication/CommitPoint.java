@@ -0,0 +1,176 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.lucene.engine.replication;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A commit point published by the master for a specific sub index. Holds the segments file name of the
+ * commit and all the (immutable) files it references, each with its length and checksum.
+ *
+ * <p>The segments file is always the last file of the commit point, so replicas that copy the files in order
+ * only make the commit visible once all the files it references have been copied.
+ *
+ * @author kimchy
+ */
+public class CommitPoint {
+
+    private static final int FORMAT = 1;
+
+    private final String subIndex;
+
+    private final String segmentsFileName;
+
+    private final long generation;
+
+    private final long version;
+
+    private final List<FileInfo> files;
+
+    public CommitPoint(String subIndex, String segmentsFileName, long generation, long version, List<FileInfo> files) {
+        this.subIndex = subIndex;
+        this.segmentsFileName = segmentsFileName;
+        this.generation = generation;
+        this.version = version;
+        this.files = Collections.unmodifiableList(files);
+    }
+
+    public String getSubIndex() {
+        return subIndex;
+    }
+
+    public String getSegmentsFileName() {
+        return segmentsFileName;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * The index version of the commit (see {@link org.apache.lucene.index.IndexReader#getVersion()}).
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns all the files of the commit point, with the segments file last.
+     */
+    public List<FileInfo> getFiles() {
+        return files;
+    }
+
+    public FileInfo getFile(String name) {
+        for (FileInfo file : files) {
+            if (file.getName().equals(name)) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns <code>true</code> if the other commit point represents the same commit of the same sub index.
+     */
+    public boolean isSameCommit(CommitPoint other) {
+        return other != null && subIndex.equals(other.subIndex) && segmentsFileName.equals(other.segmentsFileName)
+                && version == other.version;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(FORMAT);
+        out.writeUTF(subIndex);
+        out.writeUTF(segmentsFileName);
+        out.writeLong(generation);
+        out.writeLong(version);
+        out.writeInt(files.size());
+        for (FileInfo file : files) {
+            out.writeUTF(file.getName());
+            out.writeLong(file.getLength());
+            out.writeLong(file.getChecksum());
+        }
+    }
+
+    public static CommitPoint readFrom(DataInput in) throws IOException {
+        int format = in.readInt();
+        if (format != FORMAT) {
+            throw new IOException("Unsupported commit point format [" + format + "]");
+        }
+        String subIndex = in.readUTF();
+        String segmentsFileName = in.readUTF();
+        long generation = in.readLong();
+        long version = in.readLong();
+        int size = in.readInt();
+        List<FileInfo> files = new ArrayList<FileInfo>(size);
+        for (int i = 0; i < size; i++) {
+            files.add(new FileInfo(in.readUTF(), in.readLong(), in.readLong()));
+        }
+        return new CommitPoint(subIndex, segmentsFileName, generation, version, files);
+    }
+
+    public String toString() {
+        return "subIndex [" + subIndex + "] segments [" + segmentsFileName + "] version [" + version + "] files ["
+                + files.size() + "]";
+    }
+
+    /**
+     * A single file of a commit point.
+     */
+    public static class FileInfo {
+
+        private final String name;
+
+        private final long length;
+
+        private final long checksum;
+
+        public FileInfo(String name, long length, long checksum) {
+            this.name = name;
+            this.length = length;
+            this.checksum = checksum;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * The CRC32 checksum of the file content.
+         */
+        public long getChecksum() {
+            return checksum;
+        }
+
+        public boolean isSameFile(FileInfo other) {
+            return other != null && name.equals(other.name) && length == other.length && checksum == other.checksum;
+        }
+
+        public String toString() {
+            return name + " [" + length + "/" + checksum + "]";
+        }
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.lucene.engine.replication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IndexInput;
+import org.compass.core.CompassException;
+import org.compass.core.config.CompassConfigurable;
+import org.compass.core.config.CompassSettings;
+import org.compass.core.config.ConfigurationException;
+import org.compass.core.lucene.LuceneEnvironment;
+
+/**
+ * A {@link ReplicationTransport} that uses a (shared) file system path, for example an NFS mount or a local
+ * path when the master and the replicas run on the same machine.
+ *
+ * <p>Each sub index has its own directory under the path, holding the published files and the commit point
+ * manifests (<code>commit_N</code>). Files are only copied when they were not already published with the same
+ * length and checksum, so only new segments are copied on each publish. Files and manifests are written to a
+ * temporary file, synced, and then renamed, so replicas never see partial files.
+ *
+ * <p>The last {@link org.compass.core.lucene.LuceneEnvironment.Replication.FileSystem#KEEP_COMMITS} commit
+ * points (and their files) are kept, older ones are deleted once a new commit point is published.
+ *
+ * @author kimchy
+ */
+public class FileSystemReplicationTransport implements ReplicationTransport, CompassConfigurable {
+
+    private static final Log log = LogFactory.getLog(FileSystemReplicationTransport.class);
+
+    public static final String COMMIT_PREFIX = "commit_";
+
+    private static final String TEMP_SUFFIX = ".reptmp";
+
+    private File path;
+
+    private int keepCommits;
+
+    public void configure(CompassSettings settings) throws CompassException {
+        String path = settings.getSetting(LuceneEnvironment.Replication.FileSystem.PATH);
+        if (path == null) {
+            throw new ConfigurationException("File system replication transport requires the ["
+                    + LuceneEnvironment.Replication.FileSystem.PATH + "] setting");
+        }
+        setPath(new File(path));
+        setKeepCommits(settings.getSettingAsInt(LuceneEnvironment.Replication.FileSystem.KEEP_COMMITS, 3));
+    }
+
+    public File getPath() {
+        return path;
+    }
+
+    public void setPath(File path) {
+        this.path = path;
+    }
+
+    public void setKeepCommits(int keepCommits) {
+        this.keepCommits = Math.max(1, keepCommits);
+    }
+
+    public synchronized void publish(CommitPoint commitPoint, Directory directory) throws IOException {
+        File dir = new File(path, commitPoint.getSubIndex());
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Failed to create replication directory [" + dir.getAbsolutePath() + "]");
+        }
+        long[] sequences = listSequences(dir);
+        Map<String, CommitPoint.FileInfo> published = new HashMap<String, CommitPoint.FileInfo>();
+        for (long sequence : sequences) {
+            CommitPoint publishedCommitPoint = readCommitPoint(dir, sequence);
+            if (publishedCommitPoint != null) {
+                for (CommitPoint.FileInfo file : publishedCommitPoint.getFiles()) {
+                    published.put(file.getName(), file);
+                }
+            }
+        }
+
+        for (CommitPoint.FileInfo file : commitPoint.getFiles()) {
+            File target = new File(dir, file.getName());
+            if (target.exists() && target.length() == file.getLength() && file.isSameFile(published.get(file.getName()))) {
+                continue;
+            }
+            copy(directory, file, target);
+        }
+
+        long sequence = sequences.length == 0 ? 1 : sequences[sequences.length - 1] + 1;
+        File manifest = new File(dir, COMMIT_PREFIX + Long.toString(sequence, Character.MAX_RADIX));
+        File tempManifest = new File(dir, manifest.getName() + TEMP_SUFFIX);
+        FileOutputStream fos = new FileOutputStream(tempManifest);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            commitPoint.writeTo(out);
+            out.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+        rename(tempManifest, manifest);
+        if (log.isDebugEnabled()) {
+            log.debug("Published commit point [" + manifest.getName() + "] " + commitPoint);
+        }
+
+        deleteOldCommitPoints(dir);
+    }
+
+    public CommitPoint getLatestCommitPoint(String subIndex) throws IOException {
+        File dir = new File(path, subIndex);
+        long[] sequences = listSequences(dir);
+        for (int i = sequences.length - 1; i >= 0; i--) {
+            CommitPoint commitPoint = readCommitPoint(dir, sequences[i]);
+            if (commitPoint != null) {
+                return commitPoint;
+            }
+        }
+        return null;
+    }
+
+    public InputStream openFile(String subIndex, String fileName) throws IOException {
+        return new FileInputStream(new File(new File(path, subIndex), fileName));
+    }
+
+    public void close() {
+    }
+
+    private void copy(Directory directory, CommitPoint.FileInfo file, File target) throws IOException {
+        File tempTarget = new File(target.getParentFile(), target.getName() + TEMP_SUFFIX);
+        CRC32 crc = new CRC32();
+        IndexInput indexInput = directory.openInput(file.getName());
+        try {
+            FileOutputStream fos = new FileOutputStream(tempTarget);
+            try {
+                byte[] buffer = new byte[16384];
+                long length = indexInput.length();
+                long position = 0;
+                while (position < length) {
+                    int chunk = (int) Math.min(buffer.length, length - position);
+                    indexInput.readBytes(buffer, 0, chunk);
+                    crc.update(buffer, 0, chunk);
+                    fos.write(buffer, 0, chunk);
+                    position += chunk;
+                }
+                fos.getFD().sync();
+            } finally {
+                fos.close();
+            }
+        } finally {
+            indexInput.close();
+        }
+        if (tempTarget.length() != file.getLength() || crc.getValue() != file.getChecksum()) {
+            tempTarget.delete();
+            throw new IOException("File [" + file.getName() + "] changed while being published, expected " + file
+                    + " but got [" + tempTarget.length() + "/" + crc.getValue() + "]");
+        }
+        rename(tempTarget, target);
+    }
+
+    private void rename(File from, File to) throws IOException {
+        if (from.renameTo(to)) {
+            return;
+        }
+        // some file systems do not allow to rename over an existing file
+        to.delete();
+        if (!from.renameTo(to)) {
+            throw new IOException("Failed to rename [" + from.getAbsolutePath() + "] to [" + to.getAbsolutePath() + "]");
+        }
+    }
+
+    private void deleteOldCommitPoints(File dir) {
+        long[] sequences = listSequences(dir);
+        int firstKept = Math.max(0, sequences.length - keepCommits);
+        Set<String> referenced = new HashSet<String>();
+        for (int i = 0; i < sequences.length; i++) {
+            String manifestName = COMMIT_PREFIX + Long.toString(sequences[i], Character.MAX_RADIX);
+            if (i < firstKept) {
+                new File(dir, manifestName).delete();
+                continue;
+            }
+            referenced.add(manifestName);
+            CommitPoint commitPoint = readCommitPoint(dir, sequences[i]);
+            if (commitPoint == null) {
+                continue;
+            }
+            for (CommitPoint.FileInfo file : commitPoint.getFiles()) {
+                referenced.add(file.getName());
+            }
+        }
+        String[] names = dir.list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            if (!referenced.contains(name)) {
+                if (log.isTraceEnabled()) {
+                    log.trace("Deleting unreferenced replication file [" + name + "] from [" + dir.getAbsolutePath() + "]");
+                }
+                new File(dir, name).delete();
+            }
+        }
+    }
+
+    private CommitPoint readCommitPoint(File dir, long sequence) {
+        File manifest = new File(dir, COMMIT_PREFIX + Long.toString(sequence, Character.MAX_RADIX));
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(manifest)));
+            try {
+                return CommitPoint.readFrom(in);
+            } finally {
+                in.close();
+            }
+        } catch (FileNotFoundException e) {
+            // deleted by the master since we listed it
+            return null;
+        } catch (IOException e) {
+            log.warn("Failed to read commit point [" + manifest.getAbsolutePath() + "], ignoring it", e);
+            return null;
+        }
+    }
+
+    private long[] listSequences(File dir) {
+        String[] names = dir.list();
+        if (names == null) {
+            return new long[0];
+        }
+        List<Long> sequences = new ArrayList<Long>();
+        for (String name : names) {
+            if (name.startsWith(COMMIT_PREFIX) && !name.endsWith(TEMP_SUFFIX)) {
+                try {
+                    sequences.add(Long.parseLong(name.substring(COMMIT_PREFIX.length()), Character.MAX_RADIX));
+                } catch (NumberFormatException e) {
+                    // not a commit point manifest
+                }
+            }
+        }
+        long[] result = new long[sequences.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = sequences.get(i);
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    public String toString() {
+        return "fs [" + path + "]";
+    }
+}
@@ -0,0 +1,601 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.lucene.engine.replication;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexDeletionPolicy;
+import org.apache.lucene.index.IndexFileNameFilter;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LuceneFileNames;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.compass.core.CompassException;
+import org.compass.core.config.CompassConfigurable;
+import org.compass.core.config.CompassSettings;
+import org.compass.core.engine.SearchEngineException;
+import org.compass.core.lucene.LuceneEnvironment;
+import org.compass.core.lucene.engine.manager.LuceneSearchEngineIndexManager;
+import org.compass.core.transaction.context.TransactionContextCallback;
+import org.compass.core.util.ClassUtils;
+
+/**
+ * Replicates the index of a master Compass instance to replicas at the segment file level.
+ *
+ * <p>When running as {@link org.compass.core.lucene.LuceneEnvironment.Replication.Mode#MASTER}, the latest commit
+ * point of each sub index is published using the {@link ReplicationTransport} whenever it changes. Publishing
+ * computes a CRC32 checksum of each file, which is only done once per file since index files are immutable.
+ * The commit point is reserved while it is published, so concurrent commits and merges do not delete its files
+ * (see {@link #wrapIndexDeletionPolicy(Directory, IndexDeletionPolicy)}).
+ *
+ * <p>When running as {@link org.compass.core.lucene.LuceneEnvironment.Replication.Mode#REPLICA}, the latest
+ * published commit point is pulled into the local sub index directory. Only files the replica does not
+ * already have (with the same length and checksum) are copied, and each copied file is verified against the
+ * checksum of the commit point. Files that already exist locally with different content (the master index
+ * was recreated) and the segments file are staged under temporary names, and only once all the files of the
+ * commit point are copied and verified are they renamed into place (the segments file last). A failed pull
+ * therefore leaves the local index untouched. Once switched over, the cached index holders are refreshed and
+ * files no longer referenced are deleted. A replica should never be written to directly, and its directory
+ * must support renaming files.
+ *
+ * <p>Both publishing and pulling are performed periodically (see
+ * {@link org.compass.core.lucene.LuceneEnvironment.Replication#INTERVAL}), and can also be triggered
+ * explicitly using {@link #publish()} and {@link #replicate()}. A failed attempt (for example, since the
+ * replica failed to verify a copied file) is simply retried on the next run.
+ *
+ * @author kimchy
+ */
+public class ReplicationManager {
+
+    private static final Log log = LogFactory.getLog(ReplicationManager.class);
+
+    private static final String STAGED_SUFFIX = ".replicating";
+
+    private final LuceneSearchEngineIndexManager indexManager;
+
+    private final String mode;
+
+    private final ReplicationTransport transport;
+
+    private final Map<String, CommitPoint> lastCommitPoints = new ConcurrentHashMap<String, CommitPoint>();
+
+    // master: checksums of the published files, replica: the local files copied or verified
+    private final Map<String, Map<String, FileChecksum>> checksums = new HashMap<String, Map<String, FileChecksum>>();
+
+    // master: the commit points reserved (while published) per directory
+    private final Map<Directory, ReservingIndexDeletionPolicy.Reservations> reservations =
+            new IdentityHashMap<Directory, ReservingIndexDeletionPolicy.Reservations>();
+
+    private volatile ScheduledFuture scheduledReplicationFuture;
+
+    public ReplicationManager(LuceneSearchEngineIndexManager indexManager) {
+        this.indexManager = indexManager;
+        CompassSettings settings = indexManager.getSettings().getSettings();
+        this.mode = settings.getSetting(LuceneEnvironment.Replication.MODE, LuceneEnvironment.Replication.Mode.NONE).toLowerCase();
+        if (LuceneEnvironment.Replication.Mode.NONE.equals(mode)) {
+            transport = null;
+            return;
+        }
+        if (!isMaster() && !isReplica()) {
+            throw new SearchEngineException("Unknown replication mode [" + mode + "], should be either ["
+                    + LuceneEnvironment.Replication.Mode.MASTER + "] or [" + LuceneEnvironment.Replication.Mode.REPLICA + "]");
+        }
+        transport = createTransport(settings);
+        if (log.isDebugEnabled()) {
+            log.debug("Replication running as [" + mode + "] using transport [" + transport + "]");
+        }
+    }
+
+    private ReplicationTransport createTransport(CompassSettings settings) {
+        String transportType = settings.getSetting(LuceneEnvironment.Replication.TRANSPORT, LuceneEnvironment.Replication.FileSystem.NAME);
+        ReplicationTransport transport;
+        if (LuceneEnvironment.Replication.FileSystem.NAME.equalsIgnoreCase(transportType)) {
+            transport = new FileSystemReplicationTransport();
+        } else {
+            try {
+                transport = (ReplicationTransport) ClassUtils.forName(transportType, settings.getClassLoader()).newInstance();
+            } catch (Exception e) {
+                throw new SearchEngineException("Failed to create replication transport [" + transportType + "]", e);
+            }
+        }
+        if (transport instanceof CompassConfigurable) {
+            ((CompassConfigurable) transport).configure(settings);
+        }
+        return transport;
+    }
+
+    public boolean isEnabled() {
+        return transport != null;
+    }
+
+    public boolean isMaster() {
+        return LuceneEnvironment.Replication.Mode.MASTER.equals(mode);
+    }
+
+    public boolean isReplica() {
+        return LuceneEnvironment.Replication.Mode.REPLICA.equals(mode);
+    }
+
+    public ReplicationTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Returns the last commit point published (master) or applied (replica) for the given sub index.
+     */
+    public CommitPoint getLastCommitPoint(String subIndex) {
+        return lastCommitPoints.get(subIndex);
+    }
+
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+        if (indexManager.getExecutorManager().isDisabled()) {
+            log.info("Scheduled replication is disabled since executor manager is disabled");
+            return;
+        }
+        long interval = indexManager.getSettings().getSettings().getSettingAsTimeInMillis(LuceneEnvironment.Replication.INTERVAL, 5000);
+        if (interval <= 0) {
+            log.info("Scheduled replication is disabled");
+            return;
+        }
+        if (log.isInfoEnabled()) {
+            log.info("Starting scheduled replication as [" + mode + "] with period [" + interval + "ms]");
+        }
+        scheduledReplicationFuture = indexManager.getExecutorManager().scheduleWithFixedDelay(new ScheduledReplicationRunnable(),
+                interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (scheduledReplicationFuture != null) {
+            scheduledReplicationFuture.cancel(true);
+            scheduledReplicationFuture = null;
+        }
+    }
+
+    public void close() {
+        stop();
+        if (transport != null) {
+            transport.close();
+        }
+    }
+
+    /**
+     * Wraps the index deletion policy used by index writers of the given directory so commit points reserved
+     * while they are published are not deleted. Returns the given deletion policy if not running as master.
+     */
+    public IndexDeletionPolicy wrapIndexDeletionPolicy(Directory dir, IndexDeletionPolicy deletionPolicy) {
+        if (!isMaster()) {
+            return deletionPolicy;
+        }
+        return new ReservingIndexDeletionPolicy(deletionPolicy, reservations(dir));
+    }
+
+    private ReservingIndexDeletionPolicy.Reservations reservations(Directory dir) {
+        synchronized (reservations) {
+            ReservingIndexDeletionPolicy.Reservations dirReservations = reservations.get(dir);
+            if (dirReservations == null) {
+                dirReservations = new ReservingIndexDeletionPolicy.Reservations();
+                reservations.put(dir, dirReservations);
+            }
+            return dirReservations;
+        }
+    }
+
+    /**
+     * Publishes the latest commit point of all the sub indexes that changed since they were last published.
+     * Should only be called on the master.
+     */
+    public void publish() throws SearchEngineException {
+        for (String subIndex : indexManager.getSubIndexes()) {
+            publish(subIndex);
+        }
+    }
+
+    /**
+     * Publishes the latest commit point of the sub index if it changed since it was last published. Returns
+     * <code>true</code> if a new commit point was published.
+     */
+    public synchronized boolean publish(String subIndex) throws SearchEngineException {
+        if (!isMaster()) {
+            throw new SearchEngineException("Only a replication master can publish commit points");
+        }
+        Directory dir = indexManager.getDirectory(subIndex);
+        try {
+            if (!IndexReader.indexExists(dir)) {
+                return false;
+            }
+            // the latest commit point is never deleted by a concurrent commit (only older ones are), and once
+            // reserved, it will not be deleted until released
+            ReservingIndexDeletionPolicy.Reservations dirReservations = reservations(dir);
+            IndexCommit indexCommit = null;
+            synchronized (dirReservations) {
+                for (IndexCommit commit : (Collection<IndexCommit>) IndexReader.listCommits(dir)) {
+                    if (indexCommit == null || commit.getGeneration() > indexCommit.getGeneration()) {
+                        indexCommit = commit;
+                    }
+                }
+                if (indexCommit == null) {
+                    return false;
+                }
+                dirReservations.reserve(indexCommit);
+            }
+            try {
+                return publish(subIndex, dir, indexCommit);
+            } finally {
+                dirReservations.release(indexCommit);
+            }
+        } catch (IOException e) {
+            throw new SearchEngineException("Failed to publish commit point for sub index [" + subIndex + "]", e);
+        }
+    }
+
+    private boolean publish(String subIndex, Directory dir, IndexCommit indexCommit) throws IOException {
+        CommitPoint lastCommitPoint = lastCommitPoints.get(subIndex);
+        if (lastCommitPoint != null && lastCommitPoint.getSegmentsFileName().equals(indexCommit.getSegmentsFileName())
+                && lastCommitPoint.getVersion() == indexCommit.getVersion()) {
+            return false;
+        }
+
+        Map<String, FileChecksum> publishedChecksums = subIndexChecksums(subIndex);
+        Map<String, FileChecksum> commitChecksums = new HashMap<String, FileChecksum>();
+        List<CommitPoint.FileInfo> files = new ArrayList<CommitPoint.FileInfo>();
+        for (String name : (Collection<String>) indexCommit.getFileNames()) {
+            if (!name.equals(indexCommit.getSegmentsFileName())) {
+                files.add(masterFileInfo(dir, name, publishedChecksums, commitChecksums));
+            }
+        }
+        files.add(masterFileInfo(dir, indexCommit.getSegmentsFileName(), publishedChecksums, commitChecksums));
+        CommitPoint commitPoint = new CommitPoint(subIndex, indexCommit.getSegmentsFileName(),
+                indexCommit.getGeneration(), indexCommit.getVersion(), files);
+
+        transport.publish(commitPoint, dir);
+
+        publishedChecksums.clear();
+        publishedChecksums.putAll(commitChecksums);
+        lastCommitPoints.put(subIndex, commitPoint);
+        return true;
+    }
+
+    private CommitPoint.FileInfo masterFileInfo(Directory dir, String name, Map<String, FileChecksum> publishedChecksums,
+                                                Map<String, FileChecksum> commitChecksums) throws IOException {
+        long length = dir.fileLength(name);
+        long lastModified = dir.fileModified(name);
+        FileChecksum checksum = publishedChecksums.get(name);
+        if (checksum == null || checksum.length != length || checksum.lastModified != lastModified) {
+            checksum = new FileChecksum(length, lastModified, checksum(dir, name));
+        }
+        commitChecksums.put(name, checksum);
+        return new CommitPoint.FileInfo(name, length, checksum.checksum);
+    }
+
+    /**
+     * Pulls the latest published commit point of all the sub indexes.
+     * Should only be called on a replica.
+     */
+    public void replicate() throws SearchEngineException {
+        for (String subIndex : indexManager.getSubIndexes()) {
+            replicate(subIndex);
+        }
+    }
+
+    /**
+     * Pulls the latest published commit point of the sub index if it was not applied yet, and refreshes the
+     * cached index holder of the sub index once it has been applied. Returns <code>true</code> if a new commit
+     * point was applied.
+     */
+    public synchronized boolean replicate(final String subIndex) throws SearchEngineException {
+        if (!isReplica()) {
+            throw new SearchEngineException("Only a replica can pull commit points");
+        }
+        Directory dir = indexManager.getDirectory(subIndex);
+        CommitPoint commitPoint;
+        try {
+            commitPoint = transport.getLatestCommitPoint(subIndex);
+        } catch (IOException e) {
+            throw new SearchEngineException("Failed to read latest commit point for sub index [" + subIndex + "]", e);
+        }
+        if (commitPoint == null || commitPoint.isSameCommit(lastCommitPoints.get(subIndex))) {
+            return false;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Replicating " + commitPoint);
+        }
+        Map<String, FileChecksum> localChecksums = subIndexChecksums(subIndex);
+        // staged file name to the file it replaces, in the order they are switched over
+        Map<String, CommitPoint.FileInfo> staged = new LinkedHashMap<String, CommitPoint.FileInfo>();
+        try {
+            int copied = 0;
+            for (CommitPoint.FileInfo file : commitPoint.getFiles()) {
+                if (file.getName().equals(commitPoint.getSegmentsFileName())) {
+                    continue;
+                }
+                if (!isLocalFileCurrent(dir, file, localChecksums)) {
+                    if (dir.fileExists(file.getName())) {
+                        // still referenced by the current local commit, replace it only when switching over
+                        stage(dir, commitPoint, file, staged);
+                    } else {
+                        long checksum = pull(dir, commitPoint, file, file.getName());
+                        localChecksums.put(file.getName(), new FileChecksum(file.getLength(), dir.fileModified(file.getName()), checksum));
+                    }
+                    copied++;
+                }
+            }
+            CommitPoint.FileInfo segmentsFile = commitPoint.getFile(commitPoint.getSegmentsFileName());
+            if (!isLocalFileCurrent(dir, segmentsFile, localChecksums)) {
+                stage(dir, commitPoint, segmentsFile, staged);
+                copied++;
+            }
+            switchOver(dir, commitPoint, staged, localChecksums);
+            if (log.isDebugEnabled()) {
+                log.debug("Replicated sub index [" + subIndex + "] to [" + commitPoint.getSegmentsFileName() + "], copied ["
+                        + copied + "] out of [" + commitPoint.getFiles().size() + "] files");
+            }
+        } catch (IOException e) {
+            throw new SearchEngineException("Failed to replicate " + commitPoint, e);
+        } finally {
+            for (String stagedName : staged.keySet()) {
+                deleteStagedFile(dir, stagedName);
+            }
+        }
+        lastCommitPoints.put(subIndex, commitPoint);
+
+        // switch searches over to the new commit
+        indexManager.refreshCache(subIndex);
+
+        deleteUnreferencedFiles(dir, commitPoint, localChecksums);
+        return true;
+    }
+
+    private boolean isLocalFileCurrent(Directory dir, CommitPoint.FileInfo file, Map<String, FileChecksum> localChecksums) throws IOException {
+        if (!dir.fileExists(file.getName()) || dir.fileLength(file.getName()) != file.getLength()) {
+            return false;
+        }
+        long lastModified = dir.fileModified(file.getName());
+        FileChecksum checksum = localChecksums.get(file.getName());
+        if (checksum == null || checksum.length != file.getLength() || checksum.lastModified != lastModified) {
+            // a file we did not copy (for example, from before a restart), verify it
+            checksum = new FileChecksum(file.getLength(), lastModified, checksum(dir, file.getName()));
+            localChecksums.put(file.getName(), checksum);
+        }
+        return checksum.checksum == file.getChecksum();
+    }
+
+    private void stage(Directory dir, CommitPoint commitPoint, CommitPoint.FileInfo file,
+                       Map<String, CommitPoint.FileInfo> staged) throws IOException {
+        String stagedName = file.getName() + STAGED_SUFFIX;
+        staged.put(stagedName, file);
+        pull(dir, commitPoint, file, stagedName);
+    }
+
+    /**
+     * Renames the staged files of the commit point into place, once all of its files are copied and verified.
+     * Local segments files that would hide the new commit (with a higher generation), or that reference files
+     * about to be replaced, are deleted first, and the segments file is renamed last, so readers never open a
+     * commit with files of another commit.
+     */
+    private void switchOver(Directory dir, CommitPoint commitPoint, Map<String, CommitPoint.FileInfo> staged,
+                            Map<String, FileChecksum> localChecksums) throws IOException {
+        boolean replacingFiles = false;
+        for (CommitPoint.FileInfo file : staged.values()) {
+            if (!file.getName().equals(commitPoint.getSegmentsFileName())) {
+                replacingFiles = true;
+                break;
+            }
+        }
+        for (String name : listIndexFiles(dir)) {
+            if (LuceneFileNames.isSegmentsFile(name) && !name.equals(LuceneFileNames.SEGMENTS_GEN)
+                    && !name.equals(commitPoint.getSegmentsFileName())
+                    && (replacingFiles || LuceneFileNames.generationFromSegmentsFileName(name) >= commitPoint.getGeneration())) {
+                dir.deleteFile(name);
+            }
+        }
+        if (dir.fileExists(LuceneFileNames.SEGMENTS_GEN)) {
+            dir.deleteFile(LuceneFileNames.SEGMENTS_GEN);
+        }
+        for (Map.Entry<String, CommitPoint.FileInfo> entry : staged.entrySet()) {
+            CommitPoint.FileInfo file = entry.getValue();
+            if (dir.fileExists(file.getName())) {
+                dir.deleteFile(file.getName());
+            }
+            dir.renameFile(entry.getKey(), file.getName());
+            localChecksums.put(file.getName(), new FileChecksum(file.getLength(), dir.fileModified(file.getName()), file.getChecksum()));
+        }
+        staged.clear();
+    }
+
+    /**
+     * Copies the file of the commit point into the given local file, verifying it against the commit point
+     * checksum. Returns the checksum.
+     */
+    private long pull(Directory dir, CommitPoint commitPoint, CommitPoint.FileInfo file, String localName) throws IOException {
+        if (dir.fileExists(localName)) {
+            dir.deleteFile(localName);
+        }
+        CRC32 crc = new CRC32();
+        long length = 0;
+        InputStream is = transport.openFile(commitPoint.getSubIndex(), file.getName());
+        try {
+            IndexOutput indexOutput = dir.createOutput(localName);
+            try {
+                byte[] buffer = new byte[16384];
+                int read;
+                while ((read = is.read(buffer)) != -1) {
+                    crc.update(buffer, 0, read);
+                    indexOutput.writeBytes(buffer, 0, read);
+                    length += read;
+                }
+            } finally {
+                indexOutput.close();
+            }
+        } finally {
+            is.close();
+        }
+        if (length != file.getLength() || crc.getValue() != file.getChecksum()) {
+            dir.deleteFile(localName);
+            throw new IOException("Checksum mismatch replicating file " + file + ", got [" + length + "/" + crc.getValue() + "]");
+        }
+        dir.sync(localName);
+        return crc.getValue();
+    }
+
+    private void deleteStagedFile(Directory dir, String stagedName) {
+        try {
+            if (dir.fileExists(stagedName)) {
+                dir.deleteFile(stagedName);
+            }
+        } catch (IOException e) {
+            if (log.isTraceEnabled()) {
+                log.trace("Failed to delete staged file [" + stagedName + "], will retry", e);
+            }
+        }
+    }
+
+    private void deleteUnreferencedFiles(Directory dir, CommitPoint commitPoint, Map<String, FileChecksum> localChecksums) {
+        Set<String> referenced = new HashSet<String>();
+        for (CommitPoint.FileInfo file : commitPoint.getFiles()) {
+            referenced.add(file.getName());
+        }
+        try {
+            List<String> names = listIndexFiles(dir);
+            // staged files left over by a pull that did not complete (for example, a crash)
+            String[] all = dir.list();
+            if (all != null) {
+                for (String name : all) {
+                    if (name.endsWith(STAGED_SUFFIX)) {
+                        names.add(name);
+                    }
+                }
+            }
+            for (String name : names) {
+                if (referenced.contains(name)) {
+                    continue;
+                }
+                try {
+                    dir.deleteFile(name);
+                    localChecksums.remove(name);
+                } catch (IOException e) {
+                    // might still be open by an index reader on some platforms, will be deleted on the next commit
+                    if (log.isTraceEnabled()) {
+                        log.trace("Failed to delete unreferenced file [" + name + "], will retry", e);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Failed to list files for sub index [" + commitPoint.getSubIndex() + "]", e);
+        }
+    }
+
+    private List<String> listIndexFiles(Directory dir) throws IOException {
+        List<String> files = new ArrayList<String>();
+        String[] names = dir.list();
+        if (names == null) {
+            return files;
+        }
+        IndexFileNameFilter filter = IndexFileNameFilter.getFilter();
+        for (String name : names) {
+            if (filter.accept(null, name)) {
+                files.add(name);
+            }
+        }
+        return files;
+    }
+
+    private Map<String, FileChecksum> subIndexChecksums(String subIndex) {
+        Map<String, FileChecksum> subIndexChecksums = checksums.get(subIndex);
+        if (subIndexChecksums == null) {
+            subIndexChecksums = new HashMap<String, FileChecksum>();
+            checksums.put(subIndex, subIndexChecksums);
+        }
+        return subIndexChecksums;
+    }
+
+    private static long checksum(Directory dir, String name) throws IOException {
+        CRC32 crc = new CRC32();
+        IndexInput indexInput = dir.openInput(name);
+        try {
+            byte[] buffer = new byte[16384];
+            long length = indexInput.length();
+            long position = 0;
+            while (position < length) {
+                int chunk = (int) Math.min(buffer.length, length - position);
+                indexInput.readBytes(buffer, 0, chunk);
+                crc.update(buffer, 0, chunk);
+                position += chunk;
+            }
+        } finally {
+            indexInput.close();
+        }
+        return crc.getValue();
+    }
+
+    private static class FileChecksum {
+
+        final long length;
+
+        final long lastModified;
+
+        final long checksum;
+
+        FileChecksum(long length, long lastModified, long checksum) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+        }
+    }
+
+    private class ScheduledReplicationRunnable implements Runnable {
+
+        public void run() {
+            indexManager.getTransactionContext().execute(new TransactionContextCallback<Object>() {
+                public Object doInTransaction() throws CompassException {
+                    for (String subIndex : indexManager.getSubIndexes()) {
+                        try {
+                            if (isMaster()) {
+                                publish(subIndex);
+                            } else {
+                                replicate(subIndex);
+                            }
+                        } catch (Exception e) {
+                            log.warn("Failed to perform scheduled replication for sub index [" + subIndex + "], will retry", e);
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+    }
+}
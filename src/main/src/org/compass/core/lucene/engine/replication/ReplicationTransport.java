@@ -0,0 +1,60 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.lucene.engine.replication;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.lucene.store.Directory;
+
+/**
+ * The transport used to move commit points and their files from the master to the replicas. The master
+ * calls {@link #publish(CommitPoint, org.apache.lucene.store.Directory)}, and replicas poll
+ * {@link #getLatestCommitPoint(String)} and pull the files they are missing using
+ * {@link #openFile(String, String)}.
+ *
+ * <p>A published commit point and its files must remain available for a while after a newer one has been
+ * published, so replicas in the middle of copying it can complete. Replicas that fail to copy a commit point
+ * simply retry with the latest one.
+ *
+ * <p>Implementations can implement {@link org.compass.core.config.CompassConfigurable} in order to be
+ * configured.
+ *
+ * @author kimchy
+ * @see org.compass.core.lucene.engine.replication.FileSystemReplicationTransport
+ */
+public interface ReplicationTransport {
+
+    /**
+     * Publishes the given commit point. The files of the commit point can be read from the provided (master)
+     * directory.
+     */
+    void publish(CommitPoint commitPoint, Directory directory) throws IOException;
+
+    /**
+     * Returns the latest commit point published for the sub index, or <code>null</code> if none has been
+     * published.
+     */
+    CommitPoint getLatestCommitPoint(String subIndex) throws IOException;
+
+    /**
+     * Opens the content of a file of a published commit point of the given sub index.
+     */
+    InputStream openFile(String subIndex, String fileName) throws IOException;
+
+    void close();
+}
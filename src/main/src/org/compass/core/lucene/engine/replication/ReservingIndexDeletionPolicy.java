@@ -0,0 +1,139 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.compass.core.lucene.engine.replication;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexDeletionPolicy;
+import org.apache.lucene.store.Directory;
+
+/**
+ * An index deletion policy wrapping the configured one, which keeps commit points reserved by the
+ * replication master (while they are published) from being deleted. A reserved commit point the wrapped
+ * policy deletes is only deleted on the next commit (or index writer open) after it was released, similar
+ * to Lucene {@link org.apache.lucene.index.SnapshotDeletionPolicy}.
+ *
+ * @author kimchy
+ */
+class ReservingIndexDeletionPolicy implements IndexDeletionPolicy {
+
+    private final IndexDeletionPolicy deletionPolicy;
+
+    private final Reservations reservations;
+
+    ReservingIndexDeletionPolicy(IndexDeletionPolicy deletionPolicy, Reservations reservations) {
+        this.deletionPolicy = deletionPolicy;
+        this.reservations = reservations;
+    }
+
+    public void onInit(List commits) throws IOException {
+        deletionPolicy.onInit(wrap(commits));
+    }
+
+    public void onCommit(List commits) throws IOException {
+        deletionPolicy.onCommit(wrap(commits));
+    }
+
+    private List wrap(List commits) {
+        List<IndexCommit> wrapped = new ArrayList<IndexCommit>(commits.size());
+        for (Object commit : commits) {
+            wrapped.add(new ReservableIndexCommit((IndexCommit) commit));
+        }
+        return wrapped;
+    }
+
+    /**
+     * The reserved commit points of a directory. Deleting a commit point and reserving one is done under
+     * the reservations lock.
+     */
+    static class Reservations {
+
+        private final Map<String, Integer> reserved = new HashMap<String, Integer>();
+
+        synchronized void reserve(IndexCommit commit) {
+            Integer count = reserved.get(commit.getSegmentsFileName());
+            reserved.put(commit.getSegmentsFileName(), count == null ? 1 : count + 1);
+        }
+
+        synchronized void release(IndexCommit commit) {
+            Integer count = reserved.remove(commit.getSegmentsFileName());
+            if (count != null && count > 1) {
+                reserved.put(commit.getSegmentsFileName(), count - 1);
+            }
+        }
+
+        synchronized boolean isReserved(IndexCommit commit) {
+            return reserved.containsKey(commit.getSegmentsFileName());
+        }
+    }
+
+    private class ReservableIndexCommit extends IndexCommit {
+
+        private final IndexCommit commit;
+
+        ReservableIndexCommit(IndexCommit commit) {
+            this.commit = commit;
+        }
+
+        public String getSegmentsFileName() {
+            return commit.getSegmentsFileName();
+        }
+
+        public Collection getFileNames() throws IOException {
+            return commit.getFileNames();
+        }
+
+        public Directory getDirectory() {
+            return commit.getDirectory();
+        }
+
+        public void delete() {
+            synchronized (reservations) {
+                if (!reservations.isReserved(commit)) {
+                    commit.delete();
+                }
+            }
+        }
+
+        public boolean isDeleted() {
+            return commit.isDeleted();
+        }
+
+        public boolean isOptimized() {
+            return commit.isOptimized();
+        }
+
+        public long getVersion() {
+            return commit.getVersion();
+        }
+
+        public long getGeneration() {
+            return commit.getGeneration();
+        }
+
+        public long getTimestamp() throws IOException {
+            return commit.getTimestamp();
+        }
+    }
+}
@@ -35,6 +35,7 @@ import org.apache.lucene.store.jdbc.datasource.DataSourceUtils;
 import org.apache.lucene.store.jdbc.datasource.TransactionAwareDataSourceProxy;
 import org.apache.lucene.store.jdbc.dialect.Dialect;
 import org.apache.lucene.store.jdbc.dialect.DialectResolver;
+import org.apache.lucene.store.jdbc.index.ChunkedJdbcIndexInput;
 import org.apache.lucene.store.jdbc.index.FetchPerTransactionJdbcIndexInput;
 import org.apache.lucene.store.jdbc.support.JdbcTable;
 import org.compass.core.CompassException;
@@ -154,6 +155,24 @@ public class JdbcDirectoryStore extends AbstractDirectoryStore implements Compas
             log.debug("Using query timeout (transaction lock timeout) [" + jdbcSettings.getQueryTimeout() + "ms]");
         }
 
+        jdbcSettings.setChunkSize((int) settings.getSettingAsBytes(LuceneEnvironment.JdbcStore.Chunk.SIZE, jdbcSettings.getChunkSize()));
+        jdbcSettings.setChunkBatchSize(settings.getSettingAsInt(LuceneEnvironment.JdbcStore.Chunk.BATCH_SIZE, jdbcSettings.getChunkBatchSize()));
+        jdbcSettings.setChunkReadAhead(settings.getSettingAsInt(LuceneEnvironment.JdbcStore.Chunk.READ_AHEAD, jdbcSettings.getChunkReadAhead()));
+        jdbcSettings.setChunkTableSuffix(settings.getSetting(LuceneEnvironment.JdbcStore.Chunk.TABLE_SUFFIX, jdbcSettings.getChunkTableSuffix()));
+        jdbcSettings.setChunkColumnName(settings.getSetting(LuceneEnvironment.JdbcStore.Chunk.CHUNK_NAME, jdbcSettings.getChunkColumnName()));
+        if (log.isDebugEnabled() && jdbcSettings.isChunked()) {
+            log.debug("Using chunked storage with chunk size [" + jdbcSettings.getChunkSize() + "b], batch size ["
+                    + jdbcSettings.getChunkBatchSize() + "], and read ahead [" + jdbcSettings.getChunkReadAhead() + "]");
+        }
+
+        jdbcSettings.setReadCachePath(settings.getSetting(LuceneEnvironment.JdbcStore.ReadCache.PATH, jdbcSettings.getReadCachePath()));
+        jdbcSettings.setReadCacheMemoryMapped(settings.getSettingAsBoolean(LuceneEnvironment.JdbcStore.ReadCache.MEMORY_MAPPED, jdbcSettings.isReadCacheMemoryMapped()));
+        jdbcSettings.setReadCacheBufferSize((int) settings.getSettingAsBytes(LuceneEnvironment.JdbcStore.ReadCache.BUFFER_SIZE, jdbcSettings.getReadCacheBufferSize()));
+        if (log.isDebugEnabled() && jdbcSettings.getReadCachePath() != null) {
+            log.debug("Using read cache with path [" + jdbcSettings.getReadCachePath() + "], memory mapped ["
+                    + jdbcSettings.isReadCacheMemoryMapped() + "]");
+        }
+
         try {
             jdbcSettings.setLockClass(settings.getSettingAsClass(LuceneEnvironment.JdbcStore.LOCK_TYPE, jdbcSettings.getLockClass()));
         } catch (ClassNotFoundException e) {
@@ -163,7 +182,11 @@ public class JdbcDirectoryStore extends AbstractDirectoryStore implements Compas
             log.debug("Using lock strategy [" + jdbcSettings.getLockClass().getName() + "]");
         }
 
-        if (dialect.supportTransactionalScopedBlobs() &&
+        if (jdbcSettings.isChunked()) {
+            // chunks are read using the chunked index input, no need for transactional blobs
+            jdbcSettings.getDefaultFileEntrySettings().setClassSetting(JdbcFileEntrySettings.INDEX_INPUT_TYPE_SETTING,
+                    ChunkedJdbcIndexInput.class);
+        } else if (dialect.supportTransactionalScopedBlobs() &&
                 !"true".equalsIgnoreCase(settings.getSetting(LuceneEnvironment.JdbcStore.Connection.AUTO_COMMIT, "false"))) {
             // Use FetchPerTransaction is dialect supports it
             jdbcSettings.getDefaultFileEntrySettings().setClassSetting(JdbcFileEntrySettings.INDEX_INPUT_TYPE_SETTING,
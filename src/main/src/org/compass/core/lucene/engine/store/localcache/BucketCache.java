@@ -0,0 +1,71 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.compass.core.lucene.engine.store.localcache;
+
+/**
+ * Stores fixed size buckets of files for the {@link org.compass.core.lucene.engine.store.localcache.MemoryDirectoryCache}.
+ * A bucket is identified by the file name and the position (in the file) the bucket starts at, and holds up to
+ * {@link #getBucketSize()} bytes (the last bucket of a file might be smaller).
+ *
+ * <p>Implementations must be thread safe and are free to evict buckets at any point.
+ *
+ * @author kimchy
+ */
+public interface BucketCache {
+
+    /**
+     * Returns the size of each bucket.
+     */
+    int getBucketSize();
+
+    /**
+     * Copies <code>len</code> bytes starting at <code>offsetInBucket</code> of the given bucket into the provided
+     * array. Returns <code>false</code> if the bucket is not cached (or does not hold the requested bytes), in
+     * which case nothing is copied. Readers can reuse the same key for all the reads of a bucket.
+     */
+    boolean read(BucketKey key, int offsetInBucket, byte[] b, int offset, int len);
+
+    /**
+     * Caches the first <code>length</code> bytes of the given data as the bucket of the given file and position.
+     * Note, the data array might be retained by the cache, and should not be changed afterwards.
+     */
+    void put(String fileName, long bucketPosition, byte[] data, int length);
+
+    /**
+     * Clears all the cached buckets.
+     */
+    void clear();
+
+    /**
+     * Closes the cache, releasing any resources it holds.
+     */
+    void close();
+
+    /**
+     * Returns the number of reads served by the cache.
+     */
+    long getHitCount();
+
+    /**
+     * Returns the number of reads that were not cached.
+     */
+    long getMissCount();
+
+    /**
+     * Returns the number of buckets evicted from the cache.
+     */
+    long getEvictionCount();
+}
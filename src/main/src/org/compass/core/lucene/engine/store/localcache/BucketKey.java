@@ -0,0 +1,66 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.compass.core.lucene.engine.store.localcache;
+
+/**
+ * A key of a single bucket of a file cached by a {@link org.compass.core.lucene.engine.store.localcache.BucketCache}.
+ * Keys are immutable, and can be reused across reads of the same bucket.
+ *
+ * @author kimchy
+ */
+public class BucketKey {
+
+    private final String fileName;
+
+    private final long position;
+
+    public BucketKey(String fileName, long position) {
+        this.fileName = fileName;
+        this.position = position;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BucketKey bucketKey = (BucketKey) o;
+
+        if (position != bucketKey.position) return false;
+        if (!fileName.equals(bucketKey.fileName)) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = fileName.hashCode();
+        result = 31 * result + (int) (position ^ (position >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return fileName + "@" + position;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.compass.core.lucene.engine.store.localcache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.compass.core.util.concurrent.ConcurrentLinkedHashMap;
+import org.compass.core.util.concurrent.StripedCounter;
+
+/**
+ * A {@link org.compass.core.lucene.engine.store.localcache.BucketCache} storing each bucket as a byte array
+ * on the heap using a {@link org.compass.core.util.concurrent.ConcurrentLinkedHashMap} with second chance
+ * eviction.
+ *
+ * @author kimchy
+ */
+public class HeapBucketCache implements BucketCache, ConcurrentLinkedHashMap.EvictionListener<BucketKey, byte[]> {
+
+    private final int bucketSize;
+
+    private final ConcurrentLinkedHashMap<BucketKey, byte[]> cache;
+
+    private final StripedCounter hitCount = new StripedCounter();
+
+    private final StripedCounter missCount = new StripedCounter();
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public HeapBucketCache(int bucketSize, long size) {
+        this.bucketSize = bucketSize;
+        int numberOfCacheEntries = (int) (size / bucketSize);
+        this.cache = new ConcurrentLinkedHashMap<BucketKey, byte[]>(ConcurrentLinkedHashMap.EvictionPolicy.SECOND_CHANCE, numberOfCacheEntries, this);
+    }
+
+    public int getBucketSize() {
+        return bucketSize;
+    }
+
+    public boolean read(BucketKey key, int offsetInBucket, byte[] b, int offset, int len) {
+        byte[] cached = cache.get(key);
+        if (cached == null || offsetInBucket + len > cached.length) {
+            missCount.increment();
+            return false;
+        }
+        hitCount.increment();
+        if (len == 1) {
+            b[offset] = cached[offsetInBucket];
+        } else {
+            System.arraycopy(cached, offsetInBucket, b, offset, len);
+        }
+        return true;
+    }
+
+    public void put(String fileName, long bucketPosition, byte[] data, int length) {
+        if (length != data.length) {
+            byte[] copy = new byte[length];
+            System.arraycopy(data, 0, copy, 0, length);
+            data = copy;
+        }
+        cache.put(new BucketKey(fileName, bucketPosition), data);
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public void close() {
+        cache.clear();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public void onEviction(BucketKey key, byte[] value) {
+        evictionCount.incrementAndGet();
+    }
+}
@@ -38,6 +38,12 @@ import org.compass.core.lucene.engine.store.RAMDirectoryStore;
 import org.compass.core.util.FileSystemUtils;
 
 /**
+ * Creates the local cache for a sub index {@link org.apache.lucene.store.Directory} based on the local cache
+ * connection configured for it. Supports <code>ram://</code> and file system based connections which keep a full
+ * local replica of the directory, <code>memory://</code> which keeps an evictable heap based cache, and
+ * <code>offheap://</code> which keeps an evictable cache outside of the Java heap (see
+ * {@link org.compass.core.lucene.engine.store.localcache.MemoryDirectoryCache}).
+ *
  * @author kimchy
  */
 public class LocalCacheManager {
@@ -88,6 +94,9 @@ public class LocalCacheManager {
         if (connection.startsWith("memory://")) {
             String connectionString = connection.substring("memory://".length());
             return new MemoryDirectoryCache(connectionString, dir, this);
+        } else if (connection.startsWith("offheap://")) {
+            String connectionString = connection.substring("offheap://".length());
+            return new MemoryDirectoryCache(connectionString, dir, true, this);
         } else if (connection.startsWith(RAMDirectoryStore.PROTOCOL)) {
             localCacheDirectory = new RAMDirectory();
         } else if (connection.startsWith(FSDirectoryStore.PROTOCOL) ||
@@ -33,6 +33,7 @@
 package org.compass.core.lucene.engine.store.localcache;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Set;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -52,7 +53,6 @@ import org.compass.core.config.CompassSettings;
 import org.compass.core.transaction.context.TransactionContextCallback;
 import org.compass.core.util.StringUtils;
 import org.compass.core.util.concurrent.ConcurrentHashSet;
-import org.compass.core.util.concurrent.ConcurrentLinkedHashMap;
 
 /**
  * Evictable Memory based directory cache wrapping the actual Lucene Directory the index uses. Accepts
@@ -61,6 +61,13 @@ import org.compass.core.util.concurrent.ConcurrentLinkedHashMap;
  * the cache before entries will start to be evicted (defaults to <code>64m</code>), and <code>cacheFileNames</code>
  * that controls if file names will try to be cached as well (defaults to <code>true</code>). 
  *
+ * <p>The buckets are stored using a {@link org.compass.core.lucene.engine.store.localcache.BucketCache}. By default,
+ * they are stored on the heap ({@link org.compass.core.lucene.engine.store.localcache.HeapBucketCache}). When created
+ * as off heap, they are stored using {@link org.compass.core.lucene.engine.store.localcache.OffHeapBucketCache} which
+ * also accepts the <code>slabSize</code> parameter (the size of each pre allocated memory slab, defaults to
+ * <code>64m</code>) and the <code>path</code> parameter (if set, the slabs are memory mapped from a file created
+ * under the given path instead of using direct memory).
+ *
  * @author kimchy
  */
 public class MemoryDirectoryCache extends Directory implements DirectoryWrapper {
@@ -75,7 +82,7 @@ public class MemoryDirectoryCache extends Directory implements DirectoryWrapper
 
     private final boolean cacheFileNames;
 
-    private final ConcurrentLinkedHashMap<CacheKey, byte[]> cache;
+    private final BucketCache cache;
 
     private final int bucketSize;
 
@@ -84,12 +91,18 @@ public class MemoryDirectoryCache extends Directory implements DirectoryWrapper
     private final boolean isCompoundFile;
 
     public MemoryDirectoryCache(String connectionString, Directory dir, LocalCacheManager localCacheManager) {
+        this(connectionString, dir, false, localCacheManager);
+    }
+
+    public MemoryDirectoryCache(String connectionString, Directory dir, boolean offHeap, LocalCacheManager localCacheManager) {
         this.dir = dir;
         this.localCacheManager = localCacheManager;
         String[] args = StringUtils.delimitedListToStringArray(connectionString, "&");
         int bucketSize = 1024;
         long size = CompassSettings.parseStringAsBytes("64m");
         boolean cacheFileNames = true;
+        long slabSize = CompassSettings.parseStringAsBytes("64m");
+        String path = null;
         for (String arg : args) {
             if (arg.startsWith("bucketSize=")) {
                 bucketSize = (int) CompassSettings.parseStringAsBytes(arg.substring("bucketSize=".length()));
@@ -97,13 +110,20 @@ public class MemoryDirectoryCache extends Directory implements DirectoryWrapper
                 size = CompassSettings.parseStringAsBytes(arg.substring("size=".length()));
             } else if (arg.startsWith("cacheFileNames=")) {
                 cacheFileNames = Boolean.parseBoolean(arg.substring("cacheFileNames=".length()));
+            } else if (arg.startsWith("slabSize=")) {
+                slabSize = CompassSettings.parseStringAsBytes(arg.substring("slabSize=".length()));
+            } else if (arg.startsWith("path=")) {
+                path = arg.substring("path=".length());
             }
         }
         this.cacheFileNames = cacheFileNames;
         this.bucketSize = bucketSize;
-        
-        int numberOfCacheEntries = (int) (size / bucketSize);
-        this.cache = new ConcurrentLinkedHashMap<CacheKey, byte[]>(ConcurrentLinkedHashMap.EvictionPolicy.SECOND_CHANCE, numberOfCacheEntries);
+
+        if (offHeap) {
+            this.cache = new OffHeapBucketCache(bucketSize, size, slabSize, path);
+        } else {
+            this.cache = new HeapBucketCache(bucketSize, size);
+        }
 
         if (localCacheManager == null) {
             isCompoundFile = false; // just cache everything
@@ -120,6 +140,13 @@ public class MemoryDirectoryCache extends Directory implements DirectoryWrapper
         return bucketSize;
     }
 
+    /**
+     * Returns the bucket cache used to store the cached buckets (and its hit/miss/eviction counters).
+     */
+    public BucketCache getBucketCache() {
+        return cache;
+    }
+
     public Directory getWrappedDirectory() {
         return this.dir;
     }
@@ -180,7 +207,7 @@ public class MemoryDirectoryCache extends Directory implements DirectoryWrapper
         if (cacheFileNames) {
             cleanupTaskFuture.cancel(true);
         }
-        cache.clear();
+        cache.close();
         localFileNames.clear();
     }
 
@@ -315,35 +342,40 @@ public class MemoryDirectoryCache extends Directory implements DirectoryWrapper
 
         private long currentPos = 0;
 
+        private byte[] singleByte = new byte[1];
+
+        private ByteBuffer[] view;
+
+        // the key of the last bucket read, reused while reading within the same bucket
+        private BucketKey bucketKey;
+
         private WrappedIndexInput(String fileName) throws IOException {
             this.fileName = fileName;
             this.indexInput = dir.openInput(fileName, 1); // no need for any buffer size, we read fully from source in chunks
         }
 
         public byte readByte() throws IOException {
-            CacheKey cacheKey = cacheKey(fileName, currentPos);
-            byte[] cached = cache.get(cacheKey);
-            if (cached == null) {
-                cached = readBytesForCache();
-                cache.put(cacheKey, cached);
+            long bucketPosition = currentPos - (currentPos % bucketSize);
+            int indexInCache = (int) (currentPos - bucketPosition);
+            currentPos++;
+            if (readFromCache(bucketPosition, indexInCache, singleByte, 0, 1)) {
+                return singleByte[0];
             }
-            return cached[(int) (currentPos++ % bucketSize)];
+            return readBytesForCache(bucketPosition)[indexInCache];
         }
 
         public void readBytes(byte[] b, int offset, int len) throws IOException {
             int indexInCache = (int) (currentPos % bucketSize);
             while (true) {
-                CacheKey cacheKey = cacheKey(fileName, currentPos);
-                byte[] cached = cache.get(cacheKey);
-                if (cached == null) {
-                    cached = readBytesForCache();
-                    cache.put(cacheKey, cached);
-                }
+                long bucketPosition = currentPos - indexInCache;
                 int sizeToRead = bucketSize - indexInCache;
                 if (sizeToRead > len) {
                     sizeToRead = len;
                 }
-                System.arraycopy(cached, indexInCache, b, offset, sizeToRead);
+                if (!readFromCache(bucketPosition, indexInCache, b, offset, sizeToRead)) {
+                    byte[] cached = readBytesForCache(bucketPosition);
+                    System.arraycopy(cached, indexInCache, b, offset, sizeToRead);
+                }
                 offset += sizeToRead;
                 len -= sizeToRead;
                 currentPos += sizeToRead;
@@ -386,51 +418,38 @@ public class MemoryDirectoryCache extends Directory implements DirectoryWrapper
         public Object clone() {
             WrappedIndexInput clone = (WrappedIndexInput) super.clone();
             clone.indexInput = (IndexInput) indexInput.clone();
+            clone.singleByte = new byte[1];
+            // Lucene clones inputs per term enum and postings, so the view is only created once the clone
+            // reads multiple bytes from the cache
+            clone.view = null;
             return clone;
         }
 
-        private byte[] readBytesForCache() throws IOException {
-            indexInput.seek(currentPos - (currentPos % bucketSize));
-            int size = (int) (length() - currentPos);
+        private boolean readFromCache(long bucketPosition, int indexInCache, byte[] b, int offset, int len) {
+            BucketKey key = bucketKey;
+            if (key == null || key.getPosition() != bucketPosition) {
+                key = new BucketKey(fileName, bucketPosition);
+                bucketKey = key;
+            }
+            if (cache instanceof OffHeapBucketCache) {
+                if (view == null && len > 1) {
+                    view = ((OffHeapBucketCache) cache).createView();
+                }
+                return ((OffHeapBucketCache) cache).read(view, key, indexInCache, b, offset, len);
+            }
+            return cache.read(key, indexInCache, b, offset, len);
+        }
+
+        private byte[] readBytesForCache(long bucketPosition) throws IOException {
+            indexInput.seek(bucketPosition);
+            int size = (int) (length() - bucketPosition);
             if (size > bucketSize) {
                 size = bucketSize;
             }
             byte[] cached = new byte[size];
             indexInput.readBytes(cached, 0, size, false);
+            cache.put(fileName, bucketPosition, cached, size);
             return cached;
         }
-
-        private CacheKey cacheKey(String fileName, long currentPosition) {
-            return new CacheKey(fileName, currentPosition - (currentPosition % bucketSize));
-        }
-    }
-
-    private class CacheKey {
-        private final String fileName;
-
-        private final long position;
-
-        private CacheKey(String fileName, long position) {
-            this.fileName = fileName;
-            this.position = position;
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            CacheKey cacheKey = (CacheKey) o;
-
-            if (position != cacheKey.position) return false;
-            if (!fileName.equals(cacheKey.fileName)) return false;
-
-            return true;
-        }
-
-        @Override
-        public int hashCode() {
-            int result = fileName.hashCode();
-            result = 31 * result + (int) (position ^ (position >>> 32));
-            return result;
-        }
     }
 }
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.compass.core.lucene.engine.store.localcache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.compass.core.engine.SearchEngineException;
+import org.compass.core.util.concurrent.StripedCounter;
+
+/**
+ * A {@link org.compass.core.lucene.engine.store.localcache.BucketCache} storing the buckets outside of the
+ * Java heap. The cache memory is pre allocated as a set of slabs, each divided into fixed size slots (one per
+ * bucket). Slabs are either direct {@link java.nio.ByteBuffer}s, or, if a path is provided, memory mapped regions
+ * of a file created under the path (deleted when the cache is closed).
+ *
+ * <p>Eviction is done using the clock algorithm: each read marks the slot as referenced (only writing the mark if
+ * it is not already set), and when a new bucket needs a slot, the clock hand moves over the slots clearing the
+ * referenced mark until it finds an unreferenced slot to evict.
+ *
+ * <p>Reads do not lock and do not write any shared state on a hit other than the referenced mark and striped hit
+ * counters. Each slot has a version which is incremented before and after a slot is (re)written (seqlock style),
+ * and a read is only considered a hit if the version read (a volatile read) before and after copying the bytes is
+ * the same and even. Bytes are copied directly from the slab into the reader's array.
+ *
+ * @author kimchy
+ */
+public class OffHeapBucketCache implements BucketCache {
+
+    private final int bucketSize;
+
+    private final int numberOfSlots;
+
+    private final int slotsPerSlab;
+
+    private final ByteBuffer[] slabs;
+
+    private final File slabsFile;
+
+    private final RandomAccessFile slabsRaf;
+
+    private final ConcurrentMap<BucketKey, Integer> slotsByKey;
+
+    private final AtomicReferenceArray<BucketKey> slotKeys;
+
+    private final AtomicIntegerArray slotLengths;
+
+    private final AtomicIntegerArray slotReferenced;
+
+    private final AtomicLongArray slotVersions;
+
+    private final Object allocationLock = new Object();
+
+    private int clockHand = 0;
+
+    private final StripedCounter hitCount = new StripedCounter();
+
+    private final StripedCounter missCount = new StripedCounter();
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Creates a new off heap bucket cache.
+     *
+     * @param bucketSize The size of each bucket
+     * @param size       The total size of the cache
+     * @param slabSize   The size of each slab allocated (rounded to a bucket size multiple)
+     * @param path       The path to create memory mapped slabs at, <code>null</code> to use direct byte buffers
+     */
+    public OffHeapBucketCache(int bucketSize, long size, long slabSize, String path) {
+        this.bucketSize = bucketSize;
+        long numberOfSlots = size / bucketSize;
+        if (numberOfSlots < 1) {
+            numberOfSlots = 1;
+        }
+        if (numberOfSlots > Integer.MAX_VALUE) {
+            throw new SearchEngineException("Off heap cache with size [" + size + "] and bucket size [" + bucketSize + "] holds too many buckets");
+        }
+        this.numberOfSlots = (int) numberOfSlots;
+        long slotsPerSlab = Math.min(slabSize, Integer.MAX_VALUE) / bucketSize;
+        if (slotsPerSlab < 1) {
+            slotsPerSlab = 1;
+        }
+        if (slotsPerSlab > this.numberOfSlots) {
+            slotsPerSlab = this.numberOfSlots;
+        }
+        this.slotsPerSlab = (int) slotsPerSlab;
+
+        int numberOfSlabs = (this.numberOfSlots + this.slotsPerSlab - 1) / this.slotsPerSlab;
+        this.slabs = new ByteBuffer[numberOfSlabs];
+        if (path == null) {
+            slabsFile = null;
+            slabsRaf = null;
+            for (int i = 0; i < numberOfSlabs; i++) {
+                slabs[i] = ByteBuffer.allocateDirect(slabCapacity(i));
+            }
+        } else {
+            try {
+                File dir = new File(path);
+                if (!dir.exists() && !dir.mkdirs()) {
+                    throw new SearchEngineException("Failed to create off heap cache directory [" + path + "]");
+                }
+                slabsFile = File.createTempFile("compass-offheap", ".cache", dir);
+                slabsFile.deleteOnExit();
+                slabsRaf = new RandomAccessFile(slabsFile, "rw");
+                FileChannel channel = slabsRaf.getChannel();
+                long position = 0;
+                for (int i = 0; i < numberOfSlabs; i++) {
+                    int capacity = slabCapacity(i);
+                    slabs[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, capacity);
+                    position += capacity;
+                }
+            } catch (IOException e) {
+                throw new SearchEngineException("Failed to create memory mapped off heap cache under [" + path + "]", e);
+            }
+        }
+
+        this.slotsByKey = new ConcurrentHashMap<BucketKey, Integer>();
+        this.slotKeys = new AtomicReferenceArray<BucketKey>(this.numberOfSlots);
+        this.slotLengths = new AtomicIntegerArray(this.numberOfSlots);
+        this.slotReferenced = new AtomicIntegerArray(this.numberOfSlots);
+        this.slotVersions = new AtomicLongArray(this.numberOfSlots);
+    }
+
+    private int slabCapacity(int slab) {
+        int slots = Math.min(slotsPerSlab, numberOfSlots - slab * slotsPerSlab);
+        return slots * bucketSize;
+    }
+
+    public int getBucketSize() {
+        return bucketSize;
+    }
+
+    /**
+     * Returns the total number of buckets the cache can hold.
+     */
+    public int getNumberOfSlots() {
+        return numberOfSlots;
+    }
+
+    /**
+     * Returns the number of buckets currently cached.
+     */
+    public int getNumberOfCachedBuckets() {
+        return slotsByKey.size();
+    }
+
+    /**
+     * Returns a new view of the slabs of the cache. Each reader should use its own view since reads change the
+     * buffers positions.
+     */
+    public ByteBuffer[] createView() {
+        ByteBuffer[] view = new ByteBuffer[slabs.length];
+        for (int i = 0; i < slabs.length; i++) {
+            view[i] = slabs[i].duplicate();
+        }
+        return view;
+    }
+
+    public boolean read(BucketKey key, int offsetInBucket, byte[] b, int offset, int len) {
+        return read(null, key, offsetInBucket, b, offset, len);
+    }
+
+    /**
+     * Same as {@link #read(BucketKey, int, byte[], int, int)}, only using the provided view (created using
+     * {@link #createView()}) to copy the bytes from. Allows readers to reuse the same view and not create a new
+     * view per read. The view is only used for multi byte reads, and can be <code>null</code> for single byte
+     * reads.
+     */
+    public boolean read(ByteBuffer[] view, BucketKey key, int offsetInBucket, byte[] b, int offset, int len) {
+        Integer slot = slotsByKey.get(key);
+        if (slot == null) {
+            missCount.increment();
+            return false;
+        }
+        int index = slot;
+        long version = slotVersions.get(index);
+        // odd version means the slot is being written
+        if ((version & 1) != 0 || !key.equals(slotKeys.get(index)) || offsetInBucket + len > slotLengths.get(index)) {
+            missCount.increment();
+            return false;
+        }
+        int position = (index % slotsPerSlab) * bucketSize + offsetInBucket;
+        if (len == 1) {
+            // absolute gets do not change the buffer position, no need for a view
+            b[offset] = slabs[index / slotsPerSlab].get(position);
+        } else {
+            ByteBuffer slab;
+            if (view == null) {
+                slab = slabs[index / slotsPerSlab].duplicate();
+            } else {
+                slab = view[index / slotsPerSlab];
+            }
+            slab.position(position);
+            slab.get(b, offset, len);
+        }
+        if (slotVersions.get(index) != version) {
+            // the slot was reused while we were reading it
+            missCount.increment();
+            return false;
+        }
+        if (slotReferenced.get(index) == 0) {
+            slotReferenced.set(index, 1);
+        }
+        hitCount.increment();
+        return true;
+    }
+
+    public void put(String fileName, long bucketPosition, byte[] data, int length) {
+        if (length > bucketSize) {
+            throw new IllegalArgumentException("Bucket length [" + length + "] is larger than the bucket size [" + bucketSize + "]");
+        }
+        BucketKey key = new BucketKey(fileName, bucketPosition);
+        synchronized (allocationLock) {
+            if (slotsByKey.containsKey(key)) {
+                return;
+            }
+            int index = findSlot();
+            BucketKey evictedKey = slotKeys.get(index);
+            slotVersions.incrementAndGet(index);
+            if (evictedKey != null) {
+                slotsByKey.remove(evictedKey);
+                evictionCount.incrementAndGet();
+            }
+            ByteBuffer slab = slabs[index / slotsPerSlab].duplicate();
+            slab.position((index % slotsPerSlab) * bucketSize);
+            slab.put(data, 0, length);
+            slotKeys.set(index, key);
+            slotLengths.set(index, length);
+            slotReferenced.set(index, 0);
+            slotVersions.incrementAndGet(index);
+            slotsByKey.put(key, index);
+        }
+    }
+
+    /**
+     * Finds a slot using the clock algorithm. Must be called under the allocation lock.
+     */
+    private int findSlot() {
+        while (true) {
+            int index = clockHand;
+            clockHand = (clockHand + 1) % numberOfSlots;
+            if (slotKeys.get(index) == null) {
+                return index;
+            }
+            if (slotReferenced.get(index) == 0) {
+                return index;
+            }
+            slotReferenced.set(index, 0);
+        }
+    }
+
+    public void clear() {
+        synchronized (allocationLock) {
+            for (int i = 0; i < numberOfSlots; i++) {
+                if (slotKeys.get(i) != null) {
+                    slotVersions.incrementAndGet(i);
+                    slotKeys.set(i, null);
+                    slotLengths.set(i, 0);
+                    slotReferenced.set(i, 0);
+                    slotVersions.incrementAndGet(i);
+                }
+            }
+            slotsByKey.clear();
+            clockHand = 0;
+        }
+    }
+
+    public void close() {
+        clear();
+        if (slabsRaf != null) {
+            try {
+                slabsRaf.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            // might fail on some platforms while the mapped buffers are still referenced, in such a case
+            // it will be deleted on exit
+            slabsFile.delete();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+}
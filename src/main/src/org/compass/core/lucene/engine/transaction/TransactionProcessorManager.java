@@ -112,6 +112,18 @@ public class TransactionProcessorManager {
         transactionProcessors.put(key, processorFactory);
     }
 
+    /**
+     * Starts the transaction processors. Replays transactions left in the async transaction processor write
+     * ahead log (if used).
+     */
+    public void start() {
+        for (TransactionProcessorFactory transactionProcessorFactory : transactionProcessors.values()) {
+            if (transactionProcessorFactory instanceof AsyncTransactionProcessorFactory) {
+                ((AsyncTransactionProcessorFactory) transactionProcessorFactory).replayWriteAheadLog();
+            }
+        }
+    }
+
     public void close() {
         for (TransactionProcessorFactory transactionProcessorFactory : transactionProcessors.values()) {
             transactionProcessorFactory.close();
@@ -0,0 +1,520 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.compass.core.lucene.engine.transaction.async;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.compass.core.engine.SearchEngineException;
+import org.compass.core.lucene.engine.codec.Codec;
+import org.compass.core.lucene.engine.codec.SerializableCodec;
+import org.compass.core.lucene.engine.transaction.support.job.TransactionJobs;
+
+/**
+ * A bounded queue of {@link org.compass.core.lucene.engine.transaction.support.job.TransactionJobs} waiting to be
+ * processed by the async transaction processor.
+ *
+ * <p>When the queue is full, the {@link BackPressure} policy controls what happens to a newly added transaction.
+ * With {@link BackPressure#SPILL}, transactions are serialized to the spill directory once the queue is full, and
+ * all the transactions added afterwards are spilled as well until the spilled transactions are drained (in order to
+ * maintain the order of transactions). Spilled transactions are encoded using the
+ * {@link org.compass.core.lucene.engine.codec.Codec} the queue was created with.
+ *
+ * <p>The queue also maintains gauges of its depth and of the time transactions wait in it until they are taken to be
+ * processed (latency).
+ *
+ * <p>If an {@link AsyncJobsWriteAheadLog} is used, each transaction is added with the id of its write ahead log
+ * record. The record is acknowledged once the transaction is removed from the queue, or once the polling processor
+ * has successfully processed it (see {@link #acknowledgeTaken()}).
+ *
+ * <p>Adding a transaction can be split into {@link #reserve(TransactionJobs, long)}, which applies the back pressure
+ * policy and might fail, and {@link #add(Reservation)}, which can not fail. This allows to add parts of a transaction
+ * to several queues atomically, by reserving room in all of them before adding any part.
+ *
+ * @author kimchy
+ */
+public class AsyncJobsQueue {
+
+    private static final Log logger = LogFactory.getLog(AsyncJobsQueue.class);
+
+    private final String name;
+
+    private final BlockingQueue<Entry> queue;
+
+    // room in the queue not reserved yet, released once an entry is taken from (or removed from) the queue
+    private final Semaphore capacity;
+
+    private final BackPressure backPressure;
+
+    private final long addTimeout;
+
+    private final File spillLocation;
+
+    private final LinkedList<File> spilled = new LinkedList<File>();
+
+    private final Codec<TransactionJobs> codec;
+
+    private final AsyncJobsWriteAheadLog writeAheadLog;
+
+    private final List<Long> takenWriteAheadLogIds = new ArrayList<Long>();
+
+    private final AtomicInteger taken = new AtomicInteger();
+
+    private long spillSequence;
+
+    // spilled transactions reserved but not added yet, guarded by spilled
+    private int pendingSpills;
+
+    private final AtomicLong addedCount = new AtomicLong();
+
+    private final AtomicLong processedCount = new AtomicLong();
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private final AtomicLong spilledCount = new AtomicLong();
+
+    private final AtomicLong totalLatency = new AtomicLong();
+
+    private volatile long lastLatency;
+
+    private volatile long maxLatency;
+
+    public AsyncJobsQueue(String name, int capacity, BackPressure backPressure, long addTimeout, File spillLocation) {
+        this(name, capacity, backPressure, addTimeout, spillLocation, new SerializableCodec<TransactionJobs>(), null);
+    }
+
+    public AsyncJobsQueue(String name, int capacity, BackPressure backPressure, long addTimeout, File spillLocation,
+                          Codec<TransactionJobs> codec, AsyncJobsWriteAheadLog writeAheadLog) {
+        this.name = name;
+        this.codec = codec;
+        this.writeAheadLog = writeAheadLog;
+        this.queue = new ArrayBlockingQueue<Entry>(capacity, true);
+        this.capacity = new Semaphore(capacity, true);
+        this.backPressure = backPressure;
+        this.addTimeout = addTimeout;
+        this.spillLocation = spillLocation;
+    }
+
+    /**
+     * Returns the name of the queue (the sub index it holds transactions for).
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Adds the transaction to the queue, applying the back pressure policy if the queue is full.
+     */
+    public void add(TransactionJobs jobs) throws SearchEngineException {
+        add(jobs, -1);
+    }
+
+    /**
+     * Adds the transaction to the queue, associated with the given write ahead log record id (<code>-1</code>
+     * if there is none). Applies the back pressure policy if the queue is full.
+     */
+    public void add(TransactionJobs jobs, long writeAheadLogId) throws SearchEngineException {
+        add(reserve(jobs, writeAheadLogId));
+    }
+
+    /**
+     * Reserves room for the transaction in the queue, applying the back pressure policy if the queue is full
+     * (with {@link BackPressure#SPILL}, the transaction is spilled to disk at this stage). The transaction is only
+     * available to be processed once {@link #add(Reservation)} is called, which can not fail. The reservation
+     * must either be added or {@link #cancel(Reservation) cancelled}.
+     */
+    public Reservation reserve(TransactionJobs jobs, long writeAheadLogId) throws SearchEngineException {
+        Entry entry = new Entry(jobs, writeAheadLogId, System.currentTimeMillis());
+        switch (backPressure) {
+            case BLOCK:
+                try {
+                    if (!capacity.tryAcquire(addTimeout, TimeUnit.MILLISECONDS)) {
+                        rejectedCount.incrementAndGet();
+                        throw new SearchEngineException("Failed to add jobs [" + System.identityHashCode(jobs) + "] to queue [" + name + "], queue is full and nothing empties it");
+                    }
+                } catch (InterruptedException e) {
+                    rejectedCount.incrementAndGet();
+                    throw new SearchEngineException("Failed to add jobs [" + System.identityHashCode(jobs) + "] to queue [" + name + "], interrupted", e);
+                }
+                return new Reservation(entry, null);
+            case FAIL:
+                if (!capacity.tryAcquire()) {
+                    rejectedCount.incrementAndGet();
+                    throw new SearchEngineException("Failed to add jobs [" + System.identityHashCode(jobs) + "] to queue [" + name + "], queue is full");
+                }
+                return new Reservation(entry, null);
+            case SPILL:
+                synchronized (spilled) {
+                    if (spilled.isEmpty() && pendingSpills == 0 && capacity.tryAcquire()) {
+                        return new Reservation(entry, null);
+                    }
+                    File file = spill(entry);
+                    pendingSpills++;
+                    return new Reservation(entry, file);
+                }
+            default:
+                throw new IllegalStateException("Unsupported back pressure [" + backPressure + "]");
+        }
+    }
+
+    /**
+     * Adds a transaction that room was reserved for using {@link #reserve(TransactionJobs, long)}.
+     */
+    public void add(Reservation reservation) {
+        if (reservation.spillFile == null) {
+            // can't fail, room in the queue was reserved
+            queue.add(reservation.entry);
+        } else {
+            synchronized (spilled) {
+                spilled.add(reservation.spillFile);
+                pendingSpills--;
+            }
+            spilledCount.incrementAndGet();
+        }
+        addedCount.incrementAndGet();
+    }
+
+    /**
+     * Cancels a reservation made using {@link #reserve(TransactionJobs, long)}, without adding its transaction.
+     */
+    public void cancel(Reservation reservation) {
+        if (reservation.spillFile == null) {
+            capacity.release();
+        } else {
+            synchronized (spilled) {
+                pendingSpills--;
+            }
+            reservation.spillFile.delete();
+        }
+    }
+
+    /**
+     * Removes the transaction from the queue if it was not taken to be processed yet. Note, spilled transactions
+     * can not be removed.
+     */
+    public boolean remove(TransactionJobs jobs) {
+        for (Iterator<Entry> it = queue.iterator(); it.hasNext();) {
+            Entry entry = it.next();
+            if (entry.jobs.equals(jobs)) {
+                if (!queue.remove(entry)) {
+                    return false;
+                }
+                capacity.release();
+                if (writeAheadLog != null && entry.writeAheadLogId != -1) {
+                    writeAheadLog.acknowledge(entry.writeAheadLogId);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Takes the next transaction to process, waiting up to the given timeout if there is none.
+     */
+    public TransactionJobs poll(long timeout, TimeUnit unit) throws InterruptedException {
+        Entry entry = pollQueue();
+        if (entry == null) {
+            entry = unspill();
+        }
+        if (entry == null) {
+            entry = queue.poll(timeout, unit);
+            if (entry != null) {
+                capacity.release();
+            }
+        }
+        return taken(entry);
+    }
+
+    /**
+     * Takes up to <code>maxElements</code> transactions to process without blocking.
+     */
+    public int drainTo(List<TransactionJobs> list, int maxElements) {
+        int count = 0;
+        while (count < maxElements) {
+            Entry entry = pollQueue();
+            if (entry == null) {
+                entry = unspill();
+            }
+            if (entry == null) {
+                break;
+            }
+            list.add(taken(entry));
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Acknowledges (in the write ahead log) that all the transactions taken from the queue so far were processed.
+     * Should be called by the thread polling the queue.
+     */
+    public void acknowledgeTaken() {
+        if (writeAheadLog != null) {
+            for (Long id : takenWriteAheadLogIds) {
+                writeAheadLog.acknowledge(id);
+            }
+        }
+        takenWriteAheadLogIds.clear();
+        taken.set(0);
+    }
+
+    /**
+     * Clears the transactions taken from the queue so far without acknowledging them (in the write ahead log),
+     * since they failed to be processed. They will be replayed from the write ahead log on the next startup.
+     */
+    public void discardTaken() {
+        takenWriteAheadLogIds.clear();
+        taken.set(0);
+    }
+
+    /**
+     * Returns <code>true</code> if there are no transactions waiting, and all the transactions taken from the queue
+     * were either acknowledged or discarded.
+     */
+    public boolean isIdle() {
+        return taken.get() == 0 && isEmpty();
+    }
+
+    /**
+     * Returns <code>true</code> if there are no transactions waiting (in memory or spilled).
+     */
+    public boolean isEmpty() {
+        return getDepth() == 0;
+    }
+
+    /**
+     * Returns the number of transactions waiting to be processed (in memory and spilled).
+     */
+    public int getDepth() {
+        return queue.size() + getSpilledDepth();
+    }
+
+    /**
+     * Returns the number of spilled transactions waiting to be processed.
+     */
+    public int getSpilledDepth() {
+        synchronized (spilled) {
+            return spilled.size();
+        }
+    }
+
+    /**
+     * Returns the number of transactions added to the queue.
+     */
+    public long getAddedCount() {
+        return addedCount.get();
+    }
+
+    /**
+     * Returns the number of transactions taken from the queue to be processed.
+     */
+    public long getProcessedCount() {
+        return processedCount.get();
+    }
+
+    /**
+     * Returns the number of transactions rejected because the queue was full.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Returns the number of transactions spilled to disk because the queue was full.
+     */
+    public long getSpilledCount() {
+        return spilledCount.get();
+    }
+
+    /**
+     * Returns the time (in milliseconds) the last processed transaction waited in the queue.
+     */
+    public long getLastLatency() {
+        return lastLatency;
+    }
+
+    /**
+     * Returns the maximum time (in milliseconds) a transaction waited in the queue.
+     */
+    public long getMaxLatency() {
+        return maxLatency;
+    }
+
+    /**
+     * Returns the average time (in milliseconds) transactions waited in the queue.
+     */
+    public long getAverageLatency() {
+        long count = processedCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        return totalLatency.get() / count;
+    }
+
+    /**
+     * Clears the queue, deleting any spilled transactions.
+     */
+    public void close() {
+        queue.clear();
+        synchronized (spilled) {
+            for (File file : spilled) {
+                file.delete();
+            }
+            spilled.clear();
+        }
+    }
+
+    private Entry pollQueue() {
+        Entry entry = queue.poll();
+        if (entry != null) {
+            capacity.release();
+        }
+        return entry;
+    }
+
+    private TransactionJobs taken(Entry entry) {
+        if (entry == null) {
+            return null;
+        }
+        taken.incrementAndGet();
+        if (entry.writeAheadLogId != -1) {
+            takenWriteAheadLogIds.add(entry.writeAheadLogId);
+        }
+        long latency = System.currentTimeMillis() - entry.timestamp;
+        synchronized (this) {
+            processedCount.incrementAndGet();
+            totalLatency.addAndGet(latency);
+            lastLatency = latency;
+            if (latency > maxLatency) {
+                maxLatency = latency;
+            }
+        }
+        return entry.jobs;
+    }
+
+    private File spill(Entry entry) throws SearchEngineException {
+        if (!spillLocation.exists() && !spillLocation.mkdirs() && !spillLocation.exists()) {
+            rejectedCount.incrementAndGet();
+            throw new SearchEngineException("Failed to create spill location [" + spillLocation.getAbsolutePath() + "] for queue [" + name + "]");
+        }
+        File file = new File(spillLocation, name + "-" + System.identityHashCode(this) + "-" + (spillSequence++) + ".jobs");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            out.writeLong(entry.timestamp);
+            out.writeLong(entry.writeAheadLogId);
+            codec.encode(entry.jobs, out);
+        } catch (IOException e) {
+            rejectedCount.incrementAndGet();
+            file.delete();
+            throw new SearchEngineException("Failed to spill jobs [" + System.identityHashCode(entry.jobs) + "] of queue [" + name + "] to [" + file.getAbsolutePath() + "]", e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+        if (logger.isTraceEnabled()) {
+            logger.trace("Spilled jobs [" + System.identityHashCode(entry.jobs) + "] of queue [" + name + "] to [" + file.getAbsolutePath() + "]");
+        }
+        return file;
+    }
+
+    private Entry unspill() {
+        synchronized (spilled) {
+            while (!spilled.isEmpty()) {
+                File file = spilled.removeFirst();
+                DataInputStream in = null;
+                try {
+                    in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                    long timestamp = in.readLong();
+                    long writeAheadLogId = in.readLong();
+                    return new Entry(codec.decode(in), writeAheadLogId, timestamp);
+                } catch (Exception e) {
+                    logger.error("Failed to read spilled jobs of queue [" + name + "] from [" + file.getAbsolutePath() + "], dismissing them", e);
+                } finally {
+                    if (in != null) {
+                        try {
+                            in.close();
+                        } catch (IOException e) {
+                            // ignore
+                        }
+                    }
+                    file.delete();
+                }
+            }
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "queue [" + name + "] depth [" + getDepth() + "] spilled [" + getSpilledDepth() + "] added [" + getAddedCount() +
+                "] rejected [" + getRejectedCount() + "] avgLatency [" + getAverageLatency() + "ms] maxLatency [" + maxLatency + "ms]";
+    }
+
+    /**
+     * Room reserved in the queue (or a spilled file) for a transaction, see {@link AsyncJobsQueue#reserve(TransactionJobs, long)}.
+     */
+    public static final class Reservation {
+
+        private final Entry entry;
+
+        private final File spillFile;
+
+        private Reservation(Entry entry, File spillFile) {
+            this.entry = entry;
+            this.spillFile = spillFile;
+        }
+    }
+
+    private static final class Entry {
+
+        final TransactionJobs jobs;
+
+        final long writeAheadLogId;
+
+        final long timestamp;
+
+        Entry(TransactionJobs jobs, long writeAheadLogId, long timestamp) {
+            this.jobs = jobs;
+            this.writeAheadLogId = writeAheadLogId;
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -0,0 +1,524 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.lucene.engine.transaction.async;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.compass.core.engine.SearchEngineException;
+import org.compass.core.lucene.engine.codec.Codec;
+import org.compass.core.lucene.engine.codec.CodecHelper;
+import org.compass.core.lucene.engine.codec.SerializableCodec;
+import org.compass.core.lucene.engine.transaction.support.job.TransactionJobs;
+
+/**
+ * An append only write ahead log of {@link org.compass.core.lucene.engine.transaction.support.job.TransactionJobs}
+ * added to the async transaction processor, allowing to replay transactions that were not processed when the JVM
+ * crashed.
+ *
+ * <p>The log is made of segment files (<code>[sequence].wal</code>). Each record is written with its length and
+ * a CRC32 checksum of its content (its type, id and the serialized transaction), so a torn record at the end of a
+ * segment is detected and ignored when the log is recovered. Transactions are encoded using the {@link org.compass.core.lucene.engine.codec.Codec}
+ * the log was created with. When sync is enabled, an append only returns once the record has been forced to disk.
+ * Concurrent appends are batched: a single <code>fsync</code> covers all the records written up to the point it
+ * started.
+ *
+ * <p>Each record is acknowledged once all its parts (the transaction might be broken into several parts, one per sub
+ * index) have been committed (or discarded). An acknowledgment record with the id of the acknowledged record is then
+ * appended to the current segment, and acknowledged records are skipped when the log is recovered, so only
+ * transactions that were not committed are replayed. A segment is deleted once it is not the current segment and
+ * all its records were acknowledged. The current segment is truncated once all the records of the log were
+ * acknowledged. Acknowledgment records are not forced to disk, so if the machine (and not only the JVM) crashes, a
+ * recovered segment might still include a few transactions that were already committed. Replaying them should be
+ * idempotent (for example, by replaying creates as updates).
+ *
+ * @author kimchy
+ */
+public class AsyncJobsWriteAheadLog {
+
+    private static final Log logger = LogFactory.getLog(AsyncJobsWriteAheadLog.class);
+
+    private static final String SUFFIX = ".wal";
+
+    private static final byte JOBS_RECORD = 1;
+
+    private static final byte ACK_RECORD = 2;
+
+    // the length and checksum of a record
+    private static final int RECORD_HEADER_SIZE = 12;
+
+    // the type and id at the start of the content of a record
+    private static final int RECORD_ID_SIZE = 9;
+
+    private final File location;
+
+    private final boolean sync;
+
+    private final long maxSegmentSize;
+
+    private final Codec<TransactionJobs> codec;
+
+    private final Object syncLock = new Object();
+
+    private final Map<Long, Record> outstanding = new HashMap<Long, Record>();
+
+    private final Map<Long, Segment> segments = new HashMap<Long, Segment>();
+
+    private final List<File> recoveredFiles = new ArrayList<File>();
+
+    private volatile Segment current;
+
+    private final AtomicLong nextId = new AtomicLong();
+
+    private volatile long writtenId = -1;
+
+    private long syncedId = -1;
+
+    private final AtomicLong appendedCount = new AtomicLong();
+
+    private final AtomicLong syncCount = new AtomicLong();
+
+    private boolean closed;
+
+    public AsyncJobsWriteAheadLog(File location, boolean sync, long maxSegmentSize) {
+        this(location, sync, maxSegmentSize, new SerializableCodec<TransactionJobs>());
+    }
+
+    public AsyncJobsWriteAheadLog(File location, boolean sync, long maxSegmentSize, Codec<TransactionJobs> codec) {
+        this.location = location;
+        this.sync = sync;
+        this.maxSegmentSize = maxSegmentSize;
+        this.codec = codec;
+    }
+
+    /**
+     * Opens the log, returning all the transactions found in existing segments that were not acknowledged (in the
+     * order they were appended). A new segment is started for the transactions appended from now on. Once the recovered transactions have
+     * been replayed, {@link #recovered()} should be called in order to delete the recovered segments.
+     */
+    public synchronized List<TransactionJobs> open() throws SearchEngineException {
+        if (!location.exists() && !location.mkdirs() && !location.exists()) {
+            throw new SearchEngineException("Failed to create write ahead log location [" + location.getAbsolutePath() + "]");
+        }
+        File[] files = location.listFiles();
+        long[] sequences = new long[files == null ? 0 : files.length];
+        int count = 0;
+        if (files != null) {
+            for (File file : files) {
+                String fileName = file.getName();
+                if (!fileName.endsWith(SUFFIX)) {
+                    continue;
+                }
+                try {
+                    sequences[count++] = Long.parseLong(fileName.substring(0, fileName.length() - SUFFIX.length()));
+                } catch (NumberFormatException e) {
+                    // not a segment
+                }
+            }
+        }
+        long[] segmentSequences = new long[count];
+        System.arraycopy(sequences, 0, segmentSequences, 0, count);
+        sequences = segmentSequences;
+        Arrays.sort(sequences);
+
+        Map<Long, byte[]> recoveredRecords = new LinkedHashMap<Long, byte[]>();
+        Set<Long> acknowledged = new HashSet<Long>();
+        for (long sequence : sequences) {
+            File file = segmentFile(sequence);
+            recover(file, recoveredRecords, acknowledged);
+            recoveredFiles.add(file);
+        }
+        long maxId = -1;
+        List<TransactionJobs> recovered = new ArrayList<TransactionJobs>();
+        for (Map.Entry<Long, byte[]> entry : recoveredRecords.entrySet()) {
+            maxId = Math.max(maxId, entry.getKey());
+            if (acknowledged.contains(entry.getKey())) {
+                continue;
+            }
+            try {
+                recovered.add(CodecHelper.fromBytes(codec, entry.getValue()));
+            } catch (Exception e) {
+                logger.warn("Failed to decode write ahead log record [" + entry.getKey() + "], ignoring it", e);
+            }
+        }
+        // keep ids unique with the records of the recovered segments (until they are deleted)
+        nextId.set(maxId + 1);
+        if (!recovered.isEmpty() && logger.isInfoEnabled()) {
+            logger.info("Recovered [" + recovered.size() + "] transactions from write ahead log [" + location.getAbsolutePath() + "]");
+        }
+        current = openSegment(sequences.length == 0 ? 0 : sequences[sequences.length - 1] + 1);
+        return recovered;
+    }
+
+    /**
+     * Deletes the segments recovered when the log was opened. Should be called once the recovered transactions
+     * were replayed successfully.
+     */
+    public synchronized void recovered() {
+        for (File file : recoveredFiles) {
+            if (!file.delete() && file.exists()) {
+                logger.warn("Failed to delete recovered write ahead log segment [" + file.getAbsolutePath() + "]");
+            }
+        }
+        recoveredFiles.clear();
+    }
+
+    /**
+     * Appends the transaction to the log, returning the id of its record. The record will be considered as
+     * processed once it was {@link #acknowledge(long) acknowledged} the given number of times. If sync is enabled,
+     * returns once the record was forced to disk.
+     */
+    public long append(TransactionJobs jobs, int parts) throws SearchEngineException {
+        long id = nextId.getAndIncrement();
+        ByteBuffer buffer = record(JOBS_RECORD, id, serialize(jobs));
+        synchronized (this) {
+            if (closed) {
+                throw new SearchEngineException("Write ahead log [" + location.getAbsolutePath() + "] is closed");
+            }
+            try {
+                write(buffer);
+            } catch (IOException e) {
+                throw new SearchEngineException("Failed to append to write ahead log segment [" + current.file.getAbsolutePath() + "]", e);
+            }
+            current.outstanding++;
+            outstanding.put(id, new Record(current, parts));
+            writtenId = id;
+            if (current.size() >= maxSegmentSize) {
+                roll();
+            }
+        }
+        appendedCount.incrementAndGet();
+        if (sync) {
+            sync(id);
+        }
+        return id;
+    }
+
+    /**
+     * Acknowledges a part of the given record as processed. Once all the parts were acknowledged, an
+     * acknowledgment of the record is appended to the log (so it will not be recovered), and the record is removed
+     * from the log (by deleting or truncating its segment once it has no other records).
+     */
+    public synchronized void acknowledge(long id) {
+        Record record = outstanding.get(id);
+        if (record == null) {
+            return;
+        }
+        if (--record.parts > 0) {
+            return;
+        }
+        outstanding.remove(id);
+        release(id, record.segment);
+    }
+
+    /**
+     * Discards the given record (for example, when the transaction failed to be added to the queue), so it will
+     * not be recovered.
+     */
+    public synchronized void discard(long id) {
+        Record record = outstanding.remove(id);
+        if (record != null) {
+            release(id, record.segment);
+        }
+    }
+
+    /**
+     * Returns the number of records that were not acknowledged yet.
+     */
+    public synchronized int getOutstandingCount() {
+        return outstanding.size();
+    }
+
+    /**
+     * Returns the number of records appended to the log.
+     */
+    public long getAppendedCount() {
+        return appendedCount.get();
+    }
+
+    /**
+     * Returns the number of times the log was forced to disk. Compared with {@link #getAppendedCount()}, shows
+     * how well appends are batched.
+     */
+    public long getSyncCount() {
+        return syncCount.get();
+    }
+
+    /**
+     * Closes the log. Records that were not acknowledged are kept and will be recovered the next time the log
+     * is opened.
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        // a segment without outstanding records might still hold acknowledgments of records in older segments
+        boolean drained = outstanding.isEmpty();
+        synchronized (syncLock) {
+            for (Segment segment : segments.values()) {
+                segment.close(sync);
+                if (drained) {
+                    segment.file.delete();
+                }
+            }
+        }
+        segments.clear();
+    }
+
+    private void sync(long id) throws SearchEngineException {
+        synchronized (syncLock) {
+            if (syncedId >= id) {
+                return;
+            }
+            long target = writtenId;
+            Segment segment = current;
+            try {
+                segment.channel.force(false);
+            } catch (IOException e) {
+                throw new SearchEngineException("Failed to sync write ahead log segment [" + segment.file.getAbsolutePath() + "]", e);
+            }
+            syncedId = target;
+            syncCount.incrementAndGet();
+        }
+    }
+
+    // should be called under lock
+    private void release(long id, Segment segment) {
+        --segment.outstanding;
+        if (segment.outstanding == 0 && segment == current && segments.size() == 1) {
+            // no record left in the log, the current segment is truncated below, no need to acknowledge it
+        } else if (!closed) {
+            try {
+                write(record(ACK_RECORD, id, new byte[0]));
+            } catch (IOException e) {
+                // the record will be replayed if the log is recovered before its segment is deleted
+                logger.warn("Failed to acknowledge record [" + id + "] in write ahead log segment [" + current.file.getAbsolutePath() + "]", e);
+            }
+        }
+        if (segment.outstanding > 0) {
+            return;
+        }
+        if (segment != current) {
+            segments.remove(segment.sequence);
+            segment.close(false);
+            if (!segment.file.delete() && segment.file.exists()) {
+                logger.warn("Failed to delete write ahead log segment [" + segment.file.getAbsolutePath() + "]");
+            }
+            return;
+        }
+        if (closed || segments.size() > 1) {
+            // older segments still have records, which might have acknowledgments in the current segment
+            return;
+        }
+        try {
+            current.channel.truncate(0);
+            current.channel.position(0);
+        } catch (IOException e) {
+            logger.warn("Failed to truncate write ahead log segment [" + current.file.getAbsolutePath() + "]", e);
+        }
+    }
+
+    // should be called under lock
+    private void roll() throws SearchEngineException {
+        Segment old = current;
+        synchronized (syncLock) {
+            // make sure all the records of the old segment are on disk before moving to the new segment
+            if (sync) {
+                try {
+                    old.channel.force(false);
+                } catch (IOException e) {
+                    throw new SearchEngineException("Failed to sync write ahead log segment [" + old.file.getAbsolutePath() + "]", e);
+                }
+                syncedId = writtenId;
+            }
+            current = openSegment(old.sequence + 1);
+        }
+        if (old.outstanding == 0) {
+            segments.remove(old.sequence);
+            old.close(false);
+            old.file.delete();
+        }
+    }
+
+    // should be called under lock
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            current.channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer record(byte type, long id, byte[] payload) {
+        ByteBuffer content = ByteBuffer.allocate(RECORD_ID_SIZE + payload.length);
+        content.put(type);
+        content.putLong(id);
+        content.put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(content.array());
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + content.capacity());
+        buffer.putInt(content.capacity());
+        buffer.putLong(crc.getValue());
+        buffer.put(content.array());
+        buffer.flip();
+        return buffer;
+    }
+
+    private Segment openSegment(long sequence) throws SearchEngineException {
+        File file = segmentFile(sequence);
+        try {
+            Segment segment = new Segment(sequence, file, new RandomAccessFile(file, "rw").getChannel());
+            segments.put(sequence, segment);
+            return segment;
+        } catch (IOException e) {
+            throw new SearchEngineException("Failed to open write ahead log segment [" + file.getAbsolutePath() + "]", e);
+        }
+    }
+
+    private File segmentFile(long sequence) {
+        return new File(location, sequence + SUFFIX);
+    }
+
+    private void recover(File file, Map<Long, byte[]> recovered, Set<Long> acknowledged) {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                long checksum = in.readLong();
+                if (length < RECORD_ID_SIZE || length > file.length()) {
+                    logger.warn("Write ahead log segment [" + file.getAbsolutePath() + "] has a corrupted record length, ignoring the rest of it");
+                    break;
+                }
+                byte[] content = new byte[length];
+                in.readFully(content);
+                CRC32 crc = new CRC32();
+                crc.update(content);
+                if (crc.getValue() != checksum) {
+                    logger.warn("Write ahead log segment [" + file.getAbsolutePath() + "] has a record with a wrong checksum, ignoring the rest of it");
+                    break;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(content);
+                byte type = buffer.get();
+                long id = buffer.getLong();
+                if (type == ACK_RECORD) {
+                    acknowledged.add(id);
+                } else {
+                    byte[] payload = new byte[length - RECORD_ID_SIZE];
+                    buffer.get(payload);
+                    recovered.put(id, payload);
+                }
+            }
+        } catch (EOFException e) {
+            logger.warn("Write ahead log segment [" + file.getAbsolutePath() + "] ends with a partial record, ignoring it");
+        } catch (Exception e) {
+            logger.warn("Failed to recover write ahead log segment [" + file.getAbsolutePath() + "], ignoring the rest of it", e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private byte[] serialize(TransactionJobs jobs) throws SearchEngineException {
+        try {
+            return CodecHelper.toBytes(codec, jobs);
+        } catch (IOException e) {
+            throw new SearchEngineException("Failed to encode jobs [" + System.identityHashCode(jobs) + "] to the write ahead log", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "writeAheadLog [" + location.getAbsolutePath() + "] outstanding [" + getOutstandingCount() + "] appended ["
+                + getAppendedCount() + "] syncs [" + getSyncCount() + "]";
+    }
+
+    private static final class Segment {
+
+        final long sequence;
+
+        final File file;
+
+        final FileChannel channel;
+
+        int outstanding;
+
+        Segment(long sequence, File file, FileChannel channel) {
+            this.sequence = sequence;
+            this.file = file;
+            this.channel = channel;
+        }
+
+        long size() {
+            try {
+                return channel.size();
+            } catch (IOException e) {
+                return 0;
+            }
+        }
+
+        void close(boolean force) {
+            try {
+                if (force) {
+                    channel.force(false);
+                }
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close write ahead log segment [" + file.getAbsolutePath() + "]", e);
+            }
+        }
+    }
+
+    private static final class Record {
+
+        final Segment segment;
+
+        int parts;
+
+        Record(Segment segment, int parts) {
+            this.segment = segment;
+            this.parts = parts;
+        }
+    }
+}
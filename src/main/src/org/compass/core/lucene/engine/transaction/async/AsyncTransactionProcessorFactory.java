@@ -16,16 +16,17 @@
 
 package org.compass.core.lucene.engine.transaction.async;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
@@ -37,20 +38,27 @@ import org.apache.lucene.store.Directory;
 import org.compass.core.CompassException;
 import org.compass.core.config.CompassConfigurable;
 import org.compass.core.config.CompassSettings;
+import org.compass.core.config.ConfigurationException;
 import org.compass.core.config.SearchEngineFactoryAware;
 import org.compass.core.engine.SearchEngineException;
 import org.compass.core.engine.SearchEngineFactory;
 import org.compass.core.lucene.LuceneEnvironment;
 import org.compass.core.lucene.engine.LuceneSearchEngine;
 import org.compass.core.lucene.engine.LuceneSearchEngineFactory;
+import org.compass.core.lucene.engine.codec.Codec;
+import org.compass.core.lucene.engine.codec.SerializableCodec;
+import org.compass.core.lucene.engine.codec.TransactionJobsCodec;
 import org.compass.core.lucene.engine.manager.LuceneSearchEngineIndexManager;
 import org.compass.core.lucene.engine.transaction.TransactionProcessor;
 import org.compass.core.lucene.engine.transaction.TransactionProcessorFactory;
 import org.compass.core.lucene.engine.transaction.support.CommitCallable;
 import org.compass.core.lucene.engine.transaction.support.PrepareCommitCallable;
 import org.compass.core.lucene.engine.transaction.support.ResourceHashing;
+import org.compass.core.lucene.engine.transaction.support.job.CreateTransactionJob;
 import org.compass.core.lucene.engine.transaction.support.job.TransactionJob;
 import org.compass.core.lucene.engine.transaction.support.job.TransactionJobs;
+import org.compass.core.lucene.engine.transaction.support.job.UpdateTransactionJob;
+import org.compass.core.spi.InternalResource;
 import org.compass.core.transaction.context.TransactionalCallable;
 
 /**
@@ -81,6 +89,22 @@ import org.compass.core.transaction.context.TransactionalCallable;
  * can either be done based on uid (of the resource) or sub index. By default, hashing is done based on <code>uid</code>
  * and can be configured using {@link org.compass.core.lucene.LuceneEnvironment.Transaction.Processor.Async#HASHING}.
  *
+ * <p>By default, all transactions are added to a single queue processed by a single polling processor. When
+ * {@link org.compass.core.lucene.LuceneEnvironment.Transaction.Processor.Async#QUEUE_PER_SUB_INDEX} is set to
+ * <code>true</code>, each transaction is broken into its sub indexes, and each sub index has its own queue (bounded
+ * by the backlog) and its own polling processor. A slow sub index then only delays transactions against it.
+ *
+ * <p>The {@link org.compass.core.lucene.LuceneEnvironment.Transaction.Processor.Async#BACK_PRESSURE} setting controls
+ * what happens when a queue is full. It can be <code>block</code> (the default, waiting for the add timeout), <code>fail</code>
+ * (fail the commit immediately) or <code>spill</code> (serialize the transaction to the
+ * {@link org.compass.core.lucene.LuceneEnvironment.Transaction.Processor.Async#SPILL_LOCATION}). Queue depth and
+ * latency gauges are available using {@link #getQueues()}.
+ *
+ * <p>When {@link org.compass.core.lucene.LuceneEnvironment.Transaction.Processor.Async.WriteAheadLog#ENABLE} is set
+ * to <code>true</code>, transactions are appended to an {@link AsyncJobsWriteAheadLog} before they are added to the
+ * queues, and acknowledged once they are committed. Transactions left in the log (for example, because the JVM
+ * crashed) are replayed when Compass starts.
+ *
  * <p>When the transaction processor closes, by default it will wait for all the transactions to finish. In order to
  * disable it, the {@link org.compass.core.lucene.LuceneEnvironment.Transaction.Processor.Async#PROCESS_BEFORE_CLOSE}
  * setting should be set to <code>false</code>.
@@ -109,13 +133,29 @@ public class AsyncTransactionProcessorFactory implements TransactionProcessorFac
 
     private int nonBlockingBatchSize;
 
+    private static final String DEFAULT_QUEUE = "default";
+
     private ResourceHashing hashing;
 
-    private BlockingQueue<TransactionJobs> jobsToProcess;
+    private int backlog;
+
+    private boolean queuePerSubIndex;
+
+    private BackPressure backPressure;
+
+    private File spillLocation;
 
-    private Future pollingProcessorFuture;
+    private Codec<TransactionJobs> codec;
 
-    private volatile PollingProcessor pollingProcessor;
+    private AsyncJobsWriteAheadLog writeAheadLog;
+
+    private List<TransactionJobs> writeAheadLogRecovered;
+
+    private final Map<String, AsyncJobsQueue> queues = new ConcurrentHashMap<String, AsyncJobsQueue>();
+
+    private final Map<String, PollingProcessor> pollingProcessors = new ConcurrentHashMap<String, PollingProcessor>();
+
+    private final Map<String, Future> pollingProcessorFutures = new ConcurrentHashMap<String, Future>();
 
     private volatile boolean closed = false;
 
@@ -126,7 +166,7 @@ public class AsyncTransactionProcessorFactory implements TransactionProcessorFac
 
     public void configure(CompassSettings settings) throws CompassException {
         this.settings = settings;
-        jobsToProcess = new ArrayBlockingQueue<TransactionJobs>(settings.getSettingAsInt(LuceneEnvironment.Transaction.Processor.Async.BACKLOG, 10), true);
+        backlog = settings.getSettingAsInt(LuceneEnvironment.Transaction.Processor.Async.BACKLOG, 10);
 
         addTimeout = settings.getSettingAsTimeInMillis(LuceneEnvironment.Transaction.Processor.Async.ADD_TIMEOUT, 10 * 1000);
         if (logger.isDebugEnabled()) {
@@ -134,7 +174,7 @@ public class AsyncTransactionProcessorFactory implements TransactionProcessorFac
         }
 
         batchJobsSize = settings.getSettingAsInt(LuceneEnvironment.Transaction.Processor.Async.BATCH_JOBS_SIZE, 5);
-        batchJobTimeout = settings.getSettingAsTimeInMillis(LuceneEnvironment.Transaction.Processor.Async.BATCH_JOBS_SIZE, 100);
+        batchJobTimeout = settings.getSettingAsTimeInMillis(LuceneEnvironment.Transaction.Processor.Async.BATCH_JOBS_TIMEOUT, 100);
         if (logger.isDebugEnabled()) {
             logger.debug("Async Transaction Processor blocking batch size is [" + batchJobsSize + "] with timeout of [" + batchJobTimeout + "ms]");
         }
@@ -159,11 +199,97 @@ public class AsyncTransactionProcessorFactory implements TransactionProcessorFac
             logger.debug("Async Transaction Processor uses [" + hashing + "] based hashing for concurrent processing");
         }
 
+        queuePerSubIndex = settings.getSettingAsBoolean(LuceneEnvironment.Transaction.Processor.Async.QUEUE_PER_SUB_INDEX, false);
+        backPressure = BackPressure.fromName(settings.getSetting(LuceneEnvironment.Transaction.Processor.Async.BACK_PRESSURE, "block"));
+        spillLocation = new File(settings.getSetting(LuceneEnvironment.Transaction.Processor.Async.SPILL_LOCATION,
+                System.getProperty("java.io.tmpdir") + "/compass/async-spill"));
+        if (logger.isDebugEnabled()) {
+            logger.debug("Async Transaction Processor queue per sub index [" + queuePerSubIndex + "] with back pressure [" + backPressure + "]");
+        }
+
+        String codecType = settings.getSetting(LuceneEnvironment.Transaction.Processor.Async.CODEC, "binary");
+        if ("binary".equalsIgnoreCase(codecType)) {
+            codec = new TransactionJobsCodec(searchEngineFactory);
+        } else if ("serializable".equalsIgnoreCase(codecType)) {
+            codec = new SerializableCodec<TransactionJobs>();
+        } else {
+            throw new ConfigurationException("Async transaction processor codec [" + codecType + "] is not supported, use either binary or serializable");
+        }
+
+        if (settings.getSettingAsBoolean(LuceneEnvironment.Transaction.Processor.Async.WriteAheadLog.ENABLE, false)) {
+            String location = settings.getSetting(LuceneEnvironment.Transaction.Processor.Async.WriteAheadLog.LOCATION);
+            if (location == null) {
+                throw new ConfigurationException("Async transaction processor write ahead log is enabled, but no location is set using ["
+                        + LuceneEnvironment.Transaction.Processor.Async.WriteAheadLog.LOCATION + "]");
+            }
+            writeAheadLog = new AsyncJobsWriteAheadLog(new File(location),
+                    settings.getSettingAsBoolean(LuceneEnvironment.Transaction.Processor.Async.WriteAheadLog.SYNC, true),
+                    settings.getSettingAsBytes(LuceneEnvironment.Transaction.Processor.Async.WriteAheadLog.MAX_SEGMENT_SIZE, 64 * 1024 * 1024),
+                    codec);
+            writeAheadLogRecovered = writeAheadLog.open();
+            if (logger.isDebugEnabled()) {
+                logger.debug("Async Transaction Processor uses write ahead log at [" + location + "]");
+            }
+        }
+
         if (logger.isDebugEnabled()) {
             logger.debug("Starting Async polling transaction processor");
         }
     }
 
+    /**
+     * Replays the transactions recovered from the write ahead log (if used), blocking until they are processed.
+     * Creates are replayed as updates, since the recovered transactions might have already been (partially)
+     * committed before the JVM stopped. If the replay fails, the recovered transactions are kept in the log and
+     * will be replayed on the next startup.
+     */
+    public synchronized void replayWriteAheadLog() {
+        if (writeAheadLogRecovered == null) {
+            return;
+        }
+        List<TransactionJobs> recovered = writeAheadLogRecovered;
+        writeAheadLogRecovered = null;
+        if (recovered.isEmpty()) {
+            writeAheadLog.recovered();
+            return;
+        }
+        if (logger.isInfoEnabled()) {
+            logger.info("Replaying [" + recovered.size() + "] transactions from the write ahead log");
+        }
+        int batchSize = 1 + batchJobsSize + nonBlockingBatchSize;
+        for (int i = 0; i < recovered.size(); i += batchSize) {
+            Set<String> subIndexes = new HashSet<String>();
+            List<TransactionJob>[] concurrentJobsToProcess = new List[concurrencyLevel];
+            for (int j = 0; j < concurrentJobsToProcess.length; j++) {
+                concurrentJobsToProcess[j] = new ArrayList<TransactionJob>();
+            }
+            for (TransactionJobs jobs : recovered.subList(i, Math.min(i + batchSize, recovered.size()))) {
+                TransactionJobs replayJobs = new TransactionJobs();
+                for (TransactionJob job : jobs.getJobs()) {
+                    if (job instanceof CreateTransactionJob) {
+                        InternalResource resource = ((CreateTransactionJob) job).getResource();
+                        resource.attach(searchEngineFactory);
+                        job = new UpdateTransactionJob(resource);
+                    }
+                    replayJobs.add(job);
+                }
+                addConcurrentJobsToProcess(concurrentJobsToProcess, subIndexes, replayJobs);
+            }
+            if (!process(concurrentJobsToProcess, subIndexes)) {
+                logger.warn("Failed to replay transactions from the write ahead log, will retry on the next startup");
+                return;
+            }
+        }
+        writeAheadLog.recovered();
+    }
+
+    /**
+     * Returns the write ahead log used, <code>null</code> if the write ahead log is not enabled.
+     */
+    public AsyncJobsWriteAheadLog getWriteAheadLog() {
+        return writeAheadLog;
+    }
+
     /**
      * Closes the transaction processor. Will wait for ongoing transactions if the
      * {@link org.compass.core.lucene.LuceneEnvironment.Transaction.Processor.Async#PROCESS_BEFORE_CLOSE} is set to
@@ -171,9 +297,9 @@ public class AsyncTransactionProcessorFactory implements TransactionProcessorFac
      */
     public synchronized void close() {
         closed = true;
-        if (processBeforeClose && pollingProcessor != null) {
+        if (processBeforeClose && !pollingProcessors.isEmpty()) {
             // TODO don't sleep forever (can be implemented nicely with singal)
-            while (!jobsToProcess.isEmpty()) {
+            while (!isQueuesIdle()) {
                 try {
                     this.wait(100);
                 } catch (InterruptedException e) {
@@ -182,11 +308,14 @@ public class AsyncTransactionProcessorFactory implements TransactionProcessorFac
                 }
             }
         }
-        if (pollingProcessor != null) {
-            try {
+        try {
+            for (Map.Entry<String, PollingProcessor> entry : pollingProcessors.entrySet()) {
+                PollingProcessor pollingProcessor = entry.getValue();
                 pollingProcessor.close();
+                Future pollingProcessorFuture = pollingProcessorFutures.get(entry.getKey());
                 pollingProcessorFuture.cancel(true);
-                while (!pollingProcessor.isDone()) {
+                // if it was cancelled before it started, it will never run
+                while (!pollingProcessor.isDone() && (pollingProcessor.isStarted() || !pollingProcessorFuture.isCancelled())) {
                     try {
                         this.wait(100);
                     } catch (InterruptedException e) {
@@ -194,9 +323,16 @@ public class AsyncTransactionProcessorFactory implements TransactionProcessorFac
                         break;
                     }
                 }
-            } finally {
-                pollingProcessor = null;
-                pollingProcessorFuture = null;
+            }
+        } finally {
+            pollingProcessors.clear();
+            pollingProcessorFutures.clear();
+            for (AsyncJobsQueue queue : queues.values()) {
+                queue.close();
+            }
+            queues.clear();
+            if (writeAheadLog != null) {
+                writeAheadLog.close();
             }
         }
     }
@@ -220,7 +356,27 @@ public class AsyncTransactionProcessorFactory implements TransactionProcessorFac
      * from being processed.
      */
     public boolean remove(TransactionJobs jobs) throws SearchEngineException {
-        return jobsToProcess.remove(jobs);
+        if (!queuePerSubIndex) {
+            AsyncJobsQueue queue = queues.get(DEFAULT_QUEUE);
+            return queue != null && queue.remove(jobs);
+        }
+        boolean removed = false;
+        for (Map.Entry<String, TransactionJobs> entry : jobs.buildJobsPerSubIndex().entrySet()) {
+            AsyncJobsQueue queue = queues.get(entry.getKey());
+            if (queue != null && queue.remove(entry.getValue())) {
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the queues used by the async transaction processor, keyed by the sub index (or a single
+     * <code>default</code> queue if queue per sub index is not enabled). Can be used in order to monitor
+     * the depth and latency of each queue.
+     */
+    public Map<String, AsyncJobsQueue> getQueues() {
+        return Collections.unmodifiableMap(queues);
     }
 
     /**
@@ -232,28 +388,91 @@ public class AsyncTransactionProcessorFactory implements TransactionProcessorFac
      * to a blocking queue, waiting until the queue if cleared in case it is full. This will cause a transaction
      * commit to block if the backlog is full. The time to wait can be controlled using
      * {@link org.compass.core.lucene.LuceneEnvironment.Transaction.Processor.Async#ADD_TIMEOUT} and defaults to
-     * 10 seconds.
+     * 10 seconds. Other back pressure policies can be configured using
+     * {@link org.compass.core.lucene.LuceneEnvironment.Transaction.Processor.Async#BACK_PRESSURE}.
+     *
+     * <p>When queue per sub index is enabled, the jobs are broken into their respective sub indexes and added
+     * to each sub index queue. Room is first reserved in all the sub index queues (applying the back pressure
+     * policy), and only then all the parts are added, so either all of them are processed, or, if reserving room
+     * in one of the queues fails, none of them is.
      */
     public void add(TransactionJobs jobs) throws SearchEngineException {
-        if (pollingProcessor == null) {
-            synchronized (this) {
-                if (pollingProcessor == null) {
-                    this.pollingProcessor = new PollingProcessor();
-                    pollingProcessorFuture = searchEngineFactory.getExecutorManager().submit(pollingProcessor);
+        if (!queuePerSubIndex) {
+            long writeAheadLogId = writeAheadLog == null ? -1 : writeAheadLog.append(jobs, 1);
+            try {
+                getOrCreateQueue(DEFAULT_QUEUE).add(jobs, writeAheadLogId);
+            } catch (SearchEngineException e) {
+                if (writeAheadLog != null) {
+                    writeAheadLog.discard(writeAheadLogId);
                 }
+                throw e;
             }
+            return;
         }
+        Map<String, TransactionJobs> jobsPerSubIndex = jobs.buildJobsPerSubIndex();
+        long writeAheadLogId = writeAheadLog == null ? -1 : writeAheadLog.append(jobs, jobsPerSubIndex.size());
+        List<AsyncJobsQueue> reservedQueues = new ArrayList<AsyncJobsQueue>(jobsPerSubIndex.size());
+        List<AsyncJobsQueue.Reservation> reservations = new ArrayList<AsyncJobsQueue.Reservation>(jobsPerSubIndex.size());
         try {
-            boolean offered = jobsToProcess.offer(jobs, addTimeout, TimeUnit.MILLISECONDS);
-            if (!offered) {
-                throw new SearchEngineException("Failed to add jobs [" + System.identityHashCode(jobs) + "], queue is full and nothing empties it");
+            for (Map.Entry<String, TransactionJobs> entry : jobsPerSubIndex.entrySet()) {
+                AsyncJobsQueue queue = getOrCreateQueue(entry.getKey());
+                reservations.add(queue.reserve(entry.getValue(), writeAheadLogId));
+                reservedQueues.add(queue);
+            }
+        } catch (SearchEngineException e) {
+            // no part was added yet, so none of them can be processed
+            for (int i = 0; i < reservations.size(); i++) {
+                reservedQueues.get(i).cancel(reservations.get(i));
+            }
+            if (writeAheadLog != null) {
+                writeAheadLog.discard(writeAheadLogId);
+            }
+            throw e;
+        }
+        for (int i = 0; i < reservations.size(); i++) {
+            reservedQueues.get(i).add(reservations.get(i));
+        }
+    }
+
+    /**
+     * Returns the queue with the given name, creating it (and starting a polling processor for it) if it
+     * does not exists. Queues are created lazily so if the async transaction processor is not used, it won't
+     * incur any overhead.
+     */
+    private AsyncJobsQueue getOrCreateQueue(String name) {
+        AsyncJobsQueue queue = queues.get(name);
+        if (queue != null) {
+            return queue;
+        }
+        synchronized (this) {
+            queue = queues.get(name);
+            if (queue == null) {
+                if (closed) {
+                    throw new SearchEngineException("Async transaction processor is closed");
+                }
+                queue = new AsyncJobsQueue(name, backlog, backPressure, addTimeout, new File(spillLocation, name), codec, writeAheadLog);
+                PollingProcessor pollingProcessor = new PollingProcessor(queue);
+                pollingProcessors.put(name, pollingProcessor);
+                pollingProcessorFutures.put(name, searchEngineFactory.getExecutorManager().submit(pollingProcessor));
+                queues.put(name, queue);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Started async polling processor for queue [" + name + "]");
+                }
+            }
+        }
+        return queue;
+    }
+
+    private boolean isQueuesIdle() {
+        for (AsyncJobsQueue queue : queues.values()) {
+            if (!queue.isIdle()) {
+                return false;
             }
-        } catch (InterruptedException e) {
-            throw new SearchEngineException("Failed to add jobs [" + System.identityHashCode(jobs) + "], interrupted", e);
         }
+        return true;
     }
 
-    private void process(TransactionJobs jobs) throws InterruptedException {
+    private void process(AsyncJobsQueue queue, TransactionJobs jobs) throws InterruptedException {
         Set<String> subIndexes = new HashSet<String>();
         List<TransactionJob>[] concurrentJobsToProcess = new List[concurrencyLevel];
         for (int i = 0; i < concurrentJobsToProcess.length; i++) {
@@ -263,19 +482,24 @@ public class AsyncTransactionProcessorFactory implements TransactionProcessorFac
         // build the concurrent job list of lists
         addConcurrentJobsToProcess(concurrentJobsToProcess, subIndexes, jobs);
         // spin a bit to get more possible jobs, if enabled (batchJobSize is set to higher value than 0)
-        for (int i = 0; i < batchJobsSize; i++) {
-            jobs = jobsToProcess.poll(batchJobTimeout, TimeUnit.MILLISECONDS);
-            if (jobs == null) {
-                break;
-            }
-            if (logger.isTraceEnabled()) {
-                logger.trace("Batching additional Jobs [" + System.identityHashCode(jobs) + "]");
+        try {
+            for (int i = 0; i < batchJobsSize; i++) {
+                jobs = queue.poll(batchJobTimeout, TimeUnit.MILLISECONDS);
+                if (jobs == null) {
+                    break;
+                }
+                if (logger.isTraceEnabled()) {
+                    logger.trace("Batching additional Jobs [" + System.identityHashCode(jobs) + "]");
+                }
+                addConcurrentJobsToProcess(concurrentJobsToProcess, subIndexes, jobs);
             }
-            addConcurrentJobsToProcess(concurrentJobsToProcess, subIndexes, jobs);
+        } catch (InterruptedException e) {
+            queue.discardTaken();
+            throw e;
         }
         // now spin non blocking
         List<TransactionJobs> nonBlockingDrainToList = new ArrayList<TransactionJobs>();
-        if (jobsToProcess.drainTo(nonBlockingDrainToList, nonBlockingBatchSize) > 0) {
+        if (queue.drainTo(nonBlockingDrainToList, nonBlockingBatchSize) > 0) {
             for (TransactionJobs transactionJobs : nonBlockingDrainToList) {
                 if (logger.isTraceEnabled()) {
                     logger.trace("Batching additional Jobs [" + System.identityHashCode(transactionJobs) + "]");
@@ -284,6 +508,19 @@ public class AsyncTransactionProcessorFactory implements TransactionProcessorFac
             }
         }
 
+        if (process(concurrentJobsToProcess, subIndexes)) {
+            queue.acknowledgeTaken();
+        } else {
+            // keep them in the write ahead log (if used), so they will be replayed on the next startup
+            queue.discardTaken();
+        }
+    }
+
+    /**
+     * Processes the given jobs (already hashed into concurrent lists) against the given sub indexes, returning
+     * <code>true</code> if they were committed successfully.
+     */
+    private boolean process(List<TransactionJob>[] concurrentJobsToProcess, Set<String> subIndexes) {
         boolean failure = false;
 
         Map<String, IndexWriter> writers = new HashMap<String, IndexWriter>();
@@ -301,7 +538,7 @@ public class AsyncTransactionProcessorFactory implements TransactionProcessorFac
         }
         if (failure) {
             closeWriters(writers);
-            return;
+            return false;
         }
 
         // process all the jobs by multiple threads
@@ -321,7 +558,7 @@ public class AsyncTransactionProcessorFactory implements TransactionProcessorFac
         }
         if (failure) {
             rollbackWriters(writers);
-            return;
+            return false;
         }
 
         // prepare for commit
@@ -337,7 +574,7 @@ public class AsyncTransactionProcessorFactory implements TransactionProcessorFac
         }
         if (failure) {
             rollbackWriters(writers);
-            return;
+            return false;
         }
 
         // commit
@@ -349,7 +586,9 @@ public class AsyncTransactionProcessorFactory implements TransactionProcessorFac
             indexManager.getExecutorManager().invokeAllWithLimitBailOnException(commitCallables, 1);
         } catch (Exception e) {
             logger.warn("Failed to commit", e);
+            return false;
         }
+        return true;
     }
 
     /**
@@ -422,22 +661,43 @@ public class AsyncTransactionProcessorFactory implements TransactionProcessorFac
 
     private class PollingProcessor implements Callable<Object> {
 
+        private final AsyncJobsQueue queue;
+
         private volatile boolean closed = false;
 
+        private PollingProcessor(AsyncJobsQueue queue) {
+            this.queue = queue;
+        }
+
+        private volatile boolean started = false;
+
         private volatile boolean done = false;
 
         public void close() {
             this.closed = true;
         }
 
+        public boolean isStarted() {
+            return this.started;
+        }
+
         public boolean isDone() {
             return this.done;
         }
 
         public Object call() throws Exception {
+            started = true;
+            try {
+                return doCall();
+            } finally {
+                this.done = true;
+            }
+        }
+
+        private Object doCall() {
             while (!closed) {
                 try {
-                    TransactionJobs jobs = jobsToProcess.poll(10, TimeUnit.SECONDS);
+                    TransactionJobs jobs = queue.poll(10, TimeUnit.SECONDS);
                     if (jobs == null) {
                         continue;
                     }
@@ -445,7 +705,7 @@ public class AsyncTransactionProcessorFactory implements TransactionProcessorFac
                         logger.trace("Procesing jobs [" + System.identityHashCode(jobs) + "]");
                     }
 
-                    process(jobs);
+                    process(queue, jobs);
 
                     if (logger.isTraceEnabled()) {
                         logger.trace("Procesing jobs done");
@@ -463,12 +723,12 @@ public class AsyncTransactionProcessorFactory implements TransactionProcessorFac
                     if (logger.isWarnEnabled()) {
                         logger.warn("Exception while processing job", e);
                     }
+                    queue.discardTaken();
                 }
             }
             if (logger.isDebugEnabled()) {
-                logger.debug("Async polling transaction processor thread stopped");
+                logger.debug("Async polling transaction processor thread for queue [" + queue.getName() + "] stopped");
             }
-            this.done = true;
             return null;
         }
 
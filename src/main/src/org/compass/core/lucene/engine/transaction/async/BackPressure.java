@@ -0,0 +1,47 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.compass.core.lucene.engine.transaction.async;
+
+/**
+ * The back pressure policy of an {@link AsyncJobsQueue} applied when a transaction is added to a full queue.
+ *
+ * @author kimchy
+ */
+public enum BackPressure {
+    /**
+     * Block until there is room in the queue, failing if the add timeout has passed.
+     */
+    BLOCK,
+    /**
+     * Fail immediately.
+     */
+    FAIL,
+    /**
+     * Spill the transaction to disk. It will be processed (in order) once the queue is drained.
+     */
+    SPILL;
+
+    public static BackPressure fromName(String name) {
+        if ("block".equalsIgnoreCase(name)) {
+            return BLOCK;
+        } else if ("fail".equalsIgnoreCase(name)) {
+            return FAIL;
+        } else if ("spill".equalsIgnoreCase(name)) {
+            return SPILL;
+        }
+        throw new IllegalArgumentException("No back pressure policy found for [" + name + "]");
+    }
+}
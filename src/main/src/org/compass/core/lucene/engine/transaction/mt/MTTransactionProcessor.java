@@ -202,6 +202,7 @@ public class MTTransactionProcessor extends AbstractSearchTransactionProcessor {
             } catch (IOException e) {
                 throw new SearchEngineException("Failed to flush commit sub index [" + subIndex + "]", e);
             }
+            indexManager.getIndexHoldersCache().afterCommit(subIndex, false);
         }
     }
 
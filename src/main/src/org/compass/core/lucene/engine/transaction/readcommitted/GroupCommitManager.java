@@ -0,0 +1,364 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.compass.core.lucene.engine.transaction.readcommitted;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.Directory;
+import org.compass.core.config.CompassSettings;
+import org.compass.core.engine.SearchEngineException;
+import org.compass.core.lucene.LuceneEnvironment;
+import org.compass.core.lucene.engine.LuceneSearchEngineFactory;
+import org.compass.core.lucene.engine.manager.LuceneSearchEngineIndexManager;
+import org.compass.core.lucene.engine.transaction.support.job.TransactionJob;
+
+/**
+ * Coalesces read committed sessions committing concurrently against the same sub index into a single
+ * index writer commit (group commit).
+ *
+ * <p>Each session with dirty operations against a sub index registers with the manager. Once it commits,
+ * it adds its changes (the deletes to apply and its transactional index) to the sub index pending queue.
+ * The first committing session becomes the leader. It waits (up to {@link LuceneEnvironment.Transaction.Processor.ReadCommitted.GroupCommit#MAX_WAIT})
+ * for the other registered sessions to commit as well, and then applies up to
+ * {@link LuceneEnvironment.Transaction.Processor.ReadCommitted.GroupCommit#MAX_BATCH} pending commits (in order)
+ * using a single index writer, which is then committed. The other sessions simply wait for their changes to be
+ * committed by the leader. A session that commits while no other session has dirty operations against the
+ * sub index does not wait at all.
+ *
+ * <p>Each session changes are still committed atomically. If the batch fails, each of its session commits
+ * is retried on its own, so a failing session does not fail the other sessions in the batch.
+ *
+ * <p>Note, the batch is committed within the leader session transaction context, which means that group commit
+ * should not be used with stores bound to an external transaction (such as a jdbc store with managed transactions).
+ *
+ * @author kimchy
+ */
+public class GroupCommitManager {
+
+    private static final Log logger = LogFactory.getLog(GroupCommitManager.class);
+
+    private final LuceneSearchEngineFactory searchEngineFactory;
+
+    private final LuceneSearchEngineIndexManager indexManager;
+
+    private final CompassSettings settings;
+
+    private final long maxWait;
+
+    private final int maxBatch;
+
+    private final boolean invalidateCacheOnCommit;
+
+    private final ConcurrentMap<String, SubIndexGroup> groups = new ConcurrentHashMap<String, SubIndexGroup>();
+
+    private volatile boolean closed;
+
+    public GroupCommitManager(LuceneSearchEngineFactory searchEngineFactory, CompassSettings settings) {
+        this.searchEngineFactory = searchEngineFactory;
+        this.indexManager = searchEngineFactory.getLuceneIndexManager();
+        this.settings = settings;
+        this.maxWait = settings.getSettingAsTimeInMillis(LuceneEnvironment.Transaction.Processor.ReadCommitted.GroupCommit.MAX_WAIT, 10);
+        this.maxBatch = Math.max(1, settings.getSettingAsInt(LuceneEnvironment.Transaction.Processor.ReadCommitted.GroupCommit.MAX_BATCH, 50));
+        this.invalidateCacheOnCommit = settings.getSettingAsBoolean(LuceneEnvironment.Transaction.CLEAR_CACHE_ON_COMMIT, true);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Group commit will wait up to [" + maxWait + "ms] with max batch size [" + maxBatch + "]");
+        }
+    }
+
+    /**
+     * Registers a session that has dirty operations against the given sub index. Each registration is
+     * released either by {@link #commit(String, java.util.List, org.apache.lucene.store.Directory)} or by
+     * {@link #unregister(String)}.
+     */
+    public void register(String subIndex) {
+        SubIndexGroup group = getGroup(subIndex);
+        synchronized (group) {
+            group.active++;
+        }
+    }
+
+    /**
+     * Unregisters a session that will not commit its dirty operations against the given sub index (for example,
+     * on rollback).
+     */
+    public void unregister(String subIndex) {
+        SubIndexGroup group = getGroup(subIndex);
+        synchronized (group) {
+            if (group.active > 0) {
+                group.active--;
+            }
+            group.notifyAll();
+        }
+    }
+
+    /**
+     * Commits the given changes of a single session to the sub index, possibly as part of a batch with other
+     * sessions. Blocks until the changes are committed.
+     *
+     * @param subIndex  The sub index to commit the changes to
+     * @param deletes   The delete jobs to apply to the sub index (can be <code>null</code>)
+     * @param directory The transactional index to add to the sub index (can be <code>null</code>)
+     */
+    public void commit(String subIndex, List<TransactionJob> deletes, Directory directory) throws SearchEngineException {
+        if (closed) {
+            throw new SearchEngineException("Group commit manager is closed, can not commit to sub index [" + subIndex + "]");
+        }
+        SubIndexGroup group = getGroup(subIndex);
+        CommitRequest request = new CommitRequest(deletes, directory);
+        boolean interrupted = false;
+        synchronized (group) {
+            group.pending.add(request);
+            group.notifyAll();
+        }
+        try {
+            while (true) {
+                synchronized (group) {
+                    while (!request.done && group.leader) {
+                        try {
+                            group.wait();
+                        } catch (InterruptedException e) {
+                            // we must wait for the request to be processed since it might be part of the current batch
+                            interrupted = true;
+                        }
+                    }
+                    if (request.done) {
+                        break;
+                    }
+                    group.leader = true;
+                }
+                try {
+                    try {
+                        waitForBatch(group);
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                    process(subIndex, group, drainBatch(group));
+                } finally {
+                    synchronized (group) {
+                        group.leader = false;
+                        group.notifyAll();
+                    }
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (request.exception != null) {
+            throw request.exception;
+        }
+    }
+
+    /**
+     * Returns the group commit stats of the given sub index, <code>null</code> if no commits were done against it.
+     */
+    public GroupCommitStats getStats(String subIndex) {
+        SubIndexGroup group = groups.get(subIndex);
+        if (group == null) {
+            return null;
+        }
+        return group.stats;
+    }
+
+    /**
+     * Closes the manager. Commits already in progress are still processed, but leaders no longer wait for
+     * other registered sessions, and new commits are rejected.
+     */
+    public void close() {
+        closed = true;
+        for (SubIndexGroup group : groups.values()) {
+            synchronized (group) {
+                group.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits (up to max wait) for the other registered sessions to commit, or for the batch to fill up.
+     */
+    private void waitForBatch(SubIndexGroup group) throws InterruptedException {
+        synchronized (group) {
+            long deadline = System.currentTimeMillis() + maxWait;
+            while (!closed && group.pending.size() < Math.min(maxBatch, group.active)) {
+                long timeToWait = deadline - System.currentTimeMillis();
+                if (timeToWait <= 0) {
+                    break;
+                }
+                group.wait(timeToWait);
+            }
+        }
+    }
+
+    private List<CommitRequest> drainBatch(SubIndexGroup group) {
+        synchronized (group) {
+            int size = Math.min(maxBatch, group.pending.size());
+            List<CommitRequest> batch = new ArrayList<CommitRequest>(size);
+            for (int i = 0; i < size; i++) {
+                batch.add(group.pending.removeFirst());
+            }
+            return batch;
+        }
+    }
+
+    private void process(String subIndex, SubIndexGroup group, List<CommitRequest> batch) {
+        long start = System.currentTimeMillis();
+        boolean committed = false;
+        try {
+            try {
+                apply(subIndex, batch);
+                committed = true;
+            } catch (SearchEngineException e) {
+                if (batch.size() == 1) {
+                    batch.get(0).exception = e;
+                } else {
+                    logger.warn("Failed to group commit [" + batch.size() + "] transactions to sub index [" + subIndex
+                            + "], committing each one separately", e);
+                    for (CommitRequest request : batch) {
+                        try {
+                            apply(subIndex, Collections.singletonList(request));
+                            committed = true;
+                        } catch (SearchEngineException e1) {
+                            request.exception = e1;
+                        }
+                    }
+                }
+            }
+            if (committed) {
+                afterCommit(subIndex);
+            }
+        } catch (RuntimeException e) {
+            for (CommitRequest request : batch) {
+                if (request.exception == null) {
+                    request.exception = new SearchEngineException("Failed to group commit to sub index [" + subIndex + "]", e);
+                }
+            }
+        } finally {
+            long now = System.currentTimeMillis();
+            group.stats.batch(batch.size(), now - start);
+            for (CommitRequest request : batch) {
+                group.stats.transaction(now - request.timestamp, request.exception != null);
+            }
+            synchronized (group) {
+                for (CommitRequest request : batch) {
+                    request.done = true;
+                }
+                group.active = Math.max(0, group.active - batch.size());
+                group.notifyAll();
+            }
+        }
+    }
+
+    private void apply(String subIndex, List<CommitRequest> requests) throws SearchEngineException {
+        IndexWriter indexWriter;
+        try {
+            indexWriter = indexManager.getIndexWritersManager().openIndexWriter(settings, subIndex);
+        } catch (Exception e) {
+            throw new SearchEngineException("Failed to open index writer for sub index [" + subIndex + "]", e);
+        }
+        indexManager.getIndexWritersManager().trackOpenIndexWriter(subIndex, indexWriter);
+        try {
+            for (CommitRequest request : requests) {
+                if (request.deletes != null) {
+                    for (TransactionJob job : request.deletes) {
+                        job.execute(indexWriter, searchEngineFactory);
+                    }
+                }
+                if (request.directory != null) {
+                    indexWriter.addIndexesNoOptimize(new Directory[]{request.directory});
+                }
+            }
+            indexWriter.close();
+        } catch (Exception e) {
+            try {
+                indexWriter.rollback();
+            } catch (Exception e1) {
+                // ignore
+            }
+            Directory dir = indexManager.getStore().openDirectory(subIndex);
+            try {
+                if (IndexWriter.isLocked(dir)) {
+                    IndexWriter.unlock(dir);
+                }
+            } catch (Exception e1) {
+                logger.warn("Failed to check for locks or unlock failed commit for sub index [" + subIndex + "]", e);
+            }
+            throw new SearchEngineException("Failed to commit [" + requests.size() + "] transactions to sub index [" + subIndex + "]", e);
+        } finally {
+            indexManager.getIndexWritersManager().trackCloseIndexWriter(subIndex, indexWriter);
+        }
+    }
+
+    private void afterCommit(String subIndex) {
+        indexManager.getIndexHoldersCache().afterCommit(subIndex, invalidateCacheOnCommit);
+    }
+
+    private SubIndexGroup getGroup(String subIndex) {
+        SubIndexGroup group = groups.get(subIndex);
+        if (group == null) {
+            group = new SubIndexGroup(subIndex);
+            SubIndexGroup existing = groups.putIfAbsent(subIndex, group);
+            if (existing != null) {
+                group = existing;
+            }
+        }
+        return group;
+    }
+
+    /**
+     * Pending commits of a single sub index. All fields (except for the stats) are guarded by the group monitor.
+     */
+    private static final class SubIndexGroup {
+
+        final LinkedList<CommitRequest> pending = new LinkedList<CommitRequest>();
+
+        final GroupCommitStats stats;
+
+        int active;
+
+        boolean leader;
+
+        SubIndexGroup(String subIndex) {
+            this.stats = new GroupCommitStats(subIndex);
+        }
+    }
+
+    private static final class CommitRequest {
+
+        final List<TransactionJob> deletes;
+
+        final Directory directory;
+
+        final long timestamp = System.currentTimeMillis();
+
+        boolean done;
+
+        SearchEngineException exception;
+
+        CommitRequest(List<TransactionJob> deletes, Directory directory) {
+            this.deletes = deletes;
+            this.directory = directory;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.compass.core.lucene.engine.transaction.readcommitted;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Group commit statistics of a single sub index maintained by the {@link GroupCommitManager}.
+ *
+ * <p>The commit latency is the time (in milliseconds) it took to apply and commit a single batch. The
+ * transaction latency is the time (in milliseconds) from the point a session asked to commit until its
+ * changes were committed (including the time it waited for other sessions to join the batch).
+ *
+ * @author kimchy
+ */
+public class GroupCommitStats {
+
+    private final String subIndex;
+
+    private final AtomicLong batchCount = new AtomicLong();
+
+    private final AtomicLong transactionCount = new AtomicLong();
+
+    private final AtomicLong failedTransactionCount = new AtomicLong();
+
+    private final AtomicLong totalCommitLatency = new AtomicLong();
+
+    private final AtomicLong totalTransactionLatency = new AtomicLong();
+
+    private volatile int lastBatchSize;
+
+    private volatile int maxBatchSize;
+
+    private volatile long lastCommitLatency;
+
+    private volatile long maxCommitLatency;
+
+    private volatile long maxTransactionLatency;
+
+    public GroupCommitStats(String subIndex) {
+        this.subIndex = subIndex;
+    }
+
+    /**
+     * Returns the sub index the stats are for.
+     */
+    public String getSubIndex() {
+        return subIndex;
+    }
+
+    /**
+     * Returns the number of batches committed.
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * Returns the number of session commits processed (as part of all the batches).
+     */
+    public long getTransactionCount() {
+        return transactionCount.get();
+    }
+
+    /**
+     * Returns the number of session commits that failed.
+     */
+    public long getFailedTransactionCount() {
+        return failedTransactionCount.get();
+    }
+
+    /**
+     * Returns the number of session commits in the last batch.
+     */
+    public int getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    /**
+     * Returns the maximum number of session commits in a single batch.
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Returns the average number of session commits per batch.
+     */
+    public double getAverageBatchSize() {
+        long count = batchCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        return ((double) transactionCount.get()) / count;
+    }
+
+    /**
+     * Returns the commit latency (in milliseconds) of the last batch.
+     */
+    public long getLastCommitLatency() {
+        return lastCommitLatency;
+    }
+
+    /**
+     * Returns the maximum commit latency (in milliseconds) of all the batches.
+     */
+    public long getMaxCommitLatency() {
+        return maxCommitLatency;
+    }
+
+    /**
+     * Returns the average commit latency (in milliseconds) of all the batches.
+     */
+    public long getAverageCommitLatency() {
+        long count = batchCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        return totalCommitLatency.get() / count;
+    }
+
+    /**
+     * Returns the maximum transaction latency (in milliseconds) of all the session commits.
+     */
+    public long getMaxTransactionLatency() {
+        return maxTransactionLatency;
+    }
+
+    /**
+     * Returns the average transaction latency (in milliseconds) of all the session commits.
+     */
+    public long getAverageTransactionLatency() {
+        long count = transactionCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        return totalTransactionLatency.get() / count;
+    }
+
+    synchronized void batch(int size, long commitLatency) {
+        batchCount.incrementAndGet();
+        totalCommitLatency.addAndGet(commitLatency);
+        lastBatchSize = size;
+        lastCommitLatency = commitLatency;
+        if (size > maxBatchSize) {
+            maxBatchSize = size;
+        }
+        if (commitLatency > maxCommitLatency) {
+            maxCommitLatency = commitLatency;
+        }
+    }
+
+    synchronized void transaction(long transactionLatency, boolean failed) {
+        transactionCount.incrementAndGet();
+        if (failed) {
+            failedTransactionCount.incrementAndGet();
+        }
+        totalTransactionLatency.addAndGet(transactionLatency);
+        if (transactionLatency > maxTransactionLatency) {
+            maxTransactionLatency = transactionLatency;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "subIndex [" + subIndex + "] batches [" + getBatchCount() + "] transactions [" + getTransactionCount() +
+                "] failed [" + getFailedTransactionCount() + "] avgBatchSize [" + getAverageBatchSize() + "] maxBatchSize [" +
+                maxBatchSize + "] avgCommitLatency [" + getAverageCommitLatency() + "ms] maxCommitLatency [" + maxCommitLatency +
+                "ms] avgTransactionLatency [" + getAverageTransactionLatency() + "ms]";
+    }
+}
@@ -18,7 +18,9 @@ package org.compass.core.lucene.engine.transaction.readcommitted;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
@@ -40,7 +42,6 @@ import org.apache.lucene.store.Directory;
 import org.compass.core.Resource;
 import org.compass.core.engine.SearchEngineException;
 import org.compass.core.lucene.LuceneEnvironment;
-import org.compass.core.lucene.engine.DefaultLuceneSearchEngineHits;
 import org.compass.core.lucene.engine.EmptyLuceneSearchEngineHits;
 import org.compass.core.lucene.engine.LuceneSearchEngine;
 import org.compass.core.lucene.engine.LuceneSearchEngineHits;
@@ -66,6 +67,11 @@ import org.compass.core.util.StringUtils;
  * done during the current transaction. This means that a delete that occurs during a transaction will
  * be filtered out if a search is executed within the same transaction just after the delete.
  *
+ * <p>When group commit is enabled (using a {@link GroupCommitManager}), the processor does not open an index
+ * writer against the actual index for the duration of the transaction. Deletes are recorded instead, and on commit,
+ * both the deletes and the transactional index are handed to the group commit manager, which coalesces them with
+ * other sessions committing concurrently against the same sub index into a single index writer commit.
+ *
  * @author kimchy
  */
 public class ReadCommittedTransactionProcessor extends AbstractConcurrentTransactionProcessor {
@@ -80,14 +86,29 @@ public class ReadCommittedTransactionProcessor extends AbstractConcurrentTransac
 
     private final Map<String, LuceneIndexHolder> indexHoldersBySubIndex;
 
+    private final GroupCommitManager groupCommitManager;
+
+    private final Map<String, List<TransactionJob>> pendingDeletesBySubIndex;
+
     public ReadCommittedTransactionProcessor(LuceneSearchEngine searchEngine) {
+        this(searchEngine, null);
+    }
+
+    /**
+     * Constructs a new read committed transaction processor. If the group commit manager is not <code>null</code>,
+     * commits will be done using group commit.
+     */
+    public ReadCommittedTransactionProcessor(LuceneSearchEngine searchEngine, GroupCommitManager groupCommitManager) {
         super(logger, searchEngine, true, searchEngine.getSearchEngineFactory().getIndexManager().supportsConcurrentOperations());
+        this.groupCommitManager = groupCommitManager;
         if (isConcurrentOperations()) {
             indexWriterBySubIndex = new ConcurrentHashMap<String, IndexWriter>();
             indexHoldersBySubIndex = new ConcurrentHashMap<String, LuceneIndexHolder>();
+            pendingDeletesBySubIndex = new ConcurrentHashMap<String, List<TransactionJob>>();
         } else {
             indexWriterBySubIndex = new HashMap<String, IndexWriter>();
             indexHoldersBySubIndex = new HashMap<String, LuceneIndexHolder>();
+            pendingDeletesBySubIndex = new HashMap<String, List<TransactionJob>>();
         }
         this.filter = new BitSetByAliasFilter(isConcurrentOperations());
         this.transIndexManager = new TransIndexManager(searchEngine.getSearchEngineFactory(), isConcurrentOperations());
@@ -99,6 +120,9 @@ public class ReadCommittedTransactionProcessor extends AbstractConcurrentTransac
     }
 
     protected String[] getDirtySubIndexes() {
+        if (groupCommitManager != null) {
+            return pendingDeletesBySubIndex.keySet().toArray(new String[pendingDeletesBySubIndex.keySet().size()]);
+        }
         return indexWriterBySubIndex.keySet().toArray(new String[indexWriterBySubIndex.keySet().size()]);
     }
 
@@ -112,7 +136,7 @@ public class ReadCommittedTransactionProcessor extends AbstractConcurrentTransac
         releaseHolders();
         if (indexManager.supportsConcurrentCommits()) {
             ArrayList<Callable<Object>> prepareCallables = new ArrayList<Callable<Object>>();
-            for (String subIndex : indexWriterBySubIndex.keySet()) {
+            for (String subIndex : getDirtySubIndexes()) {
                 if (!transIndexManager.hasTransIndex(subIndex)) {
                     continue;
                 }
@@ -120,7 +144,7 @@ public class ReadCommittedTransactionProcessor extends AbstractConcurrentTransac
             }
             indexManager.getExecutorManager().invokeAllWithLimitBailOnException(prepareCallables, 1);
         } else {
-            for (String subIndex : indexWriterBySubIndex.keySet()) {
+            for (String subIndex : getDirtySubIndexes()) {
                 if (!transIndexManager.hasTransIndex(subIndex)) {
                     continue;
                 }
@@ -143,6 +167,10 @@ public class ReadCommittedTransactionProcessor extends AbstractConcurrentTransac
         if (onePhase) {
             prepare();
         }
+        if (groupCommitManager != null) {
+            doGroupCommit();
+            return;
+        }
         if (indexManager.supportsConcurrentCommits()) {
             ArrayList<Callable<Object>> commitCallables = new ArrayList<Callable<Object>>();
             for (Map.Entry<String, IndexWriter> entry : indexWriterBySubIndex.entrySet()) {
@@ -162,9 +190,47 @@ public class ReadCommittedTransactionProcessor extends AbstractConcurrentTransac
         }
     }
 
+    private void doGroupCommit() throws SearchEngineException {
+        String[] subIndexes = getDirtySubIndexes();
+        if (indexManager.supportsConcurrentCommits()) {
+            ArrayList<Callable<Object>> commitCallables = new ArrayList<Callable<Object>>();
+            for (String subIndex : subIndexes) {
+                commitCallables.add(new TransactionalCallable(indexManager.getTransactionContext(), new GroupCommitCallable(subIndex)));
+            }
+            indexManager.getExecutorManager().invokeAllWithLimitBailOnException(commitCallables, 1);
+        } else {
+            for (String subIndex : subIndexes) {
+                try {
+                    new GroupCommitCallable(subIndex).call();
+                } catch (SearchEngineException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new SearchEngineException("Failed to commit transaction for sub index [" + subIndex + "]", e);
+                }
+            }
+        }
+    }
+
     @Override
     protected void doRollback() throws SearchEngineException {
         releaseHolders();
+        if (groupCommitManager != null) {
+            // nothing was applied to the actual index, simply discard the transactional index
+            for (String subIndex : getDirtySubIndexes()) {
+                try {
+                    if (transIndexManager.hasTransIndex(subIndex)) {
+                        transIndexManager.rollback(subIndex);
+                        transIndexManager.close(subIndex);
+                    }
+                } catch (Exception e) {
+                    // ignore this exception
+                } finally {
+                    pendingDeletesBySubIndex.remove(subIndex);
+                    groupCommitManager.unregister(subIndex);
+                }
+            }
+            return;
+        }
         SearchEngineException lastException = null;
         for (Map.Entry<String, IndexWriter> entry : indexWriterBySubIndex.entrySet()) {
             try {
@@ -228,7 +294,7 @@ public class ReadCommittedTransactionProcessor extends AbstractConcurrentTransac
             if (searchers.size() == 0) {
                 return new LuceneSearchEngineInternalSearch(searchEngine, indexHoldersToClose);
             }
-            MultiSearcher indexSeracher = indexManager.openMultiSearcher(searchers.toArray(new Searcher[searchers.size()]));
+            MultiSearcher indexSeracher = openMultiSearcher(searchers.toArray(new Searcher[searchers.size()]));
             return new LuceneSearchEngineInternalSearch(searchEngine, indexSeracher, indexHoldersToClose);
         } catch (IOException e) {
             for (LuceneIndexHolder indexHolder : indexHoldersToClose) {
@@ -256,8 +322,7 @@ public class ReadCommittedTransactionProcessor extends AbstractConcurrentTransac
                 qFilter = query.getFilter().getFilter();
             }
         }
-        Hits hits = findByQuery(internalSearch, query, qFilter);
-        return new DefaultLuceneSearchEngineHits(hits, searchEngine, query, internalSearch);
+        return createHits(internalSearch, query, qFilter);
     }
 
     @Override
@@ -337,6 +402,10 @@ public class ReadCommittedTransactionProcessor extends AbstractConcurrentTransac
 
     @Override
     protected void doProcessJob(TransactionJob job) throws SearchEngineException {
+        if (groupCommitManager != null) {
+            doProcessGroupCommitJob(job);
+            return;
+        }
         try {
             IndexWriter indexWriter = openIndexWriterIfNeeded(job.getSubIndex());
             if (job instanceof DeleteTransactionJob) {
@@ -362,10 +431,46 @@ public class ReadCommittedTransactionProcessor extends AbstractConcurrentTransac
                     transIndexManager.close(job.getSubIndex());
                 }
                 indexWriter.commit();
+                indexManager.getIndexHoldersCache().afterCommit(job.getSubIndex(), false);
+            } else {
+                // Create job
+                transIndexManager.processJob(job);
+            }
+        } catch (Exception e) {
+            throw new SearchEngineException("Failed to process job [" + job + "]", e);
+        }
+    }
+
+    /**
+     * With group commit, deletes are recorded and applied to the actual index only on commit (by the
+     * {@link GroupCommitManager}).
+     */
+    private void doProcessGroupCommitJob(TransactionJob job) throws SearchEngineException {
+        try {
+            List<TransactionJob> pendingDeletes = getPendingDeletesIfNeeded(job.getSubIndex());
+            if (job instanceof DeleteTransactionJob) {
+                markDeleted(((DeleteTransactionJob) job).getResourceKey());
+                pendingDeletes.add(job);
+                transIndexManager.processJob(job);
+            } else if (job instanceof DeleteByQueryTransactionJob) {
+                pendingDeletes.add(job);
+                transIndexManager.processJob(job);
+            } else if (job instanceof UpdateTransactionJob) {
+                ResourceKey resourceKey = ((UpdateTransactionJob) job).getResource().getResourceKey();
+                markDeleted(resourceKey);
+                pendingDeletes.add(new DeleteTransactionJob(resourceKey));
+                transIndexManager.processJob(job);
+            } else if (job instanceof FlushCommitTransactionJob) {
+                if (transIndexManager.hasTransIndex(job.getSubIndex())) {
+                    transIndexManager.commit(job.getSubIndex());
+                }
+                new GroupCommitCallable(job.getSubIndex()).call();
             } else {
                 // Create job
                 transIndexManager.processJob(job);
             }
+        } catch (SearchEngineException e) {
+            throw e;
         } catch (Exception e) {
             throw new SearchEngineException("Failed to process job [" + job + "]", e);
         }
@@ -377,6 +482,10 @@ public class ReadCommittedTransactionProcessor extends AbstractConcurrentTransac
      */
     @Override
     protected void prepareBeforeAsyncDirtyOperation(TransactionJob job) throws SearchEngineException {
+        if (groupCommitManager != null) {
+            getPendingDeletesIfNeeded(job.getSubIndex());
+            return;
+        }
         try {
             openIndexWriterIfNeeded(job.getSubIndex());
         } catch (IOException e) {
@@ -438,6 +547,22 @@ public class ReadCommittedTransactionProcessor extends AbstractConcurrentTransac
         return indexWriter;
     }
 
+    private List<TransactionJob> getPendingDeletesIfNeeded(String subIndex) {
+        List<TransactionJob> pendingDeletes = pendingDeletesBySubIndex.get(subIndex);
+        if (pendingDeletes != null) {
+            return pendingDeletes;
+        }
+        synchronized (pendingDeletesBySubIndex) {
+            pendingDeletes = pendingDeletesBySubIndex.get(subIndex);
+            if (pendingDeletes == null) {
+                pendingDeletes = Collections.synchronizedList(new ArrayList<TransactionJob>());
+                pendingDeletesBySubIndex.put(subIndex, pendingDeletes);
+                groupCommitManager.register(subIndex);
+            }
+        }
+        return pendingDeletes;
+    }
+
     private void releaseHolders() {
         for (LuceneIndexHolder indexHolder : indexHoldersBySubIndex.values()) {
             indexHolder.release();
@@ -501,12 +626,7 @@ public class ReadCommittedTransactionProcessor extends AbstractConcurrentTransac
             } finally {
                 indexManager.getIndexWritersManager().trackCloseIndexWriter(subIndex, indexWriter);
             }
-            if (isInvalidateCacheOnCommit()) {
-                if (logger.isTraceEnabled()) {
-                    logger.trace("Invalidating cache after commit for sub index [" + subIndex + "]");
-                }
-                indexManager.getIndexHoldersCache().invalidateCache(subIndex);
-            }
+            indexManager.getIndexHoldersCache().afterCommit(subIndex, isInvalidateCacheOnCommit());
             try {
                 transIndexManager.close(subIndex);
             } catch (IOException e) {
@@ -515,4 +635,34 @@ public class ReadCommittedTransactionProcessor extends AbstractConcurrentTransac
             return null;
         }
     }
+
+    private class GroupCommitCallable implements Callable {
+
+        private String subIndex;
+
+        private GroupCommitCallable(String subIndex) {
+            this.subIndex = subIndex;
+        }
+
+        public Object call() throws Exception {
+            List<TransactionJob> pendingDeletes = pendingDeletesBySubIndex.remove(subIndex);
+            if (pendingDeletes == null) {
+                return null;
+            }
+            try {
+                Directory transDir = null;
+                if (transIndexManager.hasTransIndex(subIndex)) {
+                    transDir = transIndexManager.getDirectory(subIndex);
+                }
+                groupCommitManager.commit(subIndex, pendingDeletes, transDir);
+            } finally {
+                try {
+                    transIndexManager.close(subIndex);
+                } catch (IOException e) {
+                    logger.warn("Failed to close transactional index for sub index [" + subIndex + "], ignoring", e);
+                }
+            }
+            return null;
+        }
+    }
 }
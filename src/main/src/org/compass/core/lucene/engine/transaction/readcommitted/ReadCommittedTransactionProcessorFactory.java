@@ -16,7 +16,14 @@
 
 package org.compass.core.lucene.engine.transaction.readcommitted;
 
+import org.compass.core.CompassException;
+import org.compass.core.config.CompassConfigurable;
+import org.compass.core.config.CompassSettings;
+import org.compass.core.config.SearchEngineFactoryAware;
+import org.compass.core.engine.SearchEngineFactory;
+import org.compass.core.lucene.LuceneEnvironment;
 import org.compass.core.lucene.engine.LuceneSearchEngine;
+import org.compass.core.lucene.engine.LuceneSearchEngineFactory;
 import org.compass.core.lucene.engine.transaction.TransactionProcessor;
 import org.compass.core.lucene.engine.transaction.TransactionProcessorFactory;
 
@@ -29,19 +36,48 @@ import org.compass.core.lucene.engine.transaction.TransactionProcessorFactory;
  * done during the current transaction. This means that a delete that occurs during a transaction will
  * be filtered out if a search is executed within the same transaction just after the delete.
  *
+ * <p>The factory holds the {@link GroupCommitManager} shared by all the processors it creates. Group commit
+ * is used when {@link org.compass.core.lucene.LuceneEnvironment.Transaction.Processor.ReadCommitted.GroupCommit#ENABLE}
+ * is set (it can also be set in runtime per session).
+ *
  * @author kimchy
  * @see org.compass.core.lucene.engine.transaction.readcommitted.ReadCommittedTransactionProcessor
  */
-public class ReadCommittedTransactionProcessorFactory implements TransactionProcessorFactory {
+public class ReadCommittedTransactionProcessorFactory implements TransactionProcessorFactory, CompassConfigurable, SearchEngineFactoryAware {
+
+    private LuceneSearchEngineFactory searchEngineFactory;
+
+    private GroupCommitManager groupCommitManager;
+
+    public void setSearchEngineFactory(SearchEngineFactory searchEngineFactory) {
+        this.searchEngineFactory = (LuceneSearchEngineFactory) searchEngineFactory;
+    }
+
+    public void configure(CompassSettings settings) throws CompassException {
+        groupCommitManager = new GroupCommitManager(searchEngineFactory, settings);
+    }
 
     /**
      * Constructs a new {@link org.compass.core.lucene.engine.transaction.readcommitted.ReadCommittedTransactionProcessor}.
      */
     public TransactionProcessor create(LuceneSearchEngine searchEngine) {
+        if (searchEngine.getSettings().getSettingAsBoolean(LuceneEnvironment.Transaction.Processor.ReadCommitted.GroupCommit.ENABLE, false)) {
+            return new ReadCommittedTransactionProcessor(searchEngine, groupCommitManager);
+        }
         return new ReadCommittedTransactionProcessor(searchEngine);
     }
 
+    /**
+     * Returns the group commit manager (used when group commit is enabled).
+     */
+    public GroupCommitManager getGroupCommitManager() {
+        return groupCommitManager;
+    }
+
     public void close() {
+        if (groupCommitManager != null) {
+            groupCommitManager.close();
+        }
     }
 
     /**
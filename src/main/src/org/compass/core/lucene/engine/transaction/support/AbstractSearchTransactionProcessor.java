@@ -22,10 +22,8 @@ import org.apache.commons.logging.Log;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermDocs;
 import org.apache.lucene.search.Filter;
-import org.apache.lucene.search.Hits;
 import org.compass.core.Resource;
 import org.compass.core.engine.SearchEngineException;
-import org.compass.core.lucene.engine.DefaultLuceneSearchEngineHits;
 import org.compass.core.lucene.engine.EmptyLuceneSearchEngineHits;
 import org.compass.core.lucene.engine.LuceneSearchEngine;
 import org.compass.core.lucene.engine.LuceneSearchEngineHits;
@@ -56,8 +54,7 @@ public abstract class AbstractSearchTransactionProcessor extends AbstractTransac
         if (query.getFilter() != null) {
             qFilter = query.getFilter().getFilter();
         }
-        Hits hits = findByQuery(internalSearch, query, qFilter);
-        return new DefaultLuceneSearchEngineHits(hits, searchEngine, query, internalSearch);
+        return createHits(internalSearch, query, qFilter);
     }
 
     protected LuceneSearchEngineInternalSearch performInternalSearch(String[] subIndexes, String[] aliases) throws SearchEngineException {
@@ -27,15 +27,21 @@ import org.apache.lucene.search.Hits;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MultiSearcher;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Searchable;
 import org.apache.lucene.search.Sort;
+import org.compass.core.config.CompassSettings;
 import org.compass.core.engine.SearchEngineException;
 import org.compass.core.lucene.LuceneEnvironment;
+import org.compass.core.lucene.engine.DefaultLuceneSearchEngineHits;
 import org.compass.core.lucene.engine.LuceneSearchEngine;
 import org.compass.core.lucene.engine.LuceneSearchEngineFactory;
+import org.compass.core.lucene.engine.LuceneSearchEngineHits;
 import org.compass.core.lucene.engine.LuceneSearchEngineInternalSearch;
 import org.compass.core.lucene.engine.LuceneSearchEngineQuery;
+import org.compass.core.lucene.engine.TopDocsLuceneSearchEngineHits;
 import org.compass.core.lucene.engine.manager.LuceneIndexHolder;
 import org.compass.core.lucene.engine.manager.LuceneSearchEngineIndexManager;
+import org.compass.core.lucene.engine.manager.QueryResultCache;
 import org.compass.core.lucene.engine.transaction.TransactionProcessor;
 import org.compass.core.lucene.search.CacheableMultiReader;
 import org.compass.core.mapping.CompassMapping;
@@ -118,7 +124,7 @@ public abstract class AbstractTransactionProcessor implements TransactionProcess
                 if (searchers.size() == 1) {
                     return new LuceneSearchEngineInternalSearch(searchEngine, lastNonEmptyIndexHolder, indexHoldersToClose);
                 }
-                MultiSearcher searcher = indexManager.openMultiSearcher(searchers.toArray(new IndexSearcher[searchers.size()]));
+                MultiSearcher searcher = openMultiSearcher(searchers.toArray(new IndexSearcher[searchers.size()]));
                 return new LuceneSearchEngineInternalSearch(searchEngine, searcher, indexHoldersToClose);
             }
         } catch (Exception e) {
@@ -129,16 +135,59 @@ public abstract class AbstractTransactionProcessor implements TransactionProcess
         }
     }
 
+    /**
+     * Opens a multi searcher over the given searchers, searching them concurrently if
+     * {@link LuceneEnvironment.Query#PARALLEL_SEARCH} is enabled (on the session level) and the index supports
+     * concurrent operations.
+     */
+    protected MultiSearcher openMultiSearcher(Searchable[] searchers) throws IOException {
+        CompassSettings settings = searchEngine.getSettings();
+        if (settings.getSettingAsBoolean(LuceneEnvironment.Query.PARALLEL_SEARCH, false) && indexManager.supportsConcurrentOperations()) {
+            int maxConcurrency = settings.getSettingAsInt(LuceneEnvironment.Query.PARALLEL_SEARCH_MAX_CONCURRENCY,
+                    Runtime.getRuntime().availableProcessors());
+            return indexManager.openConcurrentMultiSearcher(searchers, maxConcurrency);
+        }
+        return indexManager.openMultiSearcher(searchers);
+    }
+
+    /**
+     * Creates the search engine hits for the given query and (optional) filter. Uses {@link TopDocsLuceneSearchEngineHits}
+     * if {@link LuceneEnvironment.Query#TOP_DOCS_HITS} is enabled or the search can be cached by the
+     * {@link QueryResultCache}, otherwise, uses Lucene {@link Hits} based {@link DefaultLuceneSearchEngineHits}.
+     */
+    protected LuceneSearchEngineHits createHits(LuceneSearchEngineInternalSearch internalSearch,
+                                                LuceneSearchEngineQuery searchEngineQuery, Filter filter) throws SearchEngineException {
+        CompassSettings settings = searchEngine.getSettings();
+        QueryResultCache.Key cacheKey = createQueryResultCacheKey(internalSearch, searchEngineQuery, filter);
+        if (cacheKey != null || settings.getSettingAsBoolean(LuceneEnvironment.Query.TOP_DOCS_HITS, false)) {
+            Query query = rewriteQuery(internalSearch, searchEngineQuery);
+            return new TopDocsLuceneSearchEngineHits(query, filter, searchEngine, searchEngineQuery, internalSearch,
+                    settings.getSettingAsInt(LuceneEnvironment.Query.TOP_DOCS_HITS_INITIAL_SIZE, 100),
+                    settings.getSettingAsBoolean(LuceneEnvironment.Query.TOP_DOCS_HITS_LAZY_FIELDS, false),
+                    cacheKey == null ? null : indexManager.getIndexHoldersCache().getQueryResultCache(), cacheKey);
+        }
+        Hits hits = findByQuery(internalSearch, searchEngineQuery, filter);
+        return new DefaultLuceneSearchEngineHits(hits, searchEngine, searchEngineQuery, internalSearch);
+    }
+
+    /**
+     * Returns the query result cache key of the search, or <code>null</code> if it should not be cached. Searches
+     * are only cached when the query is cacheable, the filter is the query filter (and not, for example, one
+     * filtering out transactional deletes), and the search is executed only against cached index holders.
+     */
+    protected QueryResultCache.Key createQueryResultCacheKey(LuceneSearchEngineInternalSearch internalSearch,
+                                                             LuceneSearchEngineQuery searchEngineQuery, Filter filter) {
+        QueryResultCache queryResultCache = indexManager.getIndexHoldersCache().getQueryResultCache();
+        if (!queryResultCache.isEnabled() || !searchEngineQuery.isCacheable() || filter != searchEngineQuery.getLuceneFilter()) {
+            return null;
+        }
+        return queryResultCache.createKey(searchEngineQuery.getQuery(), filter, searchEngineQuery.getSort(),
+                internalSearch.getIndexHolders());
+    }
+
     protected Hits findByQuery(LuceneSearchEngineInternalSearch internalSearch,
                                LuceneSearchEngineQuery searchEngineQuery, Filter filter) throws SearchEngineException {
-        Query query = searchEngineQuery.getQuery();
-        if (searchEngineQuery.isRewrite()) {
-            try {
-                query = query.rewrite(internalSearch.getReader());
-            } catch (IOException e) {
-                throw new SearchEngineException("Failed to rewrite query [" + query.toString() + "]", e);
-            }
-        }
+        Query query = rewriteQuery(internalSearch, searchEngineQuery);
         Sort sort = searchEngineQuery.getSort();
         Hits hits;
         try {
@@ -153,6 +202,19 @@ public abstract class AbstractTransactionProcessor implements TransactionProcess
         return hits;
     }
 
+    protected Query rewriteQuery(LuceneSearchEngineInternalSearch internalSearch,
+                                 LuceneSearchEngineQuery searchEngineQuery) throws SearchEngineException {
+        Query query = searchEngineQuery.getQuery();
+        if (searchEngineQuery.isRewrite()) {
+            try {
+                query = query.rewrite(internalSearch.getReader());
+            } catch (IOException e) {
+                throw new SearchEngineException("Failed to rewrite query [" + query.toString() + "]", e);
+            }
+        }
+        return query;
+    }
+
     protected boolean isInvalidateCacheOnCommit() {
         return searchEngine.getSettings().getSettingAsBoolean(LuceneEnvironment.Transaction.CLEAR_CACHE_ON_COMMIT, true);
     }
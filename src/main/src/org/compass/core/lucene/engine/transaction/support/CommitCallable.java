@@ -67,12 +67,7 @@ public class CommitCallable implements Callable {
         } finally {
             indexManager.getIndexWritersManager().trackCloseIndexWriter(subIndex, indexWriter);
         }
-        if (invalidateCacheOnCommit) {
-            if (logger.isTraceEnabled()) {
-                logger.trace("Invalidating cache after commit for sub index [" + subIndex + "]");
-            }
-            indexManager.getIndexHoldersCache().invalidateCache(subIndex);
-        }
+        indexManager.getIndexHoldersCache().afterCommit(subIndex, invalidateCacheOnCommit);
         return null;
     }
 }
@@ -50,6 +50,10 @@ public class DeleteTransactionJob implements TransactionJob {
     }
 
     public void execute(IndexWriter writer, LuceneSearchEngineFactory sessionFactory) throws Exception {
+        if (resourceKey.getResourceMapping() == null) {
+            // the job was serialized (for example, spilled to disk)
+            resourceKey.attach(sessionFactory);
+        }
         WriterHelper.processDelete(writer, resourceKey);
     }
 
@@ -43,6 +43,7 @@ public class FlushCommitTransactionJob implements TransactionJob {
 
     public void execute(IndexWriter writer, LuceneSearchEngineFactory sessionFactory) throws Exception {
         writer.commit();
+        sessionFactory.getLuceneIndexManager().getIndexHoldersCache().afterCommit(subIndex, false);
     }
 
     @Override
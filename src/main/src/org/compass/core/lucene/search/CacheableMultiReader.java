@@ -34,6 +34,13 @@ public class CacheableMultiReader extends MultiReader {
         super(subReaders, closeSubReaders);
     }
 
+    /**
+     * Returns the sub readers this multi reader is composed of.
+     */
+    public IndexReader[] getSubReaders() {
+        return this.subReaders;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) {
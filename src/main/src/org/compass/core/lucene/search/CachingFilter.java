@@ -0,0 +1,90 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.lucene.search;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+
+/**
+ * A filter wrapping another filter, caching its doc id sets per index reader using the shared
+ * {@link FilterCache}. Two caching filters are equal if the filters they wrap are equal, which means
+ * that the wrapped filter should implement equals and hashCode in order to be reused across searches.
+ *
+ * @author kimchy
+ */
+public class CachingFilter extends Filter {
+
+    private final Filter filter;
+
+    private final transient FilterCache filterCache;
+
+    public CachingFilter(Filter filter, FilterCache filterCache) {
+        this.filter = filter;
+        this.filterCache = filterCache;
+    }
+
+    public Filter getFilter() {
+        return filter;
+    }
+
+    /**
+     * @deprecated Use {@link #getDocIdSet(IndexReader)} instead. Builds the bits out of the (cached) doc
+     *             id set, allocating a new <code>BitSet</code> on each call.
+     */
+    public BitSet bits(IndexReader reader) throws IOException {
+        BitSet bits = new BitSet(reader.maxDoc());
+        DocIdSet docIdSet = getDocIdSet(reader);
+        if (docIdSet != null) {
+            for (DocIdSetIterator it = docIdSet.iterator(); it.next();) {
+                bits.set(it.doc());
+            }
+        }
+        return bits;
+    }
+
+    public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
+        if (filterCache == null) {
+            return filter.getDocIdSet(reader);
+        }
+        return filterCache.getDocIdSet(filter, reader);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CachingFilter)) {
+            return false;
+        }
+        return filter.equals(((CachingFilter) o).filter);
+    }
+
+    @Override
+    public int hashCode() {
+        return filter.hashCode() ^ 0x1117BF25;
+    }
+
+    public String toString() {
+        return "CachingFilter(" + filter + ")";
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.lucene.search;
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.OpenBitSet;
+import org.apache.lucene.util.OpenBitSetDISI;
+import org.apache.lucene.util.SortedVIntList;
+import org.compass.core.config.CompassSettings;
+import org.compass.core.lucene.LuceneEnvironment;
+
+/**
+ * Caches the doc id sets of filters per index reader (similar to Lucene
+ * {@link org.apache.lucene.search.CachingWrapperFilter}, but shared between all the filters and bounded
+ * by memory). Dense doc id sets are stored as an {@link OpenBitSet}, and sparse ones as a
+ * {@link SortedVIntList}. Filters are compared using their own equals, and index readers by identity.
+ *
+ * <p>A {@link CacheableMultiReader} is never cached itself since it is created per search. Instead, the
+ * doc id sets of its sub readers are cached, and iterated one after the other (offset by the doc base of
+ * each sub reader) per search, without copying them. Index readers are weakly referenced
+ * and their doc id sets are dropped once they are garbage collected, or explicitly using
+ * {@link #evictReader(IndexReader)} once they are closed.
+ *
+ * <p>The cache is bounded by the estimated memory used by the cached doc id sets
+ * ({@link LuceneEnvironment.FilterCache#MAX_MEMORY}), evicting the least recently used ones once exceeded.
+ * Cached doc id sets are shared and must not be changed.
+ *
+ * @author kimchy
+ */
+public class FilterCache {
+
+    // rough estimate of the memory used by a cache entry and its key, excluding the doc id set
+    private static final long ENTRY_OVERHEAD = 128;
+
+    private static final DocIdSet EMPTY_DOC_ID_SET = new SortedVIntList(new int[0]);
+
+    private final boolean enabled;
+
+    private final long maxMemory;
+
+    private final LinkedHashMap<Key, CacheEntry> cache = new LinkedHashMap<Key, CacheEntry>(16, 0.75f, true);
+
+    private final ReferenceQueue<IndexReader> collectedReaders = new ReferenceQueue<IndexReader>();
+
+    private long memoryUsed;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public FilterCache(CompassSettings settings) {
+        this.maxMemory = settings.getSettingAsBytes(LuceneEnvironment.FilterCache.MAX_MEMORY, 20 * 1024 * 1024);
+        this.enabled = settings.getSettingAsBoolean(LuceneEnvironment.FilterCache.ENABLE, false) && maxMemory > 0;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the doc id set of the given filter for the given reader, computing (and caching) it if
+     * not cached.
+     */
+    public DocIdSet getDocIdSet(Filter filter, IndexReader reader) throws IOException {
+        if (!enabled) {
+            return filter.getDocIdSet(reader);
+        }
+        if (reader instanceof CacheableMultiReader) {
+            IndexReader[] subReaders = ((CacheableMultiReader) reader).getSubReaders();
+            DocIdSet[] docIdSets = new DocIdSet[subReaders.length];
+            int[] starts = new int[subReaders.length];
+            int base = 0;
+            for (int i = 0; i < subReaders.length; i++) {
+                docIdSets[i] = getDocIdSet(filter, subReaders[i]);
+                starts[i] = base;
+                base += subReaders[i].maxDoc();
+            }
+            return new MultiDocIdSet(docIdSets, starts);
+        }
+        expungeCollectedReaders();
+        Key key = new Key(filter, reader, null);
+        CacheEntry entry;
+        synchronized (cache) {
+            entry = cache.get(key);
+        }
+        if (entry != null) {
+            hitCount.incrementAndGet();
+            return entry.docIdSet;
+        }
+        missCount.incrementAndGet();
+        // computed outside of the lock, two concurrent misses might compute the same doc id set
+        entry = new CacheEntry(compact(filter.getDocIdSet(reader), reader.maxDoc()));
+        if (entry.memory > maxMemory) {
+            return entry.docIdSet;
+        }
+        synchronized (cache) {
+            CacheEntry existing = cache.put(new Key(filter, reader, collectedReaders), entry);
+            if (existing != null) {
+                memoryUsed -= existing.memory;
+            }
+            memoryUsed += entry.memory;
+            for (Iterator<CacheEntry> it = cache.values().iterator(); memoryUsed > maxMemory && it.hasNext();) {
+                CacheEntry eldest = it.next();
+                it.remove();
+                memoryUsed -= eldest.memory;
+                evictionCount.incrementAndGet();
+            }
+        }
+        return entry.docIdSet;
+    }
+
+    /**
+     * Evicts all the doc id sets computed using the given reader.
+     */
+    public void evictReader(IndexReader reader) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (cache) {
+            for (Iterator<Map.Entry<Key, CacheEntry>> it = cache.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<Key, CacheEntry> entry = it.next();
+                if (entry.getKey().readerRef.get() == reader) {
+                    it.remove();
+                    memoryUsed -= entry.getValue().memory;
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+            memoryUsed = 0;
+        }
+    }
+
+    public int getSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Returns the estimated memory (in bytes) used by the cached doc id sets.
+     */
+    public long getMemoryUsed() {
+        synchronized (cache) {
+            return memoryUsed;
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public double getHitRatio() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        if (total == 0) {
+            return 0;
+        }
+        return ((double) hits) / total;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "size [" + getSize() + "] memory [" + getMemoryUsed() + "] hits [" + getHitCount() + "] misses ["
+                + getMissCount() + "] evictions [" + getEvictionCount() + "]";
+    }
+
+    /**
+     * Converts the doc id set into its most compact cacheable form, a {@link SortedVIntList} if it is
+     * sparse (using the same threshold as {@link org.compass.core.lucene.support.ChainedFilter}), and an
+     * {@link OpenBitSet} otherwise.
+     */
+    static DocIdSet compact(DocIdSet docIdSet, int maxDoc) throws IOException {
+        if (docIdSet == null) {
+            return EMPTY_DOC_ID_SET;
+        }
+        OpenBitSet bits;
+        if (docIdSet instanceof OpenBitSet) {
+            bits = (OpenBitSet) docIdSet;
+        } else {
+            bits = new OpenBitSetDISI(docIdSet.iterator(), maxDoc);
+        }
+        if (bits.cardinality() < (maxDoc / 9)) {
+            return new SortedVIntList(bits);
+        }
+        return bits;
+    }
+
+    private void expungeCollectedReaders() {
+        if (collectedReaders.poll() == null) {
+            return;
+        }
+        while (collectedReaders.poll() != null) {
+            // drain the queue, cleared keys are removed below
+        }
+        synchronized (cache) {
+            for (Iterator<Map.Entry<Key, CacheEntry>> it = cache.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<Key, CacheEntry> entry = it.next();
+                if (entry.getKey().readerRef.get() == null) {
+                    it.remove();
+                    memoryUsed -= entry.getValue().memory;
+                }
+            }
+        }
+    }
+
+    /**
+     * A doc id set of a multi reader, composed of the doc id sets of its sub readers.
+     */
+    private static final class MultiDocIdSet extends DocIdSet {
+
+        private final DocIdSet[] docIdSets;
+
+        private final int[] starts;
+
+        MultiDocIdSet(DocIdSet[] docIdSets, int[] starts) {
+            this.docIdSets = docIdSets;
+            this.starts = starts;
+        }
+
+        public DocIdSetIterator iterator() {
+            return new MultiDocIdSetIterator(docIdSets, starts);
+        }
+    }
+
+    private static final class MultiDocIdSetIterator extends DocIdSetIterator {
+
+        private final DocIdSet[] docIdSets;
+
+        private final int[] starts;
+
+        private int index = -1;
+
+        private DocIdSetIterator current;
+
+        private int doc = -1;
+
+        MultiDocIdSetIterator(DocIdSet[] docIdSets, int[] starts) {
+            this.docIdSets = docIdSets;
+            this.starts = starts;
+        }
+
+        public int doc() {
+            return doc;
+        }
+
+        public boolean next() throws IOException {
+            while (true) {
+                if (current != null && current.next()) {
+                    doc = starts[index] + current.doc();
+                    return true;
+                }
+                if (index + 1 >= docIdSets.length) {
+                    current = null;
+                    return false;
+                }
+                current = docIdSets[++index].iterator();
+            }
+        }
+
+        public boolean skipTo(int target) throws IOException {
+            if (target <= doc) {
+                return next();
+            }
+            if (docIdSets.length == 0) {
+                return false;
+            }
+            int sub = Math.max(index, 0);
+            while (sub + 1 < docIdSets.length && target >= starts[sub + 1]) {
+                sub++;
+            }
+            if (sub != index) {
+                index = sub;
+                current = docIdSets[sub].iterator();
+            } else if (current == null) {
+                return false;
+            }
+            if (current.skipTo(target - starts[index])) {
+                doc = starts[index] + current.doc();
+                return true;
+            }
+            current = null;
+            return next();
+        }
+    }
+
+    private static final class CacheEntry {
+
+        final DocIdSet docIdSet;
+
+        final long memory;
+
+        CacheEntry(DocIdSet docIdSet) {
+            this.docIdSet = docIdSet;
+            long memory = ENTRY_OVERHEAD;
+            if (docIdSet instanceof OpenBitSet) {
+                memory += ((OpenBitSet) docIdSet).getBits().length * 8;
+            } else if (docIdSet instanceof SortedVIntList) {
+                memory += ((SortedVIntList) docIdSet).getByteSize();
+            }
+            this.memory = memory;
+        }
+    }
+
+    /**
+     * The key of a cached doc id set. The reader is weakly referenced (and compared by identity) so
+     * the cache will not prevent it from being garbage collected.
+     */
+    private static final class Key {
+
+        private final Filter filter;
+
+        private final WeakReference<IndexReader> readerRef;
+
+        private final int hashCode;
+
+        Key(Filter filter, IndexReader reader, ReferenceQueue<IndexReader> queue) {
+            this.filter = filter;
+            this.readerRef = new WeakReference<IndexReader>(reader, queue);
+            this.hashCode = 31 * filter.hashCode() + System.identityHashCode(reader);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            IndexReader reader = readerRef.get();
+            return hashCode == key.hashCode && reader != null && reader == key.readerRef.get()
+                    && filter.equals(key.filter);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package org.compass.core.lucene.support;
 
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Fieldable;
 import org.compass.core.Property;
 import org.compass.core.engine.SearchEngineException;
 
@@ -90,4 +91,53 @@ public abstract class FieldHelper {
 
         throw new SearchEngineException("No term vector type is defined for [" + termVector + "]");
     }
+
+    /**
+     * Creates a copy of the given field (with its own value) keeping its store, index, term vector, norms and
+     * boost settings. Fields with a reader or a token stream value can not be copied and are returned as is.
+     */
+    public static Fieldable copyField(Fieldable field) {
+        Field.Store store;
+        if (field.isCompressed()) {
+            store = Field.Store.COMPRESS;
+        } else if (field.isStored()) {
+            store = Field.Store.YES;
+        } else {
+            store = Field.Store.NO;
+        }
+        Field copy;
+        if (field.isBinary()) {
+            byte[] value = new byte[field.getBinaryLength()];
+            System.arraycopy(field.getBinaryValue(), field.getBinaryOffset(), value, 0, value.length);
+            copy = new Field(field.name(), value, store);
+        } else if (field.stringValue() != null) {
+            Field.Index index;
+            if (!field.isIndexed()) {
+                index = Field.Index.NO;
+            } else if (field.isTokenized()) {
+                index = Field.Index.ANALYZED;
+            } else {
+                index = Field.Index.NOT_ANALYZED;
+            }
+            Field.TermVector termVector = Field.TermVector.NO;
+            if (field.isTermVectorStored()) {
+                if (field.isStorePositionWithTermVector() && field.isStoreOffsetWithTermVector()) {
+                    termVector = Field.TermVector.WITH_POSITIONS_OFFSETS;
+                } else if (field.isStorePositionWithTermVector()) {
+                    termVector = Field.TermVector.WITH_POSITIONS;
+                } else if (field.isStoreOffsetWithTermVector()) {
+                    termVector = Field.TermVector.WITH_OFFSETS;
+                } else {
+                    termVector = Field.TermVector.YES;
+                }
+            }
+            copy = new Field(field.name(), field.stringValue(), store, index, termVector);
+        } else {
+            return field;
+        }
+        copy.setOmitNorms(field.getOmitNorms());
+        copy.setOmitTf(field.getOmitTf());
+        copy.setBoost(field.getBoost());
+        return copy;
+    }
 }
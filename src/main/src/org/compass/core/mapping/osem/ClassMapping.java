@@ -23,6 +23,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
+import org.compass.core.converter.mapping.osem.ClassMappingMarshaller;
 import org.compass.core.engine.naming.PropertyPath;
 import org.compass.core.mapping.AliasMapping;
 import org.compass.core.mapping.Mapping;
@@ -69,6 +70,8 @@ public class ClassMapping extends AbstractResourceMapping implements ResourceMap
 
     private ReflectionConstructor polyConstructor;
 
+    private ClassMappingMarshaller marshaller;
+
     public Mapping copy() {
         ClassMapping copy = new ClassMapping();
         super.copy(copy);
@@ -277,6 +280,18 @@ public class ClassMapping extends AbstractResourceMapping implements ResourceMap
         this.polyConstructor = polyConstructor;
     }
 
+    /**
+     * Returns the compiled marshaller of this class mapping, <code>null</code> if it was not compiled.
+     * Note, the marshaller is bound to this class mapping instance and is not copied.
+     */
+    public ClassMappingMarshaller getMarshaller() {
+        return marshaller;
+    }
+
+    public void setMarshaller(ClassMappingMarshaller marshaller) {
+        this.marshaller = marshaller;
+    }
+
     public PropertyPath getBasePath() {
         return basePath;
     }
@@ -16,7 +16,9 @@
 
 package org.compass.core.marshall;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 
 import org.compass.core.ResourceFactory;
@@ -29,10 +31,20 @@ import org.compass.core.spi.InternalCompassSession;
 import org.compass.core.spi.ResourceKey;
 
 /**
+ * The default marshalling context. Contexts are reused by {@link DefaultMarshallingStrategy} across
+ * marshalling operations of the same session, so {@link #clearContext()} clears the internal maps instead
+ * of reallocating them (unless they grew beyond {@link #MAX_RETAINED_SIZE} during a large object graph).
+ *
  * @author kimchy
  */
 public class DefaultMarshallingContext implements MarshallingContext {
 
+    /**
+     * Maps holding more entries than this are dropped on {@link #clearContext()} instead of cleared, so a
+     * single large object graph will not keep a large (and expensive to clear) table around.
+     */
+    public static final int MAX_RETAINED_SIZE = 512;
+
     private static final Object nullValue = new Object();
 
     private CompassMapping mapping;
@@ -55,6 +67,10 @@ public class DefaultMarshallingContext implements MarshallingContext {
 
     private Map<Object, Object> marshalled = new HashMap<Object, Object>();
 
+    private final Map<String, IdentityHashMap<Object, Object>> marshalledIdentities = new HashMap<String, IdentityHashMap<Object, Object>>();
+
+    private final ArrayList<Map<Object, Object>> spareAttributes = new ArrayList<Map<Object, Object>>(2);
+
     public DefaultMarshallingContext(CompassMapping mapping, SearchEngine searchEngine,
                                      ConverterLookup converterLookup, InternalCompassSession session,
                                      MarshallingStrategy marshallingStrategy) {
@@ -67,10 +83,33 @@ public class DefaultMarshallingContext implements MarshallingContext {
     }
 
     public void clearContext() {
-        this.attributes.clear();
-        this.nullValuesPath.clear();
-        this.unmarshalled.clear();
-        this.marshalled.clear();
+        if (attributes.size() > MAX_RETAINED_SIZE) {
+            attributes = new HashMap<Object, Object>();
+        } else {
+            attributes.clear();
+        }
+        if (nullValuesPath.size() > MAX_RETAINED_SIZE) {
+            nullValuesPath = new HashMap<PropertyPath, Object>();
+        } else {
+            nullValuesPath.clear();
+        }
+        if (unmarshalled.size() > MAX_RETAINED_SIZE) {
+            unmarshalled = new HashMap<ResourceKey, Object>();
+        } else {
+            unmarshalled.clear();
+        }
+        if (marshalled.size() > MAX_RETAINED_SIZE) {
+            marshalled = new HashMap<Object, Object>();
+        } else {
+            marshalled.clear();
+        }
+        for (Map.Entry<String, IdentityHashMap<Object, Object>> entry : marshalledIdentities.entrySet()) {
+            if (entry.getValue().size() > MAX_RETAINED_SIZE) {
+                entry.setValue(new IdentityHashMap<Object, Object>());
+            } else {
+                entry.getValue().clear();
+            }
+        }
     }
 
     public void setUnmarshalled(ResourceKey key, Object obj) {
@@ -93,6 +132,21 @@ public class DefaultMarshallingContext implements MarshallingContext {
         return marshalled.get(key);
     }
 
+    /**
+     * Marks the given object as marshalled under the given alias based on its identity. Used for cyclic
+     * detection of objects that can not be identified by their ids (for example, components with no ids).
+     *
+     * @return <code>true</code> if the object was not marked as marshalled under the alias before
+     */
+    public boolean markMarshalled(String alias, Object root) {
+        IdentityHashMap<Object, Object> identities = marshalledIdentities.get(alias);
+        if (identities == null) {
+            identities = new IdentityHashMap<Object, Object>();
+            marshalledIdentities.put(alias, identities);
+        }
+        return identities.put(root, nullValue) == null;
+    }
+
     public void setHandleNulls(PropertyPath path) {
         nullValuesPath.put(path, nullValue);
     }
@@ -147,12 +201,22 @@ public class DefaultMarshallingContext implements MarshallingContext {
 
     public Map<Object, Object> removeAttributes() {
         Map<Object, Object> retAttributes = attributes;
-        this.attributes = new HashMap<Object, Object>();
+        int size = spareAttributes.size();
+        if (size > 0) {
+            this.attributes = spareAttributes.remove(size - 1);
+        } else {
+            this.attributes = new HashMap<Object, Object>();
+        }
         return retAttributes;
     }
 
     public void restoreAttributes(Map<Object, Object> attributes) {
+        Map<Object, Object> replaced = this.attributes;
         this.attributes = attributes;
+        if (replaced != attributes && replaced.size() <= MAX_RETAINED_SIZE) {
+            replaced.clear();
+            spareAttributes.add(replaced);
+        }
     }
 
     public PropertyNamingStrategy getPropertyNamingStrategy() {
@@ -16,6 +16,8 @@
 
 package org.compass.core.marshall;
 
+import java.util.ArrayList;
+
 import org.compass.core.CompassException;
 import org.compass.core.Resource;
 import org.compass.core.ResourceFactory;
@@ -31,6 +33,16 @@ import org.compass.core.spi.AliasedObject;
 import org.compass.core.spi.InternalCompassSession;
 
 /**
+ * The default marshalling strategy, created per session.
+ *
+ * <p>Marshalling contexts are reused across the operations of the session instead of creating a new one
+ * (and its internal maps) for each marshalled or unmarshalled object. Since marshalling can be reentrant
+ * (for example, loading a non lazy reference using the session while unmarshalling), contexts are kept in
+ * a small stack, and a context is only returned to it once the top level operation that acquired it is done.
+ * {@link #getContextsCreated()} and {@link #getContextsReused()} can be used to verify how many contexts
+ * were actually allocated. The stack is synchronized, so marshalling can also be performed concurrently by
+ * several threads on behalf of the same session.
+ *
  * @author kimchy
  */
 public class DefaultMarshallingStrategy implements MarshallingStrategy {
@@ -45,6 +57,12 @@ public class DefaultMarshallingStrategy implements MarshallingStrategy {
 
     private ResourceFactory resourceFactory;
 
+    private final ArrayList<DefaultMarshallingContext> freeContexts = new ArrayList<DefaultMarshallingContext>(2);
+
+    private long contextsCreated;
+
+    private long contextsReused;
+
     public DefaultMarshallingStrategy(CompassMapping mapping, SearchEngine searchEngine,
                                       ConverterLookup converterLookup, InternalCompassSession session) {
         this.mapping = mapping;
@@ -79,7 +97,12 @@ public class DefaultMarshallingStrategy implements MarshallingStrategy {
 
     public Resource marshallIds(ResourceMapping resourceMapping, Object id) {
         Resource idResource = resourceFactory.createResource(resourceMapping.getAlias());
-        marshallIds(idResource, resourceMapping, id, createContext());
+        DefaultMarshallingContext context = acquireContext();
+        try {
+            marshallIds(idResource, resourceMapping, id, context);
+        } finally {
+            releaseContext(context);
+        }
         return idResource;
     }
 
@@ -96,7 +119,7 @@ public class DefaultMarshallingStrategy implements MarshallingStrategy {
         if (ids == null || ids.length == 0) {
             return;
         }
-        Object[] idsValues = unmarshallIds(resourceMapping, id, createContext());
+        Object[] idsValues = unmarshallIds(resourceMapping, id);
         for (int i = 0; i < idsValues.length; i++) {
             setId(root, idsValues[i], (ObjectMapping) ids[i]);
         }
@@ -107,7 +130,7 @@ public class DefaultMarshallingStrategy implements MarshallingStrategy {
         if (ids.length == 0) {
             return;
         }
-        Object[] idsValues = unmarshallIds(resourceMapping, id, createContext());
+        Object[] idsValues = unmarshallIds(resourceMapping, id);
         for (int i = 0; i < idsValues.length; i++) {
             setId(root, idsValues[i], (ObjectMapping) ids[i]);
         }
@@ -120,12 +143,21 @@ public class DefaultMarshallingStrategy implements MarshallingStrategy {
 
     public Object[] unmarshallIds(String alias, Object id) {
         ResourceMapping resourceMapping = mapping.getRootMappingByAlias(alias);
-        return unmarshallIds(resourceMapping, id, createContext());
+        return unmarshallIds(resourceMapping, id);
     }
 
     public Object[] unmarshallIds(Class clazz, Object id) {
         ResourceMapping resourceMapping = mapping.findRootMappingByClass(clazz);
-        return unmarshallIds(resourceMapping, id, createContext());
+        return unmarshallIds(resourceMapping, id);
+    }
+
+    private Object[] unmarshallIds(ResourceMapping resourceMapping, Object id) {
+        DefaultMarshallingContext context = acquireContext();
+        try {
+            return unmarshallIds(resourceMapping, id, context);
+        } finally {
+            releaseContext(context);
+        }
     }
 
     public Object[] unmarshallIds(ResourceMapping resourceMapping, Object id, MarshallingContext context) {
@@ -138,7 +170,7 @@ public class DefaultMarshallingStrategy implements MarshallingStrategy {
             return null;
         }
         Resource resource = resourceFactory.createResource(alias);
-        resourceMapping.getConverter().marshall(resource, root, resourceMapping, createContext());
+        marshall(resource, root, resourceMapping);
         return resource;
     }
 
@@ -151,12 +183,26 @@ public class DefaultMarshallingStrategy implements MarshallingStrategy {
             return null;
         }
         Resource resource = resourceFactory.createResource(resourceMapping.getAlias());
-        resourceMapping.getConverter().marshall(resource, root, resourceMapping, createContext());
+        marshall(resource, root, resourceMapping);
         return resource;
     }
 
+    private void marshall(Resource resource, Object root, ResourceMapping resourceMapping) {
+        DefaultMarshallingContext context = acquireContext();
+        try {
+            resourceMapping.getConverter().marshall(resource, root, resourceMapping, context);
+        } finally {
+            releaseContext(context);
+        }
+    }
+
     public Object unmarshall(Resource resource) throws CompassException {
-        return unmarshall(resource, createContext());
+        DefaultMarshallingContext context = acquireContext();
+        try {
+            return unmarshall(resource, context);
+        } finally {
+            releaseContext(context);
+        }
     }
 
     public Object unmarshall(Resource resource, MarshallingContext context) throws CompassException {
@@ -167,7 +213,34 @@ public class DefaultMarshallingStrategy implements MarshallingStrategy {
         return resourceMapping.getConverter().unmarshall(resource, resourceMapping, context);
     }
 
-    private MarshallingContext createContext() {
+    /**
+     * Returns the number of marshalling contexts allocated by this strategy.
+     */
+    public synchronized long getContextsCreated() {
+        return contextsCreated;
+    }
+
+    /**
+     * Returns the number of times an already allocated marshalling context was reused by this strategy.
+     */
+    public synchronized long getContextsReused() {
+        return contextsReused;
+    }
+
+    private synchronized DefaultMarshallingContext acquireContext() {
+        int size = freeContexts.size();
+        if (size > 0) {
+            contextsReused++;
+            return freeContexts.remove(size - 1);
+        }
+        contextsCreated++;
         return new DefaultMarshallingContext(mapping, searchEngine, converterLookup, session, this);
     }
+
+    private void releaseContext(DefaultMarshallingContext context) {
+        context.clearContext();
+        synchronized (this) {
+            freeContexts.add(context);
+        }
+    }
 }
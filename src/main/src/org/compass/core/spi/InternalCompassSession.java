@@ -66,6 +66,14 @@ public interface InternalCompassSession extends CompassSession {
 
     void create(Object object, DirtyOperationContext context) throws CompassException;
 
+    /**
+     * Creates the object using the resource it was already marshalled into (<code>null</code> if the object
+     * has no root mapping). Performs the same operations as {@link #create(String, Object, DirtyOperationContext)}
+     * (or {@link #create(Object, DirtyOperationContext)} if the alias is <code>null</code>) except for firing the
+     * object pre create event and marshalling the object, which are expected to be done by the caller.
+     */
+    void create(String alias, Object object, Resource resource, DirtyOperationContext context) throws CompassException;
+
     void save(String alias, Object object, DirtyOperationContext context) throws CompassException;
 
     void save(Object object, DirtyOperationContext context) throws CompassException;
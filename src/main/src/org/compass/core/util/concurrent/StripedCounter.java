@@ -0,0 +1,65 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.compass.core.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that spreads increments over several stripes (picked by the incrementing thread), so threads
+ * incrementing it concurrently do not contend on the same cache line. Reading the count sums all the stripes
+ * and is not atomic with respect to concurrent increments.
+ *
+ * @author kimchy
+ */
+public class StripedCounter {
+
+    // each stripe is padded to its own cache line (8 longs)
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray stripes;
+
+    private final int mask;
+
+    public StripedCounter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public StripedCounter(int concurrency) {
+        int size = 1;
+        while (size < concurrency) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.stripes = new AtomicLongArray(size * PADDING);
+    }
+
+    public void increment() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32));
+        hash ^= (hash >>> 16);
+        stripes.incrementAndGet((hash & mask) * PADDING);
+    }
+
+    public long get() {
+        long sum = 0;
+        for (int i = 0; i < stripes.length(); i += PADDING) {
+            sum += stripes.get(i);
+        }
+        return sum;
+    }
+}
@@ -52,10 +52,11 @@ import org.hibernate.SessionFactory;
  * used it the {@link org.compass.gps.device.hibernate.entities.DefaultHibernateEntitiesLocator}.
  *
  * <p>The indexing process itself is done through an implementation of
- * {@link HibernateIndexEntitiesIndexer}. It has two different implementation, the
- * {@link org.compass.gps.device.hibernate.indexer.PaginationHibernateIndexEntitiesIndexer} and the
- * {@link org.compass.gps.device.hibernate.indexer.ScrollableHibernateIndexEntitiesIndexer}. The default
- * used is the scrollable indexer.
+ * {@link HibernateIndexEntitiesIndexer}. It has three different implementation, the
+ * {@link org.compass.gps.device.hibernate.indexer.PaginationHibernateIndexEntitiesIndexer}, the
+ * {@link org.compass.gps.device.hibernate.indexer.ScrollableHibernateIndexEntitiesIndexer}, and the
+ * {@link org.compass.gps.device.hibernate.indexer.KeysetHibernateIndexEntitiesIndexer} (which pages by
+ * the entity id and prefetches the next pages). The default used is the scrollable indexer.
  *
  * <p>Mirroring is done by injecting lifecycle listeners into Hibernate. It is done using
  * {@link org.compass.gps.device.hibernate.lifecycle.HibernateEntityLifecycleInjector} with
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.compass.gps.device.hibernate;
+
+import org.compass.gps.device.support.parallel.LazyInitializationDetector;
+import org.hibernate.Hibernate;
+import org.hibernate.proxy.HibernateProxy;
+
+/**
+ * A lazy initialization detector for Hibernate proxies and persistent collections.
+ *
+ * @author kimchy
+ */
+public class HibernateLazyInitializationDetector implements LazyInitializationDetector {
+
+    public boolean isUninitialized(Object value) {
+        return !Hibernate.isInitialized(value);
+    }
+
+    public Object unproxy(Object value) {
+        if (value instanceof HibernateProxy) {
+            return ((HibernateProxy) value).getHibernateLazyInitializer().getImplementation();
+        }
+        return value;
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.compass.gps.device.hibernate.indexer;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.compass.core.CompassSession;
+import org.compass.gps.device.hibernate.HibernateGpsDevice;
+import org.compass.gps.device.hibernate.HibernateGpsDeviceException;
+import org.compass.gps.device.hibernate.entities.EntityInformation;
+import org.compass.gps.device.support.parallel.IndexEntity;
+import org.compass.gps.device.support.parallel.PrefetchingPageIterator;
+import org.hibernate.CacheMode;
+import org.hibernate.Criteria;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.metadata.ClassMetadata;
+
+/**
+ * A Hibernate indexer that uses keyset pagination. Each page is loaded using a <code>Criteria</code>
+ * ordered by the entity id and restricted to ids greater than the last id of the previous page, so
+ * the cost of loading a page does not grow with its position (as with <code>setFirstResult</code>),
+ * and no cursor is kept open for the whole indexing process (as with <code>ScrollableResults</code>).
+ *
+ * <p>Each page is loaded in two queries. The first selects (only) the ids of the page, limited to
+ * <code>fetchCount</code>, and the second loads the entities with these ids. This way, limiting the page
+ * does not truncate collections fetched using joins by the <code>Criteria</code> (the limit applies to
+ * the joined rows, and not to the entities).
+ *
+ * <p>Up to <code>prefetchPages</code> pages are loaded ahead by a dedicated thread, each using its own
+ * Hibernate session, while the current page is indexed (and its lazy associations are loaded) by the
+ * indexing thread. Note, this means that up to <code>prefetchPages + 2</code> Hibernate sessions (and
+ * jdbc connections) are open at the same time for each indexing thread.
+ *
+ * <p>Entities that have no <code>Criteria</code> (a custom select query is used) or no single identifier
+ * property are indexed using the {@link #setFallbackIndexer(HibernateIndexEntitiesIndexer) fallback indexer}
+ * (which defaults to {@link ScrollableHibernateIndexEntitiesIndexer}).
+ *
+ * @author kimchy
+ */
+public class KeysetHibernateIndexEntitiesIndexer implements HibernateIndexEntitiesIndexer {
+
+    private static final Log log = LogFactory.getLog(KeysetHibernateIndexEntitiesIndexer.class);
+
+    private HibernateGpsDevice device;
+
+    private int prefetchPages = 1;
+
+    private HibernateIndexEntitiesIndexer fallbackIndexer = new ScrollableHibernateIndexEntitiesIndexer();
+
+    public void setHibernateGpsDevice(HibernateGpsDevice device) {
+        this.device = device;
+        fallbackIndexer.setHibernateGpsDevice(device);
+    }
+
+    /**
+     * Sets the number of pages that are loaded ahead while the current page is indexed. Defaults
+     * to <code>1</code>. <code>0</code> means that pages are loaded by the indexing thread.
+     */
+    public void setPrefetchPages(int prefetchPages) {
+        this.prefetchPages = prefetchPages;
+    }
+
+    /**
+     * Sets the indexer used for entities that can not be indexed using keyset pagination. Defaults
+     * to {@link ScrollableHibernateIndexEntitiesIndexer}.
+     */
+    public void setFallbackIndexer(HibernateIndexEntitiesIndexer fallbackIndexer) {
+        this.fallbackIndexer = fallbackIndexer;
+    }
+
+    public void performIndex(CompassSession session, IndexEntity[] entities) {
+        for (IndexEntity entity : entities) {
+            EntityInformation entityInfo = (EntityInformation) entity;
+            if (device.isFilteredForIndex(entityInfo.getName())) {
+                continue;
+            }
+            if (!device.isRunning()) {
+                return;
+            }
+            String idPropName = findIdPropertyName(entityInfo);
+            if (idPropName == null) {
+                if (log.isDebugEnabled()) {
+                    log.debug(device.buildMessage("Entity [" + entityInfo.getName()
+                            + "] can not be indexed using keyset pagination, using [" + fallbackIndexer + "]"));
+                }
+                fallbackIndexer.performIndex(session, new IndexEntity[]{entityInfo});
+                continue;
+            }
+            performIndex(session, entityInfo, idPropName);
+        }
+    }
+
+    private void performIndex(CompassSession session, EntityInformation entityInfo, String idPropName) {
+        PrefetchingPageIterator<Page> pages = new PrefetchingPageIterator<Page>(entityInfo.getName(),
+                new KeysetPageLoader(entityInfo, idPropName), prefetchPages);
+        Page page = null;
+        try {
+            while ((page = pages.next()) != null) {
+                if (!device.isRunning()) {
+                    return;
+                }
+                for (Object value : page.values) {
+                    session.create(value);
+                }
+                session.evictAll();
+                Page indexed = page;
+                page = null;
+                indexed.commit();
+            }
+        } catch (Exception e) {
+            log.error(device.buildMessage("Failed to index the database"), e);
+            if (!(e instanceof HibernateGpsDeviceException)) {
+                throw new HibernateGpsDeviceException(device.buildMessage("Failed to index the database"), e);
+            }
+            throw (HibernateGpsDeviceException) e;
+        } finally {
+            if (page != null) {
+                page.rollback();
+            }
+            pages.close();
+        }
+    }
+
+    private String findIdPropertyName(EntityInformation entityInfo) {
+        Session hibernateSession = device.getSessionFactory().openSession();
+        try {
+            if (entityInfo.getQueryProvider().createCriteria(hibernateSession, entityInfo) == null) {
+                return null;
+            }
+            ClassMetadata metadata = device.getSessionFactory().getClassMetadata(entityInfo.getName());
+            if (metadata == null || !metadata.hasIdentifierProperty()) {
+                return null;
+            }
+            return metadata.getIdentifierPropertyName();
+        } finally {
+            hibernateSession.close();
+        }
+    }
+
+    public String toString() {
+        return "KeysetHibernateIndexEntitiesIndexer prefetchPages [" + prefetchPages + "]";
+    }
+
+    private class KeysetPageLoader implements PrefetchingPageIterator.PageLoader<Page> {
+
+        private final EntityInformation entityInfo;
+
+        private final String idPropName;
+
+        private KeysetPageLoader(EntityInformation entityInfo, String idPropName) {
+            this.entityInfo = entityInfo;
+            this.idPropName = idPropName;
+        }
+
+        public Page loadPage(Page previous) throws Exception {
+            int fetchCount = device.getFetchCount();
+            if (previous != null && previous.size < fetchCount) {
+                return null;
+            }
+            Page page = new Page();
+            page.hibernateSession = device.getSessionFactory().openSession();
+            page.hibernateSession.setCacheMode(CacheMode.IGNORE);
+            try {
+                page.hibernateTransaction = page.hibernateSession.beginTransaction();
+                if (log.isDebugEnabled()) {
+                    log.debug(device.buildMessage("Indexing entity [" + entityInfo.getName() + "] page with "
+                            + idPropName + " greater than [" + (previous == null ? null : previous.lastId) + "]"));
+                }
+                Criteria idsCriteria = entityInfo.getQueryProvider().createCriteria(page.hibernateSession, entityInfo);
+                if (previous != null) {
+                    idsCriteria.add(Restrictions.gt(idPropName, previous.lastId));
+                }
+                idsCriteria.setProjection(Projections.distinct(Projections.id()));
+                idsCriteria.addOrder(Order.asc(idPropName));
+                idsCriteria.setFetchSize(fetchCount);
+                idsCriteria.setMaxResults(fetchCount);
+                List ids = idsCriteria.list();
+                page.size = ids.size();
+                if (page.size == 0) {
+                    page.commit();
+                    return null;
+                }
+                page.lastId = (Serializable) ids.get(page.size - 1);
+
+                Criteria criteria = entityInfo.getQueryProvider().createCriteria(page.hibernateSession, entityInfo);
+                criteria.add(Restrictions.in(idPropName, ids));
+                criteria.addOrder(Order.asc(idPropName));
+                // criteria with eager fetch joins return the same entity for each joined row
+                criteria.setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY);
+                criteria.setFetchSize(fetchCount);
+                page.values = criteria.list();
+                return page;
+            } catch (Exception e) {
+                page.rollback();
+                throw e;
+            }
+        }
+
+        public void releasePage(Page page) {
+            page.rollback();
+        }
+    }
+
+    private static class Page {
+
+        Session hibernateSession;
+
+        Transaction hibernateTransaction;
+
+        List values;
+
+        int size;
+
+        Serializable lastId;
+
+        void commit() {
+            try {
+                hibernateTransaction.commit();
+            } finally {
+                hibernateSession.close();
+            }
+        }
+
+        void rollback() {
+            try {
+                if (hibernateTransaction != null) {
+                    hibernateTransaction.rollback();
+                }
+            } catch (Exception e) {
+                log.warn("Failed to rollback Hibernate", e);
+            } finally {
+                hibernateSession.close();
+            }
+        }
+    }
+}
@@ -21,16 +21,25 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.sql.DataSource;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.compass.core.CompassException;
 import org.compass.core.CompassSession;
+import org.compass.core.CompassTransaction;
+import org.compass.core.lucene.LuceneEnvironment;
 import org.compass.gps.CompassGpsException;
 import org.compass.gps.device.AbstractGpsDevice;
 import org.compass.gps.device.jdbc.dialect.DialectResolver;
 import org.compass.gps.device.jdbc.dialect.JdbcDialect;
+import org.compass.gps.device.support.parallel.ConcurrentParallelIndexExecutor;
+import org.compass.gps.device.support.parallel.GenericIndexEntity;
+import org.compass.gps.device.support.parallel.IndexEntitiesIndexer;
+import org.compass.gps.device.support.parallel.IndexEntity;
 
 /**
  * A helper base class for Jdbc Gps Device. Provides supprot for
@@ -43,6 +52,12 @@ import org.compass.gps.device.jdbc.dialect.JdbcDialect;
  * {@link #processRowValue(Object, ResultSet, CompassSession)}. One of the
  * callback mehtods should be overriden by the derived class otherwize the class
  * won't index anyhting.
+ * <p>
+ * An {@link IndexExecution} can also provide several partition queries, in which
+ * case each partition is fetched over its own connection and processed
+ * concurrently using {@link #processRowValue(Object, ResultSet, CompassSession)}
+ * by the configured {@link ConcurrentParallelIndexExecutor} (see
+ * {@link #setPartitionIndexExecutor(ConcurrentParallelIndexExecutor)}).
  *
  * @author kimchy
  */
@@ -53,7 +68,9 @@ public abstract class AbstractJdbcGpsDevice extends AbstractGpsDevice implements
     /**
      * A hint object which provides the statement query to execute or the actual
      * <code>PreparedStatement</code>. It also provides a general data holder
-     * called <code>description</code>.
+     * called <code>description</code>. Optionally, it can provide several
+     * partition queries that will be executed and processed concurrently instead
+     * of the statement.
      *
      * @author kimchy
      */
@@ -64,6 +81,8 @@ public abstract class AbstractJdbcGpsDevice extends AbstractGpsDevice implements
 
         private String statementQuery;
 
+        private String[] partitionQueries;
+
         public IndexExecution(Object description) {
             this.description = description;
         }
@@ -101,6 +120,14 @@ public abstract class AbstractJdbcGpsDevice extends AbstractGpsDevice implements
         public void setDescription(Object description) {
             this.description = description;
         }
+
+        public String[] getPartitionQueries() {
+            return partitionQueries;
+        }
+
+        public void setPartitionQueries(String[] partitionQueries) {
+            this.partitionQueries = partitionQueries;
+        }
     }
 
     protected DataSource dataSource;
@@ -128,6 +155,16 @@ public abstract class AbstractJdbcGpsDevice extends AbstractGpsDevice implements
      */
     private int fetchSize = 0;
 
+    /**
+     * The number of rows after which the progress of a partition is logged.
+     */
+    private int partitionProgressInterval = 10000;
+
+    /**
+     * The executor used to index the partitions of an {@link IndexExecution}.
+     */
+    private ConcurrentParallelIndexExecutor partitionIndexExecutor = new ConcurrentParallelIndexExecutor();
+
     /**
      * Performs the indexing operation.
      * <p/>
@@ -136,7 +173,9 @@ public abstract class AbstractJdbcGpsDevice extends AbstractGpsDevice implements
      * <p/>
      * For each {@link IndexExecution}, executes the select query, and calls
      * the {@link #processResultSet(Object, ResultSet, CompassSession)} for the
-     * returned <code>ResultSet</code>.
+     * returned <code>ResultSet</code>. {@link IndexExecution}s with more than one
+     * partition query are processed first using
+     * {@link #processPartitions(IndexExecution[])}.
      */
     protected void doIndex(CompassSession session) throws CompassGpsException {
         if (log.isInfoEnabled()) {
@@ -147,7 +186,21 @@ public abstract class AbstractJdbcGpsDevice extends AbstractGpsDevice implements
         ResultSet rs = null;
         try {
             IndexExecution[] indexExecutions = doGetIndexExecutions(connection);
+            List<IndexExecution> partitionedIndexExecutions = new ArrayList<IndexExecution>();
+            List<IndexExecution> simpleIndexExecutions = new ArrayList<IndexExecution>();
             for (IndexExecution indexExecution : indexExecutions) {
+                String[] partitionQueries = indexExecution.getPartitionQueries();
+                if (partitionQueries != null && partitionQueries.length > 1) {
+                    partitionedIndexExecutions.add(indexExecution);
+                } else {
+                    simpleIndexExecutions.add(indexExecution);
+                }
+            }
+            // partitioned executions are indexed first, before the session has opened any sub index for write
+            if (!partitionedIndexExecutions.isEmpty()) {
+                processPartitions(partitionedIndexExecutions.toArray(new IndexExecution[partitionedIndexExecutions.size()]));
+            }
+            for (IndexExecution indexExecution : simpleIndexExecutions) {
                 if (!isRunning()) {
                     return;
                 }
@@ -182,6 +235,119 @@ public abstract class AbstractJdbcGpsDevice extends AbstractGpsDevice implements
         }
     }
 
+    /**
+     * Processes the partition queries of the given {@link IndexExecution}s using
+     * the partition index executor, with one connection per partition. Fetching the
+     * rows, converting them using {@link #processRowValue(Object, ResultSet, CompassSession)}
+     * and saving them is done concurrently, with as many threads as the executor is
+     * configured with.
+     * <p>
+     * All the partitions are indexed using their own session (and transaction) which
+     * uses the <code>mt</code> transaction processor, so the threads share a single
+     * <code>IndexWriter</code> per sub index instead of competing on the sub index
+     * write lock.
+     */
+    protected void processPartitions(IndexExecution[] indexExecutions) throws CompassGpsException {
+        CompassSession session = compassGps.getIndexCompass().openSession();
+        try {
+            session.getSettings().setSetting(LuceneEnvironment.Transaction.Processor.TYPE,
+                    LuceneEnvironment.Transaction.Processor.MT.NAME);
+            CompassTransaction tr = session.beginTransaction();
+            try {
+                for (IndexExecution indexExecution : indexExecutions) {
+                    if (!isRunning()) {
+                        break;
+                    }
+                    processPartitions(indexExecution, session);
+                }
+                tr.commit();
+            } catch (RuntimeException e) {
+                tr.rollback();
+                throw e;
+            }
+        } finally {
+            session.close();
+        }
+    }
+
+    private void processPartitions(final IndexExecution indexExecution, CompassSession session)
+            throws CompassGpsException {
+        final String[] partitionQueries = indexExecution.getPartitionQueries();
+        if (log.isInfoEnabled()) {
+            log.info("{" + getName() + "}: Indexing [" + indexExecution.getDescription() + "] using ["
+                    + partitionQueries.length + "] partitions");
+        }
+        IndexEntity[][] partitions = new IndexEntity[partitionQueries.length][];
+        for (int i = 0; i < partitionQueries.length; i++) {
+            partitions[i] = new IndexEntity[]{new PartitionIndexEntity(i, partitionQueries[i])};
+        }
+        final AtomicBoolean failed = new AtomicBoolean();
+        partitionIndexExecutor.performIndex(session, partitions, new IndexEntitiesIndexer() {
+            public void performIndex(CompassSession session, IndexEntity[] entities) throws CompassException {
+                PartitionIndexEntity partition = (PartitionIndexEntity) entities[0];
+                try {
+                    processPartition(indexExecution.getDescription(), partition.getPartition(),
+                            partitionQueries.length, partition.getQuery(), session, failed);
+                } catch (SQLException e) {
+                    failed.set(true);
+                    throw new JdbcGpsDeviceException("Failed to index " + partition.getName(), e);
+                } catch (RuntimeException e) {
+                    failed.set(true);
+                    throw e;
+                }
+            }
+        });
+    }
+
+    private void processPartition(Object description, int partition, int partitions, String query,
+                                  CompassSession session, AtomicBoolean failed) throws SQLException, CompassException {
+        String partitionName = "{" + getName() + "}: Partition [" + (partition + 1) + "/" + partitions + "]";
+        if (log.isDebugEnabled()) {
+            log.debug(partitionName + " Executing select query [" + query + "]");
+        }
+        long startTime = System.currentTimeMillis();
+        long rows = 0;
+        Connection connection = JdbcUtils.getConnection(dataSource);
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = connection.prepareStatement(query);
+            if (getFetchSize() > 0) {
+                ps.setFetchSize(getFetchSize());
+            }
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                if (!isRunning() || failed.get()) {
+                    return;
+                }
+                Object value = processRowValue(description, rs, session);
+                if (value != null) {
+                    createRowValue(value, session);
+                }
+                rows++;
+                if (partitionProgressInterval > 0 && rows % partitionProgressInterval == 0 && log.isInfoEnabled()) {
+                    log.info(partitionName + " Indexed [" + rows + "] rows " + rate(rows, startTime));
+                }
+            }
+        } finally {
+            JdbcUtils.closeResultSet(rs);
+            JdbcUtils.closeStatement(ps);
+            JdbcUtils.closeConnection(connection);
+        }
+        if (log.isInfoEnabled()) {
+            log.info(partitionName + " Finished indexing [" + rows + "] rows in ["
+                    + (System.currentTimeMillis() - startTime) + "ms] " + rate(rows, startTime));
+        }
+    }
+
+    private static String rate(long rows, long startTime) {
+        long took = System.currentTimeMillis() - startTime;
+        if (took <= 0) {
+            took = 1;
+        }
+        return "[" + (rows * 1000 / took) + " rows/sec]";
+    }
+
     /**
      * Called for each {@link IndexExecution} returned from the
      * {@link #doGetIndexExecutions(Connection)} with the <code>ResultSet</code>.
@@ -212,15 +378,19 @@ public abstract class AbstractJdbcGpsDevice extends AbstractGpsDevice implements
         }
         Object value = processRowValue(description, rs, session);
         if (value != null) {
-            if (value instanceof Object[]) {
-                int length = Array.getLength(value);
-                for (int i = 0; i < length; i++) {
-                    Object value1 = Array.get(value, i);
-                    session.create(value1);
-                }
-            } else {
-                session.create(value);
+            createRowValue(value, session);
+        }
+    }
+
+    private void createRowValue(Object value, CompassSession session) throws CompassException {
+        if (value instanceof Object[]) {
+            int length = Array.getLength(value);
+            for (int i = 0; i < length; i++) {
+                Object value1 = Array.get(value, i);
+                session.create(value1);
             }
+        } else {
+            session.create(value);
         }
     }
 
@@ -259,6 +429,32 @@ public abstract class AbstractJdbcGpsDevice extends AbstractGpsDevice implements
         this.fetchSize = fetchSize;
     }
 
+    public ConcurrentParallelIndexExecutor getPartitionIndexExecutor() {
+        return partitionIndexExecutor;
+    }
+
+    /**
+     * Sets the executor used to index the partitions of an {@link IndexExecution}. Defaults
+     * to a {@link ConcurrentParallelIndexExecutor} with a thread per partition, set one with
+     * a positive <code>maxThreads</code> to bound the number of threads (and connections).
+     */
+    public void setPartitionIndexExecutor(ConcurrentParallelIndexExecutor partitionIndexExecutor) {
+        this.partitionIndexExecutor = partitionIndexExecutor;
+    }
+
+    public int getPartitionProgressInterval() {
+        return partitionProgressInterval;
+    }
+
+    /**
+     * Sets the number of rows after which the progress (and rows per second) of
+     * a partition is logged. Defaults to <code>10000</code>, <code>0</code>
+     * disables the progress logging.
+     */
+    public void setPartitionProgressInterval(int partitionProgressInterval) {
+        this.partitionProgressInterval = partitionProgressInterval;
+    }
+
     public JdbcDialect getDialect() {
         return dialect;
     }
@@ -266,4 +462,25 @@ public abstract class AbstractJdbcGpsDevice extends AbstractGpsDevice implements
     public void setDialect(JdbcDialect dialect) {
         this.dialect = dialect;
     }
+
+    private static class PartitionIndexEntity extends GenericIndexEntity {
+
+        private final int partition;
+
+        private final String query;
+
+        public PartitionIndexEntity(int partition, String query) {
+            super("partition [" + (partition + 1) + "]", null);
+            this.partition = partition;
+            this.query = query;
+        }
+
+        public int getPartition() {
+            return partition;
+        }
+
+        public String getQuery() {
+            return query;
+        }
+    }
 }
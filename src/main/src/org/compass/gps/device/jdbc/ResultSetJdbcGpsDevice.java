@@ -24,6 +24,8 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.compass.core.CompassException;
 import org.compass.core.CompassSession;
@@ -68,6 +70,15 @@ import org.compass.gps.device.jdbc.snapshot.JdbcSnapshot;
  * The <code>autoDetectVersionColumnSqlType</code> setting (which defauls to
  * <code>true</code>) will automatically set the version column jdbc type for
  * mappings that support versioning.
+ * <p>
+ * The <code>incrementalMirroring</code> setting (which defaults to
+ * <code>false</code>) makes the mirror operation only fetch rows with a
+ * version higher or equal to the alias high water mark (using the mapping
+ * {@link org.compass.gps.device.jdbc.mapping.ResultSetToResourceMapping#getDeltaVersionQuery()}),
+ * so its cost depends on the number of changes and not on the table size.
+ * It requires the version column to increase monotonically across the whole
+ * table (and not per row). Deleted rows are detected using the full version query, executed once every
+ * <code>tombstoneDetectionInterval</code> milliseconds (defaults to one hour).
  *
  * @author kimchy
  * @see org.compass.gps.device.jdbc.mapping.ResultSetToResourceMapping
@@ -81,6 +92,12 @@ public class ResultSetJdbcGpsDevice extends AbstractJdbcActiveMirrorGpsDevice {
 
     private boolean autoDetectVersionColumnSqlType = true;
 
+    private boolean incrementalMirroring = false;
+
+    private long tombstoneDetectionInterval = 60 * 60 * 1000;
+
+    private final Map<String, Long> lastTombstoneDetection = new ConcurrentHashMap<String, Long>();
+
     protected JdbcSnapshot getJdbcSnapshot() {
         return this.snapshot;
     }
@@ -184,7 +201,7 @@ public class ResultSetJdbcGpsDevice extends AbstractJdbcActiveMirrorGpsDevice {
                     if (log.isDebugEnabled()) {
                         log.debug(buildMessage("Alias [" + mapping.getAlias() + "] not found in snapshot data, creating..."));
                     }
-                    JdbcAliasSnapshot aliasSnapshot = new JdbcAliasSnapshot(mapping.getAlias());
+                    JdbcAliasSnapshot aliasSnapshot = getSnapshotPersister().createAliasSnapshot(mapping.getAlias());
                     snapshot.putAliasSnapshot(aliasSnapshot);
                 }
             }
@@ -208,21 +225,28 @@ public class ResultSetJdbcGpsDevice extends AbstractJdbcActiveMirrorGpsDevice {
      */
     protected void doStop() throws CompassGpsException {
         getSnapshotPersister().save(snapshot);
+        if (snapshot != null) {
+            snapshot.close();
+        }
         super.doStop();
     }
 
     protected void doIndex(CompassSession session, IndexPlan indexPlan) throws CompassGpsException {
         // TODO take into account the index plan
         // reset the snapshot data before we perform the index operation
+        if (snapshot != null) {
+            snapshot.close();
+        }
         snapshot = new JdbcSnapshot();
         for (Iterator it = mappings.iterator(); it.hasNext();) {
             ResultSetToResourceMapping mapping = (ResultSetToResourceMapping) it.next();
             if (mapping.supportsVersioning()) {
-                JdbcAliasSnapshot aliasSnapshot = new JdbcAliasSnapshot(mapping.getAlias());
+                JdbcAliasSnapshot aliasSnapshot = getSnapshotPersister().createAliasSnapshot(mapping.getAlias());
                 snapshot.putAliasSnapshot(aliasSnapshot);
             }
         }
         super.doIndex(session);
+        lastTombstoneDetection.clear();
         // save the sanpshot data
         getSnapshotPersister().save(snapshot);
     }
@@ -236,6 +260,9 @@ public class ResultSetJdbcGpsDevice extends AbstractJdbcActiveMirrorGpsDevice {
         for (int i = 0; i < indexExecutions.length; i++) {
             ResultSetToResourceMapping mapping = (ResultSetToResourceMapping) mappings.get(i);
             indexExecutions[i] = new IndexExecution(mapping, mapping.getSelectQuery());
+            if (mapping.getIndexPartitioner() != null) {
+                indexExecutions[i].setPartitionQueries(mapping.getIndexPartitioner().partition(connection, mapping));
+            }
         }
         return indexExecutions;
     }
@@ -275,7 +302,11 @@ public class ResultSetJdbcGpsDevice extends AbstractJdbcActiveMirrorGpsDevice {
         marshallHelper.marshallResultSet(rs);
 
         if (shouldMirrorDataChanges() && mapping.supportsVersioning()) {
-            snapshot.getAliasSnapshot(mapping.getAlias()).putRow(rowSnapshot);
+            JdbcAliasSnapshot aliasSnapshot = snapshot.getAliasSnapshot(mapping.getAlias());
+            // partitions of the same mapping are processed concurrently
+            synchronized (aliasSnapshot) {
+                aliasSnapshot.putRow(rowSnapshot);
+            }
         }
 
         return resource;
@@ -283,6 +314,11 @@ public class ResultSetJdbcGpsDevice extends AbstractJdbcActiveMirrorGpsDevice {
 
     /**
      * Performs the data change mirroring operation.
+     * <p>
+     * When using incremental mirroring, mappings with a delta version query
+     * (and a known high water mark) only fetch the rows changed since the last
+     * mirroring. The full version query (which also detects deleted rows) is
+     * then executed only once every tombstone detection interval.
      */
     public synchronized void performMirroring() throws JdbcGpsDeviceException {
         if (!shouldMirrorDataChanges() || isPerformingIndexOperation()) {
@@ -293,8 +329,6 @@ public class ResultSetJdbcGpsDevice extends AbstractJdbcActiveMirrorGpsDevice {
                     buildMessage("Versioning data was not properly initialized, did you index the device or loaded the data?"));
         }
         Connection connection = JdbcUtils.getConnection(dataSource);
-        PreparedStatement ps = null;
-        ResultSet rs = null;
         boolean dirtySnapshot = false;
         try {
             for (Iterator it = mappings.iterator(); it.hasNext();) {
@@ -308,83 +342,186 @@ public class ResultSetJdbcGpsDevice extends AbstractJdbcActiveMirrorGpsDevice {
                             + "] even though there should be support for versioning ignoring the alias"));
                     continue;
                 }
-                JdbcAliasSnapshot newAliasSnapshot = new JdbcAliasSnapshot(mapping.getAlias());
-                ArrayList createdRows = new ArrayList();
-                ArrayList updatedRows = new ArrayList();
-                ArrayList deletedRows = new ArrayList();
-                if (log.isDebugEnabled()) {
-                    log.debug(buildMessage("Executing version query [" + mapping.getVersionQuery() + "]"));
+                if (shouldPerformDeltaMirroring(mapping, oldAliasSnapshot)) {
+                    dirtySnapshot |= performDeltaMirroring(connection, mapping, oldAliasSnapshot);
+                } else {
+                    dirtySnapshot |= performFullMirroring(connection, mapping, oldAliasSnapshot);
+                    lastTombstoneDetection.put(mapping.getAlias(), System.currentTimeMillis());
                 }
-                ps = connection.prepareStatement(mapping.getVersionQuery());
-                if (getFetchSize() > 0) {
-                    ps.setFetchSize(getFetchSize());
-                }
-                rs = ps.executeQuery();
-                while (rs.next()) {
+            }
+        } catch (SQLException e) {
+            throw new JdbcGpsDeviceException(buildMessage("Failed while mirroring data changes"), e);
+        } finally {
+            JdbcUtils.closeConnection(connection);
+        }
+        if (isSaveSnapshotAfterMirror() && dirtySnapshot) {
+            getSnapshotPersister().save(snapshot);
+        }
+    }
 
-                    if (log.isDebugEnabled()) {
-                        StringBuffer sb = new StringBuffer();
-                        sb.append(buildMessage("Version row with values "));
-                        ResultSetMetaData metaData = rs.getMetaData();
-                        for (int i = 1; i <= metaData.getColumnCount(); i++) {
-                            sb.append("[").append(metaData.getColumnName(i)).append(":");
-                            String value = rs.getString(i);
-                            if (rs.wasNull()) {
-                                value = "(null)";
-                            }
-                            sb.append(value);
-                            sb.append("] ");
-                        }
-                        log.debug(sb.toString());
-                    }
+    private boolean shouldPerformDeltaMirroring(ResultSetToResourceMapping mapping, JdbcAliasSnapshot aliasSnapshot) {
+        if (!isIncrementalMirroring() || mapping.getDeltaVersionQuery() == null || mapping.versionMappingsSize() != 1) {
+            return false;
+        }
+        if (aliasSnapshot.getHighWaterMark() == null) {
+            // no high water mark (empty or old snapshot), a full pass will create it
+            return false;
+        }
+        Long lastTime = lastTombstoneDetection.get(mapping.getAlias());
+        if (lastTime == null) {
+            lastTombstoneDetection.put(mapping.getAlias(), System.currentTimeMillis());
+            return true;
+        }
+        return System.currentTimeMillis() - lastTime < tombstoneDetectionInterval;
+    }
 
-                    JdbcAliasRowSnapshot newRowSnapshot = new JdbcAliasRowSnapshot();
-                    ResultSetRowMarshallHelper marshallHelper = new ResultSetRowMarshallHelper(mapping, dialect,
-                            newRowSnapshot, compassGps.getMirrorCompass());
-                    marshallHelper.marshallResultSet(rs);
+    /**
+     * Executes the full version query, detecting created, updated and deleted
+     * rows by comparing all the rows against the snapshot. Rows returned by the
+     * query are marked in the snapshot, and the ones left unmarked are the
+     * deleted rows. The changes are then applied to the existing snapshot.
+     */
+    private boolean performFullMirroring(Connection connection, ResultSetToResourceMapping mapping,
+                                         JdbcAliasSnapshot aliasSnapshot) throws SQLException {
+        ArrayList createdRows = new ArrayList();
+        ArrayList updatedRows = new ArrayList();
+        ArrayList deletedRows = new ArrayList();
+        if (log.isDebugEnabled()) {
+            log.debug(buildMessage("Executing version query [" + mapping.getVersionQuery() + "]"));
+        }
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = connection.prepareStatement(mapping.getVersionQuery());
+            if (getFetchSize() > 0) {
+                ps.setFetchSize(getFetchSize());
+            }
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                JdbcAliasRowSnapshot newRowSnapshot = marshallVersionRow(mapping, rs);
 
-                    // new and old have the same ids
-                    JdbcAliasRowSnapshot oldRowSnapshot = oldAliasSnapshot.getRow(newRowSnapshot);
+                // new and old have the same ids
+                JdbcAliasRowSnapshot oldRowSnapshot = aliasSnapshot.getRow(newRowSnapshot);
 
-                    // new row or updated row
-                    if (oldRowSnapshot == null) {
-                        createdRows.add(newRowSnapshot);
-                    } else if (oldRowSnapshot.isOlderThan(newRowSnapshot)) {
+                // new row or updated row
+                if (oldRowSnapshot == null) {
+                    createdRows.add(newRowSnapshot);
+                } else {
+                    aliasSnapshot.markRow(newRowSnapshot);
+                    if (oldRowSnapshot.isOlderThan(newRowSnapshot)) {
                         updatedRows.add(newRowSnapshot);
                     }
-
-                    newAliasSnapshot.putRow(newRowSnapshot);
-                }
-                for (Iterator oldRowIt = oldAliasSnapshot.rowSnapshotIt(); oldRowIt.hasNext();) {
-                    JdbcAliasRowSnapshot tmpRow = (JdbcAliasRowSnapshot) oldRowIt.next();
-                    // deleted row
-                    if (newAliasSnapshot.getRow(tmpRow) == null) {
-                        deletedRows.add(tmpRow);
-                    }
                 }
-                if (!createdRows.isEmpty() || !updatedRows.isEmpty()) {
-                    dirtySnapshot = true;
-                    getSnapshotEventListener().onCreateAndUpdate(
-                            new CreateAndUpdateSnapshotEvent(connection, dialect, mapping, createdRows, updatedRows,
-                                    compassGps));
-                }
-                if (!deletedRows.isEmpty()) {
-                    dirtySnapshot = true;
-                    getSnapshotEventListener().onDelete(
-                            new DeleteSnapshotEvent(connection, dialect, mapping, deletedRows, compassGps));
+            }
+            // deleted rows
+            for (Iterator oldRowIt = aliasSnapshot.unmarkedRowSnapshotIt(); oldRowIt.hasNext();) {
+                deletedRows.add(oldRowIt.next());
+            }
+        } finally {
+            aliasSnapshot.clearMarks();
+            JdbcUtils.closeResultSet(rs);
+            JdbcUtils.closeStatement(ps);
+        }
+        boolean dirtySnapshot = fireSnapshotEvents(connection, mapping, createdRows, updatedRows, deletedRows);
+        for (Iterator rowIt = deletedRows.iterator(); rowIt.hasNext();) {
+            aliasSnapshot.removeRow((JdbcAliasRowSnapshot) rowIt.next());
+        }
+        for (Iterator rowIt = createdRows.iterator(); rowIt.hasNext();) {
+            aliasSnapshot.putRow((JdbcAliasRowSnapshot) rowIt.next());
+        }
+        for (Iterator rowIt = updatedRows.iterator(); rowIt.hasNext();) {
+            aliasSnapshot.putRow((JdbcAliasRowSnapshot) rowIt.next());
+        }
+        return dirtySnapshot;
+    }
+
+    /**
+     * Executes the delta version query with the alias high water mark, detecting
+     * only created and updated rows and updating the existing snapshot in place
+     * once the changes were applied.
+     */
+    private boolean performDeltaMirroring(Connection connection, ResultSetToResourceMapping mapping,
+                                          JdbcAliasSnapshot aliasSnapshot) throws SQLException {
+        ArrayList createdRows = new ArrayList();
+        ArrayList updatedRows = new ArrayList();
+        Long highWaterMark = aliasSnapshot.getHighWaterMark();
+        if (log.isDebugEnabled()) {
+            log.debug(buildMessage("Executing delta version query [" + mapping.getDeltaVersionQuery()
+                    + "] with high water mark [" + highWaterMark + "]"));
+        }
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = connection.prepareStatement(mapping.getDeltaVersionQuery());
+            if (getFetchSize() > 0) {
+                ps.setFetchSize(getFetchSize());
+            }
+            VersionColumnMapping versionMapping = (VersionColumnMapping) mapping.versionMappingsIt().next();
+            dialect.setVersionParameter(ps, 1, versionMapping, highWaterMark);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                JdbcAliasRowSnapshot newRowSnapshot = marshallVersionRow(mapping, rs);
+                JdbcAliasRowSnapshot oldRowSnapshot = aliasSnapshot.getRow(newRowSnapshot);
+                // rows with a version equal to the high water mark are fetched again, skip the ones we know
+                if (oldRowSnapshot == null) {
+                    createdRows.add(newRowSnapshot);
+                } else if (oldRowSnapshot.isOlderThan(newRowSnapshot)) {
+                    updatedRows.add(newRowSnapshot);
                 }
-                snapshot.putAliasSnapshot(newAliasSnapshot);
             }
-        } catch (SQLException e) {
-            throw new JdbcGpsDeviceException(buildMessage("Failed while mirroring data changes"), e);
         } finally {
             JdbcUtils.closeResultSet(rs);
             JdbcUtils.closeStatement(ps);
-            JdbcUtils.closeConnection(connection);
         }
-        if (isSaveSnapshotAfterMirror() && dirtySnapshot) {
-            getSnapshotPersister().save(snapshot);
+        boolean dirtySnapshot = fireSnapshotEvents(connection, mapping, createdRows, updatedRows, new ArrayList());
+        for (Iterator rowIt = createdRows.iterator(); rowIt.hasNext();) {
+            aliasSnapshot.putRow((JdbcAliasRowSnapshot) rowIt.next());
+        }
+        for (Iterator rowIt = updatedRows.iterator(); rowIt.hasNext();) {
+            aliasSnapshot.putRow((JdbcAliasRowSnapshot) rowIt.next());
+        }
+        return dirtySnapshot;
+    }
+
+    private JdbcAliasRowSnapshot marshallVersionRow(ResultSetToResourceMapping mapping, ResultSet rs) throws SQLException {
+        if (log.isDebugEnabled()) {
+            StringBuffer sb = new StringBuffer();
+            sb.append(buildMessage("Version row with values "));
+            ResultSetMetaData metaData = rs.getMetaData();
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                sb.append("[").append(metaData.getColumnName(i)).append(":");
+                String value = rs.getString(i);
+                if (rs.wasNull()) {
+                    value = "(null)";
+                }
+                sb.append(value);
+                sb.append("] ");
+            }
+            log.debug(sb.toString());
         }
+
+        JdbcAliasRowSnapshot rowSnapshot = new JdbcAliasRowSnapshot();
+        ResultSetRowMarshallHelper marshallHelper = new ResultSetRowMarshallHelper(mapping, dialect,
+                rowSnapshot, compassGps.getMirrorCompass());
+        marshallHelper.marshallResultSet(rs);
+        return rowSnapshot;
+    }
+
+    private boolean fireSnapshotEvents(Connection connection, ResultSetToResourceMapping mapping, List createdRows,
+                                       List updatedRows, List deletedRows) {
+        boolean dirtySnapshot = false;
+        if (!createdRows.isEmpty() || !updatedRows.isEmpty()) {
+            dirtySnapshot = true;
+            getSnapshotEventListener().onCreateAndUpdate(
+                    new CreateAndUpdateSnapshotEvent(connection, dialect, mapping, createdRows, updatedRows,
+                            compassGps));
+        }
+        if (!deletedRows.isEmpty()) {
+            dirtySnapshot = true;
+            getSnapshotEventListener().onDelete(
+                    new DeleteSnapshotEvent(connection, dialect, mapping, deletedRows, compassGps));
+        }
+        return dirtySnapshot;
     }
 
     /**
@@ -416,4 +553,42 @@ public class ResultSetJdbcGpsDevice extends AbstractJdbcActiveMirrorGpsDevice {
     public void setAutoDetectVersionColumnSqlType(boolean autoDetectVersionColumnSqlType) {
         this.autoDetectVersionColumnSqlType = autoDetectVersionColumnSqlType;
     }
+
+    /**
+     * Should the mirror operation only fetch rows changed since the last mirroring
+     * (based on the alias high water mark). Defaults to <code>false</code>.
+     */
+    public boolean isIncrementalMirroring() {
+        return incrementalMirroring;
+    }
+
+    /**
+     * Sets if the mirror operation should only fetch rows changed since the last mirroring
+     * (based on the alias high water mark). Only applies to mappings with a single version
+     * column and a delta version query.
+     * <p>
+     * Note, the version column must increase monotonically across the whole table: every insert
+     * and update must set a version higher than any version already in the table (for example,
+     * using a database sequence or a timestamp). Rows updated with a per row counter (such as an
+     * optimistic locking version) will be missed until the next full (tombstone detection) mirroring.
+     */
+    public void setIncrementalMirroring(boolean incrementalMirroring) {
+        this.incrementalMirroring = incrementalMirroring;
+    }
+
+    /**
+     * Returns the interval (in milliseconds) at which a full mirroring (detecting deleted
+     * rows) is performed when using incremental mirroring.
+     */
+    public long getTombstoneDetectionInterval() {
+        return tombstoneDetectionInterval;
+    }
+
+    /**
+     * Sets the interval (in milliseconds) at which a full mirroring (detecting deleted
+     * rows) is performed when using incremental mirroring. Defaults to one hour.
+     */
+    public void setTombstoneDetectionInterval(long tombstoneDetectionInterval) {
+        this.tombstoneDetectionInterval = tombstoneDetectionInterval;
+    }
 }
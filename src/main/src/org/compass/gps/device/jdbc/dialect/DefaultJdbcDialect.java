@@ -20,6 +20,7 @@ import java.sql.ParameterMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Time;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.Date;
@@ -134,6 +135,22 @@ public class DefaultJdbcDialect implements JdbcDialect {
         }
     }
 
+    public void setVersionParameter(PreparedStatement ps, int paramIndex, VersionColumnMapping versionMapping,
+                                    Long version) throws SQLException {
+        int sqlType = versionMapping.getSqlType();
+        if (sqlType == Types.INTEGER) {
+            ps.setInt(paramIndex, version.intValue());
+        } else if (sqlType == Types.DATE) {
+            ps.setDate(paramIndex, new java.sql.Date(version));
+        } else if (sqlType == Types.TIMESTAMP) {
+            ps.setTimestamp(paramIndex, new Timestamp(version));
+        } else if (sqlType == Types.TIME) {
+            ps.setTime(paramIndex, new Time(version));
+        } else {
+            ps.setLong(paramIndex, version);
+        }
+    }
+
     public String getStringValue(ResultSet rs, ColumnMapping mapping) throws SQLException {
         String value;
         if (mapping.isUsingColumnIndex()) {
@@ -55,4 +55,11 @@ public interface JdbcDialect {
      * <code>PreparedStatement</code>.
      */
     void setParameter(PreparedStatement ps, int paramIndex, String value) throws SQLException;
+
+    /**
+     * Sets the version value (as returned by {@link #getVersion(java.sql.ResultSet, VersionColumnMapping)})
+     * as the parameter for the given parameter index, converting it back to the version column jdbc type.
+     */
+    void setVersionParameter(PreparedStatement ps, int paramIndex, VersionColumnMapping versionMapping, Long version)
+            throws SQLException;
 }
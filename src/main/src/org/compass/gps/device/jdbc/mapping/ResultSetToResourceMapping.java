@@ -22,6 +22,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import org.compass.gps.device.jdbc.partition.JdbcIndexPartitioner;
+
 /**
  * Maps a Jdbc <code>ResultSet</code> to a Compass <code>Resource</code>.
  * <p>
@@ -49,6 +51,10 @@ public class ResultSetToResourceMapping {
 
     private String versionQuery;
 
+    private String deltaVersionQuery;
+
+    private JdbcIndexPartitioner indexPartitioner;
+
     private List idMappings = new ArrayList();
 
     private List dataMappings = new ArrayList();
@@ -152,6 +158,46 @@ public class ResultSetToResourceMapping {
         this.versionQuery = snapshotQuery;
     }
 
+    /**
+     * Returns the delta version query that is used for incremental mirror data changes. The query
+     * returns the same columns as the version query, but only for rows whose version is greater or
+     * equal to its single parameter (the alias high water mark).
+     */
+    public String getDeltaVersionQuery() {
+        return deltaVersionQuery;
+    }
+
+    /**
+     * Sets the delta version query that is used for incremental mirror data changes. The query
+     * returns the same columns as the version query, but only for rows whose version is greater or
+     * equal to its single parameter (the alias high water mark).
+     * <p>
+     * Note, the version column must increase monotonically across the whole table (for example, a
+     * value taken from a database sequence or a timestamp on every insert and update). A per row
+     * counter (such as an optimistic locking version starting at <code>1</code> for each row) will
+     * cause changed rows to be missed until the next full (tombstone detection) mirroring.
+     */
+    public void setDeltaVersionQuery(String deltaVersionQuery) {
+        this.deltaVersionQuery = deltaVersionQuery;
+    }
+
+    /**
+     * Returns the partitioner used to split the select query into several partitions that are
+     * indexed concurrently. <code>null</code> (the default) means that the select query is
+     * indexed as a whole.
+     */
+    public JdbcIndexPartitioner getIndexPartitioner() {
+        return indexPartitioner;
+    }
+
+    /**
+     * Sets the partitioner used to split the select query into several partitions that are
+     * indexed concurrently, each one using its own jdbc connection.
+     */
+    public void setIndexPartitioner(JdbcIndexPartitioner indexPartitioner) {
+        this.indexPartitioner = indexPartitioner;
+    }
+
     /**
      * Adds id column mapping.
      */
@@ -332,6 +378,12 @@ public class ResultSetToResourceMapping {
         sb.append("version[" + supportsVersioning() + "] ");
         if (supportsVersioning()) {
             sb.append(" version query [" + versionQuery + "] ");
+            if (deltaVersionQuery != null) {
+                sb.append(" delta version query [" + deltaVersionQuery + "] ");
+            }
+        }
+        if (indexPartitioner != null) {
+            sb.append("index partitioner [" + indexPartitioner + "] ");
         }
         sb.append("indexUnMappedColumns[" + indexUnMappedColumns + "] ");
         sb.append("Id Mappings [");
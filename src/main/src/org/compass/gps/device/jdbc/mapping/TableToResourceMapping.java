@@ -103,6 +103,9 @@ public class TableToResourceMapping extends ResultSetToResourceMapping implement
         if (getVersionQuery() == null && supportsVersioning()) {
             generateVersionQuery(dataSource);
         }
+        if (getDeltaVersionQuery() == null && versionMappingsSize() == 1) {
+            generateDeltaVersionQuery();
+        }
     }
 
     private void generateIdMappings(DataSource dataSource) throws JdbcGpsDeviceException {
@@ -194,6 +197,25 @@ public class TableToResourceMapping extends ResultSetToResourceMapping implement
         setVersionQuery(sb.toString());
     }
 
+    private void generateDeltaVersionQuery() {
+        VersionColumnMapping verMapping = (VersionColumnMapping) versionMappingsIt().next();
+        if (verMapping.isUsingColumnIndex()) {
+            throw new IllegalArgumentException(
+                    "When mapping version column to a table, must specify version column name and not column index");
+        }
+        StringBuffer sb = new StringBuffer();
+        String versionQuery = getVersionQuery();
+        sb.append(versionQuery);
+        if (versionQuery.indexOf(" where") != -1) {
+            sb.append(" and ");
+        } else {
+            sb.append(" where ");
+        }
+        sb.append(verMapping.getColumnName());
+        sb.append(" >= ?");
+        setDeltaVersionQuery(sb.toString());
+    }
+
     /**
      * Returns the table name that the mappings maps to.
      */
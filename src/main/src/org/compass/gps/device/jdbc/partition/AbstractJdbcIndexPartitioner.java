@@ -0,0 +1,144 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.compass.gps.device.jdbc.partition;
+
+/**
+ * A base class for partitioners that split the select query based on a single numeric
+ * column (usually the id column) by appending a restriction to the select query where
+ * clause.
+ * <p>
+ * Note, rows with a <code>null</code> value in the partition column are not returned by
+ * any of the partitions.
+ *
+ * @author kimchy
+ */
+public abstract class AbstractJdbcIndexPartitioner implements JdbcIndexPartitioner {
+
+    private String column;
+
+    private int partitions;
+
+    protected AbstractJdbcIndexPartitioner() {
+
+    }
+
+    protected AbstractJdbcIndexPartitioner(String column, int partitions) {
+        setColumn(column);
+        setPartitions(partitions);
+    }
+
+    /**
+     * Returns the column the select query is partitioned by. The column must be usable within
+     * the select query where clause.
+     */
+    public String getColumn() {
+        return column;
+    }
+
+    /**
+     * Sets the column the select query is partitioned by. The column must be usable within
+     * the select query where clause (for example, <code>p.id</code> for a joined select query).
+     */
+    public void setColumn(String column) {
+        this.column = column;
+    }
+
+    /**
+     * Returns the number of partitions the select query is split into.
+     */
+    public int getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * Sets the number of partitions the select query is split into.
+     */
+    public void setPartitions(int partitions) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("partitions must be greater than 0");
+        }
+        this.partitions = partitions;
+    }
+
+    /**
+     * Appends the given restriction to the select query, either as a new where clause or
+     * as an additional condition of an existing one. The existing where condition is
+     * wrapped in parentheses (so a top level <code>or</code> does not bypass the
+     * restriction), and the restriction is inserted before a trailing <code>group by</code>,
+     * <code>having</code> or <code>order by</code> clause. Only the top level of the query is
+     * considered, sub queries and quoted literals are skipped.
+     */
+    protected String appendRestriction(String selectQuery, String restriction) {
+        int whereStart = -1;
+        int clauseStart = selectQuery.length();
+        String lowerQuery = selectQuery.toLowerCase();
+        int depth = 0;
+        char quote = 0;
+        for (int i = 0; i < lowerQuery.length(); i++) {
+            char c = lowerQuery.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (depth == 0 && (i == 0 || !Character.isLetterOrDigit(lowerQuery.charAt(i - 1)))) {
+                if (whereStart == -1 && isKeyword(lowerQuery, i, "where")) {
+                    whereStart = i;
+                } else if (isKeyword(lowerQuery, i, "group") || isKeyword(lowerQuery, i, "having")
+                        || isKeyword(lowerQuery, i, "order")) {
+                    clauseStart = i;
+                    break;
+                }
+            }
+        }
+        StringBuffer sb = new StringBuffer(selectQuery.length() + restriction.length() + 16);
+        if (whereStart == -1) {
+            sb.append(selectQuery.substring(0, clauseStart).trim());
+            sb.append(" where ").append(restriction);
+        } else {
+            sb.append(selectQuery.substring(0, whereStart + 5));
+            sb.append(" (").append(selectQuery.substring(whereStart + 5, clauseStart).trim());
+            sb.append(") and ").append(restriction);
+        }
+        if (clauseStart < selectQuery.length()) {
+            sb.append(' ').append(selectQuery.substring(clauseStart));
+        }
+        return sb.toString();
+    }
+
+    private static boolean isKeyword(String query, int index, String keyword) {
+        int end = index + keyword.length();
+        return query.startsWith(keyword, index)
+                && (end == query.length() || !Character.isLetterOrDigit(query.charAt(end)));
+    }
+
+    protected void checkColumn() {
+        if (column == null) {
+            throw new IllegalArgumentException("column property must be set");
+        }
+    }
+
+    public String toString() {
+        return getClass().getSimpleName() + " column [" + column + "] partitions [" + partitions + "]";
+    }
+}
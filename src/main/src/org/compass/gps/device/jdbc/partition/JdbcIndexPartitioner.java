@@ -0,0 +1,46 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.compass.gps.device.jdbc.partition;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.compass.gps.device.jdbc.mapping.ResultSetToResourceMapping;
+
+/**
+ * Splits the select query of a {@link ResultSetToResourceMapping} into several partition
+ * queries. Each partition query is executed over its own jdbc connection, and the partitions
+ * are indexed concurrently by the {@link org.compass.gps.device.jdbc.ResultSetJdbcGpsDevice}.
+ * <p>
+ * The partition queries must return disjoint row sets that together cover all the rows
+ * returned by the mapping select query.
+ *
+ * @author kimchy
+ */
+public interface JdbcIndexPartitioner {
+
+    /**
+     * Returns the partition queries for the given mapping. Returning a single query means that
+     * the mapping is indexed without partitioning.
+     *
+     * @param connection A connection that can be used to inspect the data (for example, the id range)
+     * @param mapping    The mapping to partition
+     * @return The partition select queries
+     */
+    String[] partition(Connection connection, ResultSetToResourceMapping mapping) throws SQLException;
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.compass.gps.device.jdbc.partition;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.compass.gps.device.jdbc.mapping.ResultSetToResourceMapping;
+
+/**
+ * Splits the select query into N partitions using the remainder of the partition column
+ * divided by N (<code>mod(column, N)</code>). Requires no access to the database in order
+ * to compute the partitions, and evenly spreads sparse ids, but the restriction usually can
+ * not use an index on the partition column.
+ *
+ * @author kimchy
+ */
+public class ModuloJdbcIndexPartitioner extends AbstractJdbcIndexPartitioner {
+
+    public ModuloJdbcIndexPartitioner() {
+
+    }
+
+    public ModuloJdbcIndexPartitioner(String column, int partitions) {
+        super(column, partitions);
+    }
+
+    public String[] partition(Connection connection, ResultSetToResourceMapping mapping) throws SQLException {
+        checkColumn();
+        int partitions = getPartitions();
+        String[] queries = new String[partitions];
+        for (int i = 0; i < partitions; i++) {
+            queries[i] = appendRestriction(mapping.getSelectQuery(), createRestriction(i, partitions));
+        }
+        return queries;
+    }
+
+    /**
+     * Creates the restriction for the given partition. Negative values of the partition column
+     * have a negative remainder on most databases, which is why both remainders are matched.
+     * Can be overridden for databases that do not support the <code>mod</code> function.
+     */
+    protected String createRestriction(int partition, int partitions) {
+        return "mod(" + getColumn() + ", " + partitions + ") in (" + partition + ", -" + partition + ")";
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.compass.gps.device.jdbc.partition;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.compass.gps.device.jdbc.JdbcUtils;
+import org.compass.gps.device.jdbc.mapping.ResultSetToResourceMapping;
+import org.compass.gps.device.jdbc.mapping.TableToResourceMapping;
+
+/**
+ * Splits the select query into N contiguous ranges of the partition column. The minimum and
+ * maximum values of the column are fetched using the bounds query, and the range between them
+ * is split into N equal ranges. The first and last partitions are open ended, so rows that are
+ * inserted outside of the fetched bounds during the index operation are still indexed.
+ * <p>
+ * If no bounds query is set, it is generated from the table name for
+ * {@link TableToResourceMapping}, and by wrapping the select query otherwise (in which case
+ * the partition column must be a column label of the select query).
+ *
+ * @author kimchy
+ */
+public class RangeJdbcIndexPartitioner extends AbstractJdbcIndexPartitioner {
+
+    private String boundsQuery;
+
+    public RangeJdbcIndexPartitioner() {
+
+    }
+
+    public RangeJdbcIndexPartitioner(String column, int partitions) {
+        super(column, partitions);
+    }
+
+    /**
+     * Returns the query that fetches the minimum and maximum values of the partition column.
+     */
+    public String getBoundsQuery() {
+        return boundsQuery;
+    }
+
+    /**
+     * Sets the query that fetches the minimum and maximum values of the partition column (in
+     * this order, as the first and second columns of a single row).
+     */
+    public void setBoundsQuery(String boundsQuery) {
+        this.boundsQuery = boundsQuery;
+    }
+
+    public String[] partition(Connection connection, ResultSetToResourceMapping mapping) throws SQLException {
+        checkColumn();
+        String query = boundsQuery;
+        if (query == null) {
+            query = generateBoundsQuery(mapping);
+        }
+        long min;
+        long max;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = connection.prepareStatement(query);
+            rs = ps.executeQuery();
+            if (!rs.next()) {
+                return new String[]{mapping.getSelectQuery()};
+            }
+            min = rs.getLong(1);
+            if (rs.wasNull()) {
+                // no rows
+                return new String[]{mapping.getSelectQuery()};
+            }
+            max = rs.getLong(2);
+        } finally {
+            JdbcUtils.closeResultSet(rs);
+            JdbcUtils.closeStatement(ps);
+        }
+
+        long[] boundaries = computeBoundaries(min, max, getPartitions());
+        if (boundaries.length == 0) {
+            return new String[]{mapping.getSelectQuery()};
+        }
+        String[] queries = new String[boundaries.length + 1];
+        String column = getColumn();
+        queries[0] = appendRestriction(mapping.getSelectQuery(), column + " < " + boundaries[0]);
+        for (int i = 1; i < boundaries.length; i++) {
+            queries[i] = appendRestriction(mapping.getSelectQuery(), column + " >= " + boundaries[i - 1]
+                    + " and " + column + " < " + boundaries[i]);
+        }
+        queries[boundaries.length] = appendRestriction(mapping.getSelectQuery(),
+                column + " >= " + boundaries[boundaries.length - 1]);
+        return queries;
+    }
+
+    /**
+     * Computes the (exclusive) upper boundaries of all the partitions except for the last one.
+     * Less partitions are created if the range holds less values than the number of partitions.
+     */
+    protected long[] computeBoundaries(long min, long max, int partitions) {
+        if (max <= min || partitions < 2) {
+            return new long[0];
+        }
+        long values = max - min + 1;
+        if (values <= 0) {
+            // overflow, the last partition is open ended anyway
+            values = Long.MAX_VALUE;
+        }
+        if (values < partitions) {
+            partitions = (int) values;
+        }
+        long step = values / partitions;
+        long[] boundaries = new long[partitions - 1];
+        for (int i = 0; i < boundaries.length; i++) {
+            boundaries[i] = min + (i + 1) * step;
+        }
+        return boundaries;
+    }
+
+    protected String generateBoundsQuery(ResultSetToResourceMapping mapping) {
+        String column = getColumn();
+        if (mapping instanceof TableToResourceMapping) {
+            return "select min(" + column + "), max(" + column + ") from "
+                    + ((TableToResourceMapping) mapping).getTableName();
+        }
+        return "select min(" + column + "), max(" + column + ") from (" + mapping.getSelectQuery()
+                + ") compass_partition_bounds";
+    }
+
+    public String toString() {
+        return super.toString() + " bounds query [" + boundsQuery + "]";
+    }
+}
@@ -86,6 +86,13 @@ public class FSJdbcSnapshotPersister implements JdbcSnapshotPersister {
         }
     }
 
+    /**
+     * Creates a new in memory alias snapshot (saved as part of the whole snapshot).
+     */
+    public JdbcAliasSnapshot createAliasSnapshot(String alias) throws JdbcGpsDeviceException {
+        return new JdbcAliasSnapshot(alias);
+    }
+
     public String getPath() {
         return path;
     }
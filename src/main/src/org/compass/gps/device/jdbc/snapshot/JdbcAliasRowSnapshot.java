@@ -52,6 +52,10 @@ public class JdbcAliasRowSnapshot implements Serializable {
         versions.add(versionValue);
     }
 
+    public List<Long> getVersions() {
+        return versions;
+    }
+
     public boolean isOlderThan(JdbcAliasRowSnapshot rowSnapshot) {
         for (int i = 0; i < versions.size(); i++) {
             if ((versions.get(i)).compareTo(rowSnapshot.versions.get(i)) < 0) {
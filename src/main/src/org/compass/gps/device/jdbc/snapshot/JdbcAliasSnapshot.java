@@ -17,13 +17,25 @@
 package org.compass.gps.device.jdbc.snapshot;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * An alias (usually <code>ResultSet</code>) level snapshot. Holds a
  * collection of
  * {@link org.compass.gps.device.jdbc.snapshot.JdbcAliasRowSnapshot}s.
+ * <p>
+ * Also keeps the high water mark of the alias, which is the highest (first)
+ * version value of the rows put into the snapshot, and is used for incremental
+ * mirroring. Snapshots persisted before the high water mark was introduced
+ * will return <code>null</code> until a row is put into them.
+ * <p>
+ * Rows can be marked (see {@link #markRow(JdbcAliasRowSnapshot)}) in order to
+ * find the rows that were not seen by a full pass over the table (deleted rows)
+ * without creating a new snapshot.
  * 
  * @author kimchy
  */
@@ -35,6 +47,10 @@ public class JdbcAliasSnapshot implements Serializable {
 
     private HashMap<JdbcAliasRowSnapshot, JdbcAliasRowSnapshot> rowEntries = new HashMap<JdbcAliasRowSnapshot, JdbcAliasRowSnapshot>();
 
+    private Long highWaterMark;
+
+    private transient HashSet<JdbcAliasRowSnapshot> marks;
+
     public JdbcAliasSnapshot(String alias) {
         this.alias = alias;
     }
@@ -49,19 +65,91 @@ public class JdbcAliasSnapshot implements Serializable {
 
     public void putRow(JdbcAliasRowSnapshot rowSnapshot) {
         this.rowEntries.put(rowSnapshot, rowSnapshot);
+        if (!rowSnapshot.getVersions().isEmpty()) {
+            updateHighWaterMark(rowSnapshot.getVersions().get(0));
+        }
+    }
+
+    /**
+     * Returns the highest version put into this snapshot, <code>null</code> if
+     * it is not known.
+     */
+    public Long getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * Raises the high water mark to the given version if it is higher than the
+     * current one.
+     */
+    public void updateHighWaterMark(Long version) {
+        if (version == null) {
+            return;
+        }
+        if (highWaterMark == null || highWaterMark < version) {
+            highWaterMark = version;
+        }
     }
 
     public JdbcAliasRowSnapshot getRow(JdbcAliasRowSnapshot rowSnapshot) {
         return this.rowEntries.get(rowSnapshot);
     }
 
+    /**
+     * Removes the row with the same ids as the given row (if there is one).
+     */
+    public void removeRow(JdbcAliasRowSnapshot rowSnapshot) {
+        this.rowEntries.remove(rowSnapshot);
+    }
+
+    /**
+     * Marks the row with the same ids as the given row (if there is one) as
+     * seen. Marks must be used (and cleared) before the snapshot is changed.
+     */
+    public void markRow(JdbcAliasRowSnapshot rowSnapshot) {
+        if (marks == null) {
+            marks = new HashSet<JdbcAliasRowSnapshot>();
+        }
+        if (rowEntries.containsKey(rowSnapshot)) {
+            marks.add(rowSnapshot);
+        }
+    }
+
+    /**
+     * Returns the rows that were not marked since the marks were last cleared.
+     */
+    public Iterator<JdbcAliasRowSnapshot> unmarkedRowSnapshotIt() {
+        List<JdbcAliasRowSnapshot> unmarked = new ArrayList<JdbcAliasRowSnapshot>();
+        for (JdbcAliasRowSnapshot rowSnapshot : rowEntries.values()) {
+            if (marks == null || !marks.contains(rowSnapshot)) {
+                unmarked.add(rowSnapshot);
+            }
+        }
+        return unmarked.iterator();
+    }
+
+    /**
+     * Clears all the row marks.
+     */
+    public void clearMarks() {
+        marks = null;
+    }
+
     public Iterator<JdbcAliasRowSnapshot> rowSnapshotIt() {
         return this.rowEntries.values().iterator();
     }
 
+    /**
+     * Releases any resources held by this snapshot. Called once the snapshot
+     * is no longer used (for example, when it is replaced by a newer snapshot
+     * of the same alias).
+     */
+    public void close() {
+    }
+
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        sb.append("alias [").append(alias).append("]");
+        sb.append("alias [").append(alias).append("] high water mark [").append(highWaterMark).append("]");
         for (JdbcAliasRowSnapshot jdbcAliasRowSnapshot : rowEntries.values()) {
             sb.append(jdbcAliasRowSnapshot);
             sb.append(", ");
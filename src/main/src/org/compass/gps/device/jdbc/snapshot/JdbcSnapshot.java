@@ -18,6 +18,7 @@ package org.compass.gps.device.jdbc.snapshot;
 
 import java.io.Serializable;
 import java.util.HashMap;
+import java.util.Iterator;
 
 /**
  * A system level (collection of aliases - <code>ResultSet</code>s)
@@ -32,8 +33,14 @@ public class JdbcSnapshot implements Serializable {
 
     private HashMap<String, JdbcAliasSnapshot> aliasSnapshots = new HashMap<String, JdbcAliasSnapshot>();
 
+    /**
+     * Puts the alias snapshot, closing the alias snapshot it replaces (if there is one).
+     */
     public void putAliasSnapshot(JdbcAliasSnapshot aliasSnapshot) {
-        aliasSnapshots.put(aliasSnapshot.getAlias(), aliasSnapshot);
+        JdbcAliasSnapshot replaced = aliasSnapshots.put(aliasSnapshot.getAlias(), aliasSnapshot);
+        if (replaced != null && replaced != aliasSnapshot) {
+            replaced.close();
+        }
     }
 
     public JdbcAliasSnapshot getAliasSnapshot(String alias) {
@@ -44,6 +51,19 @@ public class JdbcSnapshot implements Serializable {
         return aliasSnapshots.remove(alias);
     }
 
+    public Iterator<JdbcAliasSnapshot> aliasSnapshotIt() {
+        return aliasSnapshots.values().iterator();
+    }
+
+    /**
+     * Closes all the alias snapshots.
+     */
+    public void close() {
+        for (JdbcAliasSnapshot aliasSnapshot : aliasSnapshots.values()) {
+            aliasSnapshot.close();
+        }
+    }
+
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("Snapshot ");
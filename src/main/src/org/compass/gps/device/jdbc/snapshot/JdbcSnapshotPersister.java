@@ -26,6 +26,7 @@ import org.compass.gps.device.jdbc.JdbcGpsDeviceException;
  * @see JdbcSnapshotPersister
  * @see org.compass.gps.device.jdbc.snapshot.RAMJdbcSnapshotPersister
  * @see org.compass.gps.device.jdbc.snapshot.FSJdbcSnapshotPersister
+ * @see org.compass.gps.device.jdbc.snapshot.MMapJdbcSnapshotPersister
  * 
  * @author kimchy
  */
@@ -46,4 +47,14 @@ public interface JdbcSnapshotPersister {
      * @throws JdbcGpsDeviceException
      */
     JdbcSnapshot load() throws JdbcGpsDeviceException;
+
+    /**
+     * Creates a new (empty) alias snapshot that can later be saved by this
+     * persister.
+     * 
+     * @param alias
+     *            The alias of the snapshot
+     * @return The new alias snapshot
+     */
+    JdbcAliasSnapshot createAliasSnapshot(String alias) throws JdbcGpsDeviceException;
 }
@@ -0,0 +1,745 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.compass.gps.device.jdbc.snapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.compass.gps.device.jdbc.JdbcGpsDeviceException;
+
+/**
+ * An alias snapshot backed by memory mapped files, created and persisted by
+ * {@link MMapJdbcSnapshotPersister}.
+ * <p>
+ * Rows are kept in an open addressing (linear probing) table of fixed size
+ * slots. Each slot holds two 64 bit hashes of the row ids, the offset of the
+ * row ids within the ids file, and the row versions as primitive longs. Two
+ * rows are considered the same row if both hashes are equal. The ids
+ * themselves are only needed when iterating over the rows (for deleted rows
+ * detection), and are appended to a separate ids file once per new row.
+ * Removed rows are removed from the table (the entries of their ids are
+ * simply skipped when iterating).
+ * <p>
+ * The table is split into several pages, each one a separate memory mapped
+ * file, and is doubled (into new page files) once it is more than 70% full.
+ * Pages are copied on write: the first change to a page that is referenced
+ * by the last saved manifest copies it to a new page file, so a crash before
+ * the next save leaves the saved snapshot intact. Saving only forces the
+ * pages that were changed since the last save.
+ *
+ * @author kimchy
+ */
+public class MMapJdbcAliasSnapshot extends JdbcAliasSnapshot {
+
+    private static final long serialVersionUID = -2318012981734718735L;
+
+    private static final int MAX_PAGE_SLOTS = 1 << 16;
+
+    private static final int HEADER_SIZE = 24;
+
+    private static final float LOAD_FACTOR = 0.7f;
+
+    private static final long NULL_VERSION = Long.MIN_VALUE;
+
+    private static final int IDS_BUFFER_SIZE = 64 * 1024;
+
+    private final transient MMapJdbcSnapshotPersister persister;
+
+    private final transient long generation;
+
+    private transient int tableVersion;
+
+    private transient int versionsCount = -1;
+
+    private transient int slotSize;
+
+    private transient int capacity;
+
+    private transient int size;
+
+    private transient int threshold;
+
+    private transient int pageShift;
+
+    private transient int pageMask;
+
+    private transient long pageBytes;
+
+    private transient MappedByteBuffer[] pages;
+
+    private transient int[] pageVersions;
+
+    private transient boolean[] pageSaved;
+
+    private transient BitSet marks;
+
+    private transient RandomAccessFile idsFile;
+
+    private transient long idsFlushedLength;
+
+    private transient ByteBuffer idsWriteBuffer;
+
+    private transient boolean closed;
+
+    MMapJdbcAliasSnapshot(MMapJdbcSnapshotPersister persister, String alias, long generation) {
+        super(alias);
+        this.persister = persister;
+        this.generation = generation;
+    }
+
+    MMapJdbcAliasSnapshot(MMapJdbcSnapshotPersister persister, String alias, long generation, int tableVersion,
+                          int capacity, int size, int versionsCount, long idsLength, Long highWaterMark,
+                          int[] pageVersions) throws JdbcGpsDeviceException {
+        this(persister, alias, generation);
+        this.tableVersion = tableVersion;
+        this.size = size;
+        updateHighWaterMark(highWaterMark);
+        if (versionsCount != -1) {
+            try {
+                openTable(versionsCount, capacity, pageVersions);
+                openIds();
+                idsFile.getChannel().truncate(idsLength);
+                idsFlushedLength = idsLength;
+            } catch (IOException e) {
+                close();
+                throw new JdbcGpsDeviceException("Failed to open snapshot for alias [" + alias + "]", e);
+            }
+        }
+    }
+
+    public void putRow(JdbcAliasRowSnapshot rowSnapshot) {
+        List<Long> versions = rowSnapshot.getVersions();
+        try {
+            if (versionsCount == -1) {
+                openTable(versions.size(), persister.getInitialCapacity(), null);
+                openIds();
+            } else if (versions.size() != versionsCount) {
+                throw new IllegalArgumentException("Row " + rowSnapshot + " has [" + versions.size()
+                        + "] versions, while alias [" + getAlias() + "] has [" + versionsCount + "]");
+            }
+            List<String> ids = rowSnapshot.getIds();
+            long hash1 = hash1(ids);
+            long hash2 = hash2(ids);
+            int slot = findSlot(hash1, hash2);
+            MappedByteBuffer page = writablePage(slot);
+            int offset = offset(slot);
+            if (page.getLong(offset) == 0) {
+                page.putLong(offset, hash1);
+                page.putLong(offset + 8, hash2);
+                page.putLong(offset + 16, getIdsLength());
+                writeVersions(page, offset, versions);
+                appendIds(ids);
+                if (++size > threshold) {
+                    resize();
+                }
+            } else {
+                writeVersions(page, offset, versions);
+            }
+        } catch (IOException e) {
+            throw new JdbcGpsDeviceException("Failed to put row " + rowSnapshot + " in snapshot for alias ["
+                    + getAlias() + "]", e);
+        }
+        if (!versions.isEmpty()) {
+            updateHighWaterMark(versions.get(0));
+        }
+    }
+
+    public JdbcAliasRowSnapshot getRow(JdbcAliasRowSnapshot rowSnapshot) {
+        if (versionsCount == -1) {
+            return null;
+        }
+        List<String> ids = rowSnapshot.getIds();
+        int slot = findSlot(hash1(ids), hash2(ids));
+        MappedByteBuffer page = page(slot);
+        int offset = offset(slot);
+        if (page.getLong(offset) == 0) {
+            return null;
+        }
+        JdbcAliasRowSnapshot row = new JdbcAliasRowSnapshot();
+        for (String id : ids) {
+            row.addIdValue(id);
+        }
+        readVersions(page, offset, row);
+        return row;
+    }
+
+    /**
+     * Removes the row, shifting back the following rows of its probe sequence
+     * so no tombstones are needed.
+     */
+    public void removeRow(JdbcAliasRowSnapshot rowSnapshot) {
+        if (versionsCount == -1) {
+            return;
+        }
+        List<String> ids = rowSnapshot.getIds();
+        int hole = findSlot(hash1(ids), hash2(ids));
+        if (page(hole).getLong(offset(hole)) == 0) {
+            return;
+        }
+        int mask = capacity - 1;
+        int slot = (hole + 1) & mask;
+        while (true) {
+            long hash1 = page(slot).getLong(offset(slot));
+            if (hash1 == 0) {
+                break;
+            }
+            int home = (int) mix(hash1) & mask;
+            // the row can fill the hole only if its home slot is not cyclically within (hole, slot]
+            boolean move = hole <= slot ? (home <= hole || home > slot) : (home <= hole && home > slot);
+            if (move) {
+                copySlot(slot, hole);
+                hole = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        MappedByteBuffer page = writablePage(hole);
+        int offset = offset(hole);
+        for (int i = 0; i < slotSize; i += 8) {
+            page.putLong(offset + i, 0);
+        }
+        size--;
+    }
+
+    /**
+     * Marks the row slot. Marks are kept in a bit set of the table slots, and
+     * must be used (and cleared) before the snapshot is changed.
+     */
+    public void markRow(JdbcAliasRowSnapshot rowSnapshot) {
+        if (versionsCount == -1) {
+            return;
+        }
+        List<String> ids = rowSnapshot.getIds();
+        int slot = findSlot(hash1(ids), hash2(ids));
+        if (page(slot).getLong(offset(slot)) == 0) {
+            return;
+        }
+        if (marks == null) {
+            marks = new BitSet(capacity);
+        }
+        marks.set(slot);
+    }
+
+    public Iterator<JdbcAliasRowSnapshot> unmarkedRowSnapshotIt() {
+        return rowSnapshotIt(true);
+    }
+
+    public void clearMarks() {
+        marks = null;
+    }
+
+    public Iterator<JdbcAliasRowSnapshot> rowSnapshotIt() {
+        return rowSnapshotIt(false);
+    }
+
+    private Iterator<JdbcAliasRowSnapshot> rowSnapshotIt(boolean unmarkedOnly) {
+        if (versionsCount == -1) {
+            return new Iterator<JdbcAliasRowSnapshot>() {
+                public boolean hasNext() {
+                    return false;
+                }
+
+                public JdbcAliasRowSnapshot next() {
+                    throw new NoSuchElementException();
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+        try {
+            flushIds();
+        } catch (IOException e) {
+            throw new JdbcGpsDeviceException("Failed to flush ids for alias [" + getAlias() + "]", e);
+        }
+        return new RowIterator(idsFlushedLength, unmarkedOnly ? marks : null);
+    }
+
+    /**
+     * Returns the number of rows in the snapshot.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Flushes the ids and forces the pages changed since the last save to the
+     * file system.
+     */
+    void flush() throws IOException {
+        if (versionsCount == -1) {
+            return;
+        }
+        flushIds();
+        idsFile.getChannel().force(false);
+        for (int i = 0; i < pages.length; i++) {
+            if (!pageSaved[i]) {
+                pages[i].force();
+            }
+        }
+    }
+
+    /**
+     * Called by the persister once the manifest referencing the current pages
+     * was saved. The next change to each page will copy it first.
+     */
+    void saved() {
+        if (pageSaved != null) {
+            Arrays.fill(pageSaved, true);
+        }
+    }
+
+    /**
+     * Returns the names of the files (the table pages and the ids) currently
+     * used by the snapshot.
+     */
+    List<String> getFileNames() {
+        List<String> names = new ArrayList<String>();
+        if (versionsCount == -1) {
+            return names;
+        }
+        for (int i = 0; i < pageVersions.length; i++) {
+            names.add(persister.getTableFile(getAlias(), generation, tableVersion, i, pageVersions[i]).getName());
+        }
+        names.add(persister.getIdsFile(getAlias(), generation).getName());
+        return names;
+    }
+
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        pages = null;
+        marks = null;
+        closeFile(idsFile);
+        idsFile = null;
+        persister.released(this);
+    }
+
+    long getGeneration() {
+        return generation;
+    }
+
+    int getTableVersion() {
+        return tableVersion;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    int getVersionsCount() {
+        return versionsCount;
+    }
+
+    int[] getPageVersions() {
+        return pageVersions;
+    }
+
+    long getIdsLength() {
+        return idsFlushedLength + (idsWriteBuffer == null ? 0 : idsWriteBuffer.position());
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Serializes a plain (heap based) copy of the snapshot.
+     */
+    protected Object writeReplace() throws ObjectStreamException {
+        JdbcAliasSnapshot copy = new JdbcAliasSnapshot(getAlias());
+        for (Iterator<JdbcAliasRowSnapshot> it = rowSnapshotIt(); it.hasNext();) {
+            copy.putRow(it.next());
+        }
+        copy.updateHighWaterMark(getHighWaterMark());
+        return copy;
+    }
+
+    public String toString() {
+        return "alias [" + getAlias() + "] high water mark [" + getHighWaterMark() + "] rows [" + size
+                + "] capacity [" + capacity + "] generation [" + generation + "]";
+    }
+
+    /**
+     * Opens the table pages. New (empty) page files are created if the given
+     * page versions are <code>null</code>, otherwise the saved page files are
+     * mapped.
+     */
+    private void openTable(int versionsCount, int capacity, int[] pageVersions) throws IOException {
+        this.versionsCount = versionsCount;
+        this.slotSize = HEADER_SIZE + 8 * versionsCount;
+        this.capacity = capacity;
+        this.threshold = (int) (capacity * LOAD_FACTOR);
+        int pageSlots = Math.min(capacity, MAX_PAGE_SLOTS);
+        this.pageShift = Integer.numberOfTrailingZeros(pageSlots);
+        this.pageMask = pageSlots - 1;
+        this.pageBytes = (long) pageSlots * slotSize;
+        int pageCount = capacity / pageSlots;
+        if (pageVersions != null && pageVersions.length != pageCount) {
+            throw new IOException("Snapshot for alias [" + getAlias() + "] has [" + pageVersions.length
+                    + "] pages, expected [" + pageCount + "]");
+        }
+        this.pageVersions = pageVersions == null ? new int[pageCount] : pageVersions;
+        this.pageSaved = new boolean[pageCount];
+        this.pages = new MappedByteBuffer[pageCount];
+        for (int i = 0; i < pageCount; i++) {
+            pages[i] = mapPage(i, pageVersions == null);
+            pageSaved[i] = pageVersions != null;
+        }
+    }
+
+    private MappedByteBuffer mapPage(int index, boolean create) throws IOException {
+        File file = persister.getTableFile(getAlias(), generation, tableVersion, index, pageVersions[index]);
+        if (!create && file.length() != pageBytes) {
+            throw new IOException("Snapshot page file [" + file + "] is missing or has the wrong length");
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            if (create) {
+                raf.setLength(0);
+                raf.setLength(pageBytes);
+            }
+            // the mapping stays valid once the file is closed
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, pageBytes);
+        } finally {
+            closeFile(raf);
+        }
+    }
+
+    /**
+     * Returns the page of the given slot for writing, copying it into a new
+     * page file first if it is referenced by the last saved manifest.
+     */
+    private MappedByteBuffer writablePage(int slot) {
+        int index = slot >>> pageShift;
+        if (pageSaved[index]) {
+            MappedByteBuffer savedPage = pages[index];
+            pageVersions[index]++;
+            try {
+                pages[index] = mapPage(index, true);
+            } catch (IOException e) {
+                pageVersions[index]--;
+                throw new JdbcGpsDeviceException("Failed to copy snapshot page [" + index + "] for alias ["
+                        + getAlias() + "]", e);
+            }
+            ByteBuffer source = savedPage.duplicate();
+            source.clear();
+            ByteBuffer target = pages[index].duplicate();
+            target.clear();
+            target.put(source);
+            pageSaved[index] = false;
+        }
+        return pages[index];
+    }
+
+    private void copySlot(int fromSlot, int toSlot) {
+        MappedByteBuffer target = writablePage(toSlot);
+        MappedByteBuffer source = page(fromSlot);
+        int targetOffset = offset(toSlot);
+        int sourceOffset = offset(fromSlot);
+        for (int i = 0; i < slotSize; i += 8) {
+            target.putLong(targetOffset + i, source.getLong(sourceOffset + i));
+        }
+    }
+
+    private void openIds() throws IOException {
+        idsFile = new RandomAccessFile(persister.getIdsFile(getAlias(), generation), "rw");
+        idsWriteBuffer = ByteBuffer.allocate(IDS_BUFFER_SIZE);
+    }
+
+    private void resize() throws IOException {
+        MappedByteBuffer[] oldPages = pages;
+        int oldPageShift = pageShift;
+        int oldPageMask = pageMask;
+        int oldSlotSize = slotSize;
+        int oldCapacity = capacity;
+
+        tableVersion++;
+        openTable(versionsCount, capacity * 2, null);
+        marks = null;
+        for (int oldSlot = 0; oldSlot < oldCapacity; oldSlot++) {
+            MappedByteBuffer oldPage = oldPages[oldSlot >>> oldPageShift];
+            int oldOffset = (oldSlot & oldPageMask) * oldSlotSize;
+            long hash1 = oldPage.getLong(oldOffset);
+            if (hash1 == 0) {
+                continue;
+            }
+            long hash2 = oldPage.getLong(oldOffset + 8);
+            int slot = findSlot(hash1, hash2);
+            MappedByteBuffer page = page(slot);
+            int offset = offset(slot);
+            for (int i = 0; i < oldSlotSize; i += 8) {
+                page.putLong(offset + i, oldPage.getLong(oldOffset + i));
+            }
+        }
+        persister.deleteUnusedFiles();
+    }
+
+    private int findSlot(long hash1, long hash2) {
+        int mask = capacity - 1;
+        int slot = (int) mix(hash1) & mask;
+        while (true) {
+            MappedByteBuffer page = page(slot);
+            int offset = offset(slot);
+            long slotHash1 = page.getLong(offset);
+            if (slotHash1 == 0 || (slotHash1 == hash1 && page.getLong(offset + 8) == hash2)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private MappedByteBuffer page(int slot) {
+        return pages[slot >>> pageShift];
+    }
+
+    private int offset(int slot) {
+        return (slot & pageMask) * slotSize;
+    }
+
+    private void writeVersions(MappedByteBuffer page, int offset, List<Long> versions) {
+        for (int i = 0; i < versionsCount; i++) {
+            Long version = versions.get(i);
+            page.putLong(offset + HEADER_SIZE + i * 8, version == null ? NULL_VERSION : version);
+        }
+    }
+
+    private void readVersions(MappedByteBuffer page, int offset, JdbcAliasRowSnapshot row) {
+        for (int i = 0; i < versionsCount; i++) {
+            long version = page.getLong(offset + HEADER_SIZE + i * 8);
+            row.addVersionValue(version == NULL_VERSION ? null : version);
+        }
+    }
+
+    private void appendIds(List<String> ids) throws IOException {
+        byte[][] bytes = new byte[ids.size()][];
+        int length = 4;
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = toBytes(ids.get(i));
+            length += 4 + bytes[i].length;
+        }
+        if (idsWriteBuffer.remaining() < 4 + length) {
+            flushIds();
+            if (idsWriteBuffer.capacity() < 4 + length) {
+                idsWriteBuffer = ByteBuffer.allocate(4 + length);
+            }
+        }
+        idsWriteBuffer.putInt(length);
+        idsWriteBuffer.putInt(bytes.length);
+        for (byte[] id : bytes) {
+            idsWriteBuffer.putInt(id.length);
+            idsWriteBuffer.put(id);
+        }
+    }
+
+    private void flushIds() throws IOException {
+        if (idsWriteBuffer == null || idsWriteBuffer.position() == 0) {
+            return;
+        }
+        idsWriteBuffer.flip();
+        FileChannel channel = idsFile.getChannel();
+        while (idsWriteBuffer.hasRemaining()) {
+            idsFlushedLength += channel.write(idsWriteBuffer, idsFlushedLength);
+        }
+        idsWriteBuffer.clear();
+    }
+
+    private static byte[] toBytes(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 not supported");
+        }
+    }
+
+    private static String fromBytes(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 not supported");
+        }
+    }
+
+    private static void closeFile(RandomAccessFile file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            file.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * FNV-1a 64 bit hash of the ids.
+     */
+    static long hash1(List<String> ids) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < ids.size(); i++) {
+            String id = ids.get(i);
+            for (int j = 0; j < id.length(); j++) {
+                hash ^= id.charAt(j);
+                hash *= 0x100000001b3L;
+            }
+            hash ^= 0xffff;
+            hash *= 0x100000001b3L;
+        }
+        // 0 marks an empty slot
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * A second, independent, 64 bit hash of the ids.
+     */
+    static long hash2(List<String> ids) {
+        long hash = 0x9e3779b97f4a7c15L + ids.size();
+        for (int i = 0; i < ids.size(); i++) {
+            String id = ids.get(i);
+            for (int j = 0; j < id.length(); j++) {
+                hash = (hash + id.charAt(j)) * 0xc2b2ae3d27d4eb4fL;
+                hash = Long.rotateLeft(hash, 31);
+            }
+            hash = (hash + id.length()) * 0x165667b19e3779f9L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Iterates over the rows by reading the ids file sequentially, and looking
+     * up the versions of each row in the table. Entries of removed rows (and
+     * older entries of rows that were removed and put again) are skipped since
+     * the table no longer points to them.
+     */
+    private class RowIterator implements Iterator<JdbcAliasRowSnapshot> {
+
+        private final long end;
+
+        private final BitSet skipSlots;
+
+        private long position;
+
+        private long fileOffset;
+
+        private ByteBuffer buffer = ByteBuffer.allocate(IDS_BUFFER_SIZE);
+
+        private JdbcAliasRowSnapshot next;
+
+        RowIterator(long end, BitSet skipSlots) {
+            this.end = end;
+            this.skipSlots = skipSlots;
+            buffer.flip();
+        }
+
+        public boolean hasNext() {
+            while (next == null && position < end) {
+                next = readNext();
+            }
+            return next != null;
+        }
+
+        public JdbcAliasRowSnapshot next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            JdbcAliasRowSnapshot row = next;
+            next = null;
+            return row;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private JdbcAliasRowSnapshot readNext() {
+            long entryPosition = position;
+            JdbcAliasRowSnapshot row = new JdbcAliasRowSnapshot();
+            try {
+                ensure(4);
+                int length = buffer.getInt();
+                ensure(length);
+                position += 4 + length;
+                int count = buffer.getInt();
+                for (int i = 0; i < count; i++) {
+                    row.addIdValue(fromBytes(buffer, buffer.getInt()));
+                }
+            } catch (IOException e) {
+                throw new JdbcGpsDeviceException("Failed to read ids for alias [" + getAlias() + "]", e);
+            }
+            List<String> ids = row.getIds();
+            int slot = findSlot(hash1(ids), hash2(ids));
+            MappedByteBuffer page = page(slot);
+            int offset = offset(slot);
+            if (page.getLong(offset) == 0 || page.getLong(offset + 16) != entryPosition) {
+                return null;
+            }
+            if (skipSlots != null && skipSlots.get(slot)) {
+                return null;
+            }
+            readVersions(page, offset, row);
+            return row;
+        }
+
+        private void ensure(int length) throws IOException {
+            if (buffer.remaining() >= length) {
+                return;
+            }
+            if (buffer.capacity() < length) {
+                ByteBuffer newBuffer = ByteBuffer.allocate(length);
+                newBuffer.put(buffer);
+                buffer = newBuffer;
+            } else {
+                buffer.compact();
+            }
+            FileChannel channel = idsFile.getChannel();
+            while (buffer.position() < length) {
+                int read = channel.read(buffer, fileOffset);
+                if (read == -1) {
+                    throw new IOException("Unexpected end of ids file for alias [" + getAlias() + "]");
+                }
+                fileOffset += read;
+            }
+            buffer.flip();
+        }
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.compass.gps.device.jdbc.snapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.compass.gps.device.jdbc.JdbcGpsDeviceException;
+
+/**
+ * A memory mapped file based snapshot persister. Each alias snapshot is a
+ * {@link MMapJdbcAliasSnapshot}, holding its rows in memory mapped files
+ * within the directory set using {@link #setPath(String)}, and not on the
+ * heap.
+ * <p>
+ * Saving the snapshot forces the changed pages of each alias snapshot to the
+ * file system, and atomically replaces a small manifest file describing the
+ * saved alias snapshots (including the version of each table page). Files
+ * that are no longer used (replaced alias snapshots, pages that were copied
+ * on write, or tables that were resized) are deleted once they are no longer
+ * referenced by the manifest.
+ * <p>
+ * Since pages referenced by the saved manifest are never changed in place, a
+ * crash leaves the last saved snapshot intact, and files written after it
+ * are deleted when the snapshot is loaded. Changes mirrored after the last
+ * save are then simply detected again.
+ * <p>
+ * Note that the path set is the path to a directory (created if it does not
+ * exists).
+ *
+ * @author kimchy
+ */
+public class MMapJdbcSnapshotPersister implements JdbcSnapshotPersister {
+
+    private static final Log log = LogFactory.getLog(MMapJdbcSnapshotPersister.class);
+
+    private static final String MANIFEST_NAME = "snapshot.manifest";
+
+    private static final int MANIFEST_VERSION = 2;
+
+    private static final String TABLE_SUFFIX = ".tbl";
+
+    private static final String IDS_SUFFIX = ".ids";
+
+    private String path;
+
+    private int initialCapacity = 1024;
+
+    private long lastGeneration = System.currentTimeMillis();
+
+    private final Set<MMapJdbcAliasSnapshot> liveSnapshots = new HashSet<MMapJdbcAliasSnapshot>();
+
+    private Set<String> savedFiles = new HashSet<String>();
+
+    public MMapJdbcSnapshotPersister() {
+
+    }
+
+    public MMapJdbcSnapshotPersister(String path) {
+        this.path = path;
+    }
+
+    public synchronized JdbcSnapshot load() throws JdbcGpsDeviceException {
+        File dir = getDir();
+        File manifest = new File(dir, MANIFEST_NAME);
+        JdbcSnapshot snapshot = new JdbcSnapshot();
+        if (!manifest.exists()) {
+            if (log.isDebugEnabled()) {
+                log.debug("No snapshot data found at [" + path + "], creating a new one");
+            }
+            return snapshot;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(manifest)));
+            int version = in.readInt();
+            if (version != MANIFEST_VERSION) {
+                throw new JdbcGpsDeviceException("Unsupported snapshot manifest version [" + version + "] at ["
+                        + path + "]");
+            }
+            int count = in.readInt();
+            Set<String> files = new HashSet<String>();
+            for (int i = 0; i < count; i++) {
+                String alias = in.readUTF();
+                long generation = in.readLong();
+                int tableVersion = in.readInt();
+                int capacity = in.readInt();
+                int size = in.readInt();
+                int versionsCount = in.readInt();
+                long idsLength = in.readLong();
+                Long highWaterMark = null;
+                if (in.readBoolean()) {
+                    highWaterMark = in.readLong();
+                } else {
+                    in.readLong();
+                }
+                int[] pageVersions = new int[in.readInt()];
+                for (int j = 0; j < pageVersions.length; j++) {
+                    pageVersions[j] = in.readInt();
+                }
+                lastGeneration = Math.max(lastGeneration, generation);
+                MMapJdbcAliasSnapshot aliasSnapshot = new MMapJdbcAliasSnapshot(this, alias, generation,
+                        tableVersion, capacity, size, versionsCount, idsLength, highWaterMark, pageVersions);
+                liveSnapshots.add(aliasSnapshot);
+                files.addAll(aliasSnapshot.getFileNames());
+                snapshot.putAliasSnapshot(aliasSnapshot);
+                if (log.isDebugEnabled()) {
+                    log.debug("Loaded snapshot " + aliasSnapshot);
+                }
+            }
+            savedFiles = files;
+        } catch (IOException e) {
+            throw new JdbcGpsDeviceException("Failed to load jdbc snapshot from [" + path + "]", e);
+        } finally {
+            closeStream(in);
+        }
+        // delete files written after the last save (if the application crashed)
+        deleteUnusedFiles();
+        return snapshot;
+    }
+
+    public synchronized void save(JdbcSnapshot snapshot) throws JdbcGpsDeviceException {
+        if (snapshot == null) {
+            return;
+        }
+        File dir = getDir();
+        List<MMapJdbcAliasSnapshot> aliasSnapshots = new ArrayList<MMapJdbcAliasSnapshot>();
+        List<JdbcAliasSnapshot> toConvert = new ArrayList<JdbcAliasSnapshot>();
+        for (Iterator<JdbcAliasSnapshot> it = snapshot.aliasSnapshotIt(); it.hasNext();) {
+            JdbcAliasSnapshot aliasSnapshot = it.next();
+            if (aliasSnapshot instanceof MMapJdbcAliasSnapshot && liveSnapshots.contains(aliasSnapshot)) {
+                aliasSnapshots.add((MMapJdbcAliasSnapshot) aliasSnapshot);
+            } else {
+                toConvert.add(aliasSnapshot);
+            }
+        }
+        for (JdbcAliasSnapshot aliasSnapshot : toConvert) {
+            MMapJdbcAliasSnapshot converted = (MMapJdbcAliasSnapshot) createAliasSnapshot(aliasSnapshot.getAlias());
+            for (Iterator<JdbcAliasRowSnapshot> rowIt = aliasSnapshot.rowSnapshotIt(); rowIt.hasNext();) {
+                converted.putRow(rowIt.next());
+            }
+            converted.updateHighWaterMark(aliasSnapshot.getHighWaterMark());
+            snapshot.putAliasSnapshot(converted);
+            aliasSnapshots.add(converted);
+        }
+        File tmpManifest = new File(dir, MANIFEST_NAME + ".tmp");
+        Set<String> files = new HashSet<String>();
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpManifest)));
+            out.writeInt(MANIFEST_VERSION);
+            out.writeInt(aliasSnapshots.size());
+            for (MMapJdbcAliasSnapshot aliasSnapshot : aliasSnapshots) {
+                aliasSnapshot.flush();
+                out.writeUTF(aliasSnapshot.getAlias());
+                out.writeLong(aliasSnapshot.getGeneration());
+                out.writeInt(aliasSnapshot.getTableVersion());
+                out.writeInt(aliasSnapshot.getCapacity());
+                out.writeInt(aliasSnapshot.size());
+                out.writeInt(aliasSnapshot.getVersionsCount());
+                out.writeLong(aliasSnapshot.getIdsLength());
+                Long highWaterMark = aliasSnapshot.getHighWaterMark();
+                out.writeBoolean(highWaterMark != null);
+                out.writeLong(highWaterMark == null ? 0 : highWaterMark);
+                int[] pageVersions = aliasSnapshot.getPageVersions();
+                if (aliasSnapshot.getVersionsCount() == -1) {
+                    out.writeInt(0);
+                } else {
+                    out.writeInt(pageVersions.length);
+                    for (int pageVersion : pageVersions) {
+                        out.writeInt(pageVersion);
+                    }
+                }
+                files.addAll(aliasSnapshot.getFileNames());
+            }
+            out.close();
+            out = null;
+            File manifest = new File(dir, MANIFEST_NAME);
+            if (!tmpManifest.renameTo(manifest)) {
+                manifest.delete();
+                if (!tmpManifest.renameTo(manifest)) {
+                    throw new IOException("Failed to rename [" + tmpManifest + "] to [" + manifest + "]");
+                }
+            }
+        } catch (IOException e) {
+            throw new JdbcGpsDeviceException("Failed to save jdbc snapshot to [" + path + "]", e);
+        } finally {
+            closeStream(out);
+        }
+        savedFiles = files;
+        for (MMapJdbcAliasSnapshot aliasSnapshot : aliasSnapshots) {
+            aliasSnapshot.saved();
+        }
+        deleteUnusedFiles();
+        if (log.isDebugEnabled()) {
+            log.debug("Saved snapshot data to [" + path + "] with [" + aliasSnapshots.size() + "] aliases");
+        }
+    }
+
+    public synchronized JdbcAliasSnapshot createAliasSnapshot(String alias) throws JdbcGpsDeviceException {
+        getDir();
+        MMapJdbcAliasSnapshot aliasSnapshot = new MMapJdbcAliasSnapshot(this, alias, ++lastGeneration);
+        liveSnapshots.add(aliasSnapshot);
+        return aliasSnapshot;
+    }
+
+    /**
+     * Called by the alias snapshot once it is closed.
+     */
+    synchronized void released(MMapJdbcAliasSnapshot aliasSnapshot) {
+        liveSnapshots.remove(aliasSnapshot);
+        deleteUnusedFiles();
+    }
+
+    /**
+     * Deletes all the snapshot files that are not used by the last saved
+     * manifest or by open alias snapshots.
+     */
+    synchronized void deleteUnusedFiles() {
+        File[] files = new File(path).listFiles();
+        if (files == null) {
+            return;
+        }
+        Set<String> used = new HashSet<String>(savedFiles);
+        for (MMapJdbcAliasSnapshot aliasSnapshot : liveSnapshots) {
+            used.addAll(aliasSnapshot.getFileNames());
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(TABLE_SUFFIX) && !name.endsWith(IDS_SUFFIX)) {
+                continue;
+            }
+            if (used.contains(name)) {
+                continue;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Deleting unused snapshot file [" + file + "]");
+            }
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    File getTableFile(String alias, long generation, int tableVersion, int page, int pageVersion) {
+        return new File(path, fileName(alias) + "-" + generation + "-" + tableVersion + "-" + page + "-"
+                + pageVersion + TABLE_SUFFIX);
+    }
+
+    File getIdsFile(String alias, long generation) {
+        return new File(path, fileName(alias) + "-" + generation + IDS_SUFFIX);
+    }
+
+    private String fileName(String alias) {
+        StringBuilder sb = new StringBuilder(alias.length());
+        for (int i = 0; i < alias.length(); i++) {
+            char c = alias.charAt(i);
+            if (Character.isLetterOrDigit(c) || c == '_') {
+                sb.append(c);
+            } else {
+                sb.append('_');
+            }
+        }
+        return sb.toString();
+    }
+
+    private File getDir() throws JdbcGpsDeviceException {
+        File dir = new File(path);
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new JdbcGpsDeviceException("Failed to create snapshot directory [" + path + "]");
+        }
+        return dir;
+    }
+
+    private static void closeStream(Closeable stream) {
+        if (stream == null) {
+            return;
+        }
+        try {
+            stream.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Sets the directory the snapshot files will be stored at.
+     */
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public int getInitialCapacity() {
+        return initialCapacity;
+    }
+
+    /**
+     * Sets the initial number of slots of each alias snapshot table (rounded up
+     * to a power of two). Defaults to <code>1024</code>. The table is doubled
+     * once it is 70% full.
+     */
+    public void setInitialCapacity(int initialCapacity) {
+        int capacity = 16;
+        while (capacity < initialCapacity) {
+            capacity <<= 1;
+        }
+        this.initialCapacity = capacity;
+    }
+}
@@ -35,6 +35,13 @@ public class RAMJdbcSnapshotPersister implements JdbcSnapshotPersister {
         return jdbcSnapshot;
     }
 
+    /**
+     * Creates a new in memory alias snapshot.
+     */
+    public JdbcAliasSnapshot createAliasSnapshot(String alias) throws JdbcGpsDeviceException {
+        return new JdbcAliasSnapshot(alias);
+    }
+
     /**
      * Saves the snapshot to memory.
      */
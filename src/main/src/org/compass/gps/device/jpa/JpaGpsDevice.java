@@ -59,7 +59,9 @@ import org.compass.gps.device.support.parallel.IndexEntity;
  * <p>The indexing process itself is done through an implementation of
  * {@link org.compass.gps.device.jpa.indexer.JpaIndexEntitiesIndexer}. There are several implemenations
  * for it including a default one that uses plain JPA APIs. Specific implementations (such as Hibernate
- * and OpenJPA) are used for better performance.
+ * and OpenJPA) are used for better performance. The
+ * {@link org.compass.gps.device.jpa.indexer.KeysetJpaIndexEntitiesIndexer} pages by the entity id and
+ * prefetches the next pages, which performs better than plain JPA pagination for large tables.
  *
  * <p>Mirroring can be done in two ways. The first one is using JPA official API, implemeting
  * an Entity Lifecycle listener and specifing it for each entity class via annotations. Compass
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.compass.gps.device.jpa.indexer;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.persistence.EntityManager;
+import javax.persistence.Id;
+import javax.persistence.Query;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.compass.core.CompassSession;
+import org.compass.gps.device.jpa.EntityManagerWrapper;
+import org.compass.gps.device.jpa.JpaGpsDevice;
+import org.compass.gps.device.jpa.JpaGpsDeviceException;
+import org.compass.gps.device.jpa.JtaEntityManagerWrapper;
+import org.compass.gps.device.jpa.entities.EntityInformation;
+import org.compass.gps.device.jpa.queryprovider.DefaultJpaQueryProvider;
+import org.compass.gps.device.support.parallel.IndexEntity;
+import org.compass.gps.device.support.parallel.PrefetchingPageIterator;
+
+/**
+ * A JPA indexer that uses keyset pagination. Each page is loaded using a query ordered by the entity
+ * id and restricted to ids greater than the last id of the previous page, so the cost of loading a page
+ * does not grow with its position (as with <code>setFirstResult</code>).
+ *
+ * <p>Up to <code>prefetchPages</code> pages are loaded ahead by a dedicated thread, each using its own
+ * <code>EntityManager</code>, while the current page is indexed by the indexing thread. Since a JTA
+ * transaction is bound to the indexing thread, pages are not prefetched when using the
+ * {@link org.compass.gps.device.jpa.JtaEntityManagerWrapper} (<code>prefetchPages</code> should be set to
+ * <code>0</code> when using the default wrapper within a JTA environment).
+ *
+ * <p>The id property is detected using the <code>@Id</code> annotation of the entity class (or one of its
+ * super classes). Entities with no single annotated id, or that use a custom query provider, are indexed
+ * using the {@link #setFallbackIndexer(JpaIndexEntitiesIndexer) fallback indexer} (which defaults to
+ * {@link DefaultJpaIndexEntitiesIndexer}).
+ *
+ * @author kimchy
+ */
+public class KeysetJpaIndexEntitiesIndexer implements JpaIndexEntitiesIndexer {
+
+    private static final Log log = LogFactory.getLog(KeysetJpaIndexEntitiesIndexer.class);
+
+    private JpaGpsDevice jpaGpsDevice;
+
+    private int prefetchPages = 1;
+
+    private JpaIndexEntitiesIndexer fallbackIndexer = new DefaultJpaIndexEntitiesIndexer();
+
+    private final Map<Class<?>, IdAccessor> idAccessors = new ConcurrentHashMap<Class<?>, IdAccessor>();
+
+    public void setJpaGpsDevice(JpaGpsDevice jpaGpsDevice) {
+        this.jpaGpsDevice = jpaGpsDevice;
+        fallbackIndexer.setJpaGpsDevice(jpaGpsDevice);
+    }
+
+    /**
+     * Sets the number of pages that are loaded ahead while the current page is indexed. Defaults
+     * to <code>1</code>. <code>0</code> means that pages are loaded by the indexing thread.
+     */
+    public void setPrefetchPages(int prefetchPages) {
+        this.prefetchPages = prefetchPages;
+    }
+
+    /**
+     * Sets the indexer used for entities that can not be indexed using keyset pagination. Defaults
+     * to {@link DefaultJpaIndexEntitiesIndexer}.
+     */
+    public void setFallbackIndexer(JpaIndexEntitiesIndexer fallbackIndexer) {
+        this.fallbackIndexer = fallbackIndexer;
+    }
+
+    public void performIndex(CompassSession session, IndexEntity[] entities) {
+        for (IndexEntity indexEntity : entities) {
+            EntityInformation entityInformation = (EntityInformation) indexEntity;
+            if (jpaGpsDevice.isFilteredForIndex(entityInformation.getName())) {
+                continue;
+            }
+            if (!jpaGpsDevice.isRunning()) {
+                return;
+            }
+            IdAccessor idAccessor = null;
+            if (entityInformation.getQueryProvider() instanceof DefaultJpaQueryProvider
+                    && ((DefaultJpaQueryProvider) entityInformation.getQueryProvider()).isUsingDefaultSelectQuery()) {
+                idAccessor = getIdAccessor(entityInformation.getEntityClass());
+            }
+            if (idAccessor == null) {
+                if (log.isDebugEnabled()) {
+                    log.debug(jpaGpsDevice.buildMessage("Entity [" + entityInformation.getName()
+                            + "] can not be indexed using keyset pagination, using [" + fallbackIndexer + "]"));
+                }
+                fallbackIndexer.performIndex(session, new IndexEntity[]{entityInformation});
+                continue;
+            }
+            performIndex(session, entityInformation, idAccessor);
+        }
+    }
+
+    private void performIndex(CompassSession session, EntityInformation entityInformation, IdAccessor idAccessor) {
+        int prefetchPages = this.prefetchPages;
+        if (jpaGpsDevice.getEntityManagerWrapper() instanceof JtaEntityManagerWrapper) {
+            prefetchPages = 0;
+        }
+        PrefetchingPageIterator<Page> pages = new PrefetchingPageIterator<Page>(entityInformation.getName(),
+                new KeysetPageLoader(entityInformation, idAccessor), prefetchPages);
+        Page page = null;
+        try {
+            while ((page = pages.next()) != null) {
+                if (!jpaGpsDevice.isRunning()) {
+                    return;
+                }
+                for (Object result : page.results) {
+                    session.create(result);
+                }
+                session.evictAll();
+                Page indexed = page;
+                page = null;
+                indexed.wrapper.getEntityManager().clear();
+                indexed.wrapper.close();
+            }
+        } catch (Exception e) {
+            log.error(jpaGpsDevice.buildMessage("Failed to index the database"), e);
+            if (!(e instanceof JpaGpsDeviceException)) {
+                throw new JpaGpsDeviceException(jpaGpsDevice.buildMessage("Failed to index the database"), e);
+            }
+            throw (JpaGpsDeviceException) e;
+        } finally {
+            if (page != null) {
+                page.wrapper.closeOnError();
+            }
+            pages.close();
+        }
+    }
+
+    private IdAccessor getIdAccessor(Class<?> entityClass) {
+        IdAccessor idAccessor = idAccessors.get(entityClass);
+        if (idAccessor == null) {
+            idAccessor = IdAccessor.create(entityClass);
+            if (idAccessor == null) {
+                idAccessor = IdAccessor.NONE;
+            }
+            idAccessors.put(entityClass, idAccessor);
+        }
+        if (idAccessor == IdAccessor.NONE) {
+            return null;
+        }
+        return idAccessor;
+    }
+
+    public String toString() {
+        return "KeysetJpaIndexEntitiesIndexer prefetchPages [" + prefetchPages + "]";
+    }
+
+    private class KeysetPageLoader implements PrefetchingPageIterator.PageLoader<Page> {
+
+        private final EntityInformation entityInformation;
+
+        private final IdAccessor idAccessor;
+
+        private KeysetPageLoader(EntityInformation entityInformation, IdAccessor idAccessor) {
+            this.entityInformation = entityInformation;
+            this.idAccessor = idAccessor;
+        }
+
+        public Page loadPage(Page previous) throws Exception {
+            int fetchCount = jpaGpsDevice.getFetchCount();
+            if (previous != null && previous.size < fetchCount) {
+                return null;
+            }
+            Page page = new Page();
+            page.wrapper = jpaGpsDevice.getEntityManagerWrapper().newInstance();
+            try {
+                page.wrapper.open();
+                EntityManager entityManager = page.wrapper.getEntityManager();
+                if (log.isDebugEnabled()) {
+                    log.debug(jpaGpsDevice.buildMessage("Indexing entities [" + entityInformation.getName()
+                            + "] page with " + idAccessor.name + " greater than ["
+                            + (previous == null ? null : previous.lastId) + "]"));
+                }
+                StringBuilder sb = new StringBuilder();
+                sb.append("select x from ").append(entityInformation.getName()).append(" x");
+                if (previous != null) {
+                    sb.append(" where x.").append(idAccessor.name).append(" > :lastId");
+                }
+                sb.append(" order by x.").append(idAccessor.name);
+                Query query = entityManager.createQuery(sb.toString());
+                if (previous != null) {
+                    query.setParameter("lastId", previous.lastId);
+                }
+                query.setMaxResults(fetchCount);
+                page.results = query.getResultList();
+                page.size = page.results.size();
+                if (page.size == 0) {
+                    page.wrapper.close();
+                    return null;
+                }
+                page.lastId = idAccessor.getId(page.results.get(page.size - 1));
+                return page;
+            } catch (Exception e) {
+                page.wrapper.closeOnError();
+                throw e;
+            }
+        }
+
+        public void releasePage(Page page) {
+            page.wrapper.closeOnError();
+        }
+    }
+
+    private static class Page {
+
+        EntityManagerWrapper wrapper;
+
+        List results;
+
+        int size;
+
+        Object lastId;
+    }
+
+    /**
+     * Reads the id of an entity using its <code>@Id</code> annotated field or getter.
+     */
+    private static class IdAccessor {
+
+        static final IdAccessor NONE = new IdAccessor(null, null, null);
+
+        final String name;
+
+        final Field field;
+
+        final Method getter;
+
+        private IdAccessor(String name, Field field, Method getter) {
+            this.name = name;
+            this.field = field;
+            this.getter = getter;
+        }
+
+        Object getId(Object entity) throws Exception {
+            if (field != null) {
+                return field.get(entity);
+            }
+            return getter.invoke(entity);
+        }
+
+        static IdAccessor create(Class<?> clazz) {
+            IdAccessor idAccessor = null;
+            for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (field.isAnnotationPresent(Id.class)) {
+                        if (idAccessor != null) {
+                            // composite id
+                            return null;
+                        }
+                        field.setAccessible(true);
+                        idAccessor = new IdAccessor(field.getName(), field, null);
+                    }
+                }
+                for (Method method : c.getDeclaredMethods()) {
+                    if (method.isAnnotationPresent(Id.class) && method.getParameterTypes().length == 0) {
+                        if (idAccessor != null) {
+                            return null;
+                        }
+                        String name = method.getName();
+                        if (name.startsWith("get")) {
+                            name = name.substring(3);
+                        } else if (name.startsWith("is")) {
+                            name = name.substring(2);
+                        } else {
+                            return null;
+                        }
+                        name = Character.toLowerCase(name.charAt(0)) + name.substring(1);
+                        method.setAccessible(true);
+                        idAccessor = new IdAccessor(name, null, method);
+                    }
+                }
+            }
+            return idAccessor;
+        }
+    }
+}
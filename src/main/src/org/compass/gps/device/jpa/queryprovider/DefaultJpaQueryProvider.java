@@ -66,7 +66,7 @@ public class DefaultJpaQueryProvider implements JpaQueryProvider {
         return entityManager.createQuery("select x from " + entityInformation.getName() + " x");
     }
 
-    protected boolean isUsingDefaultSelectQuery() {
+    public boolean isUsingDefaultSelectQuery() {
         return this.isUsingDefaultSelectQuery;
     }
 
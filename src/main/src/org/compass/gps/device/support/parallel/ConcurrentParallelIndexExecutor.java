@@ -100,28 +100,62 @@ public class ConcurrentParallelIndexExecutor implements ParallelIndexExecutor {
             }
             throw new IllegalArgumentException("No entities listed to be indexed, have you defined your entities correctly?");
         }
+        ArrayList tasks = new ArrayList();
+        for (int i = 0; i < entities.length; i++) {
+            final IndexEntity[] indexEntities = entities[i];
+            tasks.add(new Callable() {
+                public Object call() throws Exception {
+                    compassGps.executeForIndex(new CompassCallbackWithoutResult() {
+                        protected void doInCompassWithoutResult(CompassSession session) throws CompassException {
+                            performIndex(session, indexEntities, indexEntitiesIndexer);
+                            session.flush();
+                        }
+                    });
+                    return null;
+                }
+            });
+        }
+        invokeAll(tasks);
+    }
+
+    /**
+     * Performs the indexing process of the groups of index entities using the provided session instead of
+     * opening a session per group, with the same number of threads as
+     * {@link #performIndex(IndexEntity[][], IndexEntitiesIndexer, org.compass.gps.spi.CompassGpsInterfaceDevice)}.
+     * Since all the groups are indexed within the same transaction, groups that are indexed into the same sub
+     * indexes can be indexed in parallel. The session is used by several threads and must be thread safe (i.e.
+     * use the <code>mt</code> transaction processor).
+     *
+     * @param session              The (thread safe) session to index all the groups with
+     * @param entities             The partitioned index entities groups and index entities to index
+     * @param indexEntitiesIndexer The entities indexer to use
+     */
+    public void performIndex(final CompassSession session, final IndexEntity[][] entities,
+                             final IndexEntitiesIndexer indexEntitiesIndexer) {
+        if (entities.length <= 0) {
+            return;
+        }
+        ArrayList tasks = new ArrayList();
+        for (int i = 0; i < entities.length; i++) {
+            final IndexEntity[] indexEntities = entities[i];
+            tasks.add(new Callable() {
+                public Object call() throws Exception {
+                    performIndex(session, indexEntities, indexEntitiesIndexer);
+                    return null;
+                }
+            });
+        }
+        invokeAll(tasks);
+    }
+
+    private void invokeAll(List tasks) {
         int maxThreads = this.maxThreads;
-        if (maxThreads == -1) {
-            maxThreads = entities.length;
+        if (maxThreads == -1 || maxThreads > tasks.size()) {
+            maxThreads = tasks.size();
         }
         ExecutorService executorService = Executors.newFixedThreadPool(maxThreads,
                 new NamedThreadFactory("Compass Gps Index", false));
         try {
-            ArrayList tasks = new ArrayList();
-            for (int i = 0; i < entities.length; i++) {
-                final IndexEntity[] indexEntities = entities[i];
-                tasks.add(new Callable() {
-                    public Object call() throws Exception {
-                        compassGps.executeForIndex(new CompassCallbackWithoutResult() {
-                            protected void doInCompassWithoutResult(CompassSession session) throws CompassException {
-                                indexEntitiesIndexer.performIndex(session, indexEntities);
-                                session.flush();
-                            }
-                        });
-                        return null;
-                    }
-                });
-            }
             List futures;
             try {
                 futures = executorService.invokeAll(tasks);
@@ -144,4 +178,13 @@ public class ConcurrentParallelIndexExecutor implements ParallelIndexExecutor {
         }
     }
 
+    /**
+     * Indexes a single group of index entities using the given session. Called from the
+     * thread assigned to the group.
+     */
+    protected void performIndex(CompassSession session, IndexEntity[] indexEntities,
+                                IndexEntitiesIndexer indexEntitiesIndexer) {
+        indexEntitiesIndexer.performIndex(session, indexEntities);
+    }
+
 }
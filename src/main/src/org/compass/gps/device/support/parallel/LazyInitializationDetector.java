@@ -0,0 +1,40 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.compass.gps.device.support.parallel;
+
+/**
+ * Detects lazy (not yet loaded) state of objects loaded by an ORM tool, used by
+ * {@link PipelinedParallelIndexExecutor} to only hand over fully initialized objects to
+ * its marshalling threads.
+ *
+ * @author kimchy
+ */
+public interface LazyInitializationDetector {
+
+    /**
+     * Returns <code>true</code> if the given value is a lazy proxy or a lazy collection
+     * that was not initialized yet.
+     */
+    boolean isUninitialized(Object value);
+
+    /**
+     * Returns the actual object wrapped by the given (initialized) proxy, or the value
+     * itself if it is not a proxy.
+     */
+    Object unproxy(Object value);
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.compass.gps.device.support.parallel;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.compass.core.CompassException;
+import org.compass.core.Resource;
+import org.compass.core.events.FilterOperation;
+import org.compass.core.impl.ExistingCompassSession;
+import org.compass.core.marshall.MarshallingStrategy;
+import org.compass.core.spi.DirtyOperationContext;
+import org.compass.core.spi.InternalCompassSession;
+import org.compass.core.util.concurrent.NamedThreadFactory;
+import org.compass.gps.CompassGpsException;
+
+/**
+ * A session used by {@link PipelinedParallelIndexExecutor} that marshalls created objects using a
+ * pool of marshalling threads.
+ *
+ * <p>The thread that owns the session (the fetch stage) hands created objects over to the marshalling
+ * threads, up to <code>queueSize</code> objects in flight. Only marshalling the object into its resource
+ * is done by the marshalling threads. The marshalled resources are handed back to the owning thread, which
+ * creates them using the session create operation (including the first level cache, cascading and the
+ * duplicate operations check), and keeps the search engine (and its transaction) confined to it. With a
+ * concurrent transaction processor (such as the default lucene one) this only queues the resource for the
+ * processor threads, which analyze and write it.
+ *
+ * <p>Any other dirty operation, flush or eviction first waits for all the in flight objects, so an indexer
+ * can safely clear (or close) its ORM session after calling {@link #evictAll()}.
+ *
+ * <p>Note, marshalling runs concurrently with the owning thread (which keeps fetching using the ORM
+ * session), so marshalling threads must never initialize lazy state. When a {@link LazyInitializationDetector}
+ * is set, the object graph of each created object is checked (by its fields) before it is handed over, and
+ * objects with uninitialized proxies or collections are marshalled and created by the owning thread instead.
+ * Without one, objects must be fully initialized once they are loaded (for example, using eager fetching or
+ * fetch joins in the indexer queries).
+ *
+ * @author kimchy
+ */
+class PipelinedIndexCompassSession extends ExistingCompassSession {
+
+    private final InternalCompassSession session;
+
+    private final ExecutorService marshallExecutor;
+
+    private final BlockingQueue<Marshalled> marshalled = new LinkedBlockingQueue<Marshalled>();
+
+    private final int queueSize;
+
+    private final LazyInitializationDetector lazyInitializationDetector;
+
+    private final Map<Class, Field[]> fieldsCache = new HashMap<Class, Field[]>();
+
+    private int inFlight;
+
+    private boolean closed;
+
+    PipelinedIndexCompassSession(InternalCompassSession session, String name, int marshallThreads, int queueSize,
+                                 LazyInitializationDetector lazyInitializationDetector) {
+        super(session);
+        this.session = session;
+        this.queueSize = queueSize;
+        this.lazyInitializationDetector = lazyInitializationDetector;
+        this.marshallExecutor = Executors.newFixedThreadPool(marshallThreads,
+                new NamedThreadFactory("Compass Gps Marshall [" + name + "]", true));
+    }
+
+    public void create(Object obj) throws CompassException {
+        if (!isFullyInitialized(obj)) {
+            super.create(obj);
+            return;
+        }
+        submit(null, obj);
+    }
+
+    public void create(String alias, Object obj) throws CompassException {
+        if (!isFullyInitialized(obj)) {
+            super.create(alias, obj);
+            return;
+        }
+        submit(alias, obj);
+    }
+
+    public void save(Object obj) throws CompassException {
+        waitForMarshalled();
+        super.save(obj);
+    }
+
+    public void save(String alias, Object obj) throws CompassException {
+        waitForMarshalled();
+        super.save(alias, obj);
+    }
+
+    public void delete(Object obj) throws CompassException {
+        waitForMarshalled();
+        super.delete(obj);
+    }
+
+    public void delete(String alias, Object obj) throws CompassException {
+        waitForMarshalled();
+        super.delete(alias, obj);
+    }
+
+    public void flush() throws CompassException {
+        waitForMarshalled();
+        super.flush();
+    }
+
+    public void flushCommit(String... aliases) throws CompassException {
+        waitForMarshalled();
+        super.flushCommit(aliases);
+    }
+
+    public void evict(Object obj) {
+        waitForMarshalled();
+        super.evict(obj);
+    }
+
+    public void evictAll() {
+        waitForMarshalled();
+        super.evictAll();
+    }
+
+    /**
+     * Waits for all the in flight objects to be marshalled and created in the search engine.
+     */
+    public void waitForMarshalled() throws CompassException {
+        while (inFlight > 0) {
+            Marshalled m;
+            try {
+                m = marshalled.take();
+            } catch (InterruptedException e) {
+                throw new CompassGpsException("Interrupted while waiting for marshalled objects", e);
+            }
+            process(m);
+        }
+    }
+
+    /**
+     * Stops the marshalling threads. Objects that are still in flight are discarded.
+     */
+    public void shutdown() {
+        closed = true;
+        marshallExecutor.shutdownNow();
+        marshalled.clear();
+        inFlight = 0;
+    }
+
+    /**
+     * Returns <code>true</code> if marshalling the object will not initialize any lazy state (using the ORM
+     * session), which means none of the objects reachable from its fields (including collections, maps and
+     * arrays) is an uninitialized proxy or collection.
+     */
+    private boolean isFullyInitialized(Object obj) {
+        if (lazyInitializationDetector == null) {
+            return true;
+        }
+        return isFullyInitialized(obj, new IdentityHashMap<Object, Object>());
+    }
+
+    private boolean isFullyInitialized(Object value, Map<Object, Object> visited) {
+        if (value == null) {
+            return true;
+        }
+        if (lazyInitializationDetector.isUninitialized(value)) {
+            return false;
+        }
+        value = lazyInitializationDetector.unproxy(value);
+        if (visited.put(value, value) != null) {
+            return true;
+        }
+        if (value instanceof Collection) {
+            for (Object element : (Collection) value) {
+                if (!isFullyInitialized(element, visited)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (value instanceof Map) {
+            for (Object entry : ((Map) value).entrySet()) {
+                if (!isFullyInitialized(((Map.Entry) entry).getKey(), visited)
+                        || !isFullyInitialized(((Map.Entry) entry).getValue(), visited)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (value instanceof Object[]) {
+            for (Object element : (Object[]) value) {
+                if (!isFullyInitialized(element, visited)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        Field[] fields = getFields(value.getClass());
+        if (fields == null) {
+            return false;
+        }
+        for (Field field : fields) {
+            try {
+                if (!isFullyInitialized(field.get(value), visited)) {
+                    return false;
+                }
+            } catch (IllegalAccessException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the non static, non primitive fields of the given class (excluding the ones declared by
+     * <code>java</code> classes), or <code>null</code> if they can not be accessed.
+     */
+    private Field[] getFields(Class clazz) {
+        if (fieldsCache.containsKey(clazz)) {
+            return fieldsCache.get(clazz);
+        }
+        Field[] fields;
+        try {
+            List<Field> fieldsList = new ArrayList<Field>();
+            for (Class c = clazz; c != null && !c.getName().startsWith("java."); c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    fieldsList.add(field);
+                }
+            }
+            fields = fieldsList.toArray(new Field[fieldsList.size()]);
+        } catch (RuntimeException e) {
+            fields = null;
+        }
+        fieldsCache.put(clazz, fields);
+        return fields;
+    }
+
+    private void submit(String alias, Object obj) throws CompassException {
+        if (closed) {
+            throw new IllegalStateException("Pipelined session already shut down");
+        }
+        if (session.getCompass().getEventManager().onPreCreate(alias, obj) == FilterOperation.YES) {
+            return;
+        }
+        while (inFlight >= queueSize) {
+            try {
+                process(marshalled.take());
+            } catch (InterruptedException e) {
+                throw new CompassGpsException("Interrupted while waiting for marshalled objects", e);
+            }
+        }
+        inFlight++;
+        marshallExecutor.execute(new MarshallTask(alias, obj, session.getMarshallingStrategy()));
+        // opportunistically write the already marshalled resources
+        for (Marshalled m = marshalled.poll(); m != null; m = marshalled.poll()) {
+            process(m);
+        }
+    }
+
+    private void process(Marshalled m) throws CompassException {
+        inFlight--;
+        if (m.failure != null) {
+            if (m.failure instanceof CompassException) {
+                throw (CompassException) m.failure;
+            }
+            throw new CompassGpsException("Failed to marshall [" + m.obj + "]", m.failure);
+        }
+        // the object pre create event was already fired when it was submitted
+        session.create(m.alias, m.obj, m.resource, new DirtyOperationContext());
+    }
+
+    private static class Marshalled {
+
+        final String alias;
+
+        final Object obj;
+
+        Resource resource;
+
+        Throwable failure;
+
+        Marshalled(String alias, Object obj) {
+            this.alias = alias;
+            this.obj = obj;
+        }
+    }
+
+    private class MarshallTask implements Runnable {
+
+        private final Marshalled m;
+
+        private final MarshallingStrategy marshallingStrategy;
+
+        MarshallTask(String alias, Object obj, MarshallingStrategy marshallingStrategy) {
+            this.m = new Marshalled(alias, obj);
+            this.marshallingStrategy = marshallingStrategy;
+        }
+
+        public void run() {
+            try {
+                if (m.alias == null) {
+                    m.resource = marshallingStrategy.marshall(m.obj);
+                } else {
+                    m.resource = marshallingStrategy.marshall(m.alias, m.obj);
+                }
+            } catch (Throwable t) {
+                m.failure = t;
+            }
+            marshalled.add(m);
+        }
+    }
+}
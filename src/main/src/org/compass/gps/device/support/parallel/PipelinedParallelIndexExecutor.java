@@ -0,0 +1,137 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.compass.gps.device.support.parallel;
+
+import org.compass.core.CompassSession;
+import org.compass.core.impl.ExistingCompassSession;
+import org.compass.core.spi.InternalCompassSession;
+import org.compass.core.util.ClassUtils;
+import org.compass.gps.device.hibernate.HibernateLazyInitializationDetector;
+
+/**
+ * <p>A concurrent index executor that pipelines the indexing of each entities group into three stages:
+ * fetching the entities (done by the {@link IndexEntitiesIndexer} on the group thread), marshalling them
+ * into resources (done by <code>marshallThreads</code> threads per group), and analyzing and writing the
+ * resources into the index (done by the transaction processor of the index compass).
+ *
+ * <p>At most <code>queueSize</code> objects per group are handed over to the marshalling stage at any
+ * given time. The write stage is bounded and configured by the transaction processor settings of the
+ * gps index compass (for the default lucene transaction processor, the <code>concurrencyLevel</code>
+ * and <code>backlog</code> settings, see {@link org.compass.gps.impl.SingleCompassGps#setIndexSettings(java.util.Map)}).
+ * Since the pipeline of each group is drained before its transaction commits, the index is swapped only
+ * once all the entities were written.
+ *
+ * <p>Only marshalling is done by the marshalling threads. The marshalled resources are created (including
+ * cascading and the first level cache) by the group thread. Indexers wait for the marshalling stage whenever
+ * they evict or flush the session.
+ *
+ * <p>Note, marshalling threads must not initialize lazy associations of the indexed entities, even with a
+ * single marshalling thread, since marshalling runs concurrently with the group thread fetching more entities
+ * using the same (not thread safe) ORM session. Entities with uninitialized proxies or collections, as detected
+ * by the {@link LazyInitializationDetector} (by default, the Hibernate one if Hibernate is in the classpath),
+ * are marshalled by the group thread instead, so they should be fully initialized when loaded (for example,
+ * using eager fetching or fetch joins) in order to benefit from the pipeline.
+ *
+ * @author kimchy
+ */
+public class PipelinedParallelIndexExecutor extends ConcurrentParallelIndexExecutor {
+
+    private int marshallThreads = 1;
+
+    private int queueSize = 100;
+
+    private LazyInitializationDetector lazyInitializationDetector;
+
+    /**
+     * Constructs a new pipelined index executor with <code>maxThreads</code> defaults to -1
+     * and a single marshalling thread per entities group.
+     */
+    public PipelinedParallelIndexExecutor() {
+        lazyInitializationDetector = defaultLazyInitializationDetector();
+    }
+
+    /**
+     * Constructs a new pipelined index executor with the given max threads and the given number
+     * of marshalling threads per entities group.
+     *
+     * @param maxThreads      The number of threads to use or -1 for dynamic threads
+     * @param marshallThreads The number of marshalling threads per entities group
+     */
+    public PipelinedParallelIndexExecutor(int maxThreads, int marshallThreads) {
+        super(maxThreads);
+        setMarshallThreads(marshallThreads);
+        lazyInitializationDetector = defaultLazyInitializationDetector();
+    }
+
+    /**
+     * Sets the number of marshalling threads per entities group. Defaults to <code>1</code>.
+     */
+    public void setMarshallThreads(int marshallThreads) {
+        if (marshallThreads < 1) {
+            throw new IllegalArgumentException("marshallThreads must be greater than 0");
+        }
+        this.marshallThreads = marshallThreads;
+    }
+
+    /**
+     * Sets the maximum number of objects per entities group that are handed over to the marshalling
+     * stage and not yet written. Defaults to <code>100</code>.
+     */
+    public void setQueueSize(int queueSize) {
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("queueSize must be greater than 0");
+        }
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * Sets the detector of lazy state used to find entities that can not be marshalled by the marshalling
+     * threads. Defaults to {@link org.compass.gps.device.hibernate.HibernateLazyInitializationDetector} if
+     * Hibernate is in the classpath. Set it to <code>null</code> only when the indexed entities are known to
+     * be fully initialized.
+     */
+    public void setLazyInitializationDetector(LazyInitializationDetector lazyInitializationDetector) {
+        this.lazyInitializationDetector = lazyInitializationDetector;
+    }
+
+    protected void performIndex(CompassSession session, IndexEntity[] indexEntities,
+                                IndexEntitiesIndexer indexEntitiesIndexer) {
+        InternalCompassSession internalSession = (InternalCompassSession) session;
+        if (internalSession instanceof ExistingCompassSession) {
+            internalSession = ((ExistingCompassSession) internalSession).getActualSession();
+        }
+        PipelinedIndexCompassSession pipelinedSession = new PipelinedIndexCompassSession(internalSession,
+                Thread.currentThread().getName(), marshallThreads, queueSize, lazyInitializationDetector);
+        try {
+            indexEntitiesIndexer.performIndex(pipelinedSession, indexEntities);
+            pipelinedSession.waitForMarshalled();
+        } finally {
+            pipelinedSession.shutdown();
+        }
+    }
+
+    private static LazyInitializationDetector defaultLazyInitializationDetector() {
+        try {
+            ClassUtils.forName("org.hibernate.Hibernate", PipelinedParallelIndexExecutor.class.getClassLoader());
+            return new HibernateLazyInitializationDetector();
+        } catch (Throwable e) {
+            // not in the classpath
+            return null;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.compass.gps.device.support.parallel;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.compass.core.util.concurrent.NamedThreadFactory;
+import org.compass.gps.CompassGpsException;
+
+/**
+ * Iterates over pages of data loaded by a {@link PageLoader}, loading up to <code>prefetchPages</code>
+ * pages ahead using a dedicated loader thread. This allows to load the next pages from the database
+ * while the current page is indexed by the calling thread.
+ *
+ * <p>Pages are handed over from the loader thread to the calling thread, and the loader never accesses
+ * a page after it was handed over, except for the values captured by the page itself (such as the last
+ * id used to load the next page). With <code>prefetchPages</code> set to <code>0</code>, pages are
+ * loaded by the calling thread.
+ *
+ * @author kimchy
+ */
+public class PrefetchingPageIterator<T> {
+
+    private static final Log log = LogFactory.getLog(PrefetchingPageIterator.class);
+
+    /**
+     * Loads pages of data.
+     */
+    public static interface PageLoader<T> {
+
+        /**
+         * Loads the page following the given one (<code>null</code> for the first page). Returns
+         * <code>null</code> if there are no more pages.
+         */
+        T loadPage(T previous) throws Exception;
+
+        /**
+         * Releases a loaded page that will not be handed over to the calling thread (for example,
+         * when the iterator is closed before all the pages were consumed).
+         */
+        void releasePage(T page);
+    }
+
+    private static final Object END = new Object();
+
+    private final PageLoader<T> pageLoader;
+
+    private final BlockingQueue<Object> queue;
+
+    private Thread loaderThread;
+
+    private volatile Throwable failure;
+
+    private volatile boolean closed;
+
+    private T lastPage;
+
+    private boolean done;
+
+    public PrefetchingPageIterator(String name, PageLoader<T> pageLoader, int prefetchPages) {
+        this.pageLoader = pageLoader;
+        if (prefetchPages > 0) {
+            queue = new ArrayBlockingQueue<Object>(prefetchPages);
+            loaderThread = new NamedThreadFactory("Compass Gps Prefetch [" + name + "]", true).newThread(new Runnable() {
+                public void run() {
+                    load();
+                }
+            });
+            loaderThread.start();
+        } else {
+            queue = null;
+        }
+    }
+
+    /**
+     * Returns the next page, or <code>null</code> if there are no more pages.
+     */
+    public T next() throws CompassGpsException {
+        if (done) {
+            return null;
+        }
+        if (queue == null) {
+            try {
+                lastPage = pageLoader.loadPage(lastPage);
+            } catch (Exception e) {
+                done = true;
+                if (e instanceof CompassGpsException) {
+                    throw (CompassGpsException) e;
+                }
+                throw new CompassGpsException("Failed to load page", e);
+            }
+            if (lastPage == null) {
+                done = true;
+            }
+            return lastPage;
+        }
+        Object page;
+        try {
+            page = queue.take();
+        } catch (InterruptedException e) {
+            throw new CompassGpsException("Failed to load page, interrupted", e);
+        }
+        if (page == END) {
+            done = true;
+            Throwable t = failure;
+            if (t != null) {
+                if (t instanceof CompassGpsException) {
+                    throw (CompassGpsException) t;
+                }
+                throw new CompassGpsException("Failed to load page", t);
+            }
+            return null;
+        }
+        return (T) page;
+    }
+
+    /**
+     * Stops the loader thread, and releases any page that was loaded but not returned by
+     * {@link #next()}.
+     */
+    public void close() {
+        closed = true;
+        done = true;
+        if (loaderThread == null) {
+            return;
+        }
+        loaderThread.interrupt();
+        try {
+            loaderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Object page = queue.poll(); page != null; page = queue.poll()) {
+            if (page != END) {
+                releasePage((T) page);
+            }
+        }
+    }
+
+    private void load() {
+        T page = null;
+        try {
+            while (!closed) {
+                page = pageLoader.loadPage(page);
+                if (page == null) {
+                    break;
+                }
+                queue.put(page);
+            }
+        } catch (InterruptedException e) {
+            // closed while waiting for the pages to be consumed
+            releasePage(page);
+            return;
+        } catch (Throwable t) {
+            failure = t;
+        }
+        try {
+            queue.put(END);
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+
+    private void releasePage(T page) {
+        if (page == null) {
+            return;
+        }
+        try {
+            pageLoader.releasePage(page);
+        } catch (Exception e) {
+            log.warn("Failed to release page, ignoring", e);
+        }
+    }
+}
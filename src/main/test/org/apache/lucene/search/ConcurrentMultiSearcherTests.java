@@ -0,0 +1,137 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.lucene.search;
+
+import java.io.IOException;
+
+import junit.framework.TestCase;
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.RAMDirectory;
+import org.compass.core.config.CompassSettings;
+import org.compass.core.executor.DefaultExecutorManager;
+
+/**
+ * @author kimchy
+ */
+public class ConcurrentMultiSearcherTests extends TestCase {
+
+    private static final int NUMBER_OF_SEARCHERS = 5;
+
+    private DefaultExecutorManager executorManager;
+
+    private Searchable[] searchables;
+
+    protected void setUp() throws Exception {
+        executorManager = new DefaultExecutorManager();
+        executorManager.configure(new CompassSettings());
+        searchables = new Searchable[NUMBER_OF_SEARCHERS];
+        int id = 0;
+        for (int i = 0; i < NUMBER_OF_SEARCHERS; i++) {
+            RAMDirectory dir = new RAMDirectory();
+            IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.UNLIMITED);
+            for (int j = 0; j < 20 + i * 3; j++) {
+                Document doc = new Document();
+                doc.add(new Field("id", Integer.toString(id), Field.Store.YES, Field.Index.NOT_ANALYZED));
+                doc.add(new Field("num", String.valueOf(1000 + (id * 37) % 101), Field.Store.YES, Field.Index.NOT_ANALYZED));
+                StringBuilder value = new StringBuilder("all");
+                for (int k = 0; k < id % 4; k++) {
+                    value.append(" repeat");
+                }
+                if (id % 3 == 0) {
+                    value.append(" three");
+                }
+                doc.add(new Field("value", value.toString(), Field.Store.NO, Field.Index.ANALYZED));
+                writer.addDocument(doc);
+                id++;
+            }
+            writer.close();
+            searchables[i] = new IndexSearcher(dir);
+        }
+    }
+
+    protected void tearDown() throws Exception {
+        for (Searchable searchable : searchables) {
+            searchable.close();
+        }
+        executorManager.close();
+    }
+
+    public void testScoredSearch() throws Exception {
+        Query query = new TermQuery(new Term("value", "repeat"));
+        for (int maxConcurrency : new int[]{1, 2, NUMBER_OF_SEARCHERS, 16}) {
+            assertSameTopDocs(new MultiSearcher(searchables).search(query, null, 15),
+                    new ConcurrentMultiSearcher(searchables, executorManager, maxConcurrency).search(query, null, 15));
+        }
+    }
+
+    public void testFilteredSearch() throws Exception {
+        Query query = new TermQuery(new Term("value", "repeat"));
+        Filter filter = new QueryWrapperFilter(new TermQuery(new Term("value", "three")));
+        for (int maxConcurrency : new int[]{1, 3}) {
+            assertSameTopDocs(new MultiSearcher(searchables).search(query, filter, 10),
+                    new ConcurrentMultiSearcher(searchables, executorManager, maxConcurrency).search(query, filter, 10));
+        }
+    }
+
+    public void testSortedSearch() throws Exception {
+        Query query = new TermQuery(new Term("value", "all"));
+        Sort sort = new Sort(new SortField("num", SortField.INT, true));
+        for (int maxConcurrency : new int[]{1, 2, NUMBER_OF_SEARCHERS}) {
+            assertSameTopDocs(new MultiSearcher(searchables).search(query, null, 25, sort),
+                    new ConcurrentMultiSearcher(searchables, executorManager, maxConcurrency).search(query, null, 25, sort));
+        }
+    }
+
+    public void testSortedByDocSearch() throws Exception {
+        // the doc sort values are adjusted to the global doc id, so the results are in global index order
+        Query query = new TermQuery(new Term("value", "all"));
+        for (int maxConcurrency : new int[]{1, 2, NUMBER_OF_SEARCHERS}) {
+            TopFieldDocs docs = new ConcurrentMultiSearcher(searchables, executorManager, maxConcurrency)
+                    .search(query, null, 25, new Sort(SortField.FIELD_DOC));
+            assertEquals(25, docs.scoreDocs.length);
+            for (int i = 0; i < docs.scoreDocs.length; i++) {
+                assertEquals(i, docs.scoreDocs[i].doc);
+            }
+        }
+    }
+
+    public void testHits() throws Exception {
+        Query query = new TermQuery(new Term("value", "three"));
+        Searcher searcher = new ConcurrentMultiSearcher(searchables, executorManager, 2);
+        Hits expected = new MultiSearcher(searchables).search(query);
+        Hits hits = searcher.search(query);
+        assertEquals(expected.length(), hits.length());
+        for (int i = 0; i < hits.length(); i++) {
+            assertEquals(expected.doc(i).get("id"), hits.doc(i).get("id"));
+        }
+    }
+
+    private void assertSameTopDocs(TopDocs expected, TopDocs actual) throws IOException {
+        assertEquals(expected.totalHits, actual.totalHits);
+        assertEquals(expected.getMaxScore(), actual.getMaxScore(), 0.0001f);
+        assertEquals(expected.scoreDocs.length, actual.scoreDocs.length);
+        assertTrue(actual.scoreDocs.length > 0);
+        for (int i = 0; i < expected.scoreDocs.length; i++) {
+            assertEquals(expected.scoreDocs[i].doc, actual.scoreDocs[i].doc);
+            assertEquals(expected.scoreDocs[i].score, actual.scoreDocs[i].score, 0.0001f);
+        }
+    }
+}
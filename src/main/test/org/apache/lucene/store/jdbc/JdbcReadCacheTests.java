@@ -0,0 +1,266 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.lucene.store.jdbc;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+
+import org.apache.lucene.analysis.SimpleAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LuceneFileNames;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.DirectoryTemplate;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.jdbc.handler.ActualDeleteFileEntryHandler;
+import org.apache.lucene.store.jdbc.support.JdbcTable;
+import org.compass.core.util.FileSystemUtils;
+
+/**
+ * @author kimchy
+ */
+public class JdbcReadCacheTests extends AbstractJdbcDirectoryTests {
+
+    private File cachePath;
+
+    private JdbcDirectory jdbcDirectory;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        cachePath = new File(System.getProperty("java.io.tmpdir"), "compass-jdbc-read-cache");
+        FileSystemUtils.deleteRecursively(cachePath);
+        jdbcDirectory = createDirectory(false);
+        new DirectoryTemplate(jdbcDirectory).execute(new DirectoryTemplate.DirectoryCallbackWithoutResult() {
+            protected void doInDirectoryWithoutResult(Directory dir) throws IOException {
+                ((JdbcDirectory) dir).create();
+            }
+        });
+    }
+
+    protected void tearDown() throws Exception {
+        jdbcDirectory.close();
+        FileSystemUtils.deleteRecursively(cachePath);
+        super.tearDown();
+    }
+
+    private JdbcDirectory createDirectory(boolean memoryMapped) throws Exception {
+        return createDirectory(memoryMapped, true);
+    }
+
+    private JdbcDirectory createDirectory(boolean memoryMapped, boolean readCache) throws Exception {
+        JdbcDirectorySettings settings = new JdbcDirectorySettings();
+        settings.getDefaultFileEntrySettings().setClassSetting(
+                JdbcFileEntrySettings.FILE_ENTRY_HANDLER_TYPE, ActualDeleteFileEntryHandler.class);
+        if (readCache) {
+            settings.setReadCachePath(cachePath.getAbsolutePath());
+        }
+        settings.setReadCacheMemoryMapped(memoryMapped);
+        settings.setReadCacheBufferSize(7);
+        return new JdbcDirectory(dataSource, new JdbcTable(settings, createDialect(), "TEST"));
+    }
+
+    public void testFileFetchedOnceAndEvictedOnDelete() throws Exception {
+        new DirectoryTemplate(jdbcDirectory).execute(new DirectoryTemplate.DirectoryCallbackWithoutResult() {
+            protected void doInDirectoryWithoutResult(Directory dir) throws IOException {
+                writeInts(dir, "_1.fdt", 100);
+            }
+        });
+        assertNull(findCached("_1.fdt"));
+
+        new DirectoryTemplate(jdbcDirectory).execute(new DirectoryTemplate.DirectoryCallbackWithoutResult() {
+            protected void doInDirectoryWithoutResult(Directory dir) throws IOException {
+                verifyInts(dir, "_1.fdt", 100);
+            }
+        });
+        File cached = findCached("_1.fdt");
+        assertNotNull(cached);
+        assertEquals(400, cached.length());
+
+        // served locally, even though the file entry is gone from the database (the size check is
+        // still done against the database, so remove and re-add with the same size)
+        long lastModified = cached.lastModified();
+        new DirectoryTemplate(jdbcDirectory).execute(new DirectoryTemplate.DirectoryCallbackWithoutResult() {
+            protected void doInDirectoryWithoutResult(Directory dir) throws IOException {
+                verifyInts(dir, "_1.fdt", 100);
+            }
+        });
+        assertEquals(lastModified, cached.lastModified());
+
+        new DirectoryTemplate(jdbcDirectory).execute(new DirectoryTemplate.DirectoryCallbackWithoutResult() {
+            protected void doInDirectoryWithoutResult(Directory dir) throws IOException {
+                dir.deleteFile("_1.fdt");
+            }
+        });
+        assertFalse(cached.exists());
+    }
+
+    public void testCachedFileWithWrongSizeIsFetchedAgain() throws Exception {
+        new DirectoryTemplate(jdbcDirectory).execute(new DirectoryTemplate.DirectoryCallbackWithoutResult() {
+            protected void doInDirectoryWithoutResult(Directory dir) throws IOException {
+                writeInts(dir, "_1.fdt", 100);
+                verifyInts(dir, "_1.fdt", 100);
+            }
+        });
+        File cached = findCached("_1.fdt");
+        // a truncated copy with the same name and last modified value
+        new java.io.FileOutputStream(cached).close();
+
+        new DirectoryTemplate(jdbcDirectory).execute(new DirectoryTemplate.DirectoryCallbackWithoutResult() {
+            protected void doInDirectoryWithoutResult(Directory dir) throws IOException {
+                verifyInts(dir, "_1.fdt", 100);
+            }
+        });
+        assertEquals(400, cached.length());
+    }
+
+    public void testRecreatedFileWithSameSizeIsFetchedAgain() throws Exception {
+        new DirectoryTemplate(jdbcDirectory).execute(new DirectoryTemplate.DirectoryCallbackWithoutResult() {
+            protected void doInDirectoryWithoutResult(Directory dir) throws IOException {
+                writeInts(dir, "_1.fdt", 100);
+                verifyInts(dir, "_1.fdt", 100);
+            }
+        });
+        File cached = findCached("_1.fdt");
+        assertNotNull(cached);
+
+        // the index is recreated by a directory that does not use (and evict) the read cache, and the
+        // file is written again with the same name and size but with a different content
+        Thread.sleep(1100);
+        JdbcDirectory otherDirectory = createDirectory(false, false);
+        try {
+            new DirectoryTemplate(otherDirectory).execute(new DirectoryTemplate.DirectoryCallbackWithoutResult() {
+                protected void doInDirectoryWithoutResult(Directory dir) throws IOException {
+                    ((JdbcDirectory) dir).deleteContent();
+                    IndexOutput indexOutput = dir.createOutput("_1.fdt");
+                    for (int i = 0; i < 100; i++) {
+                        indexOutput.writeInt(i * 2);
+                    }
+                    indexOutput.close();
+                }
+            });
+        } finally {
+            otherDirectory.close();
+        }
+        assertTrue(cached.exists());
+
+        new DirectoryTemplate(jdbcDirectory).execute(new DirectoryTemplate.DirectoryCallbackWithoutResult() {
+            protected void doInDirectoryWithoutResult(Directory dir) throws IOException {
+                IndexInput indexInput = dir.openInput("_1.fdt");
+                for (int i = 0; i < 100; i++) {
+                    assertEquals(i * 2, indexInput.readInt());
+                }
+                indexInput.close();
+            }
+        });
+        assertFalse(cached.exists());
+        assertNotNull(findCached("_1.fdt"));
+    }
+
+    public void testMemoryMapped() throws Exception {
+        jdbcDirectory.close();
+        jdbcDirectory = createDirectory(true);
+        new DirectoryTemplate(jdbcDirectory).execute(new DirectoryTemplate.DirectoryCallbackWithoutResult() {
+            protected void doInDirectoryWithoutResult(Directory dir) throws IOException {
+                writeInts(dir, "_1.fdt", 100);
+                verifyInts(dir, "_1.fdt", 100);
+                IndexInput indexInput = dir.openInput("_1.fdt");
+                indexInput.seek(4 * 50);
+                IndexInput clone = (IndexInput) indexInput.clone();
+                assertEquals(50, indexInput.readInt());
+                assertEquals(51, indexInput.readInt());
+                assertEquals(50, clone.readInt());
+                indexInput.close();
+            }
+        });
+        assertNotNull(findCached("_1.fdt"));
+    }
+
+    public void testPurgeUnreferencedFiles() throws Exception {
+        new DirectoryTemplate(jdbcDirectory).execute(new DirectoryTemplate.DirectoryCallbackWithoutResult() {
+            protected void doInDirectoryWithoutResult(Directory dir) throws IOException {
+                IndexWriter writer = new IndexWriter(dir, new SimpleAnalyzer(), true, IndexWriter.MaxFieldLength.UNLIMITED);
+                writer.setUseCompoundFile(false);
+                writer.setMaxBufferedDocs(2);
+                for (int i = 0; i < 10; i++) {
+                    Document doc = new Document();
+                    doc.add(new Field("value", "value" + i, Field.Store.YES, Field.Index.UN_TOKENIZED));
+                    writer.addDocument(doc);
+                }
+                writer.close();
+            }
+        });
+        new DirectoryTemplate(jdbcDirectory).execute(new DirectoryTemplate.DirectoryCallbackWithoutResult() {
+            protected void doInDirectoryWithoutResult(Directory dir) throws IOException {
+                IndexReader reader = IndexReader.open(dir);
+                assertEquals(10, reader.numDocs());
+                assertEquals("value3", reader.document(3).get("value"));
+                reader.close();
+            }
+        });
+        String[] cachedBefore = jdbcDirectory.getReadCache().getPath().list();
+        assertTrue(cachedBefore.length > 0);
+
+        // a file left in the cache that the index no longer references
+        new java.io.FileOutputStream(new File(jdbcDirectory.getReadCache().getPath(), "_zz.fdt")).close();
+
+        new DirectoryTemplate(jdbcDirectory).execute(new DirectoryTemplate.DirectoryCallbackWithoutResult() {
+            protected void doInDirectoryWithoutResult(Directory dir) throws IOException {
+                ((JdbcDirectory) dir).purgeReadCache();
+                Set<String> referenced = LuceneFileNames.listReferencedFiles(dir);
+                String[] cached = ((JdbcDirectory) dir).getReadCache().getPath().list();
+                assertTrue(cached.length > 0);
+                for (String name : cached) {
+                    assertTrue(name + " is not referenced", referenced.contains(name.substring(0, name.lastIndexOf('@'))));
+                }
+            }
+        });
+        assertFalse(new File(jdbcDirectory.getReadCache().getPath(), "_zz.fdt").exists());
+    }
+
+    private File findCached(String name) {
+        File[] files = jdbcDirectory.getReadCache().getPath().listFiles();
+        for (File file : files) {
+            if (file.getName().startsWith(name + "@")) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    private void writeInts(Directory dir, String name, int count) throws IOException {
+        IndexOutput indexOutput = dir.createOutput(name);
+        for (int i = 0; i < count; i++) {
+            indexOutput.writeInt(i);
+        }
+        indexOutput.close();
+    }
+
+    private void verifyInts(Directory dir, String name, int count) throws IOException {
+        IndexInput indexInput = dir.openInput(name);
+        assertEquals(count * 4, indexInput.length());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, indexInput.readInt());
+        }
+        indexInput.seek(4 * (count - 1));
+        assertEquals(count - 1, indexInput.readInt());
+        indexInput.close();
+    }
+}
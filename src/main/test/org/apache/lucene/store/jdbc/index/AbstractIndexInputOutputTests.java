@@ -44,6 +44,7 @@ public abstract class AbstractIndexInputOutputTests extends AbstractJdbcDirector
                 JdbcFileEntrySettings.INDEX_INPUT_TYPE_SETTING, indexInputClass());
         settings.getDefaultFileEntrySettings().setClassSetting(
                 JdbcFileEntrySettings.INDEX_OUTPUT_TYPE_SETTING, indexOutputClass());
+        configureSettings(settings);
 
         jdbcDirectory = new JdbcDirectory(dataSource, new JdbcTable(settings, createDialect(), "TEST"));
     }
@@ -53,6 +54,9 @@ public abstract class AbstractIndexInputOutputTests extends AbstractJdbcDirector
         super.tearDown();
     }
 
+    protected void configureSettings(JdbcDirectorySettings settings) {
+    }
+
     protected abstract Class indexInputClass();
 
     protected abstract Class indexOutputClass();
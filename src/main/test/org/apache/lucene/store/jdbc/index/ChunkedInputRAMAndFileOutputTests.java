@@ -0,0 +1,172 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.lucene.store.jdbc.index;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.jdbc.JdbcDirectorySettings;
+import org.apache.lucene.store.jdbc.datasource.DataSourceUtils;
+import org.apache.lucene.store.jdbc.support.JdbcTemplate;
+
+/**
+ * @author kimchy
+ */
+public class ChunkedInputRAMAndFileOutputTests extends AbstractIndexInputOutputTests {
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        jdbcDirectory.getSettings().getDefaultFileEntrySettings().setLongSetting(
+                RAMAndFileJdbcIndexOutput.INDEX_OUTPUT_THRESHOLD_SETTING, 15);
+    }
+
+    protected void configureSettings(JdbcDirectorySettings settings) {
+        // the 33 bytes written by the tests span several chunks and batches
+        settings.setChunkSize(7);
+        settings.setChunkBatchSize(2);
+        settings.setChunkReadAhead(2);
+    }
+
+    protected Class indexInputClass() {
+        return ChunkedJdbcIndexInput.class;
+    }
+
+    protected Class indexOutputClass() {
+        return RAMAndFileJdbcIndexOutput.class;
+    }
+
+    public void testLargeFileSequentialAndRandomReads() throws IOException {
+        Connection con = DataSourceUtils.getConnection(dataSource);
+        jdbcDirectory.create();
+        DataSourceUtils.commitConnectionIfPossible(con);
+        DataSourceUtils.releaseConnection(con);
+
+        con = DataSourceUtils.getConnection(dataSource);
+        IndexOutput indexOutput = jdbcDirectory.createOutput("value1");
+        for (int i = 0; i < 1000; i++) {
+            indexOutput.writeInt(i);
+        }
+        indexOutput.close();
+        DataSourceUtils.commitConnectionIfPossible(con);
+        DataSourceUtils.releaseConnection(con);
+
+        con = DataSourceUtils.getConnection(dataSource);
+        assertEquals(4000, jdbcDirectory.fileLength("value1"));
+        IndexInput indexInput = jdbcDirectory.openInput("value1");
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, indexInput.readInt());
+        }
+        indexInput.seek(4 * 500);
+        assertEquals(500, indexInput.readInt());
+        IndexInput clone = (IndexInput) indexInput.clone();
+        indexInput.seek(4 * 10);
+        assertEquals(10, indexInput.readInt());
+        assertEquals(501, clone.readInt());
+        indexInput.close();
+        DataSourceUtils.commitConnectionIfPossible(con);
+        DataSourceUtils.releaseConnection(con);
+
+        con = DataSourceUtils.getConnection(dataSource);
+        jdbcDirectory.renameFile("value1", "value2");
+        assertFalse(jdbcDirectory.fileExists("value1"));
+        indexInput = jdbcDirectory.openInput("value2");
+        indexInput.seek(4 * 999);
+        assertEquals(999, indexInput.readInt());
+        indexInput.close();
+        jdbcDirectory.forceDeleteFile("value2");
+        DataSourceUtils.commitConnectionIfPossible(con);
+        DataSourceUtils.releaseConnection(con);
+    }
+
+    public void testFailedWriteLeavesNoFileEntryNorChunks() throws IOException {
+        Connection con = DataSourceUtils.getConnection(dataSource);
+        jdbcDirectory.create();
+        // a conflicting chunk fails the chunks insert of value1
+        insertChunk("value1", 3);
+        DataSourceUtils.commitConnectionIfPossible(con);
+        DataSourceUtils.releaseConnection(con);
+
+        con = DataSourceUtils.getConnection(dataSource);
+        IndexOutput indexOutput = jdbcDirectory.createOutput("value1");
+        for (int i = 0; i < 100; i++) {
+            indexOutput.writeInt(i);
+        }
+        try {
+            indexOutput.close();
+            fail("the chunks insert should fail");
+        } catch (IOException e) {
+            // expected
+        }
+        assertFalse(jdbcDirectory.fileExists("value1"));
+        assertEquals(0, countChunks("value1"));
+        DataSourceUtils.commitConnectionIfPossible(con);
+        DataSourceUtils.releaseConnection(con);
+    }
+
+    public void testDeleteMarkDeletedAndPurgeOrphanChunks() throws IOException {
+        Connection con = DataSourceUtils.getConnection(dataSource);
+        jdbcDirectory.create();
+        IndexOutput indexOutput = jdbcDirectory.createOutput("value1");
+        for (int i = 0; i < 100; i++) {
+            indexOutput.writeInt(i);
+        }
+        indexOutput.close();
+        insertChunk("orphan", 0);
+        DataSourceUtils.commitConnectionIfPossible(con);
+        DataSourceUtils.releaseConnection(con);
+
+        con = DataSourceUtils.getConnection(dataSource);
+        assertTrue(countChunks("value1") > 0);
+        jdbcDirectory.deleteFile("value1");
+        jdbcDirectory.deleteMarkDeleted(-60000);
+        assertFalse(jdbcDirectory.fileExists("value1"));
+        assertEquals(0, countChunks("value1"));
+        // orphans are only deleted explicitly
+        assertEquals(1, countChunks("orphan"));
+        jdbcDirectory.purgeOrphanChunks();
+        assertEquals(0, countChunks("orphan"));
+        DataSourceUtils.commitConnectionIfPossible(con);
+        DataSourceUtils.releaseConnection(con);
+    }
+
+    private void insertChunk(String name, int chunk) throws IOException {
+        JdbcDirectorySettings settings = jdbcDirectory.getSettings();
+        jdbcDirectory.getJdbcTemplate().executeUpdate("insert into " + jdbcDirectory.getTable().getChunksQualifiedName()
+                + " (" + settings.getNameColumnName() + ", " + settings.getChunkColumnName() + ") values ('"
+                + name + "', " + chunk + ")");
+    }
+
+    private int countChunks(final String name) throws IOException {
+        JdbcDirectorySettings settings = jdbcDirectory.getSettings();
+        return ((Integer) jdbcDirectory.getJdbcTemplate().executeSelect("select count(*) from "
+                + jdbcDirectory.getTable().getChunksQualifiedName() + " where " + settings.getNameColumnName() + " = ?",
+                new JdbcTemplate.ExecuteSelectCallback() {
+                    public void fillPrepareStatement(PreparedStatement ps) throws Exception {
+                        ps.setString(1, name);
+                    }
+
+                    public Object execute(ResultSet rs) throws Exception {
+                        rs.next();
+                        return rs.getInt(1);
+                    }
+                })).intValue();
+    }
+}
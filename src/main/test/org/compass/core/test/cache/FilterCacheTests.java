@@ -0,0 +1,237 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.test.cache;
+
+import java.util.BitSet;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.OpenBitSet;
+import org.apache.lucene.util.SortedVIntList;
+import org.compass.core.CompassQuery;
+import org.compass.core.CompassQueryBuilder;
+import org.compass.core.CompassQueryFilter;
+import org.compass.core.CompassSession;
+import org.compass.core.CompassTransaction;
+import org.compass.core.config.CompassSettings;
+import org.compass.core.lucene.LuceneEnvironment;
+import org.compass.core.lucene.engine.LuceneSearchEngineFactory;
+import org.compass.core.lucene.search.CacheableMultiReader;
+import org.compass.core.lucene.search.CachingFilter;
+import org.compass.core.lucene.search.FilterCache;
+import org.compass.core.spi.InternalCompass;
+import org.compass.core.test.AbstractTestCase;
+
+/**
+ * @author kimchy
+ */
+public class FilterCacheTests extends AbstractTestCase {
+
+    protected String[] getMappings() {
+        return new String[]{"cache/cache.cpm.xml"};
+    }
+
+    protected void addSettings(CompassSettings settings) {
+        super.addSettings(settings);
+        settings.setBooleanSetting(LuceneEnvironment.FilterCache.ENABLE, true);
+        settings.setSetting(LuceneEnvironment.FilterCache.MAX_MEMORY, "2k");
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        filterCache().clear();
+    }
+
+    public void testAliasesCachedAcrossSessions() throws Exception {
+        save("a1", 1, "value");
+        save("a1", 2, "value");
+        save("a2", 3, "value");
+
+        assertEquals(2, count("value", "a1", null));
+        long hits = filterCache().getHitCount();
+        assertEquals(2, count("value", "a1", null));
+        assertTrue(filterCache().getHitCount() > hits);
+        assertEquals(1, count("value", "a2", null));
+        assertEquals(3, count("value", null, null));
+        assertTrue(filterCache().getSize() > 0);
+        assertTrue(filterCache().getMemoryUsed() > 0);
+    }
+
+    public void testQueryFilterCachedAcrossSessions() throws Exception {
+        save("a1", 1, "value even");
+        save("a1", 2, "value odd");
+        save("a2", 3, "value even");
+
+        assertEquals(2, count("value", null, "even"));
+        long hits = filterCache().getHitCount();
+        assertEquals(2, count("value", null, "even"));
+        assertTrue(filterCache().getHitCount() > hits);
+        assertEquals(1, count("value", null, "odd"));
+        assertEquals(1, count("value", "a1", "even"));
+    }
+
+    public void testEvictedOnCommit() throws Exception {
+        save("a1", 1, "value even");
+        assertEquals(1, count("value", null, "even"));
+        int size = filterCache().getSize();
+
+        save("a1", 2, "value even");
+        assertEquals(2, count("value", null, "even"));
+        assertEquals(2, count("value", null, "even"));
+        assertEquals(size, filterCache().getSize());
+    }
+
+    public void testMemoryBudget() throws Exception {
+        save("a1", 1, "value");
+        long evictionCount = filterCache().getEvictionCount();
+        for (int i = 0; i < 50; i++) {
+            count("value", null, "value" + i);
+        }
+        assertTrue(filterCache().getEvictionCount() > evictionCount);
+        assertTrue(filterCache().getSize() < 50);
+        assertTrue(filterCache().getMemoryUsed() <= 2 * 1024);
+    }
+
+    public void testSparseAndDenseDocIdSets() throws Exception {
+        RAMDirectory dir = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.UNLIMITED);
+        for (int i = 0; i < 100; i++) {
+            Document doc = new Document();
+            doc.add(new Field("value", (i % 2 == 0 ? "even" : "odd") + (i % 20 == 0 ? " rare" : ""), Field.Store.NO, Field.Index.ANALYZED));
+            writer.addDocument(doc);
+        }
+        writer.close();
+        IndexReader reader = IndexReader.open(dir, true);
+        try {
+            FilterCache cache = filterCache();
+            DocIdSet rare = cache.getDocIdSet(new QueryWrapperFilter(new TermQuery(new Term("value", "rare"))), reader);
+            assertTrue(rare instanceof SortedVIntList);
+            assertEquals(5, count(rare));
+            DocIdSet even = cache.getDocIdSet(new QueryWrapperFilter(new TermQuery(new Term("value", "even"))), reader);
+            assertTrue(even instanceof OpenBitSet);
+            assertEquals(50, count(even));
+
+            long hits = cache.getHitCount();
+            assertSame(rare, cache.getDocIdSet(new QueryWrapperFilter(new TermQuery(new Term("value", "rare"))), reader));
+            assertEquals(hits + 1, cache.getHitCount());
+
+            cache.evictReader(reader);
+            assertEquals(0, cache.getSize());
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testMultiReaderUsesCachedSubReaderDocIdSets() throws Exception {
+        IndexReader reader1 = IndexReader.open(createIndex(0, 30), true);
+        IndexReader reader2 = IndexReader.open(createIndex(30, 100), true);
+        try {
+            FilterCache cache = filterCache();
+            QueryWrapperFilter filter = new QueryWrapperFilter(new TermQuery(new Term("value", "rare")));
+            CacheableMultiReader multiReader = new CacheableMultiReader(new IndexReader[]{reader1, reader2}, false);
+            DocIdSetIterator it = cache.getDocIdSet(filter, multiReader).iterator();
+            for (int i = 0; i < 100; i += 20) {
+                assertTrue(it.next());
+                assertEquals(i, it.doc());
+            }
+            assertFalse(it.next());
+            assertEquals(2, cache.getSize());
+
+            long hits = cache.getHitCount();
+            it = cache.getDocIdSet(filter, new CacheableMultiReader(new IndexReader[]{reader1, reader2}, false)).iterator();
+            assertEquals(hits + 2, cache.getHitCount());
+            assertTrue(it.skipTo(21));
+            assertEquals(40, it.doc());
+            assertTrue(it.skipTo(61));
+            assertEquals(80, it.doc());
+            assertFalse(it.skipTo(81));
+
+            BitSet bits = new CachingFilter(filter, cache).bits(multiReader);
+            assertEquals(5, bits.cardinality());
+            assertTrue(bits.get(40));
+            assertEquals(hits + 4, cache.getHitCount());
+        } finally {
+            reader1.close();
+            reader2.close();
+        }
+    }
+
+    private RAMDirectory createIndex(int from, int to) throws Exception {
+        RAMDirectory dir = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.UNLIMITED);
+        for (int i = from; i < to; i++) {
+            Document doc = new Document();
+            doc.add(new Field("value", "value" + (i % 20 == 0 ? " rare" : ""), Field.Store.NO, Field.Index.ANALYZED));
+            writer.addDocument(doc);
+        }
+        writer.close();
+        return dir;
+    }
+
+    private int count(DocIdSet docIdSet) throws Exception {
+        int count = 0;
+        for (DocIdSetIterator it = docIdSet.iterator(); it.next();) {
+            count++;
+        }
+        return count;
+    }
+
+    private void save(String alias, long id, String value) {
+        CompassSession session = openSession();
+        CompassTransaction tr = session.beginTransaction();
+        A a = new A();
+        a.setId(id);
+        a.setValue(value);
+        session.save(alias, a);
+        tr.commit();
+        session.close();
+    }
+
+    private int count(String queryString, String alias, String filterValue) {
+        CompassSession session = openSession();
+        CompassTransaction tr = session.beginTransaction();
+        try {
+            CompassQueryBuilder queryBuilder = session.queryBuilder();
+            CompassQuery query = queryBuilder.queryString(queryString).toQuery();
+            if (alias != null) {
+                query.setAliases(alias);
+            }
+            if (filterValue != null) {
+                CompassQueryFilter filter = session.queryFilterBuilder().query(queryBuilder.term("mvalue", filterValue));
+                query.setFilter(filter);
+            }
+            return query.hits().length();
+        } finally {
+            tr.commit();
+            session.close();
+        }
+    }
+
+    private FilterCache filterCache() {
+        return ((LuceneSearchEngineFactory) ((InternalCompass) getCompass()).getSearchEngineFactory()).getFilterCache();
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.test.cache;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.compass.core.CompassSession;
+import org.compass.core.CompassTransaction;
+import org.compass.core.lucene.engine.LuceneSearchEngineFactory;
+import org.compass.core.lucene.engine.manager.IndexHoldersCache;
+import org.compass.core.lucene.engine.manager.LuceneIndexHolder;
+import org.compass.core.test.AbstractTestCase;
+
+/**
+ * @author kimchy
+ */
+public class IndexHolderRefCountTests extends AbstractTestCase {
+
+    protected String[] getMappings() {
+        return new String[]{"cache/cache.cpm.xml"};
+    }
+
+    public void testCloseOnlyAfterLastRelease() throws Exception {
+        createA(1);
+        IndexHoldersCache indexHoldersCache = getIndexHoldersCache();
+
+        LuceneIndexHolder holder1 = indexHoldersCache.getHolder("a1");
+        LuceneIndexHolder holder2 = indexHoldersCache.getHolder("a1");
+        assertSame(holder1, holder2);
+
+        indexHoldersCache.clearCache("a1");
+        // marked for close, can no longer be acquired, but still open
+        assertFalse(holder1.acquire());
+        assertEquals(1, holder1.getIndexSearcher().search(new MatchAllDocsQuery(), null, 10).totalHits);
+
+        holder1.release();
+        assertFalse(isClosed(holder1.getIndexReader()));
+        holder2.release();
+        assertTrue(isClosed(holder1.getIndexReader()));
+
+        // a new holder is opened
+        LuceneIndexHolder holder3 = indexHoldersCache.getHolder("a1");
+        assertNotSame(holder1, holder3);
+        holder3.release();
+    }
+
+    public void testConcurrentAcquireRelease() throws Exception {
+        createA(1);
+        final IndexHoldersCache indexHoldersCache = getIndexHoldersCache();
+        final AtomicBoolean failed = new AtomicBoolean();
+        final CountDownLatch latch = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < 500; j++) {
+                            LuceneIndexHolder holder = indexHoldersCache.getHolder("a1");
+                            try {
+                                if (isClosed(holder.getIndexReader())) {
+                                    failed.set(true);
+                                }
+                            } finally {
+                                holder.release();
+                            }
+                            if (j % 50 == 0) {
+                                indexHoldersCache.clearCache("a1");
+                            }
+                        }
+                    } catch (Exception e) {
+                        failed.set(true);
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            }).start();
+        }
+        latch.await();
+        assertFalse(failed.get());
+    }
+
+    private boolean isClosed(IndexReader reader) throws IOException {
+        try {
+            reader.isCurrent();
+            return false;
+        } catch (AlreadyClosedException e) {
+            return true;
+        }
+    }
+
+    private IndexHoldersCache getIndexHoldersCache() {
+        return ((LuceneSearchEngineFactory) getCompass().getSearchEngineFactory()).getLuceneIndexManager().getIndexHoldersCache();
+    }
+
+    private void createA(long id) {
+        CompassSession session = openSession();
+        CompassTransaction tr = session.beginTransaction();
+        A a = new A();
+        a.setId(id);
+        a.setValue("value");
+        session.save("a1", a);
+        tr.commit();
+        session.close();
+    }
+}
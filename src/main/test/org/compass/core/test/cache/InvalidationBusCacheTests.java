@@ -0,0 +1,115 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.test.cache;
+
+import org.compass.core.Compass;
+import org.compass.core.CompassSession;
+import org.compass.core.CompassTransaction;
+import org.compass.core.config.CompassEnvironment;
+import org.compass.core.config.CompassSettings;
+import org.compass.core.lucene.LuceneEnvironment;
+import org.compass.core.lucene.engine.LuceneSearchEngineFactory;
+import org.compass.core.lucene.engine.manager.IndexHoldersCache;
+import org.compass.core.spi.InternalCompass;
+import org.compass.core.test.AbstractTestCase;
+
+/**
+ * @author kimchy
+ */
+public class InvalidationBusCacheTests extends AbstractTestCase {
+
+    protected String[] getMappings() {
+        return new String[]{"cache/cache.cpm.xml"};
+    }
+
+    protected void addSettings(CompassSettings settings) {
+        super.addSettings(settings);
+        settings.setSetting(LuceneEnvironment.InvalidationBus.TYPE, LuceneEnvironment.InvalidationBus.Local.NAME);
+        settings.setSetting(LuceneEnvironment.InvalidationBus.Local.CHANNEL, "InvalidationBusCacheTests");
+        // make sure changes are never detected by checking the index
+        settings.setLongSetting(LuceneEnvironment.SearchEngineIndex.CACHE_INTERVAL_INVALIDATION, 60 * 60 * 1000);
+        settings.setBooleanSetting(LuceneEnvironment.Transaction.CLEAR_CACHE_ON_COMMIT, false);
+    }
+
+    public void testCommitRefreshesOtherInstances() throws Exception {
+        if (getCompass().getSettings().getSetting(CompassEnvironment.CONNECTION).startsWith("ram://")) {
+            // since we open two compass instances, this test won't work with ram based index
+            return;
+        }
+        assertTrue(indexHoldersCache(getCompass()).isRefreshOnCommit());
+        assertNotNull(indexHoldersCache(getCompass()).getInvalidationBus());
+
+        save(getCompass(), 1);
+        Compass compass2 = buildCompass();
+        try {
+            assertEquals(1, count(compass2));
+
+            save(getCompass(), 2);
+            assertEquals(2, count(compass2));
+
+            // and the other way around
+            assertEquals(2, count(getCompass()));
+            save(compass2, 3);
+            assertEquals(3, count(getCompass()));
+        } finally {
+            compass2.close();
+        }
+    }
+
+    public void testNotifyAllToClearCache() throws Exception {
+        if (getCompass().getSettings().getSetting(CompassEnvironment.CONNECTION).startsWith("ram://")) {
+            return;
+        }
+        save(getCompass(), 1);
+        Compass compass2 = buildCompass();
+        try {
+            assertEquals(1, count(compass2));
+            assertTrue(indexHoldersCache(compass2).isCached("a1"));
+
+            getCompass().getSearchEngineIndexManager().notifyAllToClearCache();
+            assertFalse(indexHoldersCache(compass2).isCached("a1"));
+        } finally {
+            compass2.close();
+        }
+    }
+
+    private IndexHoldersCache indexHoldersCache(Compass compass) {
+        return ((LuceneSearchEngineFactory) ((InternalCompass) compass).getSearchEngineFactory()).getLuceneIndexManager().getIndexHoldersCache();
+    }
+
+    private void save(Compass compass, long id) {
+        CompassSession session = compass.openSession();
+        CompassTransaction tr = session.beginTransaction();
+        A a = new A();
+        a.setId(id);
+        a.setValue("value");
+        session.save("a1", a);
+        tr.commit();
+        session.close();
+    }
+
+    private int count(Compass compass) {
+        CompassSession session = compass.openSession();
+        CompassTransaction tr = session.beginTransaction();
+        try {
+            return session.queryBuilder().alias("a1").hits().length();
+        } finally {
+            tr.commit();
+            session.close();
+        }
+    }
+}
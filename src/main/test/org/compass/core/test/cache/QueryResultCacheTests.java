@@ -0,0 +1,183 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.test.cache;
+
+import org.compass.core.CompassHits;
+import org.compass.core.CompassQuery;
+import org.compass.core.CompassSession;
+import org.compass.core.CompassTransaction;
+import org.compass.core.config.CompassSettings;
+import org.compass.core.lucene.LuceneEnvironment;
+import org.compass.core.lucene.engine.LuceneSearchEngineFactory;
+import org.compass.core.lucene.engine.manager.QueryResultCache;
+import org.compass.core.spi.InternalCompass;
+import org.compass.core.test.AbstractTestCase;
+
+/**
+ * @author kimchy
+ */
+public class QueryResultCacheTests extends AbstractTestCase {
+
+    protected String[] getMappings() {
+        return new String[]{"cache/cache.cpm.xml"};
+    }
+
+    protected void addSettings(CompassSettings settings) {
+        super.addSettings(settings);
+        settings.setBooleanSetting(LuceneEnvironment.QueryResultCache.ENABLE, true);
+        settings.setSetting(LuceneEnvironment.QueryResultCache.MAX_MEMORY, "4k");
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        queryResultCache().clear();
+    }
+
+    public void testCachedAcrossSessions() throws Exception {
+        save("a1", 1, "value test");
+        save("a1", 2, "value");
+
+        assertEquals(2, count("value", null));
+        long hits = queryResultCache().getHitCount();
+        assertEquals(2, count("value", null));
+        assertEquals(hits + 1, queryResultCache().getHitCount());
+        assertEquals(1, queryResultCache().getSize());
+        assertTrue(queryResultCache().getHitRatio() > 0);
+        assertTrue(queryResultCache().getMemoryUsed() > 0);
+    }
+
+    public void testCachedResultsAreCorrect() throws Exception {
+        for (long i = 1; i <= 5; i++) {
+            save("a1", i, "value");
+        }
+        long hitCount = queryResultCache().getHitCount();
+        for (int i = 0; i < 2; i++) {
+            CompassSession session = openSession();
+            CompassTransaction tr = session.beginTransaction();
+            CompassHits hits = session.queryBuilder().queryString("value").toQuery()
+                    .addSort(CompassQuery.SortImplicitType.DOC, CompassQuery.SortDirection.REVERSE).hits();
+            assertEquals(5, hits.length());
+            for (int j = 0; j < hits.length(); j++) {
+                assertEquals(new Long(5 - j), ((A) hits.data(j)).getId());
+            }
+            tr.commit();
+            session.close();
+        }
+        assertEquals(hitCount + 1, queryResultCache().getHitCount());
+    }
+
+    public void testDifferentSortsAndAliasesAreCachedSeparately() throws Exception {
+        save("a1", 1, "value");
+        save("a2", 2, "value");
+
+        long hitCount = queryResultCache().getHitCount();
+        assertEquals(2, count("value", null));
+        assertEquals(1, count("value", "a1"));
+        assertEquals(1, count("value", "a2"));
+
+        CompassSession session = openSession();
+        CompassTransaction tr = session.beginTransaction();
+        assertEquals(2, session.queryBuilder().queryString("value").toQuery().addSort(CompassQuery.SortImplicitType.DOC).hits().length());
+        tr.commit();
+        session.close();
+
+        assertEquals(4, queryResultCache().getSize());
+        assertEquals(hitCount, queryResultCache().getHitCount());
+    }
+
+    public void testEvictedOnCommit() throws Exception {
+        save("a1", 1, "value");
+        assertEquals(1, count("value", null));
+        assertEquals(1, queryResultCache().getSize());
+
+        save("a1", 2, "value");
+        assertEquals(2, count("value", null));
+        assertEquals(1, queryResultCache().getSize());
+    }
+
+    public void testNotCachedWithTransactionalChanges() throws Exception {
+        save("a1", 1, "value");
+
+        CompassSession session = openSession();
+        CompassTransaction tr = session.beginTransaction();
+        A a = new A();
+        a.setId(2l);
+        a.setValue("value");
+        session.save("a1", a);
+        assertEquals(2, session.find("value").length());
+        assertEquals(0, queryResultCache().getSize());
+        tr.rollback();
+        session.close();
+
+        assertEquals(1, count("value", null));
+    }
+
+    public void testQueryOptOut() throws Exception {
+        save("a1", 1, "value");
+
+        CompassSession session = openSession();
+        CompassTransaction tr = session.beginTransaction();
+        assertEquals(1, session.queryBuilder().queryString("value").toQuery().setCacheable(false).hits().length());
+        tr.commit();
+        session.close();
+
+        assertEquals(0, queryResultCache().getSize());
+    }
+
+    public void testMemoryBudget() throws Exception {
+        save("a1", 1, "value");
+        long evictionCount = queryResultCache().getEvictionCount();
+        for (int i = 0; i < 50; i++) {
+            count("value OR value" + i, null);
+        }
+        assertTrue(queryResultCache().getEvictionCount() > evictionCount);
+        assertTrue(queryResultCache().getSize() < 50);
+        assertTrue(queryResultCache().getMemoryUsed() <= 4 * 1024);
+    }
+
+    private void save(String alias, long id, String value) {
+        CompassSession session = openSession();
+        CompassTransaction tr = session.beginTransaction();
+        A a = new A();
+        a.setId(id);
+        a.setValue(value);
+        session.save(alias, a);
+        tr.commit();
+        session.close();
+    }
+
+    private int count(String queryString, String alias) {
+        CompassSession session = openSession();
+        CompassTransaction tr = session.beginTransaction();
+        try {
+            CompassQuery query = session.queryBuilder().queryString(queryString).toQuery();
+            if (alias != null) {
+                query.setAliases(alias);
+            }
+            return query.hits().length();
+        } finally {
+            tr.commit();
+            session.close();
+        }
+    }
+
+    private QueryResultCache queryResultCache() {
+        return ((LuceneSearchEngineFactory) ((InternalCompass) getCompass()).getSearchEngineFactory())
+                .getLuceneIndexManager().getIndexHoldersCache().getQueryResultCache();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.test.cache;
+
+import org.compass.core.CompassSession;
+import org.compass.core.CompassTransaction;
+import org.compass.core.config.CompassSettings;
+import org.compass.core.lucene.LuceneEnvironment;
+import org.compass.core.lucene.engine.LuceneSearchEngineFactory;
+import org.compass.core.lucene.engine.manager.IndexHolderRefreshStats;
+import org.compass.core.lucene.engine.manager.IndexHoldersCache;
+import org.compass.core.test.AbstractTestCase;
+
+/**
+ * @author kimchy
+ */
+public class RefreshOnCommitCacheTests extends AbstractTestCase {
+
+    protected String[] getMappings() {
+        return new String[]{"cache/cache.cpm.xml"};
+    }
+
+    protected void addSettings(CompassSettings settings) {
+        super.addSettings(settings);
+        settings.setBooleanSetting(LuceneEnvironment.SearchEngineIndex.CACHE_REFRESH_ON_COMMIT, true);
+        // make sure that we do not rely on invalidation
+        settings.setBooleanSetting(LuceneEnvironment.Transaction.CLEAR_CACHE_ON_COMMIT, false);
+    }
+
+    public void testRefreshOnCommit() throws Exception {
+        IndexHoldersCache indexHoldersCache = ((LuceneSearchEngineFactory) getCompass().getSearchEngineFactory()).getLuceneIndexManager().getIndexHoldersCache();
+        assertTrue(indexHoldersCache.isRefreshOnCommit());
+
+        CompassSession session = openSession();
+        CompassTransaction tr = session.beginTransaction();
+        A a = new A();
+        a.setId(1l);
+        a.setValue("value1");
+        session.save("a1", a);
+        tr.commit();
+        session.close();
+
+        // cache the index holder
+        session = openSession();
+        tr = session.beginTransaction();
+        assertEquals(1, session.find("value1").length());
+        tr.commit();
+        session.close();
+
+        IndexHolderRefreshStats stats = indexHoldersCache.getRefreshStats("a1");
+        long refreshCount = stats.getRefreshCount();
+
+        session = openSession();
+        tr = session.beginTransaction();
+        a = new A();
+        a.setId(2l);
+        a.setValue("value1");
+        session.save("a1", a);
+        tr.commit();
+        session.close();
+
+        assertEquals(refreshCount + 1, stats.getRefreshCount());
+
+        session = openSession();
+        tr = session.beginTransaction();
+        assertEquals(2, session.find("value1").length());
+        tr.commit();
+        session.close();
+    }
+}
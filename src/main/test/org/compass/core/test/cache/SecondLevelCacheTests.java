@@ -0,0 +1,169 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.test.cache;
+
+import org.compass.core.CompassSession;
+import org.compass.core.CompassTransaction;
+import org.compass.core.cache.second.SecondLevelCache;
+import org.compass.core.config.CompassEnvironment;
+import org.compass.core.config.CompassSettings;
+import org.compass.core.lucene.engine.LuceneSearchEngineFactory;
+import org.compass.core.lucene.engine.manager.IndexHoldersCache;
+import org.compass.core.lucene.engine.manager.LuceneIndexHolder;
+import org.compass.core.test.AbstractTestCase;
+
+/**
+ * @author kimchy
+ */
+public class SecondLevelCacheTests extends AbstractTestCase {
+
+    protected String[] getMappings() {
+        return new String[]{"cache/cache.cpm.xml"};
+    }
+
+    protected void addSettings(CompassSettings settings) {
+        super.addSettings(settings);
+        settings.setBooleanSetting(CompassEnvironment.Cache.SecondLevel.ENABLE, true);
+        settings.setIntSetting(CompassEnvironment.Cache.SecondLevel.MAX_SIZE, 2);
+    }
+
+    public void testCachedAcrossSessions() throws Exception {
+        SecondLevelCache cache = getCompass().getSecondLevelCache();
+        assertNotNull(cache);
+        save(1, "value1");
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("value1", get(1));
+        }
+        assertTrue(cache.getHitCount() > 0);
+        assertTrue(cache.getHitRatio() > 0);
+        assertEquals(1, cache.getSize());
+    }
+
+    public void testEvictedOnCommit() throws Exception {
+        save(1, "value1");
+        for (int i = 0; i < 3; i++) {
+            assertEquals("value1", get(1));
+        }
+
+        save(1, "value2");
+        assertEquals("value2", get(1));
+        assertEquals("value2", get(1));
+    }
+
+    public void testNotUsedWithChangesWithinTransaction() throws Exception {
+        save(1, "value1");
+        for (int i = 0; i < 3; i++) {
+            assertEquals("value1", get(1));
+        }
+
+        CompassSession session = openSession();
+        CompassTransaction tr = session.beginTransaction();
+        A a = new A();
+        a.setId(1l);
+        a.setValue("value2");
+        session.save("a1", a);
+        assertEquals("value2", session.getResource("a1", 1l).getValue("mvalue"));
+        tr.rollback();
+        session.close();
+
+        assertEquals("value1", get(1));
+    }
+
+    public void testCachedResourceNotSharedWithSessions() throws Exception {
+        save(1, "value1");
+        assertEquals("value1", get(1));
+
+        CompassSession session = openSession();
+        CompassTransaction tr = session.beginTransaction();
+        session.getResource("a1", 1l).getProperty("mvalue").setBoost(2.0f);
+        tr.commit();
+        session.close();
+
+        session = openSession();
+        tr = session.beginTransaction();
+        assertEquals(1.0f, session.getResource("a1", 1l).getProperty("mvalue").getBoost(), 0.0f);
+        tr.commit();
+        session.close();
+    }
+
+    public void testHolderOpenedBeforeCommitVersionIsStale() throws Exception {
+        SecondLevelCache cache = getCompass().getSecondLevelCache();
+        IndexHoldersCache indexHoldersCache = getIndexHoldersCache();
+        save(1, "value1");
+        assertEquals("value1", get(1));
+
+        LuceneIndexHolder staleHolder = indexHoldersCache.getHolder("a1");
+        try {
+            assertEquals(cache.getVersion("a1"), staleHolder.getSecondLevelCacheVersion());
+            save(1, "value2");
+            // resources loaded using the holder opened before the commit must not be cached
+            assertTrue(staleHolder.getSecondLevelCacheVersion() != cache.getVersion("a1"));
+        } finally {
+            staleHolder.release();
+        }
+
+        assertEquals("value2", get(1));
+        assertEquals("value2", get(1));
+        LuceneIndexHolder indexHolder = indexHoldersCache.getHolder("a1");
+        try {
+            assertEquals(cache.getVersion("a1"), indexHolder.getSecondLevelCacheVersion());
+        } finally {
+            indexHolder.release();
+        }
+    }
+
+    public void testSizeEviction() throws Exception {
+        SecondLevelCache cache = getCompass().getSecondLevelCache();
+        save(1, "value1");
+        save(2, "value2");
+        save(3, "value3");
+        for (int i = 0; i < 3; i++) {
+            assertEquals("value1", get(1));
+            assertEquals("value2", get(2));
+            assertEquals("value3", get(3));
+        }
+        assertEquals(2, cache.getSize());
+        assertTrue(cache.getEvictionCount() > 0);
+    }
+
+    private IndexHoldersCache getIndexHoldersCache() {
+        return ((LuceneSearchEngineFactory) getCompass().getSearchEngineFactory()).getLuceneIndexManager().getIndexHoldersCache();
+    }
+
+    private void save(long id, String value) {
+        CompassSession session = openSession();
+        CompassTransaction tr = session.beginTransaction();
+        A a = new A();
+        a.setId(id);
+        a.setValue(value);
+        session.save("a1", a);
+        tr.commit();
+        session.close();
+    }
+
+    private String get(long id) {
+        CompassSession session = openSession();
+        CompassTransaction tr = session.beginTransaction();
+        try {
+            return session.getResource("a1", id).getValue("mvalue");
+        } finally {
+            tr.commit();
+            session.close();
+        }
+    }
+}
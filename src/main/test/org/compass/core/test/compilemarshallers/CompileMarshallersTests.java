@@ -0,0 +1,155 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.compass.core.test.compilemarshallers;
+
+import java.util.ArrayList;
+import java.util.Date;
+
+import org.compass.core.Compass;
+import org.compass.core.CompassSession;
+import org.compass.core.CompassTransaction;
+import org.compass.core.Resource;
+import org.compass.core.config.CompassConfiguration;
+import org.compass.core.config.CompassEnvironment;
+import org.compass.core.config.CompassSettings;
+import org.compass.core.mapping.osem.ClassMapping;
+import org.compass.core.spi.InternalCompass;
+import org.compass.core.spi.InternalCompassSession;
+import org.compass.core.test.AbstractTestCase;
+
+/**
+ * @author kimchy
+ */
+public class CompileMarshallersTests extends AbstractTestCase {
+
+    protected String[] getMappings() {
+        return new String[]{"compilemarshallers/mapping.cpm.xml"};
+    }
+
+    protected void addSettings(CompassSettings settings) {
+        settings.setBooleanSetting(CompassEnvironment.Osem.COMPILE_MARSHALLERS, true);
+    }
+
+    public void testMarshallersCompiled() {
+        ClassMapping aMapping = (ClassMapping) getCompass().getMapping().getRootMappingByAlias("a");
+        assertNotNull(aMapping.getMarshaller());
+        assertNotNull(((ClassMapping) getCompass().getMapping().getRootMappingByAlias("c")).getMarshaller());
+    }
+
+    public void testSaveAndLoad() {
+        CompassSession session = openSession();
+        CompassTransaction tr = session.beginTransaction();
+        Date date = new Date();
+        C c = new C(1l, "cvalue");
+        session.save(c);
+        session.save(createA(date, c));
+        tr.commit();
+        session.close();
+
+        session = openSession();
+        tr = session.beginTransaction();
+        A a = session.load(A.class, 1l);
+        assertEquals("value", a.getValue());
+        assertEquals(1, a.getIntValue());
+        assertEquals(2l, a.getLongValue());
+        assertTrue(a.isFlag());
+        assertEquals(3.5, a.getDoubleValue(), 0.0001);
+        assertEquals(date.getTime() / 1000, a.getDate().getTime() / 1000);
+        assertEquals("field", a.getFieldValue());
+        assertEquals("package", a.getPackageValue());
+        assertEquals(2, a.getTags().length);
+        assertEquals("tag2", a.getTags()[1]);
+        assertEquals("b", a.getB().getValue());
+        assertEquals(2, a.getBs().size());
+        assertEquals("b2", a.getBs().get(1).getValue());
+        assertEquals("cvalue", a.getC().getValue());
+
+        assertEquals(1, session.find("bvalue:b2").length());
+        assertEquals(1, session.find("packageValue:package").length());
+        tr.commit();
+        session.close();
+    }
+
+    public void testNullValues() {
+        CompassSession session = openSession();
+        CompassTransaction tr = session.beginTransaction();
+        A a = new A();
+        a.setId(1l);
+        session.save(a);
+        tr.commit();
+        session.close();
+
+        session = openSession();
+        tr = session.beginTransaction();
+        a = session.load(A.class, 1l);
+        assertNull(a.getValue());
+        assertEquals(0, a.getIntValue());
+        assertFalse(a.isFlag());
+        assertNull(a.getFieldValue());
+        assertNull(a.getB());
+        assertNull(a.getC());
+        tr.commit();
+        session.close();
+    }
+
+    public void testSameResourceAsMappingsIteration() throws Exception {
+        CompassConfiguration conf = buildConf();
+        conf.getSettings().setBooleanSetting(CompassEnvironment.Osem.COMPILE_MARSHALLERS, false);
+        conf.getSettings().setSetting(CompassEnvironment.CONNECTION, "ram://plain");
+        Compass plainCompass = conf.buildCompass();
+        try {
+            assertNull(((ClassMapping) ((InternalCompass) plainCompass).getMapping().getRootMappingByAlias("a")).getMarshaller());
+            A a = createA(new Date(), new C(1l, "cvalue"));
+            assertEquals(marshall(plainCompass, a), marshall(getCompass(), a));
+        } finally {
+            plainCompass.close();
+        }
+    }
+
+    private String marshall(Compass compass, A a) {
+        InternalCompassSession session = (InternalCompassSession) compass.openSession();
+        CompassTransaction tr = session.beginTransaction();
+        try {
+            Resource resource = session.getMarshallingStrategy().marshall(a);
+            return resource.toString();
+        } finally {
+            tr.commit();
+            session.close();
+        }
+    }
+
+    private A createA(Date date, C c) {
+        A a = new A();
+        a.setId(1l);
+        a.setValue("value");
+        a.setIntValue(1);
+        a.setLongValue(2);
+        a.setFlag(true);
+        a.setDoubleValue(3.5);
+        a.setDate(date);
+        a.setFieldValue("field");
+        a.setPackageValue("package");
+        a.setTags(new String[]{"tag1", "tag2"});
+        a.setB(new B("b"));
+        a.setBs(new ArrayList<B>());
+        a.getBs().add(new B("b1"));
+        a.getBs().add(new B("b2"));
+        a.setC(c);
+        return a;
+    }
+}
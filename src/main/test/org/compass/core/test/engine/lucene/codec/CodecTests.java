@@ -0,0 +1,141 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.compass.core.test.engine.lucene.codec;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
+import org.compass.core.Property;
+import org.compass.core.Resource;
+import org.compass.core.lucene.engine.LuceneSearchEngineFactory;
+import org.compass.core.lucene.engine.codec.CodecHelper;
+import org.compass.core.lucene.engine.codec.ResourceCodec;
+import org.compass.core.lucene.engine.codec.SerializableCodec;
+import org.compass.core.lucene.engine.codec.TransactionJobsCodec;
+import org.compass.core.lucene.engine.transaction.support.job.CreateTransactionJob;
+import org.compass.core.lucene.engine.transaction.support.job.DeleteByQueryTransactionJob;
+import org.compass.core.lucene.engine.transaction.support.job.DeleteTransactionJob;
+import org.compass.core.lucene.engine.transaction.support.job.FlushCommitTransactionJob;
+import org.compass.core.lucene.engine.transaction.support.job.TransactionJob;
+import org.compass.core.lucene.engine.transaction.support.job.TransactionJobs;
+import org.compass.core.lucene.engine.transaction.support.job.UpdateTransactionJob;
+import org.compass.core.spi.InternalResource;
+import org.compass.core.spi.MultiResource;
+import org.compass.core.test.engine.lucene.AbstractLuceneEngineTests;
+
+/**
+ * @author kimchy
+ */
+public class CodecTests extends AbstractLuceneEngineTests {
+
+    public void testResourceRoundTrip() throws Exception {
+        ResourceCodec codec = new ResourceCodec((LuceneSearchEngineFactory) getSearchEngineFactory());
+        InternalResource resource = luceneResource(createMultiIdResource(getSearchEngine()));
+        resource.setBoost(2.0f);
+        resource.addProperty(getSearchEngineFactory().getResourceFactory().createProperty("binary", new byte[]{1, 2, 3}, Property.Store.YES));
+
+        InternalResource decoded = CodecHelper.fromBytes(codec, CodecHelper.toBytes(codec, resource));
+        assertEquals(ALIAS_MUTLI, decoded.getAlias());
+        assertEquals(resource.getUID(), decoded.getUID());
+        assertEquals(2.0f, decoded.getBoost(), 0.0001f);
+        assertEquals(VALUE_ID2, decoded.getValue(PROPERTY_ID2));
+        assertEquals(VALUE_VAL4, decoded.getValue(PROPERTY_VAL4));
+        assertEquals(resource.getProperties().length, decoded.getProperties().length);
+
+        Property property = decoded.getProperty(PROPERTY_VAL2);
+        assertTrue(property.isStored());
+        assertTrue(property.isIndexed());
+        assertTrue(property.isTokenized());
+        property = decoded.getProperty(PROPERTY_ID2);
+        assertTrue(property.isIndexed());
+        assertFalse(property.isTokenized());
+
+        byte[] binary = decoded.getProperty("binary").getBinaryValue();
+        assertEquals(3, binary.length);
+        assertEquals(3, binary[2]);
+    }
+
+    public void testTransactionJobsRoundTrip() throws Exception {
+        TransactionJobsCodec codec = new TransactionJobsCodec((LuceneSearchEngineFactory) getSearchEngineFactory());
+        InternalResource single = luceneResource(createSingleIdResource(getSearchEngine()));
+        InternalResource multi = luceneResource(createMultiIdResource(getSearchEngine()));
+
+        TransactionJobs jobs = new TransactionJobs();
+        jobs.add(new CreateTransactionJob(single));
+        jobs.add(new UpdateTransactionJob(multi));
+        jobs.add(new DeleteTransactionJob(single.getResourceKey()));
+        jobs.add(new DeleteByQueryTransactionJob(new TermQuery(new Term(PROPERTY_VAL1, VALUE_VAL1)), single.getSubIndex()));
+        jobs.add(new FlushCommitTransactionJob(multi.getSubIndex()));
+
+        TransactionJobs decoded = CodecHelper.fromBytes(codec, CodecHelper.toBytes(codec, jobs));
+        assertEquals(jobs, decoded);
+        assertEquals(jobs.getSubIndexes(), decoded.getSubIndexes());
+        assertEquals(5, decoded.getJobs().size());
+
+        TransactionJob job = decoded.getJobs().get(0);
+        assertTrue(job instanceof CreateTransactionJob);
+        Resource resource = ((CreateTransactionJob) job).getResource();
+        assertEquals(VALUE_VAL1, resource.getValue(PROPERTY_VAL1));
+
+        job = decoded.getJobs().get(1);
+        assertTrue(job instanceof UpdateTransactionJob);
+        assertEquals(multi.getUID(), job.getResourceUID());
+
+        job = decoded.getJobs().get(2);
+        assertTrue(job instanceof DeleteTransactionJob);
+        assertEquals(single.getResourceKey(), ((DeleteTransactionJob) job).getResourceKey());
+        assertNotNull(((DeleteTransactionJob) job).getResourceKey().getResourceMapping());
+
+        job = decoded.getJobs().get(3);
+        assertTrue(job instanceof DeleteByQueryTransactionJob);
+        assertEquals(new TermQuery(new Term(PROPERTY_VAL1, VALUE_VAL1)), ((DeleteByQueryTransactionJob) job).getQuery());
+
+        assertTrue(decoded.getJobs().get(4) instanceof FlushCommitTransactionJob);
+    }
+
+    public void testBinaryIsSmallerThanSerializable() throws Exception {
+        TransactionJobsCodec codec = new TransactionJobsCodec((LuceneSearchEngineFactory) getSearchEngineFactory());
+        TransactionJobs jobs = new TransactionJobs();
+        jobs.add(new CreateTransactionJob(luceneResource(createSingleIdResource(getSearchEngine()))));
+        jobs.add(new CreateTransactionJob(luceneResource(createMultiIdResource(getSearchEngine()))));
+
+        int binarySize = CodecHelper.toBytes(codec, jobs).length;
+        int serializableSize = CodecHelper.toBytes(new SerializableCodec<TransactionJobs>(), jobs).length;
+        assertTrue("binary [" + binarySize + "] serializable [" + serializableSize + "]", binarySize < serializableSize);
+    }
+
+    public void testUnsupportedVersion() throws Exception {
+        TransactionJobsCodec codec = new TransactionJobsCodec((LuceneSearchEngineFactory) getSearchEngineFactory());
+        TransactionJobs jobs = new TransactionJobs();
+        jobs.add(new FlushCommitTransactionJob("a"));
+        byte[] bytes = CodecHelper.toBytes(codec, jobs);
+        bytes[0] = (byte) (TransactionJobsCodec.VERSION + 1);
+        try {
+            CodecHelper.fromBytes(codec, bytes);
+            fail();
+        } catch (IOException e) {
+            // all is well
+        }
+    }
+
+    private InternalResource luceneResource(Resource resource) {
+        // the search engine unwraps multi resources before creating transaction jobs
+        return (InternalResource) ((MultiResource) resource).currentResource();
+    }
+}
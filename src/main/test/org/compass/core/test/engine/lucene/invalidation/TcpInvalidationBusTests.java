@@ -0,0 +1,182 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.test.engine.lucene.invalidation;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+import org.compass.core.lucene.engine.invalidation.InvalidationBus;
+import org.compass.core.lucene.engine.invalidation.InvalidationListener;
+import org.compass.core.lucene.engine.invalidation.TcpInvalidationBus;
+
+/**
+ * @author kimchy
+ */
+public class TcpInvalidationBusTests extends TestCase {
+
+    private TcpInvalidationBus bus1;
+
+    private TcpInvalidationBus bus2;
+
+    private RecordingListener listener1 = new RecordingListener();
+
+    private RecordingListener listener2 = new RecordingListener();
+
+    protected void tearDown() throws Exception {
+        if (bus1 != null) {
+            bus1.close();
+        }
+        if (bus2 != null) {
+            bus2.close();
+        }
+    }
+
+    public void testPublishToPeers() throws Exception {
+        bus1 = startBus(0, listener1);
+        bus2 = startBus(0, listener2);
+        bus1.setPeers(new String[]{"localhost:" + bus2.getPort()});
+        bus2.setPeers(new String[]{"localhost:" + bus1.getPort()});
+
+        bus1.publish("a", 1);
+        bus1.publish("b", InvalidationBus.CLEAR_CACHE);
+        // messages might be delivered more than once (the latest versions are sent first on a new connection)
+        listener2.awaitReceived("a:1");
+        listener2.awaitReceived("b:" + InvalidationBus.CLEAR_CACHE);
+
+        bus2.publish("a", 2);
+        listener1.awaitReceived("a:2");
+
+        // never delivered back to the publisher
+        Thread.sleep(200);
+        listener1.queue.drainTo(listener1.received);
+        assertFalse(listener1.received.contains("a:1"));
+        assertFalse(listener1.received.contains("b:" + InvalidationBus.CLEAR_CACHE));
+    }
+
+    public void testPeerCatchesUpOnceReachable() throws Exception {
+        int port2 = freePort();
+
+        bus1 = startBus(0, listener1);
+        bus1.setPeers(new String[]{"localhost:" + port2});
+        // peer is down, the message is dropped
+        bus1.publish("a", 1);
+        Thread.sleep(200);
+
+        bus2 = startBus(port2, listener2);
+        bus1.publish("b", 5);
+        // once connected, the latest version of each sub index is sent first
+        listener2.awaitReceived("a:1");
+        listener2.awaitReceived("b:5");
+    }
+
+    public void testUnreachablePeerDoesNotDelayOtherPeers() throws Exception {
+        // a non routable address, connecting to it blocks until the connect timeout
+        bus1 = new TcpInvalidationBus();
+        bus1.setBindHost("localhost");
+        bus1.setPort(0);
+        bus1.setResendInterval(0);
+        bus1.start(listener1);
+        bus2 = startBus(0, listener2);
+        bus1.setPeers(new String[]{"10.255.255.1:" + bus2.getPort(), "localhost:" + bus2.getPort()});
+
+        long start = System.currentTimeMillis();
+        bus1.publish("a", 1);
+        listener2.awaitReceived("a:1");
+        assertTrue(System.currentTimeMillis() - start < 4000);
+    }
+
+    public void testLatestVersionsAreResentPeriodically() throws Exception {
+        int port2 = freePort();
+
+        bus1 = startBus(0, listener1, 100);
+        bus1.setPeers(new String[]{"localhost:" + port2});
+        // peer is down, the message is not delivered
+        bus1.publish("a", 1);
+        Thread.sleep(200);
+
+        // no further publish, the peer is reconnected to and catches up on the next resend
+        bus2 = startBus(port2, listener2);
+        listener2.awaitReceived("a:1");
+
+        // the peer restarts, and catches up again
+        bus2.close();
+        bus1.publish("a", 2);
+        RecordingListener restartedListener = new RecordingListener();
+        bus2 = startBus(port2, restartedListener);
+        restartedListener.awaitReceived("a:2");
+    }
+
+    /**
+     * Returns a free port outside of the ephemeral port range, so it won't be taken by a TCP self connect
+     * while the bus connecting to it is retrying and no bus is listening on it.
+     */
+    private static int freePort() throws IOException {
+        int start = 20000 + new Random().nextInt(5000);
+        for (int port = start; port < start + 5000; port++) {
+            ServerSocket serverSocket = new ServerSocket();
+            try {
+                serverSocket.bind(new InetSocketAddress("localhost", port));
+                return port;
+            } catch (IOException e) {
+                // taken, try the next one
+            } finally {
+                serverSocket.close();
+            }
+        }
+        throw new IOException("No free port found starting at [" + start + "]");
+    }
+
+    private TcpInvalidationBus startBus(int port, InvalidationListener listener) {
+        return startBus(port, listener, 0);
+    }
+
+    private TcpInvalidationBus startBus(int port, InvalidationListener listener, long resendInterval) {
+        TcpInvalidationBus bus = new TcpInvalidationBus();
+        bus.setBindHost("localhost");
+        bus.setPort(port);
+        bus.setResendInterval(resendInterval);
+        bus.start(listener);
+        return bus;
+    }
+
+    private static class RecordingListener implements InvalidationListener {
+
+        final BlockingQueue<String> queue = new LinkedBlockingQueue<String>();
+
+        final Set<String> received = new HashSet<String>();
+
+        public void onInvalidation(String subIndex, long version) {
+            queue.add(subIndex + ":" + version);
+        }
+
+        void awaitReceived(String message) throws InterruptedException {
+            while (!received.contains(message)) {
+                String next = queue.poll(5, TimeUnit.SECONDS);
+                assertNotNull("did not receive [" + message + "], received " + received, next);
+                received.add(next);
+            }
+        }
+    }
+}
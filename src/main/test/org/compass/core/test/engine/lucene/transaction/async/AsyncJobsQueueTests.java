@@ -0,0 +1,149 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.test.engine.lucene.transaction.async;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
+import org.compass.core.engine.SearchEngineException;
+import org.compass.core.lucene.engine.transaction.async.AsyncJobsQueue;
+import org.compass.core.lucene.engine.transaction.async.BackPressure;
+import org.compass.core.lucene.engine.transaction.support.job.DeleteByQueryTransactionJob;
+import org.compass.core.lucene.engine.transaction.support.job.TransactionJobs;
+
+/**
+ * @author kimchy
+ */
+public class AsyncJobsQueueTests extends TestCase {
+
+    private File spillLocation = new File("target/test-async-spill");
+
+    public void testFailBackPressure() throws Exception {
+        AsyncJobsQueue queue = new AsyncJobsQueue("test", 1, BackPressure.FAIL, 0, spillLocation);
+        queue.add(createJobs("1"));
+        try {
+            queue.add(createJobs("2"));
+            fail();
+        } catch (SearchEngineException e) {
+            // all is well
+        }
+        assertEquals(1, queue.getDepth());
+        assertEquals(1, queue.getAddedCount());
+        assertEquals(1, queue.getRejectedCount());
+        queue.close();
+    }
+
+    public void testBlockBackPressureTimesOut() throws Exception {
+        AsyncJobsQueue queue = new AsyncJobsQueue("test", 1, BackPressure.BLOCK, 10, spillLocation);
+        queue.add(createJobs("1"));
+        try {
+            queue.add(createJobs("2"));
+            fail();
+        } catch (SearchEngineException e) {
+            // all is well
+        }
+        assertEquals(1, queue.getRejectedCount());
+        queue.close();
+    }
+
+    public void testSpillBackPressureKeepsOrder() throws Exception {
+        AsyncJobsQueue queue = new AsyncJobsQueue("test", 1, BackPressure.SPILL, 0, spillLocation);
+        for (int i = 0; i < 4; i++) {
+            queue.add(createJobs(Integer.toString(i)));
+        }
+        assertEquals(4, queue.getDepth());
+        assertEquals(3, queue.getSpilledDepth());
+        assertEquals(3, queue.getSpilledCount());
+        assertEquals(0, queue.getRejectedCount());
+
+        assertEquals("0", getValue(queue.poll(0, TimeUnit.MILLISECONDS)));
+        List<TransactionJobs> drained = new ArrayList<TransactionJobs>();
+        assertEquals(3, queue.drainTo(drained, 10));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Integer.toString(i + 1), getValue(drained.get(i)));
+        }
+        assertTrue(queue.isEmpty());
+        assertEquals(4, queue.getProcessedCount());
+        assertNull(queue.poll(0, TimeUnit.MILLISECONDS));
+        queue.close();
+    }
+
+    public void testRemove() throws Exception {
+        AsyncJobsQueue queue = new AsyncJobsQueue("test", 2, BackPressure.FAIL, 0, spillLocation);
+        TransactionJobs jobs = createJobs("1");
+        queue.add(jobs);
+        assertTrue(queue.remove(jobs));
+        assertFalse(queue.remove(jobs));
+        assertTrue(queue.isEmpty());
+        queue.close();
+    }
+
+    public void testReserveThenAddOrCancel() throws Exception {
+        AsyncJobsQueue queue = new AsyncJobsQueue("test", 1, BackPressure.FAIL, 0, spillLocation);
+        AsyncJobsQueue.Reservation reservation = queue.reserve(createJobs("1"), -1);
+        // room is reserved, but the jobs are not available yet
+        assertTrue(queue.isEmpty());
+        try {
+            queue.reserve(createJobs("2"), -1);
+            fail();
+        } catch (SearchEngineException e) {
+            // all is well
+        }
+        queue.cancel(reservation);
+        assertTrue(queue.isEmpty());
+
+        reservation = queue.reserve(createJobs("3"), -1);
+        queue.add(reservation);
+        assertEquals(1, queue.getDepth());
+        assertEquals("3", getValue(queue.poll(0, TimeUnit.MILLISECONDS)));
+        // room is released once taken
+        queue.add(createJobs("4"));
+        queue.close();
+    }
+
+    public void testSpillReservationKeepsOrder() throws Exception {
+        AsyncJobsQueue queue = new AsyncJobsQueue("test", 1, BackPressure.SPILL, 0, spillLocation);
+        queue.add(createJobs("0"));
+        AsyncJobsQueue.Reservation reservation = queue.reserve(createJobs("1"), -1);
+        assertEquals(0, queue.getSpilledDepth());
+        queue.add(reservation);
+        queue.add(createJobs("2"));
+        assertEquals(2, queue.getSpilledDepth());
+
+        List<TransactionJobs> drained = new ArrayList<TransactionJobs>();
+        assertEquals(3, queue.drainTo(drained, 10));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Integer.toString(i), getValue(drained.get(i)));
+        }
+        queue.close();
+    }
+
+    private TransactionJobs createJobs(String value) {
+        TransactionJobs jobs = new TransactionJobs();
+        jobs.add(new DeleteByQueryTransactionJob(new TermQuery(new Term("value", value)), "a"));
+        return jobs;
+    }
+
+    private String getValue(TransactionJobs jobs) {
+        return ((TermQuery) ((DeleteByQueryTransactionJob) jobs.getJobs().get(0)).getQuery()).getTerm().text();
+    }
+}
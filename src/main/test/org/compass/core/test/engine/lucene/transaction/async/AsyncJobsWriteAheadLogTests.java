@@ -0,0 +1,192 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.test.engine.lucene.transaction.async;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import junit.framework.TestCase;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
+import org.compass.core.lucene.engine.transaction.async.AsyncJobsWriteAheadLog;
+import org.compass.core.lucene.engine.transaction.support.job.DeleteByQueryTransactionJob;
+import org.compass.core.lucene.engine.transaction.support.job.TransactionJobs;
+import org.compass.core.util.FileSystemUtils;
+
+/**
+ * @author kimchy
+ */
+public class AsyncJobsWriteAheadLogTests extends TestCase {
+
+    private File location = new File("target/test-async-wal-log");
+
+    @Override
+    protected void setUp() throws Exception {
+        FileSystemUtils.deleteRecursively(location);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileSystemUtils.deleteRecursively(location);
+    }
+
+    public void testAcknowledgedRecordsAreTruncated() throws Exception {
+        AsyncJobsWriteAheadLog log = new AsyncJobsWriteAheadLog(location, true, 1024 * 1024);
+        assertTrue(log.open().isEmpty());
+        long id1 = log.append(createJobs("1"), 1);
+        long id2 = log.append(createJobs("2"), 2);
+        assertEquals(2, log.getOutstandingCount());
+        assertTrue(segment(0).length() > 0);
+
+        log.acknowledge(id1);
+        log.acknowledge(id2);
+        assertEquals(1, log.getOutstandingCount());
+        log.acknowledge(id2);
+        assertEquals(0, log.getOutstandingCount());
+        assertEquals(0, segment(0).length());
+        assertEquals(2, log.getAppendedCount());
+        assertTrue(log.getSyncCount() <= 2);
+        log.close();
+
+        log = new AsyncJobsWriteAheadLog(location, true, 1024 * 1024);
+        assertTrue(log.open().isEmpty());
+        log.close();
+    }
+
+    public void testOutstandingRecordsAreRecovered() throws Exception {
+        AsyncJobsWriteAheadLog log = new AsyncJobsWriteAheadLog(location, true, 1024 * 1024);
+        log.open();
+        log.acknowledge(log.append(createJobs("1"), 1));
+        log.append(createJobs("2"), 1);
+        log.append(createJobs("3"), 1);
+        log.close();
+
+        log = new AsyncJobsWriteAheadLog(location, true, 1024 * 1024);
+        List<TransactionJobs> recovered = log.open();
+        assertEquals(2, recovered.size());
+        assertEquals("2", getValue(recovered.get(0)));
+        assertEquals("3", getValue(recovered.get(1)));
+        log.recovered();
+        assertFalse(segment(0).exists());
+        log.close();
+
+        log = new AsyncJobsWriteAheadLog(location, true, 1024 * 1024);
+        assertTrue(log.open().isEmpty());
+        log.close();
+    }
+
+    public void testAcknowledgedRecordsAreNotRecovered() throws Exception {
+        AsyncJobsWriteAheadLog log = new AsyncJobsWriteAheadLog(location, true, 1024 * 1024);
+        log.open();
+        long id1 = log.append(createJobs("1"), 1);
+        long id2 = log.append(createJobs("2"), 2);
+        long id3 = log.append(createJobs("3"), 1);
+        log.append(createJobs("4"), 1);
+        // the segment still has outstanding records, so it is not truncated
+        log.acknowledge(id1);
+        log.acknowledge(id2);
+        log.acknowledge(id2);
+        log.discard(id3);
+        assertEquals(1, log.getOutstandingCount());
+        log.close();
+
+        log = new AsyncJobsWriteAheadLog(location, true, 1024 * 1024);
+        List<TransactionJobs> recovered = log.open();
+        assertEquals(1, recovered.size());
+        assertEquals("4", getValue(recovered.get(0)));
+        log.close();
+    }
+
+    public void testAcknowledgmentsOfOlderSegmentsAreRecovered() throws Exception {
+        AsyncJobsWriteAheadLog log = new AsyncJobsWriteAheadLog(location, true, 1024 * 1024);
+        log.open();
+        log.append(createJobs("1"), 1);
+        long recordSize = segment(0).length();
+        log.close();
+        FileSystemUtils.deleteRecursively(location);
+
+        // the first segment rolls once it holds two records
+        log = new AsyncJobsWriteAheadLog(location, true, recordSize + 1);
+        log.open();
+        long id1 = log.append(createJobs("1"), 1);
+        log.append(createJobs("2"), 1);
+        log.append(createJobs("3"), 1);
+        assertTrue(segment(1).exists());
+        // the acknowledgment of the first record is written to the second segment
+        log.acknowledge(id1);
+        assertTrue(segment(0).exists());
+        log.close();
+
+        log = new AsyncJobsWriteAheadLog(location, true, recordSize + 1);
+        List<TransactionJobs> recovered = log.open();
+        assertEquals(2, recovered.size());
+        assertEquals("2", getValue(recovered.get(0)));
+        assertEquals("3", getValue(recovered.get(1)));
+        log.close();
+    }
+
+    public void testTornRecordIsIgnored() throws Exception {
+        AsyncJobsWriteAheadLog log = new AsyncJobsWriteAheadLog(location, false, 1024 * 1024);
+        log.open();
+        log.append(createJobs("1"), 1);
+        log.append(createJobs("2"), 1);
+        log.close();
+
+        RandomAccessFile raf = new RandomAccessFile(segment(0), "rw");
+        raf.setLength(raf.length() - 5);
+        raf.close();
+
+        log = new AsyncJobsWriteAheadLog(location, false, 1024 * 1024);
+        List<TransactionJobs> recovered = log.open();
+        assertEquals(1, recovered.size());
+        assertEquals("1", getValue(recovered.get(0)));
+        log.close();
+    }
+
+    public void testSegmentsAreRolledAndDeleted() throws Exception {
+        AsyncJobsWriteAheadLog log = new AsyncJobsWriteAheadLog(location, true, 1);
+        log.open();
+        long id1 = log.append(createJobs("1"), 1);
+        long id2 = log.append(createJobs("2"), 1);
+        assertTrue(segment(0).exists());
+        assertTrue(segment(1).exists());
+        assertTrue(segment(2).exists());
+
+        log.acknowledge(id2);
+        assertTrue(segment(0).exists());
+        assertFalse(segment(1).exists());
+        log.acknowledge(id1);
+        assertFalse(segment(0).exists());
+        log.close();
+        assertFalse(segment(2).exists());
+    }
+
+    private File segment(long sequence) {
+        return new File(location, sequence + ".wal");
+    }
+
+    private TransactionJobs createJobs(String value) {
+        TransactionJobs jobs = new TransactionJobs();
+        jobs.add(new DeleteByQueryTransactionJob(new TermQuery(new Term("value", value)), "a"));
+        return jobs;
+    }
+
+    private String getValue(TransactionJobs jobs) {
+        return ((TermQuery) ((DeleteByQueryTransactionJob) jobs.getJobs().get(0)).getQuery()).getTerm().text();
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.test.engine.lucene.transaction.async;
+
+import java.util.Map;
+
+import org.compass.core.config.CompassEnvironment;
+import org.compass.core.config.CompassSettings;
+import org.compass.core.engine.SearchEngine;
+import org.compass.core.lucene.LuceneEnvironment;
+import org.compass.core.lucene.engine.LuceneSearchEngineFactory;
+import org.compass.core.lucene.engine.transaction.async.AsyncJobsQueue;
+import org.compass.core.lucene.engine.transaction.async.AsyncTransactionProcessorFactory;
+
+/**
+ * @author kimchy
+ */
+public class RamQueuePerSubIndexAsyncTransactionTests extends AbstractAsyncTransactionTests {
+
+    @Override
+    protected CompassSettings buildCompassSettings() {
+        CompassSettings settings = super.buildCompassSettings();
+        settings.setSetting(CompassEnvironment.CONNECTION, "ram://target/testindex");
+        settings.setBooleanSetting(LuceneEnvironment.Transaction.Processor.Async.QUEUE_PER_SUB_INDEX, true);
+        return settings;
+    }
+
+    public void testQueuePerSubIndex() {
+        SearchEngine searchEngine = getSearchEngine();
+        searchEngine.begin();
+        searchEngine.create(createSingleIdResource(searchEngine));
+        searchEngine.create(createMultiIdResource(searchEngine));
+        searchEngine.commit(true);
+
+        sleepForChangesToOccur();
+
+        searchEngine.begin();
+        assertSingleIdResourceExists(searchEngine);
+        assertMulitIdResourceExists(searchEngine);
+        searchEngine.rollback();
+
+        Map<String, AsyncJobsQueue> queues = getProcessorFactory().getQueues();
+        assertEquals(2, queues.size());
+        for (AsyncJobsQueue queue : queues.values()) {
+            assertEquals(1, queue.getAddedCount());
+            assertEquals(1, queue.getProcessedCount());
+            assertEquals(0, queue.getDepth());
+        }
+    }
+
+    private AsyncTransactionProcessorFactory getProcessorFactory() {
+        return (AsyncTransactionProcessorFactory) ((LuceneSearchEngineFactory) getSearchEngineFactory())
+                .getTransactionProcessorManager().getProcessorFactory(LuceneEnvironment.Transaction.Processor.Async.NAME);
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.test.engine.lucene.transaction.lucene;
+
+import org.compass.core.config.CompassSettings;
+import org.compass.core.lucene.LuceneEnvironment;
+
+/**
+ * @author kimchy
+ */
+public class JdbcChunkedLuceneTransactionEngineTests extends JdbcLuceneTransactionEngineTests {
+
+    protected CompassSettings buildCompassSettings() {
+        CompassSettings settings = super.buildCompassSettings();
+        settings.setSetting(LuceneEnvironment.JdbcStore.Chunk.SIZE, "1k");
+        settings.setIntSetting(LuceneEnvironment.JdbcStore.Chunk.BATCH_SIZE, 4);
+        settings.setIntSetting(LuceneEnvironment.JdbcStore.Chunk.READ_AHEAD, 2);
+        return settings;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.compass.core.test.engine.lucene.transaction.readcommitted;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+
+import org.compass.core.Property;
+import org.compass.core.Resource;
+import org.compass.core.ResourceFactory;
+import org.compass.core.config.CompassSettings;
+import org.compass.core.engine.SearchEngine;
+import org.compass.core.lucene.LuceneEnvironment;
+import org.compass.core.lucene.engine.LuceneSearchEngineFactory;
+import org.compass.core.lucene.engine.transaction.readcommitted.GroupCommitStats;
+import org.compass.core.lucene.engine.transaction.readcommitted.ReadCommittedTransactionProcessorFactory;
+import org.compass.core.spi.InternalResource;
+
+/**
+ * @author kimchy
+ */
+public class FSGroupCommitReadCommittedTransactionEngineTests extends AbstractReadCommittedTransactionTests {
+
+    protected CompassSettings buildCompassSettings() {
+        CompassSettings settings = super.buildCompassSettings();
+        settings.setBooleanSetting(LuceneEnvironment.Transaction.Processor.ReadCommitted.GroupCommit.ENABLE, true);
+        settings.setSetting(LuceneEnvironment.Transaction.Processor.ReadCommitted.GroupCommit.MAX_WAIT, "2s");
+        return settings;
+    }
+
+    public void testSingleCommitDoesNotWait() {
+        getSearchEngine().begin();
+        Resource singleId = createSingleIdResource(getSearchEngine());
+        getSearchEngine().create(singleId);
+        getSearchEngine().commit(true);
+
+        GroupCommitStats stats = getGroupCommitStats(((InternalResource) singleId).getSubIndex());
+        assertEquals(1, stats.getBatchCount());
+        assertEquals(1, stats.getLastBatchSize());
+        assertTrue(stats.getMaxTransactionLatency() < 2000);
+
+        getSearchEngine().begin();
+        assertSingleIdResourceExists(getSearchEngine());
+        getSearchEngine().rollback();
+    }
+
+    public void testConcurrentCommitsAreGrouped() throws Exception {
+        final int numberOfSessions = 5;
+        final CyclicBarrier barrier = new CyclicBarrier(numberOfSessions);
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        final String[] subIndex = new String[1];
+        Thread[] threads = new Thread[numberOfSessions];
+        for (int i = 0; i < numberOfSessions; i++) {
+            final int id = i;
+            threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    SearchEngine searchEngine = createNewSearchEngine();
+                    try {
+                        searchEngine.begin();
+                        Resource resource = createResource(searchEngine, "group" + id);
+                        searchEngine.create(resource);
+                        searchEngine.flush();
+                        subIndex[0] = ((InternalResource) resource).getSubIndex();
+                        barrier.await();
+                        searchEngine.commit(true);
+                    } catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    } finally {
+                        searchEngine.close();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+
+        GroupCommitStats stats = getGroupCommitStats(subIndex[0]);
+        assertEquals(numberOfSessions, stats.getTransactionCount());
+        assertEquals(0, stats.getFailedTransactionCount());
+        assertTrue(stats.getMaxBatchSize() > 1);
+        assertTrue(stats.getBatchCount() < numberOfSessions);
+
+        getSearchEngine().begin();
+        for (int i = 0; i < numberOfSessions; i++) {
+            assertNotNull(getSearchEngine().get(createResource(getSearchEngine(), "group" + i)));
+        }
+        getSearchEngine().rollback();
+    }
+
+    private Resource createResource(SearchEngine searchEngine, String id) {
+        ResourceFactory resourceFactory = searchEngine.getSearchEngineFactory().getResourceFactory();
+        Resource resource = resourceFactory.createResource(ALIAS_SINGLE);
+        resource.addProperty(resourceFactory.createProperty(PROPERTY_ID1, id, Property.Store.YES,
+                Property.Index.NOT_ANALYZED));
+        resource.addProperty(resourceFactory.createProperty(PROPERTY_VAL1, VALUE_VAL1, Property.Store.YES,
+                Property.Index.ANALYZED));
+        ((InternalResource) resource).addUID();
+        return resource;
+    }
+
+    private GroupCommitStats getGroupCommitStats(String subIndex) {
+        ReadCommittedTransactionProcessorFactory processorFactory = (ReadCommittedTransactionProcessorFactory)
+                ((LuceneSearchEngineFactory) getSearchEngineFactory()).getTransactionProcessorManager()
+                        .getProcessorFactory(LuceneEnvironment.Transaction.Processor.ReadCommitted.NAME);
+        return processorFactory.getGroupCommitManager().getStats(subIndex);
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.test.find;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.apache.lucene.search.Hits;
+import org.compass.core.CompassHits;
+import org.compass.core.CompassQuery;
+import org.compass.core.CompassSession;
+import org.compass.core.CompassTransaction;
+import org.compass.core.Resource;
+import org.compass.core.config.CompassSettings;
+import org.compass.core.lucene.LuceneEnvironment;
+import org.compass.core.lucene.engine.TopDocsLuceneSearchEngineHits;
+import org.compass.core.lucene.util.LuceneHelper;
+
+/**
+ * Runs all the find tests using top docs based hits (with a small initial window and lazy fields).
+ *
+ * @author kimchy
+ */
+public class TopDocsFindTests extends FindTests {
+
+    @Override
+    protected void addSettings(CompassSettings settings) {
+        super.addSettings(settings);
+        settings.setBooleanSetting(LuceneEnvironment.Query.TOP_DOCS_HITS, true);
+        settings.setIntSetting(LuceneEnvironment.Query.TOP_DOCS_HITS_INITIAL_SIZE, 5);
+        settings.setBooleanSetting(LuceneEnvironment.Query.TOP_DOCS_HITS_LAZY_FIELDS, true);
+    }
+
+    public void testWindowExpansion() {
+        addTopDocsData(0, 50);
+
+        CompassSession session = openSession();
+        CompassTransaction tr = session.beginTransaction();
+        CompassHits hits = session.find("alias:a1");
+        TopDocsLuceneSearchEngineHits topDocsHits = (TopDocsLuceneSearchEngineHits) LuceneHelper.getLuceneSearchEngineHits(hits);
+        assertEquals(50, hits.length());
+        assertEquals(5, topDocsHits.getFetchedLength());
+
+        assertNotNull(hits.resource(7));
+        assertEquals(12, topDocsHits.getFetchedLength());
+
+        topDocsHits.fetch(20, 10);
+        assertEquals(30, topDocsHits.getFetchedLength());
+        // already fetched, no need to search again
+        topDocsHits.fetch(0, 10);
+        assertEquals(30, topDocsHits.getFetchedLength());
+
+        Set<Long> ids = new HashSet<Long>();
+        for (int i = 0; i < hits.length(); i++) {
+            ids.add(((A) hits.data(i)).getId());
+            assertTrue(hits.score(i) <= 1.0f);
+        }
+        assertEquals(50, ids.size());
+        tr.commit();
+        session.close();
+    }
+
+    public void testStreamingIterator() {
+        addTopDocsData(0, 30);
+
+        CompassSession session = openSession();
+        CompassTransaction tr = session.beginTransaction();
+        TopDocsLuceneSearchEngineHits topDocsHits = (TopDocsLuceneSearchEngineHits)
+                LuceneHelper.getLuceneSearchEngineHits(session.find("alias:a1"));
+        Set<String> ids = new HashSet<String>();
+        for (Iterator<Resource> it = topDocsHits.iterator(); it.hasNext();) {
+            Resource resource = it.next();
+            assertEquals("a1", resource.getAlias());
+            ids.add(resource.getValue("id"));
+        }
+        assertEquals(30, ids.size());
+        // streaming does not expand the top docs window
+        assertEquals(5, topDocsHits.getFetchedLength());
+        tr.commit();
+        session.close();
+    }
+
+    public void testStreamingIteratorWithSort() {
+        addTopDocsData(0, 9);
+
+        CompassSession session = openSession();
+        CompassTransaction tr = session.beginTransaction();
+        TopDocsLuceneSearchEngineHits topDocsHits = (TopDocsLuceneSearchEngineHits)
+                LuceneHelper.getLuceneSearchEngineHits(session.queryBuilder().queryString("alias:a1").toQuery()
+                        .addSort("mvalue").hits());
+        int count = 0;
+        for (Resource resource : topDocsHits) {
+            assertEquals("value" + count++, resource.getValue("mvalue"));
+        }
+        assertEquals(9, count);
+        tr.commit();
+        session.close();
+    }
+
+    public void testStreamingIteratorWithReverseSort() {
+        addTopDocsData(0, 9);
+
+        CompassSession session = openSession();
+        CompassTransaction tr = session.beginTransaction();
+        TopDocsLuceneSearchEngineHits topDocsHits = (TopDocsLuceneSearchEngineHits)
+                LuceneHelper.getLuceneSearchEngineHits(session.queryBuilder().queryString("alias:a1").toQuery()
+                        .addSort("mvalue", CompassQuery.SortDirection.REVERSE).hits());
+        int count = 9;
+        for (Resource resource : topDocsHits) {
+            assertEquals("value" + --count, resource.getValue("mvalue"));
+        }
+        assertEquals(0, count);
+        tr.commit();
+        session.close();
+    }
+
+    public void testStreamingIteratorAcrossSubIndexes() {
+        addTopDocsData(0, 7);
+        CompassSession session = openSession();
+        CompassTransaction tr = session.beginTransaction();
+        for (int i = 0; i < 6; i++) {
+            B b = new B();
+            b.setId(new Long(i));
+            b.setValue("value" + i);
+            session.save(b);
+        }
+        tr.commit();
+        session.close();
+
+        session = openSession();
+        tr = session.beginTransaction();
+        TopDocsLuceneSearchEngineHits topDocsHits = (TopDocsLuceneSearchEngineHits)
+                LuceneHelper.getLuceneSearchEngineHits(session.queryBuilder().queryString("alias:a1 OR alias:b1").toQuery()
+                        .addSort("mvalue").hits());
+        Set<String> ids = new HashSet<String>();
+        String last = null;
+        for (Resource resource : topDocsHits) {
+            ids.add(resource.getAlias() + resource.getValue("id"));
+            String value = resource.getValue("mvalue");
+            assertTrue(last == null || last.compareTo(value) <= 0);
+            last = value;
+        }
+        assertEquals(13, ids.size());
+        tr.commit();
+        session.close();
+    }
+
+    public void testLuceneHits() throws Exception {
+        addTopDocsData(0, 10);
+
+        CompassSession session = openSession();
+        CompassTransaction tr = session.beginTransaction();
+        TopDocsLuceneSearchEngineHits topDocsHits = (TopDocsLuceneSearchEngineHits)
+                LuceneHelper.getLuceneSearchEngineHits(session.queryBuilder().queryString("alias:a1").toQuery()
+                        .addSort("mvalue").hits());
+        Hits hits = topDocsHits.getHits();
+        assertEquals(10, hits.length());
+        assertSame(hits, topDocsHits.getHits());
+        assertEquals(topDocsHits.getResource(0).getValue("mvalue"), hits.doc(0).get("mvalue"));
+        tr.commit();
+        session.close();
+    }
+
+    private void addTopDocsData(int from, int to) {
+        CompassSession session = openSession();
+        CompassTransaction tr = session.beginTransaction();
+        for (int i = from; i < to; i++) {
+            A a = new A();
+            a.setId(new Long(i));
+            a.setValue("value" + i);
+            session.save(a);
+        }
+        tr.commit();
+        session.close();
+    }
+}
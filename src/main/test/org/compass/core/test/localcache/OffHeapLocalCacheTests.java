@@ -0,0 +1,156 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.test.localcache;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RAMDirectory;
+import org.compass.core.lucene.engine.store.localcache.BucketCache;
+import org.compass.core.lucene.engine.store.localcache.MemoryDirectoryCache;
+import org.compass.core.util.FileSystemUtils;
+
+/**
+ * @author kimchy
+ */
+public class OffHeapLocalCacheTests extends TestCase {
+
+    public void test1Buffer() throws Exception {
+        verifyBucketSize(1);
+    }
+
+    public void test3Buffer() throws Exception {
+        verifyBucketSize(3);
+    }
+
+    public void test10Buffer() throws Exception {
+        verifyBucketSize(10);
+    }
+
+    public void test40Buffer() throws Exception {
+        verifyBucketSize(40);
+    }
+
+    public void testCachedReads() throws Exception {
+        MemoryDirectoryCache dir = new MemoryDirectoryCache("cacheFileNames=false&bucketSize=10&size=1k", new RAMDirectory(), true, null);
+        insertData(dir);
+        verifyData(dir);
+        BucketCache bucketCache = dir.getBucketCache();
+        long misses = bucketCache.getMissCount();
+        verifyData(dir);
+        assertEquals(misses, bucketCache.getMissCount());
+        assertTrue(bucketCache.getHitCount() > 0);
+        assertEquals(0, bucketCache.getEvictionCount());
+        dir.close();
+    }
+
+    public void testEviction() throws Exception {
+        // only two buckets can be cached
+        MemoryDirectoryCache dir = new MemoryDirectoryCache("cacheFileNames=false&bucketSize=8&size=16&slabSize=8", new RAMDirectory(), true, null);
+        insertData(dir);
+        verifyData(dir);
+        verifyData(dir);
+        assertTrue(dir.getBucketCache().getEvictionCount() > 0);
+        dir.close();
+    }
+
+    public void testMemoryMapped() throws Exception {
+        File path = new File("target/test-offheap-cache");
+        try {
+            MemoryDirectoryCache dir = new MemoryDirectoryCache("cacheFileNames=false&bucketSize=10&size=1k&slabSize=100&path=" + path.getPath(), new RAMDirectory(), true, null);
+            insertData(dir);
+            verifyData(dir);
+            verifyData(dir);
+            assertTrue(dir.getBucketCache().getHitCount() > 0);
+            dir.close();
+        } finally {
+            FileSystemUtils.deleteRecursively(path);
+        }
+    }
+
+    public void testClone() throws Exception {
+        MemoryDirectoryCache dir = new MemoryDirectoryCache("cacheFileNames=false&bucketSize=4&size=1k", new RAMDirectory(), true, null);
+        insertData(dir);
+        IndexInput indexInput = dir.openInput("value1");
+        indexInput.seek(5);
+        IndexInput clone = (IndexInput) indexInput.clone();
+        assertEquals(-1, clone.readInt());
+        assertEquals(-1, indexInput.readInt());
+        assertEquals(10, clone.readLong());
+        clone.close();
+        indexInput.close();
+        dir.close();
+    }
+
+    private void verifyBucketSize(int bucketSize) throws IOException {
+        MemoryDirectoryCache dir = new MemoryDirectoryCache("cacheFileNames=false&size=1k&bucketSize=" + bucketSize, new RAMDirectory(), true, null);
+        insertData(dir);
+        verifyData(dir);
+        dir.close();
+    }
+
+    private void insertData(MemoryDirectoryCache dir) throws IOException {
+        byte[] test = new byte[]{1, 2, 3, 4, 5, 6, 7, 8};
+        IndexOutput indexOutput = dir.createOutput("value1");
+        indexOutput.writeBytes(new byte[]{2, 4, 6, 7, 8}, 5);
+        indexOutput.writeInt(-1);
+        indexOutput.writeLong(10);
+        indexOutput.writeInt(0);
+        indexOutput.writeInt(0);
+        indexOutput.writeBytes(test, 8);
+        indexOutput.writeBytes(test, 5);
+
+        indexOutput.seek(0);
+        indexOutput.writeByte((byte) 8);
+        if (dir.getBucketSize() > 4) {
+            indexOutput.seek(2);
+            indexOutput.writeBytes(new byte[]{1, 2}, 2);
+        }
+
+        indexOutput.close();
+    }
+
+    private void verifyData(MemoryDirectoryCache dir) throws IOException {
+        byte[] test = new byte[]{1, 2, 3, 4, 5, 6, 7, 8};
+        assertTrue(dir.fileExists("value1"));
+        assertEquals(38, dir.fileLength("value1"));
+
+        IndexInput indexInput = dir.openInput("value1");
+        indexInput.readBytes(test, 0, 5);
+        assertEquals(8, test[0]);
+        assertEquals(-1, indexInput.readInt());
+        assertEquals(10, indexInput.readLong());
+        assertEquals(0, indexInput.readInt());
+        assertEquals(0, indexInput.readInt());
+        indexInput.readBytes(test, 0, 8);
+        assertEquals((byte) 1, test[0]);
+        assertEquals((byte) 8, test[7]);
+        indexInput.readBytes(test, 0, 5);
+        assertEquals((byte) 1, test[0]);
+        assertEquals((byte) 5, test[4]);
+
+        indexInput.seek(28);
+        assertEquals((byte) 4, indexInput.readByte());
+        indexInput.seek(30);
+        assertEquals((byte) 6, indexInput.readByte());
+
+        indexInput.close();
+    }
+}
@@ -24,6 +24,7 @@ import org.compass.core.mapping.ResourcePropertyMapping;
 import org.compass.core.mapping.osem.ClassIdPropertyMapping;
 import org.compass.core.mapping.osem.ClassMapping;
 import org.compass.core.mapping.osem.ReferenceMapping;
+import org.compass.core.marshall.DefaultMarshallingStrategy;
 import org.compass.core.spi.InternalCompassSession;
 import org.compass.core.test.AbstractTestCase;
 
@@ -200,6 +201,39 @@ public class ReferenceTests extends AbstractTestCase {
         session.close();
     }
 
+    public void testMarshallingContextReusedWithCyclic() throws Exception {
+        InternalCompassSession session = (InternalCompassSession) openSession();
+        CompassTransaction tr = session.beginTransaction();
+
+        for (long i = 1; i <= 10; i++) {
+            Cyclic1 cyclic1 = new Cyclic1();
+            cyclic1.setId(i);
+            cyclic1.setValue("cyclic1");
+            Cyclic2 cyclic2 = new Cyclic2();
+            cyclic2.setId(i);
+            cyclic2.setValue("cyclic2");
+            cyclic1.setCyclic2(cyclic2);
+            cyclic2.setCyclic1(cyclic1);
+            session.save(cyclic2);
+            session.save(cyclic1);
+        }
+        tr.commit();
+        session.close();
+
+        session = (InternalCompassSession) openSession();
+        tr = session.beginTransaction();
+        for (long i = 1; i <= 10; i++) {
+            Cyclic1 cyclic1 = (Cyclic1) session.load(Cyclic1.class, i);
+            assertEquals("cyclic2", cyclic1.getCyclic2().getValue());
+            assertSame(cyclic1, cyclic1.getCyclic2().getCyclic1());
+        }
+        DefaultMarshallingStrategy marshallingStrategy = (DefaultMarshallingStrategy) session.getMarshallingStrategy();
+        assertTrue(marshallingStrategy.getContextsCreated() <= 2);
+        assertTrue(marshallingStrategy.getContextsReused() >= 10);
+        tr.commit();
+        session.close();
+    }
+
     public void testCyclicNull() throws Exception {
         CompassSession session = openSession();
         CompassTransaction tr = session.beginTransaction();
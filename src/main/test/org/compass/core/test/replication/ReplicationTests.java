@@ -0,0 +1,257 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.test.replication;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import junit.framework.TestCase;
+import org.apache.lucene.store.Directory;
+import org.compass.core.Compass;
+import org.compass.core.CompassSession;
+import org.compass.core.CompassTransaction;
+import org.compass.core.config.CompassConfiguration;
+import org.compass.core.config.CompassEnvironment;
+import org.compass.core.engine.SearchEngineException;
+import org.compass.core.lucene.LuceneEnvironment;
+import org.compass.core.lucene.engine.LuceneSearchEngineFactory;
+import org.compass.core.lucene.engine.replication.CommitPoint;
+import org.compass.core.lucene.engine.replication.FileSystemReplicationTransport;
+import org.compass.core.lucene.engine.replication.ReplicationManager;
+import org.compass.core.spi.InternalCompass;
+import org.compass.core.test.AbstractTestCase;
+import org.compass.core.util.FileSystemUtils;
+
+/**
+ * @author kimchy
+ */
+public class ReplicationTests extends TestCase {
+
+    private static final String REPLICATION_PATH = "target/test-replication";
+
+    private Compass master;
+
+    private Compass replica;
+
+    protected void setUp() throws Exception {
+        FileSystemUtils.deleteRecursively(new File(REPLICATION_PATH));
+        master = buildCompass("target/test-index-master", LuceneEnvironment.Replication.Mode.MASTER);
+        replica = buildCompass("target/test-index-replica", LuceneEnvironment.Replication.Mode.REPLICA);
+    }
+
+    protected void tearDown() throws Exception {
+        replica.close();
+        replica.getSearchEngineIndexManager().deleteIndex();
+        master.close();
+        master.getSearchEngineIndexManager().deleteIndex();
+        FileSystemUtils.deleteRecursively(new File(REPLICATION_PATH));
+    }
+
+    private Compass buildCompass(String connection, String mode) {
+        return buildCompass(connection, mode, LuceneEnvironment.Replication.FileSystem.NAME);
+    }
+
+    private Compass buildCompass(String connection, String mode, String transport) {
+        CompassConfiguration conf = new CompassConfiguration()
+                .configure("/org/compass/core/test/compass.cfg.xml")
+                .addResource("org/compass/core/test/replication/replication.cpm.xml", AbstractTestCase.class.getClassLoader());
+        conf.getSettings().setSetting(CompassEnvironment.CONNECTION, connection);
+        conf.getSettings().setSetting(LuceneEnvironment.Replication.MODE, mode);
+        conf.getSettings().setSetting(LuceneEnvironment.Replication.INTERVAL, "-1");
+        conf.getSettings().setSetting(LuceneEnvironment.Replication.TRANSPORT, transport);
+        conf.getSettings().setSetting(LuceneEnvironment.Replication.FileSystem.PATH, REPLICATION_PATH);
+        Compass compass = conf.buildCompass();
+        compass.getSearchEngineIndexManager().deleteIndex();
+        compass.getSearchEngineIndexManager().verifyIndex();
+        return compass;
+    }
+
+    public void testReplicateCommits() throws Exception {
+        save(master, 1);
+        assertTrue(replicationManager(master).publish("a"));
+        // nothing changed
+        assertFalse(replicationManager(master).publish("a"));
+
+        assertEquals(0, count(replica));
+        assertTrue(replicationManager(replica).replicate("a"));
+        assertFalse(replicationManager(replica).replicate("a"));
+        assertEquals(1, count(replica));
+
+        save(master, 2);
+        save(master, 3);
+        replicationManager(master).publish();
+        replicationManager(replica).replicate();
+        assertEquals(3, count(replica));
+
+        CommitPoint masterCommitPoint = replicationManager(master).getLastCommitPoint("a");
+        CommitPoint replicaCommitPoint = replicationManager(replica).getLastCommitPoint("a");
+        assertTrue(masterCommitPoint.isSameCommit(replicaCommitPoint));
+    }
+
+    public void testCorruptedFileIsNotApplied() throws Exception {
+        save(master, 1);
+        replicationManager(master).publish();
+        replicationManager(replica).replicate();
+        assertEquals(1, count(replica));
+
+        save(master, 2);
+        replicationManager(master).publish();
+        CommitPoint commitPoint = replicationManager(master).getLastCommitPoint("a");
+        File segmentsFile = new File(new File(REPLICATION_PATH, "a"), commitPoint.getSegmentsFileName());
+        RandomAccessFile raf = new RandomAccessFile(segmentsFile, "rw");
+        raf.seek(raf.length() - 1);
+        int last = raf.read();
+        raf.seek(raf.length() - 1);
+        raf.write(last ^ 0xFF);
+        raf.close();
+
+        try {
+            replicationManager(replica).replicate("a");
+            fail("replication should fail on checksum mismatch");
+        } catch (SearchEngineException e) {
+            // expected
+        }
+        // still serving the previous commit
+        assertEquals(1, count(replica));
+
+        // the next commit is replicated
+        save(master, 3);
+        replicationManager(master).publish();
+        assertTrue(replicationManager(replica).replicate("a"));
+        assertEquals(3, count(replica));
+    }
+
+    public void testReplicateAfterMasterIndexRecreated() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            save(master, i);
+            replicationManager(master).publish();
+        }
+        replicationManager(replica).replicate();
+        assertEquals(5, count(replica));
+
+        master.getSearchEngineIndexManager().cleanIndex();
+        save(master, 10);
+        replicationManager(master).publish();
+        replicationManager(replica).replicate();
+        assertEquals(1, count(replica));
+    }
+
+    public void testFailedReplicationAfterMasterIndexRecreatedKeepsCurrentCommit() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            save(master, i);
+            replicationManager(master).publish();
+        }
+        replicationManager(replica).replicate();
+        assertEquals(5, count(replica));
+
+        master.getSearchEngineIndexManager().cleanIndex();
+        save(master, 10);
+        replicationManager(master).publish();
+        CommitPoint commitPoint = replicationManager(master).getLastCommitPoint("a");
+        CommitPoint.FileInfo file = commitPoint.getFiles().get(0);
+        assertFalse(file.getName().equals(commitPoint.getSegmentsFileName()));
+        corruptLastByte(new File(new File(REPLICATION_PATH, "a"), file.getName()));
+
+        try {
+            replicationManager(replica).replicate("a");
+            fail("replication should fail on checksum mismatch");
+        } catch (SearchEngineException e) {
+            // expected
+        }
+        // still serving the previous commit, with none of its files replaced
+        assertEquals(5, count(replica));
+        replica.getSearchEngineIndexManager().clearCache();
+        assertEquals(5, count(replica));
+    }
+
+    public void testCommitsWhilePublishingDoNotDeletePublishedFiles() throws Exception {
+        master.close();
+        master = buildCompass("target/test-index-master", LuceneEnvironment.Replication.Mode.MASTER,
+                CommittingReplicationTransport.class.getName());
+        committingMaster = master;
+        try {
+            save(master, 1);
+            assertTrue(replicationManager(master).publish("a"));
+        } finally {
+            committingMaster = null;
+        }
+        assertTrue(replicationManager(replica).replicate("a"));
+        assertEquals(1, count(replica));
+
+        // the commits done while publishing are published next
+        assertTrue(replicationManager(master).publish("a"));
+        assertTrue(replicationManager(replica).replicate("a"));
+        assertEquals(4, count(replica));
+    }
+
+    private static Compass committingMaster;
+
+    /**
+     * Commits (and optimizes) the master index before publishing, deleting the published commit point unless
+     * it is reserved.
+     */
+    public static class CommittingReplicationTransport extends FileSystemReplicationTransport {
+
+        public void publish(CommitPoint commitPoint, Directory directory) throws IOException {
+            Compass compass = committingMaster;
+            if (compass != null) {
+                committingMaster = null;
+                for (int i = 2; i <= 4; i++) {
+                    save(compass, i);
+                }
+                compass.getSearchEngineOptimizer().optimize();
+            }
+            super.publish(commitPoint, directory);
+        }
+    }
+
+    private void corruptLastByte(File file) throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(raf.length() - 1);
+        int last = raf.read();
+        raf.seek(raf.length() - 1);
+        raf.write(last ^ 0xFF);
+        raf.close();
+    }
+
+    private ReplicationManager replicationManager(Compass compass) {
+        return ((LuceneSearchEngineFactory) ((InternalCompass) compass).getSearchEngineFactory()).getLuceneIndexManager().getReplicationManager();
+    }
+
+    private static void save(Compass compass, long id) {
+        CompassSession session = compass.openSession();
+        CompassTransaction tr = session.beginTransaction();
+        A a = new A();
+        a.setId(id);
+        a.setValue("value" + id);
+        session.save(a);
+        tr.commit();
+        session.close();
+    }
+
+    private int count(Compass compass) {
+        CompassSession session = compass.openSession();
+        CompassTransaction tr = session.beginTransaction();
+        try {
+            return session.queryBuilder().matchAll().hits().length();
+        } finally {
+            tr.commit();
+            session.close();
+        }
+    }
+}
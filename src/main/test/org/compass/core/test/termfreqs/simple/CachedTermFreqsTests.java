@@ -0,0 +1,135 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.test.termfreqs.simple;
+
+import org.compass.core.CompassSession;
+import org.compass.core.CompassTermFreq;
+import org.compass.core.CompassTransaction;
+import org.compass.core.lucene.engine.LuceneSearchEngineFactory;
+import org.compass.core.lucene.engine.manager.TermFreqsCache;
+import org.compass.core.spi.InternalCompass;
+import org.compass.core.test.AbstractTestCase;
+
+/**
+ * @author kimchy
+ */
+public class CachedTermFreqsTests extends AbstractTestCase {
+
+    protected String[] getMappings() {
+        return new String[]{"termfreqs/simple/mapping.cpm.xml"};
+    }
+
+    public void testCachedAcrossSessions() {
+        save(new A(1, "test"), new A(2, "test"), new A(3, "test1"));
+
+        CompassTermFreq[] termFreqs = termFreqs("value");
+        assertEquals(2, termFreqs.length);
+        assertEquals("test", termFreqs[0].getTerm());
+        assertEquals(1, termFreqsCache().getSize());
+
+        // normalizing changes the returned term freqs, make sure it does not change the cached ones
+        CompassSession session = openSession();
+        CompassTransaction tr = session.beginTransaction();
+        termFreqs = session.termFreqsBuilder("value").setSize(1000).normalize(0, 1).toTermFreqs();
+        assertEquals(1.0, termFreqs[0].getFreq(), 0.001);
+        tr.commit();
+        session.close();
+
+        termFreqs = termFreqs("value");
+        assertEquals(1, termFreqsCache().getSize());
+        assertEquals(2, (int) termFreqs[0].getFreq());
+        assertEquals(1, (int) termFreqs[1].getFreq());
+    }
+
+    public void testEvictedOnChanges() {
+        save(new A(1, "test"), new A(2, "test1"));
+        assertEquals(2, termFreqs("value").length);
+
+        save(new A(3, "test2"));
+        CompassTermFreq[] termFreqs = termFreqs("value");
+        assertEquals(3, termFreqs.length);
+        assertEquals(1, termFreqsCache().getSize());
+    }
+
+    public void testNotCachedWithTransactionalChanges() {
+        save(new A(1, "test"));
+        assertEquals(1, termFreqs("value").length);
+        termFreqsCache().clear();
+
+        CompassSession session = openSession();
+        CompassTransaction tr = session.beginTransaction();
+        session.save(new A(2, "test1"));
+        assertEquals(2, session.termFreqsBuilder("value").toTermFreqs().length);
+        assertEquals(0, termFreqsCache().getSize());
+        tr.rollback();
+        session.close();
+
+        assertEquals(1, termFreqs("value").length);
+    }
+
+    public void testBoundedTopTerms() {
+        A[] as = new A[100];
+        for (int i = 0; i < as.length; i++) {
+            // term "t<n>" appears in n + 1 documents, up to t9
+            as[i] = new A(i, "t" + (i % 10 <= i / 10 ? i / 10 : 0), "n" + (i % 7));
+        }
+        save(as);
+
+        CompassTermFreq[] all = termFreqs("value", "name");
+        CompassSession session = openSession();
+        CompassTransaction tr = session.beginTransaction();
+        CompassTermFreq[] top = session.termFreqsBuilder("value", "name").setSize(5).toTermFreqs();
+        tr.commit();
+        session.close();
+
+        assertEquals(5, top.length);
+        for (int i = 0; i < top.length; i++) {
+            assertEquals(all[i].getTerm(), top[i].getTerm());
+            assertEquals(all[i].getPropertyName(), top[i].getPropertyName());
+            assertEquals(all[i].getFreq(), top[i].getFreq(), 0.001);
+            if (i > 0) {
+                assertTrue(top[i - 1].getFreq() >= top[i].getFreq());
+            }
+        }
+    }
+
+    private void save(A... as) {
+        CompassSession session = openSession();
+        CompassTransaction tr = session.beginTransaction();
+        for (A a : as) {
+            session.save(a);
+        }
+        tr.commit();
+        session.close();
+    }
+
+    private CompassTermFreq[] termFreqs(String... propertyNames) {
+        CompassSession session = openSession();
+        CompassTransaction tr = session.beginTransaction();
+        try {
+            return session.termFreqsBuilder(propertyNames).setSize(1000).toTermFreqs();
+        } finally {
+            tr.commit();
+            session.close();
+        }
+    }
+
+    private TermFreqsCache termFreqsCache() {
+        return ((LuceneSearchEngineFactory) ((InternalCompass) getCompass()).getSearchEngineFactory())
+                .getLuceneIndexManager().getIndexHoldersCache().getTermFreqsCache();
+    }
+}
@@ -180,12 +180,12 @@ public class SimpleTermFreqsTests extends AbstractTestCase {
         assertEquals("name2", termFreqs[1].getTerm());
         assertEquals(2, (int) termFreqs[1].getFreq());
         assertEquals("name", termFreqs[1].getPropertyName());
-        assertEquals("name1", termFreqs[2].getTerm());
+        assertEquals("test1", termFreqs[2].getTerm());
         assertEquals(1, (int) termFreqs[2].getFreq());
-        assertEquals("name", termFreqs[2].getPropertyName());
-        assertEquals("test1", termFreqs[3].getTerm());
+        assertEquals("value", termFreqs[2].getPropertyName());
+        assertEquals("name1", termFreqs[3].getTerm());
         assertEquals(1, (int) termFreqs[3].getFreq());
-        assertEquals("value", termFreqs[3].getPropertyName());
+        assertEquals("name", termFreqs[3].getPropertyName());
 
         tr.commit();
         session.close();
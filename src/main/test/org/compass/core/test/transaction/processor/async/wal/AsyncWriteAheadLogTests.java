@@ -0,0 +1,136 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.compass.core.test.transaction.processor.async.wal;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.compass.core.Compass;
+import org.compass.core.CompassSession;
+import org.compass.core.CompassTransaction;
+import org.compass.core.config.CompassConfiguration;
+import org.compass.core.config.CompassEnvironment;
+import org.compass.core.config.CompassSettings;
+import org.compass.core.lucene.LuceneEnvironment;
+import org.compass.core.test.AbstractTestCase;
+import org.compass.core.util.FileSystemUtils;
+
+/**
+ * @author kimchy
+ */
+public class AsyncWriteAheadLogTests extends AbstractTestCase {
+
+    private static final String WAL_LOCATION = "target/test-async-wal";
+
+    private static final String INDEX_LOCATION = "target/test-async-wal-index";
+
+    protected String[] getMappings() {
+        return new String[]{"transaction/processor/async/wal/mapping.cpm.xml"};
+    }
+
+    protected void addSettings(CompassSettings settings) {
+        super.addSettings(settings);
+        settings.setSetting(LuceneEnvironment.Transaction.Processor.TYPE, LuceneEnvironment.Transaction.Processor.Async.NAME);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        FileSystemUtils.deleteRecursively(new File(WAL_LOCATION));
+        FileSystemUtils.deleteRecursively(new File(INDEX_LOCATION));
+    }
+
+    public void testCommittedTransactionsAreTruncated() throws Exception {
+        Compass compass = buildWriteAheadLogCompass(false);
+        try {
+            save(compass, 1, "value1");
+            save(compass, 2, "value2");
+        } finally {
+            compass.close();
+        }
+        File[] segments = new File(WAL_LOCATION).listFiles();
+        assertEquals(0, segments.length);
+
+        compass = buildWriteAheadLogCompass(false);
+        try {
+            assertEquals(2, count(compass));
+        } finally {
+            compass.close();
+        }
+    }
+
+    public void testUnprocessedTransactionsAreReplayed() throws Exception {
+        Compass compass = buildWriteAheadLogCompass(true);
+        try {
+            save(compass, 1, "value1");
+        } finally {
+            compass.close();
+        }
+        assertEquals(1, new File(WAL_LOCATION).listFiles().length);
+
+        compass = buildWriteAheadLogCompass(false);
+        try {
+            assertEquals(1, count(compass));
+        } finally {
+            compass.close();
+        }
+        assertEquals(0, new File(WAL_LOCATION).listFiles().length);
+    }
+
+    /**
+     * Builds a Compass instance using the write ahead log. When <code>crash</code> is <code>true</code>, the
+     * async processor waits (practically) forever for additional transactions before processing them, and does
+     * not process pending transactions when closed, simulating a JVM crash.
+     */
+    private Compass buildWriteAheadLogCompass(boolean crash) throws IOException {
+        CompassConfiguration conf = buildConf();
+        CompassSettings settings = conf.getSettings();
+        settings.setSetting(CompassEnvironment.CONNECTION, INDEX_LOCATION);
+        settings.setBooleanSetting(LuceneEnvironment.Transaction.Processor.Async.WriteAheadLog.ENABLE, true);
+        settings.setSetting(LuceneEnvironment.Transaction.Processor.Async.WriteAheadLog.LOCATION, WAL_LOCATION);
+        if (crash) {
+            settings.setIntSetting(LuceneEnvironment.Transaction.Processor.Async.BATCH_JOBS_SIZE, 1);
+            settings.setSetting(LuceneEnvironment.Transaction.Processor.Async.BATCH_JOBS_TIMEOUT, "60m");
+            settings.setBooleanSetting(LuceneEnvironment.Transaction.Processor.Async.PROCESS_BEFORE_CLOSE, false);
+        } else {
+            settings.setIntSetting(LuceneEnvironment.Transaction.Processor.Async.BATCH_JOBS_SIZE, 0);
+        }
+        return conf.buildCompass();
+    }
+
+    private void save(Compass compass, long id, String value) {
+        CompassSession session = compass.openSession();
+        CompassTransaction tr = session.beginTransaction();
+        A a = new A();
+        a.setId(id);
+        a.setValue(value);
+        session.create(a);
+        tr.commit();
+        session.close();
+    }
+
+    private int count(Compass compass) {
+        CompassSession session = compass.openSession();
+        CompassTransaction tr = session.beginTransaction();
+        try {
+            return session.queryBuilder().matchAll().hits().length();
+        } finally {
+            tr.commit();
+            session.close();
+        }
+    }
+}
@@ -23,8 +23,14 @@ import org.compass.core.config.CompassConfiguration;
 import org.compass.core.config.CompassEnvironment;
 import org.compass.core.util.FileHandlerMonitor;
 import org.compass.gps.device.hibernate.CompassTransactionInterceptor;
+import org.compass.gps.device.hibernate.DefaultHibernateQueryProvider;
 import org.compass.gps.device.hibernate.HibernateGpsDevice;
+import org.compass.gps.device.hibernate.entities.EntityInformation;
+import org.compass.gps.device.hibernate.indexer.KeysetHibernateIndexEntitiesIndexer;
+import org.compass.gps.device.support.parallel.PipelinedParallelIndexExecutor;
 import org.compass.gps.impl.SingleCompassGps;
+import org.hibernate.Criteria;
+import org.hibernate.FetchMode;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.Transaction;
@@ -47,6 +53,8 @@ public class CollectionNonJtaTests extends TestCase {
 
     private SessionFactory sessionFactory;
 
+    private HibernateGpsDevice device;
+
     protected void setUp() throws Exception {
 
         CompassConfiguration cpConf = new CompassConfiguration()
@@ -70,7 +78,7 @@ public class CollectionNonJtaTests extends TestCase {
 
         CompassTransactionInterceptor.injectInterceptor(sessionFactory, new CompassTransactionInterceptor(compass));
 
-        HibernateGpsDevice device = new HibernateGpsDevice();
+        device = new HibernateGpsDevice();
         device.setSessionFactory(sessionFactory);
         device.setName("hibernateDevice");
         compassGps.addGpsDevice(device);
@@ -112,6 +120,60 @@ public class CollectionNonJtaTests extends TestCase {
         s.close();
     }
 
+    public void testPipelinedIndexWithLazyCollection() {
+        Session s = sessionFactory.openSession();
+        Transaction tx = s.beginTransaction();
+        for (int i = 0; i < 20; i++) {
+            Parent parent = new Parent();
+            parent.setValue("value");
+            parent.addChild(new Child("child" + i));
+            parent.addChild(new Child("other"));
+            s.save(parent);
+        }
+        tx.commit();
+        s.close();
+
+        // the lazy childs are initialized (and marshalled) by the indexing thread and not the marshalling threads
+        device.setParallelIndexExecutor(new PipelinedParallelIndexExecutor(-1, 2));
+        compassGps.index();
+
+        assertEquals(20, compassTemplate.find("value").length());
+        assertEquals(1, compassTemplate.find("child7").length());
+        assertEquals(20, compassTemplate.find("other").length());
+    }
+
+    public void testKeysetIndexWithFetchJoinCollection() {
+        Session s = sessionFactory.openSession();
+        Transaction tx = s.beginTransaction();
+        for (int i = 0; i < 10; i++) {
+            Parent parent = new Parent();
+            parent.setValue("value");
+            parent.addChild(new Child("childa" + i));
+            parent.addChild(new Child("childb" + i));
+            s.save(parent);
+        }
+        tx.commit();
+        s.close();
+
+        compassGps.stop();
+        device.setEntitiesIndexer(new KeysetHibernateIndexEntitiesIndexer());
+        // a page limited to 3 joined rows would truncate the childs of its last parent
+        device.setFetchCount(3);
+        device.setIndexQueryProvider(Parent.class, new DefaultHibernateQueryProvider(Parent.class, Parent.class.getName()) {
+            public Criteria createCriteria(Session session, EntityInformation entityInformation) {
+                return super.createCriteria(session, entityInformation).setFetchMode("childs", FetchMode.JOIN);
+            }
+        });
+        compassGps.start();
+        compassGps.index();
+
+        assertEquals(10, compassTemplate.find("value").length());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(1, compassTemplate.find("childa" + i).length());
+            assertEquals(1, compassTemplate.find("childb" + i).length());
+        }
+    }
+
     protected void tearDown() throws Exception {
         sessionFactory.close();
         compassGps.stop();
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.compass.gps.device.hibernate.simple;
+
+import org.compass.core.CompassSession;
+import org.compass.core.CompassTransaction;
+import org.compass.gps.device.hibernate.HibernateGpsDevice;
+import org.compass.gps.device.hibernate.indexer.KeysetHibernateIndexEntitiesIndexer;
+import org.compass.gps.device.support.parallel.PipelinedParallelIndexExecutor;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+
+/**
+ * @author kimchy
+ */
+public class PipelinedSimpleHibernateGpsDeviceTests extends AbstractSimpleHibernateGpsDeviceTests {
+
+    private static final int BULK_SIZE = 300;
+
+    protected void addDeviceSettings(HibernateGpsDevice device) {
+        device.setEntitiesIndexer(new KeysetHibernateIndexEntitiesIndexer());
+        device.setFetchCount(50);
+        PipelinedParallelIndexExecutor indexExecutor = new PipelinedParallelIndexExecutor(-1, 2);
+        indexExecutor.setQueueSize(10);
+        device.setParallelIndexExecutor(indexExecutor);
+    }
+
+    public void testAllEntitiesIndexed() throws Exception {
+        Session session = sessionFactory.openSession();
+        Transaction transaction = session.beginTransaction();
+        for (int i = 0; i < BULK_SIZE; i++) {
+            Simple simple = new Simple();
+            simple.setValue("bulk");
+            session.save("simple", simple);
+        }
+        transaction.commit();
+        session.close();
+
+        compassGps.index();
+
+        CompassSession sess = compass.openSession();
+        CompassTransaction tr = sess.beginTransaction();
+        assertEquals(BULK_SIZE, sess.find("bulk").length());
+        assertEquals(1, sess.find("value3").length());
+        tr.commit();
+        sess.close();
+    }
+}
@@ -28,7 +28,12 @@ import org.compass.core.config.CompassEnvironment;
 import org.compass.gps.device.jdbc.mapping.DataColumnToPropertyMapping;
 import org.compass.gps.device.jdbc.mapping.TableToResourceMapping;
 import org.compass.gps.device.jdbc.mapping.VersionColumnMapping;
+import org.compass.gps.device.jdbc.partition.ModuloJdbcIndexPartitioner;
+import org.compass.gps.device.jdbc.partition.RangeJdbcIndexPartitioner;
 import org.compass.gps.device.jdbc.snapshot.FSJdbcSnapshotPersister;
+import org.compass.gps.device.jdbc.snapshot.JdbcSnapshotPersister;
+import org.compass.gps.device.jdbc.snapshot.MMapJdbcSnapshotPersister;
+import org.compass.gps.device.support.parallel.ConcurrentParallelIndexExecutor;
 import org.compass.gps.impl.SingleCompassGps;
 
 /**
@@ -46,6 +51,10 @@ public class TableJdbcGpsDeviceTests extends AbstractJdbcGpsDeviceTests {
 
     private SingleCompassGps gps;
 
+    private TableToResourceMapping parentMapping;
+
+    private TableToResourceMapping childMapping;
+
     protected void tearDown() throws Exception {
         if (gps != null) gps.stop();
         if (compass != null) {
@@ -103,13 +112,17 @@ public class TableJdbcGpsDeviceTests extends AbstractJdbcGpsDeviceTests {
     }
 
     protected void setUpAutomaticMapping() throws Exception {
+        setUpAutomaticMapping(new FSJdbcSnapshotPersister("target/testindex/snapshot"));
+    }
+
+    protected void setUpAutomaticMapping(JdbcSnapshotPersister snapshotPersister) throws Exception {
         // set up the database mappings, since they are used both to generate
         // the resource mappings and configure the jdbc gps device
-        TableToResourceMapping parentMapping = new TableToResourceMapping("PARENT", "parent");
+        parentMapping = new TableToResourceMapping("PARENT", "parent");
         parentMapping.addVersionMapping(new VersionColumnMapping("version"));
         parentMapping.setIndexUnMappedColumns(true);
 
-        TableToResourceMapping childMapping = new TableToResourceMapping("CHILD", "child");
+        childMapping = new TableToResourceMapping("CHILD", "child");
         childMapping.addVersionMapping(new VersionColumnMapping("version"));
         childMapping.setIndexUnMappedColumns(true);
 
@@ -126,7 +139,7 @@ public class TableJdbcGpsDeviceTests extends AbstractJdbcGpsDeviceTests {
         compassTemplate = new CompassTemplate(compass);
 
         gpsDevice = new ResultSetJdbcGpsDevice();
-        gpsDevice.setSnapshotPersister(new FSJdbcSnapshotPersister("target/testindex/snapshot"));
+        gpsDevice.setSnapshotPersister(snapshotPersister);
         gpsDevice.setDataSource(dataSource);
         gpsDevice.setName("tableJdbcDevice");
         gpsDevice.addMapping(parentMapping);
@@ -205,4 +218,105 @@ public class TableJdbcGpsDeviceTests extends AbstractJdbcGpsDeviceTests {
         r = compassTemplate.getResource("parent", "999");
         assertNull(r);
     }
+
+    public void testAutomaticMappingWithIncrementalMirroring() throws Exception {
+        setUpAutomaticMapping();
+        gpsDevice.setMirrorDataChanges(true);
+        gpsDevice.setIncrementalMirroring(true);
+        gps.index();
+        assertEquals(new Long(1), gpsDevice.getJdbcSnapshot().getAliasSnapshot("parent").getHighWaterMark());
+
+        // test that create works (same version as the high water mark)
+        executeUpdate("INSERT INTO parent VALUES (999, 'parent first 999', 'last 999', 1);");
+        assertNull(compassTemplate.getResource("parent", "999"));
+        gpsDevice.performMirroring();
+        compassTemplate.loadResource("parent", "999");
+
+        // test that update works
+        executeUpdate("update parent set first_name = 'new first name', version = 2 where id = 1");
+        gpsDevice.performMirroring();
+        Resource r = compassTemplate.loadResource("parent", "1");
+        assertEquals("new first name", r.getValue("FIRST_NAME"));
+        assertEquals(new Long(2), gpsDevice.getJdbcSnapshot().getAliasSnapshot("parent").getHighWaterMark());
+
+        // deletes are not detected until the tombstone detection interval passes
+        executeUpdate("delete from parent where id = 999");
+        gpsDevice.performMirroring();
+        assertNotNull(compassTemplate.getResource("parent", "999"));
+
+        gpsDevice.setTombstoneDetectionInterval(0);
+        gpsDevice.performMirroring();
+        assertNull(compassTemplate.getResource("parent", "999"));
+        assertNotNull(compassTemplate.getResource("parent", "1"));
+    }
+
+    public void testAutomaticMappingWithMirroringAndMMapPersister() throws Exception {
+        setUpAutomaticMapping(new MMapJdbcSnapshotPersister("target/testindex/mmapsnapshot"));
+        gpsDevice.setMirrorDataChanges(true);
+        gpsDevice.setIncrementalMirroring(true);
+        gps.index();
+
+        executeUpdate("INSERT INTO parent VALUES (999, 'parent first 999', 'last 999', 1);");
+        gpsDevice.performMirroring();
+        compassTemplate.loadResource("parent", "999");
+
+        // the snapshot (with its high water mark) is saved on stop and loaded on start
+        gps.stop();
+        gps.start();
+        assertEquals(new Long(1), gpsDevice.getJdbcSnapshot().getAliasSnapshot("parent").getHighWaterMark());
+
+        executeUpdate("update parent set first_name = 'new first name', version = 2 where id = 1");
+        gpsDevice.performMirroring();
+        Resource r = compassTemplate.loadResource("parent", "1");
+        assertEquals("new first name", r.getValue("FIRST_NAME"));
+
+        executeUpdate("delete from parent where id = 999");
+        gpsDevice.setTombstoneDetectionInterval(0);
+        gpsDevice.performMirroring();
+        assertNull(compassTemplate.getResource("parent", "999"));
+        assertNotNull(compassTemplate.getResource("parent", "1"));
+    }
+
+    public void testAutomaticMappingWithPartitionedIndex() throws Exception {
+        setUpAutomaticMapping();
+        parentMapping.setIndexPartitioner(new RangeJdbcIndexPartitioner("id", 3));
+        childMapping.setIndexPartitioner(new ModuloJdbcIndexPartitioner("id", 4));
+        gpsDevice.setMirrorDataChanges(true);
+        gpsDevice.setPartitionProgressInterval(1);
+        gpsDevice.setPartitionIndexExecutor(new ConcurrentParallelIndexExecutor(2));
+
+        Connection con = JdbcUtils.getConnection(dataSource);
+        try {
+            assertEquals(3, parentMapping.getIndexPartitioner().partition(con, parentMapping).length);
+            assertEquals(4, childMapping.getIndexPartitioner().partition(con, childMapping).length);
+        } finally {
+            con.close();
+        }
+
+        gps.index();
+        assertNotNull(compassTemplate.getResource("parent", "1"));
+        assertNotNull(compassTemplate.getResource("parent", "4"));
+        CompassDetachedHits hits = compassTemplate.findWithDetach("parent");
+        assertEquals(4, hits.getLength());
+        hits = compassTemplate.findWithDetach("child");
+        assertEquals(6, hits.getLength());
+
+        // the snapshot is fully populated by the partitions, so only the actual change is mirrored
+        executeUpdate("update child set first_name = 'new first name', version = 2 where id = 6");
+        gpsDevice.performMirroring();
+        Resource r = compassTemplate.loadResource("child", "6");
+        assertEquals("new first name", r.getValue("FIRST_NAME"));
+        for (int i = 1; i <= 6; i++) {
+            assertNotNull(compassTemplate.getResource("child", Integer.toString(i)));
+        }
+    }
+
+    private void executeUpdate(String sql) throws Exception {
+        Connection con = JdbcUtils.getConnection(dataSource);
+        PreparedStatement ps = con.prepareStatement(sql);
+        ps.execute();
+        ps.close();
+        con.commit();
+        con.close();
+    }
 }
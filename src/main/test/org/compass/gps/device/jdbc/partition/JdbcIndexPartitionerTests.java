@@ -0,0 +1,67 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.compass.gps.device.jdbc.partition;
+
+import junit.framework.TestCase;
+import org.compass.gps.device.jdbc.mapping.ResultSetToResourceMapping;
+
+/**
+ * @author kimchy
+ */
+public class JdbcIndexPartitionerTests extends TestCase {
+
+    private ModuloJdbcIndexPartitioner partitioner = new ModuloJdbcIndexPartitioner("id", 2);
+
+    public void testNoWhereClause() {
+        assertEquals("select * from parent where id < 10",
+                partitioner.appendRestriction("select * from parent", "id < 10"));
+    }
+
+    public void testWhereClauseIsParenthesized() {
+        assertEquals("select * from parent where (a = 1 or b = 2) and id < 10",
+                partitioner.appendRestriction("select * from parent where a = 1 or b = 2", "id < 10"));
+        assertEquals("select * from parent WHERE (a = 1) and id < 10",
+                partitioner.appendRestriction("select * from parent WHERE a = 1", "id < 10"));
+    }
+
+    public void testTrailingClauses() {
+        assertEquals("select * from parent where id < 10 order by id",
+                partitioner.appendRestriction("select * from parent order by id", "id < 10"));
+        assertEquals("select * from parent where (a = 1) and id < 10 ORDER BY id",
+                partitioner.appendRestriction("select * from parent where a = 1 ORDER BY id", "id < 10"));
+        assertEquals("select id, count(*) from parent where (a = 1) and id < 10 group by id having count(*) > 1",
+                partitioner.appendRestriction("select id, count(*) from parent where a = 1 group by id having count(*) > 1", "id < 10"));
+    }
+
+    public void testSubQueriesAndLiteralsAreSkipped() {
+        assertEquals("select * from parent p where (p.a in (select a from child where b = 1 order by a) and p.c = ' where order by ') and p.id < 10",
+                partitioner.appendRestriction("select * from parent p where p.a in (select a from child where b = 1 order by a) and p.c = ' where order by '", "p.id < 10"));
+        assertEquals("select * from (select * from parent where a = 1) p where p.id < 10",
+                partitioner.appendRestriction("select * from (select * from parent where a = 1) p", "p.id < 10"));
+        assertEquals("select * from parent where (orderly = 1) and id < 10",
+                partitioner.appendRestriction("select * from parent where orderly = 1", "id < 10"));
+    }
+
+    public void testModuloPartitions() throws Exception {
+        ResultSetToResourceMapping mapping = new ResultSetToResourceMapping();
+        mapping.setSelectQuery("select * from parent where a = 1 or b = 2 order by id");
+        String[] queries = partitioner.partition(null, mapping);
+        assertEquals(2, queries.length);
+        assertEquals("select * from parent where (a = 1 or b = 2) and mod(id, 2) in (1, -1) order by id", queries[1]);
+    }
+}
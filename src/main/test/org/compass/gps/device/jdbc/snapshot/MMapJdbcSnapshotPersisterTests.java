@@ -0,0 +1,289 @@
+/*
+ * Copyright 2004-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.compass.gps.device.jdbc.snapshot;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * @author kimchy
+ */
+public class MMapJdbcSnapshotPersisterTests extends TestCase {
+
+    private File dir = new File("target/test-mmap-snapshot");
+
+    private MMapJdbcSnapshotPersister persister;
+
+    protected void setUp() throws Exception {
+        deleteDir(dir);
+        persister = new MMapJdbcSnapshotPersister(dir.getPath());
+        persister.setInitialCapacity(16);
+    }
+
+    protected void tearDown() throws Exception {
+        deleteDir(dir);
+    }
+
+    public void testPutGetAndUpdate() throws Exception {
+        JdbcAliasSnapshot aliasSnapshot = persister.createAliasSnapshot("a");
+        assertNull(aliasSnapshot.getRow(row(1, "1")));
+        aliasSnapshot.putRow(row(1, "1"));
+        aliasSnapshot.putRow(row(3, "2"));
+
+        JdbcAliasRowSnapshot row = aliasSnapshot.getRow(row(0, "1"));
+        assertNotNull(row);
+        assertEquals("1", row.getIds().get(0));
+        assertEquals(new Long(1), row.getVersions().get(0));
+        assertTrue(row.isOlderThan(row(2, "1")));
+        assertEquals(new Long(3), aliasSnapshot.getHighWaterMark());
+
+        aliasSnapshot.putRow(row(5, "1"));
+        assertEquals(new Long(5), aliasSnapshot.getRow(row(0, "1")).getVersions().get(0));
+        assertEquals(2, ((MMapJdbcAliasSnapshot) aliasSnapshot).size());
+        assertEquals(new Long(5), aliasSnapshot.getHighWaterMark());
+        aliasSnapshot.close();
+    }
+
+    public void testCompositeIds() throws Exception {
+        JdbcAliasSnapshot aliasSnapshot = persister.createAliasSnapshot("a");
+        aliasSnapshot.putRow(row(1, "1", "2"));
+        aliasSnapshot.putRow(row(1, "12", ""));
+        assertNotNull(aliasSnapshot.getRow(row(0, "1", "2")));
+        assertNotNull(aliasSnapshot.getRow(row(0, "12", "")));
+        assertNull(aliasSnapshot.getRow(row(0, "1", "")));
+        assertNull(aliasSnapshot.getRow(row(0, "2", "1")));
+        aliasSnapshot.close();
+    }
+
+    public void testResizeAndIterate() throws Exception {
+        JdbcAliasSnapshot aliasSnapshot = persister.createAliasSnapshot("a");
+        for (int i = 0; i < 5000; i++) {
+            aliasSnapshot.putRow(row(i, "id" + i));
+        }
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(new Long(i), aliasSnapshot.getRow(row(0, "id" + i)).getVersions().get(0));
+        }
+        Set<String> ids = new HashSet<String>();
+        for (Iterator<JdbcAliasRowSnapshot> it = aliasSnapshot.rowSnapshotIt(); it.hasNext();) {
+            JdbcAliasRowSnapshot row = it.next();
+            String id = row.getIds().get(0);
+            assertEquals(Long.valueOf(id.substring(2)), row.getVersions().get(0));
+            ids.add(id);
+        }
+        assertEquals(5000, ids.size());
+        // only the latest table is kept
+        assertEquals(2, dir.listFiles().length);
+        aliasSnapshot.close();
+        assertEquals(0, dir.listFiles().length);
+    }
+
+    public void testSaveAndLoad() throws Exception {
+        JdbcSnapshot snapshot = persister.load();
+        JdbcAliasSnapshot aliasSnapshot = persister.createAliasSnapshot("a");
+        for (int i = 0; i < 100; i++) {
+            aliasSnapshot.putRow(row(i, "id" + i));
+        }
+        snapshot.putAliasSnapshot(aliasSnapshot);
+        // a heap snapshot is converted when saved
+        JdbcAliasSnapshot heapSnapshot = new JdbcAliasSnapshot("b");
+        heapSnapshot.putRow(row(7, "x"));
+        snapshot.putAliasSnapshot(heapSnapshot);
+        persister.save(snapshot);
+        assertTrue(snapshot.getAliasSnapshot("b") instanceof MMapJdbcAliasSnapshot);
+
+        // changes after the save are not persisted
+        aliasSnapshot.putRow(row(200, "id200"));
+        aliasSnapshot.putRow(row(300, "id42"));
+        snapshot.close();
+
+        persister = new MMapJdbcSnapshotPersister(dir.getPath());
+        snapshot = persister.load();
+        aliasSnapshot = snapshot.getAliasSnapshot("a");
+        assertEquals(100, ((MMapJdbcAliasSnapshot) aliasSnapshot).size());
+        assertEquals(new Long(99), aliasSnapshot.getHighWaterMark());
+        assertEquals(new Long(42), aliasSnapshot.getRow(row(0, "id42")).getVersions().get(0));
+        assertNull(aliasSnapshot.getRow(row(0, "id200")));
+        int count = 0;
+        for (Iterator<JdbcAliasRowSnapshot> it = aliasSnapshot.rowSnapshotIt(); it.hasNext();) {
+            assertFalse("id200".equals(it.next().getIds().get(0)));
+            count++;
+        }
+        assertEquals(100, count);
+        assertEquals(new Long(7), snapshot.getAliasSnapshot("b").getRow(row(0, "x")).getVersions().get(0));
+
+        // replacing a saved alias snapshot keeps its files until the next save
+        JdbcAliasSnapshot newAliasSnapshot = persister.createAliasSnapshot("a");
+        newAliasSnapshot.putRow(row(1, "id1"));
+        snapshot.putAliasSnapshot(newAliasSnapshot);
+        assertEquals(7, dir.listFiles().length);
+        persister.save(snapshot);
+        assertEquals(5, dir.listFiles().length);
+        snapshot.close();
+    }
+
+    public void testRemoveAndIterate() throws Exception {
+        JdbcAliasSnapshot aliasSnapshot = persister.createAliasSnapshot("a");
+        for (int i = 0; i < 1000; i++) {
+            aliasSnapshot.putRow(row(i, "id" + i));
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            aliasSnapshot.removeRow(row(0, "id" + i));
+        }
+        // removing a row that does not exist does nothing
+        aliasSnapshot.removeRow(row(0, "none"));
+        assertEquals(500, ((MMapJdbcAliasSnapshot) aliasSnapshot).size());
+        for (int i = 0; i < 1000; i++) {
+            JdbcAliasRowSnapshot row = aliasSnapshot.getRow(row(0, "id" + i));
+            if (i % 2 == 0) {
+                assertNull(row);
+            } else {
+                assertEquals(new Long(i), row.getVersions().get(0));
+            }
+        }
+        // put back a removed row, it should be iterated once
+        aliasSnapshot.putRow(row(2000, "id0"));
+        Set<String> ids = new HashSet<String>();
+        int count = 0;
+        for (Iterator<JdbcAliasRowSnapshot> it = aliasSnapshot.rowSnapshotIt(); it.hasNext();) {
+            ids.add(it.next().getIds().get(0));
+            count++;
+        }
+        assertEquals(501, count);
+        assertEquals(501, ids.size());
+        assertTrue(ids.contains("id0"));
+        assertFalse(ids.contains("id2"));
+        aliasSnapshot.close();
+    }
+
+    public void testUnmarkedRows() throws Exception {
+        JdbcAliasSnapshot aliasSnapshot = persister.createAliasSnapshot("a");
+        for (int i = 0; i < 100; i++) {
+            aliasSnapshot.putRow(row(i, "id" + i));
+        }
+        for (int i = 0; i < 100; i++) {
+            if (i != 7 && i != 42) {
+                aliasSnapshot.markRow(row(0, "id" + i));
+            }
+        }
+        Set<String> ids = new HashSet<String>();
+        for (Iterator<JdbcAliasRowSnapshot> it = aliasSnapshot.unmarkedRowSnapshotIt(); it.hasNext();) {
+            ids.add(it.next().getIds().get(0));
+        }
+        assertEquals(2, ids.size());
+        assertTrue(ids.contains("id7"));
+        assertTrue(ids.contains("id42"));
+        aliasSnapshot.clearMarks();
+        count(aliasSnapshot.unmarkedRowSnapshotIt(), 100);
+        aliasSnapshot.close();
+    }
+
+    public void testChangesAfterSaveAreCopiedOnWrite() throws Exception {
+        JdbcSnapshot snapshot = persister.load();
+        JdbcAliasSnapshot aliasSnapshot = persister.createAliasSnapshot("a");
+        for (int i = 0; i < 10; i++) {
+            aliasSnapshot.putRow(row(i, "id" + i));
+        }
+        snapshot.putAliasSnapshot(aliasSnapshot);
+        persister.save(snapshot);
+        Set<String> savedFiles = fileNames();
+
+        // update, remove and create rows without saving (a crash)
+        aliasSnapshot.putRow(row(100, "id1"));
+        aliasSnapshot.removeRow(row(0, "id2"));
+        aliasSnapshot.putRow(row(100, "id100"));
+        Set<String> files = fileNames();
+        assertTrue(files.containsAll(savedFiles));
+        assertTrue(files.size() > savedFiles.size());
+
+        MMapJdbcSnapshotPersister crashedPersister = new MMapJdbcSnapshotPersister(dir.getPath());
+        JdbcSnapshot loaded = crashedPersister.load();
+        JdbcAliasSnapshot loadedAliasSnapshot = loaded.getAliasSnapshot("a");
+        assertEquals(10, ((MMapJdbcAliasSnapshot) loadedAliasSnapshot).size());
+        assertEquals(new Long(1), loadedAliasSnapshot.getRow(row(0, "id1")).getVersions().get(0));
+        assertNotNull(loadedAliasSnapshot.getRow(row(0, "id2")));
+        assertNull(loadedAliasSnapshot.getRow(row(0, "id100")));
+        count(loadedAliasSnapshot.rowSnapshotIt(), 10);
+        loaded.close();
+        snapshot.close();
+    }
+
+    public void testSerializedAsHeapSnapshot() throws Exception {
+        JdbcSnapshot snapshot = new JdbcSnapshot();
+        JdbcAliasSnapshot aliasSnapshot = persister.createAliasSnapshot("a");
+        aliasSnapshot.putRow(row(3, "1"));
+        snapshot.putAliasSnapshot(aliasSnapshot);
+
+        File file = new File(dir, "snapshot.ser");
+        ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file));
+        out.writeObject(snapshot);
+        out.close();
+        snapshot.close();
+
+        ObjectInputStream in = new ObjectInputStream(new FileInputStream(file));
+        snapshot = (JdbcSnapshot) in.readObject();
+        in.close();
+        aliasSnapshot = snapshot.getAliasSnapshot("a");
+        assertFalse(aliasSnapshot instanceof MMapJdbcAliasSnapshot);
+        assertEquals(new Long(3), aliasSnapshot.getRow(row(0, "1")).getVersions().get(0));
+        assertEquals(new Long(3), aliasSnapshot.getHighWaterMark());
+    }
+
+    private void count(Iterator<JdbcAliasRowSnapshot> it, int expected) {
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        assertEquals(expected, count);
+    }
+
+    private Set<String> fileNames() {
+        Set<String> names = new HashSet<String>();
+        for (File file : dir.listFiles()) {
+            names.add(file.getName());
+        }
+        return names;
+    }
+
+    private JdbcAliasRowSnapshot row(long version, String... ids) {
+        JdbcAliasRowSnapshot row = new JdbcAliasRowSnapshot();
+        for (String id : ids) {
+            row.addIdValue(id);
+        }
+        row.addVersionValue(version);
+        return row;
+    }
+
+    private void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+}